@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ArchitectSession;
+import ca.sqlpower.architect.ArchitectSessionContextImpl;
+import ca.sqlpower.architect.ArchitectSessionImpl;
+import ca.sqlpower.sql.DataSourceCollection;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Measures how long the profile creators take to profile a synthetic table
+ * in the in-memory HSQLDB database the regression tests use. This is meant
+ * for comparing the speed of the profile creators before and after a change,
+ * and is run with the <code>benchmark</code> target in build.xml.
+ * <p>
+ * The table's shape is controlled by these system properties:
+ * <ul>
+ *  <li><code>benchmark.columns</code>: the number of columns (default 8).
+ *      Columns cycle through the INTEGER, VARCHAR, DECIMAL and DATE types.
+ *  <li><code>benchmark.rows</code>: the number of rows (default 50000).
+ *  <li><code>benchmark.cardinality</code>: the number of distinct values in
+ *      each column (default 1000). One of them is stored as NULL.
+ * </ul>
+ * Each benchmark is run <code>benchmark.warmup</code> times (default 3) to
+ * let the JIT settle and then <code>benchmark.iterations</code> times
+ * (default 5) with the time of each run recorded. Only the benchmarks whose
+ * names match the <code>benchmark.include</code> regular expression are run.
+ * The results are written as JSON to the file named by
+ * <code>benchmark.output</code>, laid out in the same spirit as JMH's JSON
+ * results: one entry per benchmark with its parameters, mean time per
+ * profile, spread and raw iteration times.
+ * <p>
+ * HSQLDB has no TABLESAMPLE clause, so the sample-based benchmark uses the
+ * {@link LocalReservoirProfileCreator}.
+ */
+public class ProfileCreatorBenchmark {
+
+    private static final Logger logger = Logger.getLogger(ProfileCreatorBenchmark.class);
+
+    /**
+     * The name of the table the benchmarks profile.
+     */
+    private static final String TABLE_NAME = "PROFILE_BENCHMARK";
+
+    /**
+     * The number of rows inserted per JDBC batch while generating the table.
+     */
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    /**
+     * The date the generated DATE values count up from.
+     */
+    private static final long BASE_DATE = Date.valueOf("2000-01-01").getTime();
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private static final String[] COLUMN_TYPES = {
+        "INTEGER", "VARCHAR(40)", "DECIMAL(15,2)", "DATE"
+    };
+
+    /**
+     * One way of profiling the benchmark table.
+     */
+    private static abstract class Benchmark {
+        final String name;
+        final ProfileSettings settings = new ProfileSettings();
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        abstract AbstractTableProfileCreator createCreator();
+    }
+
+    /**
+     * The times recorded for one benchmark.
+     */
+    private static class Result {
+        final Benchmark benchmark;
+        final String creator;
+        final List<Long> nanos = new ArrayList<Long>();
+        int queryCount;
+
+        Result(Benchmark benchmark, String creator) {
+            this.benchmark = benchmark;
+            this.creator = creator;
+        }
+
+        double getMeanMillis() {
+            double sum = 0;
+            for (long n : nanos) sum += n;
+            return sum / nanos.size() / 1000000.0;
+        }
+
+        double getStdDevMillis() {
+            if (nanos.size() < 2) return 0;
+            double mean = getMeanMillis();
+            double sumSq = 0;
+            for (long n : nanos) {
+                double d = n / 1000000.0 - mean;
+                sumSq += d * d;
+            }
+            return Math.sqrt(sumSq / (nanos.size() - 1));
+        }
+
+        double getMinMillis() {
+            long min = Long.MAX_VALUE;
+            for (long n : nanos) min = Math.min(min, n);
+            return min / 1000000.0;
+        }
+
+        double getMaxMillis() {
+            long max = Long.MIN_VALUE;
+            for (long n : nanos) max = Math.max(max, n);
+            return max / 1000000.0;
+        }
+    }
+
+    private final int columnCount;
+    private final int rowCount;
+    private final int cardinality;
+    private final int warmupIterations;
+    private final int measuredIterations;
+
+    private ArchitectSession session;
+    private SQLDatabase db;
+    private SQLTable table;
+
+    public ProfileCreatorBenchmark(int columnCount, int rowCount, int cardinality,
+            int warmupIterations, int measuredIterations) {
+        if (columnCount < 1 || rowCount < 0 || cardinality < 1 ||
+                warmupIterations < 0 || measuredIterations < 1) {
+            throw new IllegalArgumentException("Invalid benchmark parameters: columns=" + columnCount +
+                    " rows=" + rowCount + " cardinality=" + cardinality +
+                    " warmup=" + warmupIterations + " iterations=" + measuredIterations);
+        }
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.cardinality = cardinality;
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+    }
+
+    public static void main(String[] args) throws Exception {
+        ProfileCreatorBenchmark benchmark = new ProfileCreatorBenchmark(
+                Integer.getInteger("benchmark.columns", 8),
+                Integer.getInteger("benchmark.rows", 50000),
+                Integer.getInteger("benchmark.cardinality", 1000),
+                Integer.getInteger("benchmark.warmup", 3),
+                Integer.getInteger("benchmark.iterations", 5));
+        Pattern include = Pattern.compile(System.getProperty("benchmark.include", ".*"));
+        File output = new File(System.getProperty("benchmark.output", "profile-benchmark.json"));
+
+        benchmark.setUp();
+        List<Result> results;
+        try {
+            results = benchmark.run(include);
+        } finally {
+            benchmark.tearDown();
+        }
+        benchmark.writeJson(results, output);
+        for (Result r : results) {
+            System.out.println(String.format("%-28s %10.2f ms/op +/- %.2f (%d queries)",
+                    r.benchmark.name, r.getMeanMillis(), r.getStdDevMillis(), r.queryCount));
+        }
+        System.out.println("Wrote results to " + output.getAbsolutePath());
+    }
+
+    /**
+     * Creates and fills the benchmark table.
+     */
+    public void setUp() throws Exception {
+        DataSourceCollection<SPDataSource> plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        JDBCDataSource ds = plini.getDataSource("regression_test", JDBCDataSource.class);
+        session = new ArchitectSessionImpl(
+                new ArchitectSessionContextImpl("pl.regression.ini"), "ProfileCreatorBenchmark");
+        db = new SQLDatabase(ds);
+        session.getRootObject().addChild(db);
+
+        Connection con = null;
+        Statement stmt = null;
+        PreparedStatement ps = null;
+        try {
+            con = db.getConnection();
+            stmt = con.createStatement();
+            try {
+                stmt.executeUpdate("DROP TABLE " + TABLE_NAME);
+            } catch (SQLException ex) {
+                logger.debug("Benchmark table didn't exist yet");
+            }
+            StringBuilder create = new StringBuilder("CREATE TABLE " + TABLE_NAME + " (");
+            StringBuilder insert = new StringBuilder("INSERT INTO " + TABLE_NAME + " VALUES (");
+            for (int col = 0; col < columnCount; col++) {
+                if (col > 0) {
+                    create.append(", ");
+                    insert.append(", ");
+                }
+                create.append("C").append(col).append(" ").append(COLUMN_TYPES[col % COLUMN_TYPES.length]);
+                insert.append("?");
+            }
+            stmt.executeUpdate(create.append(")").toString());
+
+            long start = System.currentTimeMillis();
+            ps = con.prepareStatement(insert.append(")").toString());
+            for (int row = 0; row < rowCount; row++) {
+                for (int col = 0; col < columnCount; col++) {
+                    ps.setObject(col + 1, makeValue(row, col));
+                }
+                ps.addBatch();
+                if ((row + 1) % INSERT_BATCH_SIZE == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+            con.commit();
+            logger.info("Generated " + rowCount + " rows in " + (System.currentTimeMillis() - start) + "ms");
+        } finally {
+            if (ps != null) ps.close();
+            if (stmt != null) stmt.close();
+            if (con != null) con.close();
+        }
+        table = db.getTableByName(TABLE_NAME);
+    }
+
+    /**
+     * Returns the value generated for the given cell. Each column cycles
+     * through <code>cardinality</code> distinct values at its own stride so
+     * the columns are not simply copies of each other, and the first value
+     * of the cycle is stored as NULL.
+     */
+    private Object makeValue(int row, int col) {
+        int v = (int) (((long) row * (2 * col + 1) + col) % cardinality);
+        if (v == 0) return null;
+        switch (col % COLUMN_TYPES.length) {
+        case 0: return Integer.valueOf(v);
+        case 1: return "value " + v;
+        case 2: return BigDecimal.valueOf(v, 2);
+        default: return new Date(BASE_DATE + v * MILLIS_PER_DAY);
+        }
+    }
+
+    /**
+     * Drops the benchmark table and closes the database connections.
+     */
+    public void tearDown() throws Exception {
+        if (db == null) return;
+        Connection con = null;
+        Statement stmt = null;
+        try {
+            con = db.getConnection();
+            stmt = con.createStatement();
+            stmt.executeUpdate("DROP TABLE " + TABLE_NAME);
+        } finally {
+            if (stmt != null) stmt.close();
+            if (con != null) con.close();
+            db.disconnect();
+        }
+    }
+
+    /**
+     * Returns the benchmarks this class knows how to run.
+     */
+    private List<Benchmark> createBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new Benchmark("fullProfile.remoteDatabase") {
+            AbstractTableProfileCreator createCreator() {
+                return new RemoteDatabaseProfileCreator(settings);
+            }
+        });
+        benchmarks.add(new Benchmark("fullProfile.localStreaming") {
+            AbstractTableProfileCreator createCreator() {
+                return new LocalStreamingProfileCreator(settings);
+            }
+        });
+
+        Benchmark topN = new Benchmark("topN.remoteDatabase") {
+            AbstractTableProfileCreator createCreator() {
+                return new RemoteDatabaseProfileCreator(settings);
+            }
+        };
+        topN.settings.setFindingMin(false);
+        topN.settings.setFindingMax(false);
+        topN.settings.setFindingAvg(false);
+        topN.settings.setFindingMinLength(false);
+        topN.settings.setFindingMaxLength(false);
+        topN.settings.setFindingAvgLength(false);
+        topN.settings.setFindingDistinctCount(false);
+        topN.settings.setFindingNullCount(false);
+        topN.settings.setFindingTopTen(true);
+        benchmarks.add(topN);
+
+        benchmarks.add(new Benchmark("sample.localReservoir") {
+            AbstractTableProfileCreator createCreator() {
+                return new LocalReservoirProfileCreator(settings);
+            }
+        });
+        return benchmarks;
+    }
+
+    /**
+     * Runs each benchmark whose name matches the given pattern.
+     */
+    private List<Result> run(Pattern include) throws Exception {
+        List<Result> results = new ArrayList<Result>();
+        for (Benchmark b : createBenchmarks()) {
+            if (!include.matcher(b.name).matches()) continue;
+            AbstractTableProfileCreator creator = b.createCreator();
+            Result result = new Result(b, creator.toString());
+            logger.info("Running " + b.name);
+            for (int i = 0; i < warmupIterations; i++) {
+                profileOnce(b, creator);
+            }
+            for (int i = 0; i < measuredIterations; i++) {
+                long start = System.nanoTime();
+                TableProfileResult tpr = profileOnce(b, creator);
+                result.nanos.add(System.nanoTime() - start);
+                result.queryCount = tpr.getQueryTimings().size();
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private TableProfileResult profileOnce(Benchmark b, AbstractTableProfileCreator creator) throws Exception {
+        TableProfileResult tpr = new TableProfileResult(table, b.settings);
+        creator.doProfile(tpr);
+        if (tpr.getException() != null) {
+            throw new Exception("Benchmark " + b.name + " failed", tpr.getException());
+        }
+        return tpr;
+    }
+
+    /**
+     * Writes the given results to a file as a JSON array.
+     */
+    private void writeJson(List<Result> results, File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) dir.mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                out.write("  {\n");
+                out.write("    \"benchmark\": " + quote(r.benchmark.name) + ",\n");
+                out.write("    \"creator\": " + quote(r.creator) + ",\n");
+                out.write("    \"mode\": \"avgt\",\n");
+                out.write("    \"jvm\": " + quote(System.getProperty("java.vm.name") + " " +
+                        System.getProperty("java.version")) + ",\n");
+                out.write("    \"warmupIterations\": " + warmupIterations + ",\n");
+                out.write("    \"measurementIterations\": " + measuredIterations + ",\n");
+                out.write("    \"params\": {\"columns\": " + columnCount + ", \"rows\": " + rowCount +
+                        ", \"cardinality\": " + cardinality + "},\n");
+                out.write("    \"primaryMetric\": {\n");
+                out.write("      \"score\": " + r.getMeanMillis() + ",\n");
+                out.write("      \"scoreStdDev\": " + r.getStdDevMillis() + ",\n");
+                out.write("      \"scoreMin\": " + r.getMinMillis() + ",\n");
+                out.write("      \"scoreMax\": " + r.getMaxMillis() + ",\n");
+                out.write("      \"scoreUnit\": \"ms/op\",\n");
+                out.write("      \"rawData\": [");
+                for (int j = 0; j < r.nanos.size(); j++) {
+                    if (j > 0) out.write(", ");
+                    out.write(String.valueOf(r.nanos.get(j) / 1000000.0));
+                }
+                out.write("]\n");
+                out.write("    },\n");
+                out.write("    \"secondaryMetrics\": {\"queries\": " + r.queryCount + "}\n");
+                out.write(i < results.size() - 1 ? "  },\n" : "  }\n");
+            }
+            out.write("]\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -46,6 +46,7 @@ import ca.sqlpower.architect.swingui.olap.TestDimensionPane;
 import ca.sqlpower.architect.swingui.olap.TestUsageComponent;
 import ca.sqlpower.architect.swingui.olap.TestVirtualCubePane;
 import ca.sqlpower.architect.swingui.table.SQLObjectRendererTest;
+import ca.sqlpower.architect.swingui.table.TableFilterDecoratorTest;
 import ca.sqlpower.architect.undo.TestArchitectUndoManager;
 
 /**
@@ -62,6 +63,7 @@ public class ArchitectSwingTestSuite extends TestCase {
 		suite.addTestSuite(BasicTablePaneUITest.class);
 		suite.addTestSuite(IndexColumnTableTest.class);
 		suite.addTestSuite(SQLObjectRendererTest.class);
+		suite.addTestSuite(TableFilterDecoratorTest.class);
 		suite.addTestSuite(TestArchitectFrame.class);
 		suite.addTestSuite(TestArchitectUndoManager.class);
 		suite.addTestSuite(TestAutoLayoutAction.class);
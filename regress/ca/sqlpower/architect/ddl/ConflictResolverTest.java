@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.ConflictResolver.Conflict;
+import ca.sqlpower.sql.DataSourceCollection;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ConflictResolverTest extends TestCase {
+
+    /**
+     * More tables than the resolver looks up one at a time.
+     */
+    private static final int TABLES = 12;
+
+    private JDBCDataSource ds;
+    private SQLDatabase db;
+    private GenericDDLGenerator ddlg;
+
+    @Override
+    protected void setUp() throws Exception {
+        DataSourceCollection<SPDataSource> plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        ds = plini.getDataSource("regression_test", JDBCDataSource.class);
+        db = new SQLDatabase(ds);
+        ddlg = new GenericDDLGenerator(false) {
+            @Override
+            public String makeDropForeignKeySQL(String fkTable, String fkName) {
+                return "ALTER TABLE " + toQualifiedName(fkTable) + " DROP CONSTRAINT " + fkName;
+            }
+        };
+
+        execute("CREATE TABLE CR_TABLE_0 (ID INTEGER PRIMARY KEY)");
+        for (int i = 1; i < TABLES; i++) {
+            execute("CREATE TABLE CR_TABLE_" + i + " (ID INTEGER PRIMARY KEY, PARENT_ID INTEGER, " +
+                    "CONSTRAINT CR_FK_" + i + " FOREIGN KEY (PARENT_ID) REFERENCES CR_TABLE_0 (ID))");
+        }
+        execute("CREATE TABLE CRXONE (ID INTEGER)");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ds.getParentType().putProperty(ConflictResolver.FOREIGN_KEYS_QUERY, "");
+        for (int i = TABLES - 1; i >= 0; i--) {
+            try {
+                execute("DROP TABLE CR_TABLE_" + i);
+            } catch (SQLException ex) {
+                // already dropped
+            }
+        }
+        execute("DROP TABLE CRXONE");
+    }
+
+    public void testFindAndDropWithKeysPerTable() throws Exception {
+        // an empty query turns off the default one
+        ds.getParentType().putProperty(ConflictResolver.FOREIGN_KEYS_QUERY, "");
+        assertNull(DDLUtils.getPlatformProperty(ds.getParentType(), ConflictResolver.FOREIGN_KEYS_QUERY));
+        findAndDrop();
+    }
+
+    public void testFindAndDropWithKeysQuery() throws Exception {
+        ds.getParentType().putProperty(ConflictResolver.FOREIGN_KEYS_QUERY,
+                "SELECT DISTINCT FKTABLE_CAT, FKTABLE_SCHEM, FKTABLE_NAME, FK_NAME, " +
+                "PKTABLE_CAT, PKTABLE_SCHEM, PKTABLE_NAME " +
+                "FROM INFORMATION_SCHEMA.SYSTEM_CROSSREFERENCE " +
+                "WHERE FKTABLE_SCHEM = {schema} OR PKTABLE_SCHEM = {schema}");
+        findAndDrop();
+    }
+
+    public void testFindAndDropWithDefaultKeysQuery() throws Exception {
+        assertNull(ds.getParentType().getProperty(ConflictResolver.FOREIGN_KEYS_QUERY));
+        assertNotNull(DDLUtils.getPlatformProperty(ds.getParentType(), ConflictResolver.FOREIGN_KEYS_QUERY));
+        findAndDrop();
+    }
+
+    /**
+     * The catalogs the query reports don't have to be the ones the table
+     * metadata reports, since tables are matched to keys by schema.
+     */
+    public void testFindAndDropWithOtherCatalogInKeysQuery() throws Exception {
+        ds.getParentType().putProperty(ConflictResolver.FOREIGN_KEYS_QUERY,
+                "SELECT DISTINCT 'OTHER' AS FKTABLE_CAT, FKTABLE_SCHEM, FKTABLE_NAME, FK_NAME, " +
+                "'OTHER' AS PKTABLE_CAT, PKTABLE_SCHEM, PKTABLE_NAME " +
+                "FROM INFORMATION_SCHEMA.SYSTEM_CROSSREFERENCE " +
+                "WHERE FKTABLE_SCHEM = {schema} OR PKTABLE_SCHEM = {schema}");
+        findAndDrop();
+    }
+
+    /**
+     * Keys the query doesn't report in the schema it was asked about are
+     * looked up one table at a time instead of being missed.
+     */
+    public void testFindAndDropWithOtherSchemaInKeysQuery() throws Exception {
+        ds.getParentType().putProperty(ConflictResolver.FOREIGN_KEYS_QUERY,
+                "SELECT DISTINCT FKTABLE_CAT, 'OTHER' AS FKTABLE_SCHEM, FKTABLE_NAME, FK_NAME, " +
+                "PKTABLE_CAT, 'OTHER' AS PKTABLE_SCHEM, PKTABLE_NAME " +
+                "FROM INFORMATION_SCHEMA.SYSTEM_CROSSREFERENCE " +
+                "WHERE FKTABLE_SCHEM = {schema} OR PKTABLE_SCHEM = {schema}");
+        findAndDrop();
+    }
+
+    /**
+     * HSQLDB stores unquoted identifiers in upper case, so a table named in
+     * lower case in the model is the same table as the upper case one.
+     */
+    public void testNamesMatchInStoredCase() throws Exception {
+        List<SQLTable> tables = new ArrayList<SQLTable>();
+        tables.add(makeTable("cr_table_3"));
+        tables.add(makeTable("Cr_Table_0"));
+        ConflictResolver cr = new ConflictResolver(db, ddlg, ddlg.generateDDLStatements(tables));
+        cr.findConflicting();
+
+        List<Conflict> conflicts = cr.getConflicts();
+        assertEquals("Conflicts: " + conflicts, 2, conflicts.size());
+        assertEquals("CR_TABLE_3", conflicts.get(0).getName());
+        assertEquals(1, conflicts.get(0).getDependants().size());
+        assertEquals("CR_TABLE_0", conflicts.get(1).getName());
+        assertEquals(TABLES - 1, conflicts.get(1).getDependants().size());
+    }
+
+    public void testSmallScriptMatchesExactNames() throws Exception {
+        List<SQLTable> tables = new ArrayList<SQLTable>();
+        tables.add(makeTable("CR_TABLE_3"));
+        // would match CRXONE as a metadata pattern
+        tables.add(makeTable("CR_ONE"));
+        ConflictResolver cr = new ConflictResolver(db, ddlg, ddlg.generateDDLStatements(tables));
+        cr.findConflicting();
+
+        List<Conflict> conflicts = cr.getConflicts();
+        assertEquals("Conflicts: " + conflicts, 1, conflicts.size());
+        assertEquals("CR_TABLE_3", conflicts.get(0).getName());
+        assertEquals(1, conflicts.get(0).getDependants().size());
+        assertEquals("CR_FK_3", conflicts.get(0).getDependants().get(0).getName());
+    }
+
+    private void findAndDrop() throws Exception {
+        List<SQLTable> tables = new ArrayList<SQLTable>();
+        for (int i = 0; i < TABLES; i++) {
+            tables.add(makeTable("CR_TABLE_" + i));
+        }
+        ConflictResolver cr = new ConflictResolver(db, ddlg, ddlg.generateDDLStatements(tables));
+        cr.findConflicting();
+
+        List<Conflict> conflicts = cr.getConflicts();
+        assertEquals(TABLES, conflicts.size());
+        for (Conflict c : conflicts) {
+            if (c.getName().equals("CR_TABLE_0")) {
+                assertEquals(TABLES - 1, c.getDependants().size());
+            } else {
+                assertEquals(1, c.getDependants().size());
+            }
+        }
+
+        cr.dropConflicting();
+        assertTrue(cr.isFinished());
+        Connection con = db.getConnection();
+        try {
+            ResultSet rs = con.getMetaData().getTables(null, null, "CR_TABLE_%", null);
+            assertFalse(rs.next());
+            rs.close();
+        } finally {
+            con.close();
+        }
+    }
+
+    private SQLTable makeTable(String name) throws Exception {
+        SQLTable t = new SQLTable(null, name, null, "TABLE", true);
+        t.setPhysicalName(name);
+        t.addColumn(new SQLColumn(t, "ID", Types.INTEGER, 10, 0));
+        return t;
+    }
+
+    private void execute(String sql) throws Exception {
+        Connection con = db.getConnection();
+        try {
+            Statement stmt = con.createStatement();
+            stmt.executeUpdate(sql);
+            stmt.close();
+        } finally {
+            con.close();
+        }
+    }
+}
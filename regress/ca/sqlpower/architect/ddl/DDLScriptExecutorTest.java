@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.DDLStatement.StatementType;
+import ca.sqlpower.sql.DataSourceCollection;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class DDLScriptExecutorTest extends TestCase {
+
+    private SQLDatabase db;
+
+    @Override
+    protected void setUp() throws Exception {
+        DataSourceCollection<SPDataSource> plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        db = new SQLDatabase(plini.getDataSource("regression_test", JDBCDataSource.class));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        execute("DROP TABLE DDL_EXEC_CHILD");
+        execute("DROP TABLE DDL_EXEC_PARENT");
+    }
+
+    public void testGroupStatements() throws Exception {
+        List<SQLTable> tables = new ArrayList<SQLTable>();
+        for (int i = 0; i < 4; i++) {
+            SQLTable tbl = new SQLTable(null, "table_" + i, null, "TABLE", true);
+            tbl.addColumn(new SQLColumn(tbl, "id", Types.INTEGER, 10, 0));
+            tbl.addColumn(new SQLColumn(tbl, "parent_id", Types.INTEGER, 10, 0));
+            tbl.addToPK(tbl.getColumn(0));
+            tables.add(tbl);
+        }
+        for (int i = 1; i < tables.size(); i++) {
+            SQLRelationship r = new SQLRelationship();
+            r.setName("table_0_table_" + i + "_fk");
+            r.addMapping(tables.get(0).getColumn(0), tables.get(i).getColumn(1));
+            r.attachRelationship(tables.get(0), tables.get(i), false);
+        }
+        List<DDLStatement> statements =
+            new ArrayList<DDLStatement>(new GenericDDLGenerator(false).generateDDLStatements(tables));
+        DDLStatement drop = new DDLStatement(tables.get(3), StatementType.DROP, "DROP TABLE table_3", ";", null, null);
+        statements.add(drop);
+        DDLStatement create = new DDLStatement(tables.get(3), StatementType.CREATE, "CREATE TABLE table_3", ";", null, null);
+        statements.add(create);
+
+        List<List<DDLStatement>> groups = DDLScriptExecutor.groupStatements(statements);
+
+        // every table is created at once, and each relationship on table_0
+        // waits for the one before it
+        assertEquals(tables.size(), groups.get(0).size());
+        for (DDLStatement stmt : groups.get(0)) {
+            assertTrue(stmt.getObject() instanceof SQLTable);
+        }
+        for (int i = 1; i < tables.size(); i++) {
+            assertEquals(1, groups.get(i).size());
+            assertTrue(groups.get(i).get(0).getObject() instanceof SQLRelationship);
+        }
+
+        // the drop runs on its own after everything before it
+        assertEquals(tables.size() + 2, groups.size());
+        assertEquals(1, groups.get(tables.size()).size());
+        assertSame(drop, groups.get(tables.size()).get(0));
+        assertSame(create, groups.get(tables.size() + 1).get(0));
+
+        int total = 0;
+        for (List<DDLStatement> group : groups) {
+            total += group.size();
+        }
+        assertEquals(statements.size(), total);
+    }
+
+    public void testFailuresAreReportedAndRestOfScriptRuns() throws Exception {
+        SQLTable parent = new SQLTable(null, "DDL_EXEC_PARENT", null, "TABLE", true);
+        SQLTable child = new SQLTable(null, "DDL_EXEC_CHILD", null, "TABLE", true);
+        List<DDLStatement> statements = new ArrayList<DDLStatement>();
+        statements.add(new DDLStatement(parent, StatementType.CREATE,
+                "CREATE TABLE DDL_EXEC_PARENT (id INTEGER)", ";", null, null));
+        DDLStatement bad = new DDLStatement(parent, StatementType.CREATE,
+                "CREATE TABLE DDL_EXEC_PARENT (id INTEGER)", ";", null, null);
+        statements.add(bad);
+        statements.add(new DDLStatement(child, StatementType.CREATE,
+                "CREATE TABLE DDL_EXEC_CHILD (id INTEGER)", ";", null, null));
+        statements.add(new DDLStatement(child, StatementType.COMMENT,
+                "INSERT INTO DDL_EXEC_CHILD VALUES (1)", ";", null, null));
+
+        DDLScriptExecutor executor = new DDLScriptExecutor(db);
+        executor.setConnectionCount(2);
+        List<DDLScriptExecutor.Failure> failures = executor.execute(statements);
+
+        assertEquals("Failures: " + failures, 1, failures.size());
+        assertSame(bad, failures.get(0).getStatement());
+        assertEquals(statements.size(), executor.getExecutedCount());
+
+        Connection con = db.getConnection();
+        try {
+            Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM DDL_EXEC_CHILD");
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+            rs.close();
+            stmt.close();
+        } finally {
+            con.close();
+        }
+    }
+
+    private void execute(String sql) throws Exception {
+        Connection con = db.getConnection();
+        try {
+            Statement stmt = con.createStatement();
+            stmt.executeUpdate(sql);
+            stmt.close();
+        } catch (SQLException ex) {
+            // the table wasn't created
+        } finally {
+            con.close();
+        }
+    }
+}
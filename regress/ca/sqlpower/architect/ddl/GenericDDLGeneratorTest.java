@@ -19,11 +19,14 @@
 
 package ca.sqlpower.architect.ddl;
 
+import java.io.StringWriter;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
 import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLRelationship;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.sqlobject.SQLType;
 import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider.PropertyType;
@@ -59,6 +62,74 @@ public class GenericDDLGeneratorTest extends TestCase {
 		assertEquals("COMMENT ON COLUMN test_table.name IS 'The person''s name'", sql);
 	}
 
+	public void testWrittenScriptMatchesGeneratedScript() throws Exception {
+		List<SQLTable> tables = new ArrayList<SQLTable>();
+		for (int i = 0; i < 3; i++) {
+			SQLTable tbl = new SQLTable(null, "table_" + i, "remarks " + i, "TABLE", true);
+			tbl.addColumn(new SQLColumn(tbl, "id", Types.INTEGER, 10, 0));
+			tbl.addColumn(new SQLColumn(tbl, "parent_id", Types.INTEGER, 10, 0));
+			tbl.addToPK(tbl.getColumn(0));
+			tables.add(tbl);
+		}
+		SQLRelationship r = new SQLRelationship();
+		r.setName("table_0_table_1_fk");
+		r.addMapping(tables.get(0).getColumn(0), tables.get(1).getColumn(1));
+		r.attachRelationship(tables.get(0), tables.get(1), false);
+
+		GenericDDLGenerator generated = new GenericDDLGenerator(false);
+		String script = generated.generateDDLScript(tables);
+		StringWriter generatedOut = new StringWriter();
+		generated.writeDDLScript(generatedOut);
+		assertEquals(script, generatedOut.toString());
+
+		GenericDDLGenerator ddl = new GenericDDLGenerator(false);
+		StringWriter out = new StringWriter();
+		ddl.writeDDLScript(tables, out);
+		assertEquals(script, out.toString());
+		assertTrue(out.toString().contains("table_0_table_1_fk"));
+		assertEquals(0, ddl.getDdlStatements().size());
+	}
+
+	public void testConcurrentScriptMatchesSerialScript() throws Exception {
+		List<SQLTable> tables = new ArrayList<SQLTable>();
+		for (int i = 0; i < 20; i++) {
+			SQLTable tbl = new SQLTable(null, "table_" + i, "remarks " + i, "TABLE", true);
+			tbl.addColumn(new SQLColumn(tbl, "id", Types.INTEGER, 10, 0));
+			tbl.addColumn(new SQLColumn(tbl, "parent_id", Types.INTEGER, 10, 0));
+			tbl.addColumn(new SQLColumn(tbl, "name", Types.VARCHAR, 50, 0));
+			tbl.addToPK(tbl.getColumn(0));
+			tables.add(tbl);
+		}
+		for (int i = 1; i < tables.size(); i++) {
+			SQLRelationship r = new SQLRelationship();
+			r.setName("table_" + (i / 2) + "_table_" + i + "_fk");
+			r.addMapping(tables.get(i / 2).getColumn(0), tables.get(i).getColumn(1));
+			r.attachRelationship(tables.get(i / 2), tables.get(i), false);
+		}
+
+		GenericDDLGenerator serial = new GenericDDLGenerator(false);
+		serial.setThreadCount(1);
+		String serialScript = serial.generateDDLScript(tables);
+		List<DDLStatement> serialStatements = serial.getDdlStatements();
+
+		for (int run = 0; run < 5; run++) {
+			GenericDDLGenerator concurrent = new GenericDDLGenerator(false);
+			concurrent.setThreadCount(4);
+			assertEquals(serialScript, concurrent.generateDDLScript(tables));
+
+			List<DDLStatement> statements = concurrent.getDdlStatements();
+			assertEquals(serialStatements.size(), statements.size());
+			for (int i = 0; i < statements.size(); i++) {
+				assertEquals(serialStatements.get(i).getObject(), statements.get(i).getObject());
+				assertEquals(serialStatements.get(i).getType(), statements.get(i).getType());
+			}
+
+			StringWriter out = new StringWriter();
+			concurrent.writeDDLScript(tables, out);
+			assertEquals(serialScript, out.toString());
+		}
+	}
+
 	public void testNewTypes() throws Exception {
 		GenericDDLGenerator ddl = new GenericDDLGenerator(false);
 		SQLTable tbl = new SQLTable();
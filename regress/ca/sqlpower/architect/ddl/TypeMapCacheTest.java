@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl;
+
+import java.sql.Types;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider.PropertyType;
+
+public class TypeMapCacheTest extends TestCase {
+
+    private TypeMapCache cache;
+    private SQLTable table;
+    private SQLColumn column;
+
+    @Override
+    protected void setUp() throws Exception {
+        cache = new TypeMapCache();
+        table = new SQLTable(null, "test_table", null, "TABLE", true);
+        column = new SQLColumn(table, "name", Types.VARCHAR, "VARCHAR", 50, 0, 0, "", null, false);
+        column.getUserDefinedSQLType().getDefaultPhysicalProperties().setScaleType(PropertyType.NOT_APPLICABLE);
+        column.getUserDefinedSQLType().getDefaultPhysicalProperties().setPrecisionType(PropertyType.VARIABLE);
+        table.addColumn(column);
+    }
+
+    private GenericDDLGenerator createGenerator() throws Exception {
+        GenericDDLGenerator ddl = new GenericDDLGenerator(false);
+        ddl.setTypeMapCache(cache);
+        return ddl;
+    }
+
+    public void testColumnTypeFollowsTypeChanges() throws Exception {
+        GenericDDLGenerator ddl = createGenerator();
+        assertEquals("VARCHAR(50)", ddl.columnType(column));
+        column.getUserDefinedSQLType().getDefaultPhysicalProperties().setPrecision(60);
+        assertEquals("VARCHAR(60)", ddl.columnType(column));
+
+        column.getUserDefinedSQLType().getDefaultPhysicalProperties().setPrecisionType(PropertyType.NOT_APPLICABLE);
+        assertEquals("VARCHAR", ddl.columnType(column));
+    }
+
+    public void testTypeMapReusedByGeneratorClass() throws Exception {
+        GenericDDLGenerator ddl = createGenerator();
+        ddl.generateDDLStatements(Collections.singletonList(table));
+        Map<Integer, GenericTypeDescriptor> typeMap = ddl.getTypeMap();
+        assertSame(typeMap, cache.getTypeMap(GenericDDLGenerator.class, null));
+
+        GenericDDLGenerator other = createGenerator();
+        other.generateDDLStatements(Collections.singletonList(table));
+        assertSame(typeMap, other.getTypeMap());
+
+        HSQLDBDDLGenerator hsqldb = new HSQLDBDDLGenerator();
+        hsqldb.setTypeMapCache(cache);
+        hsqldb.generateDDLStatements(Collections.singletonList(table));
+        assertNotSame(typeMap, hsqldb.getTypeMap());
+        assertSame(hsqldb.getTypeMap(), cache.getTypeMap(HSQLDBDDLGenerator.class, null));
+    }
+
+    public void testInvalidateDataSource() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource(new PlDotIni());
+        ds.setUrl("jdbc:hsqldb:mem:typemapcache");
+        Map<Integer, GenericTypeDescriptor> typeMap = new HashMap<Integer, GenericTypeDescriptor>();
+        Map<Integer, GenericTypeDescriptor> cached = cache.putTypeMap(GenericDDLGenerator.class, ds, typeMap);
+        assertSame(cached, cache.getTypeMap(GenericDDLGenerator.class, ds));
+        assertSame(cached, cache.putTypeMap(GenericDDLGenerator.class, ds,
+                new HashMap<Integer, GenericTypeDescriptor>()));
+        cache.putTypeMap(GenericDDLGenerator.class, null, typeMap);
+
+        cache.invalidate(ds);
+        assertNull(cache.getTypeMap(GenericDDLGenerator.class, ds));
+        assertNotNull(cache.getTypeMap(GenericDDLGenerator.class, null));
+    }
+
+    public void testDataSourceChangeForgetsTypeMap() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource(new PlDotIni());
+        ds.setUrl("jdbc:hsqldb:mem:typemapcache");
+        cache.putTypeMap(GenericDDLGenerator.class, ds, new HashMap<Integer, GenericTypeDescriptor>());
+        cache.putTypeMap(GenericDDLGenerator.class, ds, new HashMap<Integer, GenericTypeDescriptor>());
+        assertNotNull(cache.getTypeMap(GenericDDLGenerator.class, ds));
+
+        ds.setUser("someone_else");
+        assertNull(cache.getTypeMap(GenericDDLGenerator.class, ds));
+    }
+
+    public void testConnectedTypeMapExpires() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource(new PlDotIni());
+        ds.setUrl("jdbc:hsqldb:mem:typemapcache");
+        cache.putTypeMap(GenericDDLGenerator.class, ds, new HashMap<Integer, GenericTypeDescriptor>());
+        cache.putTypeMap(GenericDDLGenerator.class, null, new HashMap<Integer, GenericTypeDescriptor>());
+
+        cache.setTypeMapLifetime(0);
+        assertNull(cache.getTypeMap(GenericDDLGenerator.class, ds));
+        assertNotNull(cache.getTypeMap(GenericDDLGenerator.class, null));
+    }
+}
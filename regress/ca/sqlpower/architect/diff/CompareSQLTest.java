@@ -845,6 +845,156 @@ public class CompareSQLTest extends TestCase {
         }
     }
 
+    /**
+     * Comparing on several threads must give exactly the same diffs, in the
+     * same order, as comparing on one.
+     */
+    public void testParallelDiffsMatchSequentialDiffs() throws Exception {
+        List<SQLTable> left = makeModel(false);
+        List<SQLTable> right = makeModel(true);
+
+        CompareSQL sequential = new CompareSQL(left, right, false);
+        sequential.setCompareIndices(true);
+        sequential.setThreadCount(1);
+        List<DiffChunk<SQLObject>> expected = sequential.generateTableDiffs();
+
+        CompareSQL parallel = new CompareSQL(left, right, false);
+        parallel.setCompareIndices(true);
+        parallel.setThreadCount(4);
+        List<DiffChunk<SQLObject>> actual = parallel.generateTableDiffs();
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame("Chunk " + i, expected.get(i).getData(), actual.get(i).getData());
+            assertEquals("Chunk " + i, expected.get(i).getType(), actual.get(i).getType());
+            assertEquals("Chunk " + i, expected.get(i).getPropertyChanges().size(),
+                    actual.get(i).getPropertyChanges().size());
+        }
+        assertTrue(parallel.isFinished());
+    }
+
+    public void testStreamedDiffsMatchListedDiffs() throws Exception {
+        List<SQLTable> left = makeModel(false);
+        List<SQLTable> right = makeModel(true);
+
+        CompareSQL listed = new CompareSQL(left, right, false);
+        listed.setCompareIndices(true);
+        List<DiffChunk<SQLObject>> expected = listed.generateTableDiffs();
+
+        CompareSQL streamed = new CompareSQL(left, right, false);
+        streamed.setCompareIndices(true);
+        final List<DiffChunk<SQLObject>> actual = new ArrayList<DiffChunk<SQLObject>>();
+        final int[] finishedCalls = new int[1];
+        streamed.generateTableDiffs(null, new DiffChunkConsumer() {
+            public void chunkAdded(DiffChunk<SQLObject> chunk) {
+                assertEquals("Chunk after the diff finished", 0, finishedCalls[0]);
+                actual.add(chunk);
+            }
+            public void diffFinished() {
+                finishedCalls[0]++;
+            }
+        });
+
+        assertEquals(1, finishedCalls[0]);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame("Chunk " + i, expected.get(i).getData(), actual.get(i).getData());
+            assertEquals("Chunk " + i, expected.get(i).getType(), actual.get(i).getType());
+        }
+    }
+
+    /**
+     * Comparing on several threads must give the diffs a one-table-at-a-time
+     * comparison gives: tables in name order, each followed by its columns,
+     * then the relationships in order of their primary key tables.
+     */
+    public void testParallelDiffsMatchExpectedDiffs() throws Exception {
+        List<SQLTable> left = new ArrayList<SQLTable>();
+        left.add(makeTable(0, 2));
+        left.add(makeTable(1, 2));
+        left.add(makeTable(2, 2));
+        SQLRelationship leftRel = new SQLRelationship();
+        leftRel.addMapping(left.get(0).getColumn(0), left.get(2).getColumn(1));
+        leftRel.setName("rel_0_2");
+        leftRel.attachRelationship(left.get(0), left.get(2), false);
+
+        List<SQLTable> right = new ArrayList<SQLTable>();
+        right.add(makeTable(0, 2));
+        right.get(0).getColumn(1).setType(Types.VARCHAR);
+        right.add(makeTable(2, 3));
+        right.add(makeTable(3, 2));
+        SQLRelationship rightRel = new SQLRelationship();
+        rightRel.addMapping(right.get(0).getColumn(0), right.get(1).getColumn(1));
+        rightRel.setName("rel_0_2");
+        rightRel.attachRelationship(right.get(0), right.get(1), false);
+        SQLRelationship newRel = new SQLRelationship();
+        newRel.addMapping(right.get(1).getColumn(0), right.get(2).getColumn(1));
+        newRel.setName("rel_2_3");
+        newRel.attachRelationship(right.get(1), right.get(2), false);
+
+        CompareSQL parallel = new CompareSQL(left, right, false);
+        parallel.setThreadCount(4);
+        List<DiffChunk<SQLObject>> diffs = parallel.generateTableDiffs();
+
+        assertEquals(diffs.toString(), 11, diffs.size());
+        assertChunk(DiffType.SAME, SQLTable.class, "table_0", diffs.get(0));
+        assertChunk(DiffType.SAME, SQLColumn.class, "column_0", diffs.get(1));
+        assertChunk(DiffType.SQL_MODIFIED, SQLColumn.class, "column_1", diffs.get(2));
+        assertChunk(DiffType.LEFTONLY, SQLTable.class, "table_1", diffs.get(3));
+        assertChunk(DiffType.SAME, SQLTable.class, "table_2", diffs.get(4));
+        assertChunk(DiffType.SAME, SQLColumn.class, "column_0", diffs.get(5));
+        assertChunk(DiffType.SAME, SQLColumn.class, "column_1", diffs.get(6));
+        assertChunk(DiffType.RIGHTONLY, SQLColumn.class, "column_2", diffs.get(7));
+        assertChunk(DiffType.RIGHTONLY, SQLTable.class, "table_3", diffs.get(8));
+        assertChunk(DiffType.SAME, SQLRelationship.class, "rel_0_2", diffs.get(9));
+        assertChunk(DiffType.RIGHTONLY, SQLRelationship.class, "rel_2_3", diffs.get(10));
+        assertSame(left.get(0), diffs.get(0).getData());
+        assertSame(right.get(0).getColumn(1), diffs.get(2).getData());
+        assertSame(right.get(1).getColumn(2), diffs.get(7).getData());
+    }
+
+    private void assertChunk(DiffType type, Class<?> dataClass, String name, DiffChunk<SQLObject> chunk) {
+        assertEquals(chunk.toString(), type, chunk.getType());
+        assertEquals(chunk.toString(), dataClass, chunk.getData().getClass());
+        assertEquals(chunk.toString(), name, chunk.getData().getName());
+    }
+
+    /**
+     * Creates a model of tables linked by relationships and with a few
+     * indices. The right-hand version leaves out and adds some tables and
+     * changes some columns.
+     */
+    private List<SQLTable> makeModel(boolean right) throws SQLObjectException {
+        List<SQLTable> tables = new ArrayList<SQLTable>();
+        for (int i = 0; i < 30; i++) {
+            if (right && i % 7 == 3) continue;
+            SQLTable t = makeTable(i, i % 5 + 2);
+            if (right && i % 3 == 0) {
+                t.getColumn(1).setType(Types.VARCHAR);
+            }
+            if (i % 4 == 0) {
+                SQLIndex index = new SQLIndex("idx_" + i + (right && i % 8 == 0 ? "_new" : ""),
+                        false, null, null, null);
+                index.addIndexColumn(t.getColumn(1));
+                t.addIndex(index);
+            }
+            tables.add(t);
+        }
+        if (right) {
+            tables.add(makeTable(100, 3));
+        }
+        for (int i = 0; i + 1 < tables.size(); i += 2) {
+            SQLTable pkTable = tables.get(i);
+            SQLTable fkTable = tables.get(i + 1);
+            pkTable.addToPK(pkTable.getColumn(0));
+            SQLRelationship r = new SQLRelationship();
+            r.addMapping(pkTable.getColumn(0), fkTable.getColumn(1));
+            r.setName("rel_" + pkTable.getName());
+            r.attachRelationship(pkTable, fkTable, false);
+        }
+        return tables;
+    }
+
 	/**
 	 * Creates a table with the name <tt>table_<i>i</i></tt> (where <i>i</i> is the
 	 * argument given to this function.  The new table will have i columns called
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.diff;
+
+import java.io.File;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+
+public class SchemaSnapshotCacheTest extends TestCase {
+
+    private File directory;
+    private SchemaSnapshotCache cache;
+    private List<SQLTable> tables;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("snapshots", "");
+        directory.delete();
+        cache = new SchemaSnapshotCache(directory);
+
+        SQLTable parent = makeTable("parent", 3);
+        parent.addToPK(parent.getColumn(0));
+        SQLTable child = makeTable("child", 4);
+        child.addToPK(child.getColumn(0));
+
+        SQLIndex index = new SQLIndex("child_idx", true, null, null, null);
+        index.addIndexColumn(child.getColumn(2), AscendDescend.DESCENDING);
+        child.addChild(index);
+
+        SQLRelationship r = new SQLRelationship();
+        r.setName("parent_child_fk");
+        r.addMapping(parent.getColumn(0), child.getColumn(1));
+        r.attachRelationship(parent, child, false);
+
+        tables = new ArrayList<SQLTable>();
+        tables.add(parent);
+        tables.add(child);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testMissingSnapshot() throws Exception {
+        assertNull(cache.getSnapshotTime("db", "cat", "sch"));
+        assertNull(cache.load("db", "cat", "sch"));
+    }
+
+    public void testSnapshotComparesSameAsOriginal() throws Exception {
+        long before = System.currentTimeMillis();
+        cache.save("db", null, "sch", tables, null, true);
+        assertTrue(cache.getSnapshotTime("db", null, "sch").getTime() >= before);
+        assertNull(cache.load("db", null, "other_schema"));
+
+        SchemaSnapshotCache.Snapshot snapshot = cache.load("db", null, "sch");
+        assertEquals(2, snapshot.getTables().size());
+        SQLTable child = snapshot.getTables().get(1);
+        assertEquals("child", child.getName());
+        assertEquals(4, child.getColumns().size());
+        assertEquals(1, child.getImportedKeys().size());
+        assertSame(snapshot.getTables().get(0),
+                child.getImportedKeys().get(0).getRelationship().getPkTable());
+
+        List<DiffChunk<SQLObject>> diffs =
+            new CompareSQL(tables, snapshot.getTables(), true).generateTableDiffs();
+        assertEquals("Snapshot differs from its tables: " + diffs, 0, diffs.size());
+        assertTrue(snapshot.hasIndices());
+    }
+
+    public void testSnapshotWithoutIndices() throws Exception {
+        cache.save("db", null, "sch", tables, null, false);
+        SchemaSnapshotCache.Snapshot snapshot = cache.load("db", null, "sch");
+        assertFalse(snapshot.hasIndices());
+        SQLTable child = snapshot.getTables().get(1);
+        assertEquals(1, child.getIndices().size());
+        assertTrue(child.getIndices().get(0).isPrimaryKeyIndex());
+    }
+
+    public void testMergeUnchangedKeepsOnlyChangedLiveTables() throws Exception {
+        Map<String, String> stamps = new HashMap<String, String>();
+        stamps.put("parent", "1");
+        stamps.put("child", "1");
+        cache.save("db", null, "sch", tables, stamps, true);
+        SchemaSnapshotCache.Snapshot snapshot = cache.load("db", null, "sch");
+        assertEquals("1", snapshot.getStamp("child"));
+
+        List<SQLTable> live = new ArrayList<SQLTable>();
+        live.add(makeTable("parent", 3));
+        live.add(makeTable("child", 5));
+        live.add(makeTable("added", 1));
+        Map<String, String> liveStamps = new HashMap<String, String>();
+        liveStamps.put("parent", "1");
+        liveStamps.put("child", "2");
+        liveStamps.put("added", "1");
+
+        List<SQLTable> changed = new ArrayList<SQLTable>();
+        List<SQLTable> merged = snapshot.mergeUnchanged(live, liveStamps, changed);
+        assertEquals(3, merged.size());
+        assertSame(snapshot.getTables().get(0), merged.get(0));
+        assertSame(live.get(1), merged.get(1));
+        assertSame(live.get(2), merged.get(2));
+        assertEquals(2, changed.size());
+    }
+
+    private SQLTable makeTable(String name, int columnCount) throws SQLObjectException {
+        SQLTable t = new SQLTable(null, name, "remark on " + name, "TABLE", true);
+        for (int j = 0; j < columnCount; j++) {
+            t.addColumn(new SQLColumn(t, "column_" + j, Types.INTEGER, 3, 0));
+        }
+        return t;
+    }
+}
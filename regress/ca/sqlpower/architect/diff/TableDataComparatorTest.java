@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.diff;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.diff.TableDataComparator.RowDifference;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.sql.DataSourceCollection;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class TableDataComparatorTest extends TestCase {
+
+    private static final int ROWS = 2000;
+
+    private JDBCDataSource ds;
+    private SQLDatabase db;
+
+    @Override
+    protected void setUp() throws Exception {
+        DataSourceCollection<SPDataSource> plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        ds = plini.getDataSource("regression_test", JDBCDataSource.class);
+        db = new SQLDatabase(ds);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ds.getParentType().putProperty(TableDataComparator.ROW_HASH_EXPRESSION, "");
+        execute("DROP TABLE DATA_COMPARE_SOURCE", true);
+        execute("DROP TABLE DATA_COMPARE_TARGET", true);
+    }
+
+    public void testIdenticalTables() throws Exception {
+        TableDataComparator comparator = createTables("INTEGER", false);
+        comparator.setLeafSize(100);
+        assertEquals(Collections.emptyList(), comparator.compare());
+    }
+
+    public void testDifferencesFoundWithoutHashes() throws Exception {
+        TableDataComparator comparator = createTables("INTEGER", true);
+        comparator.setLeafSize(100);
+        assertDifferences(comparator.compare());
+    }
+
+    public void testDifferencesFoundWithHashes() throws Exception {
+        // not a good hash, but it notices the changes this test makes
+        ds.getParentType().putProperty(TableDataComparator.ROW_HASH_EXPRESSION, "LENGTH({concat})");
+        TableDataComparator comparator = createTables("INTEGER", true);
+        comparator.setLeafSize(100);
+        comparator.setFanout(4);
+        assertDifferences(comparator.compare());
+
+        // only the ranges around the four changed rows should have been read
+        assertTrue("Too many queries: " + comparator.getQueryCount(),
+                comparator.getQueryCount() < ROWS / 20);
+    }
+
+    public void testDifferencesFoundWithStringKey() throws Exception {
+        ds.getParentType().putProperty(TableDataComparator.ROW_HASH_EXPRESSION, "LENGTH({concat})");
+        TableDataComparator comparator = createTables("VARCHAR(20)", true);
+        comparator.setLeafSize(100);
+        assertDifferences(comparator.compare());
+    }
+
+    public void testMaxDifferences() throws Exception {
+        TableDataComparator comparator = createTables("INTEGER", true);
+        comparator.setMaxDifferences(2);
+        assertEquals(2, comparator.compare().size());
+        assertTrue(comparator.isTruncated());
+    }
+
+    /**
+     * A range holding a single value of the first key column must still be
+     * split on the rest of the key, rather than read in one piece.
+     */
+    public void testCompositeKeyWithOneLeadingValue() throws Exception {
+        ds.getParentType().putProperty(TableDataComparator.ROW_HASH_EXPRESSION, "LENGTH({concat})");
+        execute("DROP TABLE DATA_COMPARE_SOURCE", true);
+        execute("DROP TABLE DATA_COMPARE_TARGET", true);
+        for (String name : new String[] { "DATA_COMPARE_SOURCE", "DATA_COMPARE_TARGET" }) {
+            execute("CREATE TABLE " + name + " (GRP INTEGER NOT NULL, ID INTEGER NOT NULL, " +
+                    "NAME VARCHAR(50), PRIMARY KEY (GRP, ID))", false);
+            for (int i = 0; i < ROWS; i++) {
+                execute("INSERT INTO " + name + " VALUES (7, " + i + ", 'name " + i + "')", false);
+            }
+        }
+        execute("DELETE FROM DATA_COMPARE_TARGET WHERE ID = 100", false);
+        execute("UPDATE DATA_COMPARE_TARGET SET NAME = 'changed' WHERE ID = 1500", false);
+
+        TableDataComparator comparator = new TableDataComparator(
+                makeCompositeTable("DATA_COMPARE_SOURCE"), makeCompositeTable("DATA_COMPARE_TARGET"));
+        comparator.setLeafSize(100);
+        comparator.setFanout(4);
+        List<RowDifference> differences = comparator.compare();
+        Map<Object, RowDifference> byId = new HashMap<Object, RowDifference>();
+        for (RowDifference diff : differences) {
+            byId.put(String.valueOf(diff.getKey().get(1)), diff);
+        }
+        assertEquals("Differences: " + differences, 2, byId.size());
+        assertEquals(DiffType.LEFTONLY, byId.get("100").getType());
+        assertEquals(DiffType.MODIFIED, byId.get("1500").getType());
+        assertTrue("The range was not split: " + comparator.getRangeCount(),
+                comparator.getRangeCount() > ROWS / 100);
+    }
+
+    /**
+     * Keys at both ends of the long range make the width of the whole range
+     * overflow a long.
+     */
+    public void testKeysSpanningTheLongRange() throws Exception {
+        execute("DROP TABLE DATA_COMPARE_SOURCE", true);
+        execute("DROP TABLE DATA_COMPARE_TARGET", true);
+        for (String name : new String[] { "DATA_COMPARE_SOURCE", "DATA_COMPARE_TARGET" }) {
+            execute("CREATE TABLE " + name + " (ID BIGINT NOT NULL PRIMARY KEY, " +
+                    "NAME VARCHAR(50), AMOUNT NUMERIC(10,2))", false);
+            for (int i = 0; i < 300; i++) {
+                execute("INSERT INTO " + name + " VALUES (" + (Long.MIN_VALUE + 1 + i) + ", 'low', 1)", false);
+                execute("INSERT INTO " + name + " VALUES (" + (Long.MAX_VALUE - 1 - i) + ", 'high', 1)", false);
+            }
+        }
+        execute("UPDATE DATA_COMPARE_TARGET SET NAME = 'changed' WHERE ID = " + (Long.MAX_VALUE - 10), false);
+
+        TableDataComparator comparator = new TableDataComparator(
+                makeTable("DATA_COMPARE_SOURCE", Types.BIGINT), makeTable("DATA_COMPARE_TARGET", Types.BIGINT));
+        comparator.setLeafSize(100);
+        List<RowDifference> differences = comparator.compare();
+        assertEquals("Differences: " + differences, 1, differences.size());
+        assertEquals(DiffType.MODIFIED, differences.get(0).getType());
+        assertEquals(String.valueOf(Long.MAX_VALUE - 10), String.valueOf(differences.get(0).getKey().get(0)));
+    }
+
+    private void assertDifferences(List<RowDifference> differences) {
+        Map<String, RowDifference> byKey = new HashMap<String, RowDifference>();
+        for (RowDifference diff : differences) {
+            byKey.put(String.valueOf(diff.getKey().get(0)), diff);
+        }
+        assertEquals("Differences: " + differences, 4, byKey.size());
+        assertEquals(DiffType.LEFTONLY, byKey.get(key(100)).getType());
+        assertEquals(DiffType.RIGHTONLY, byKey.get(key(ROWS + 5)).getType());
+        RowDifference modified = byKey.get(key(1500));
+        assertEquals(DiffType.MODIFIED, modified.getType());
+        assertEquals("name 1500", modified.getSourceValues().get(0));
+        assertEquals("changed", modified.getTargetValues().get(0));
+        assertEquals(DiffType.MODIFIED, byKey.get(key(ROWS - 1)).getType());
+    }
+
+    private String key(int i) {
+        return String.valueOf(i);
+    }
+
+    /**
+     * Creates two tables holding the same rows and, if asked, changes a few
+     * rows of the target table.
+     */
+    private TableDataComparator createTables(String keyType, boolean changeTarget) throws Exception {
+        execute("DROP TABLE DATA_COMPARE_SOURCE", true);
+        execute("DROP TABLE DATA_COMPARE_TARGET", true);
+        for (String name : new String[] { "DATA_COMPARE_SOURCE", "DATA_COMPARE_TARGET" }) {
+            execute("CREATE TABLE " + name + " (ID " + keyType + " NOT NULL PRIMARY KEY, " +
+                    "NAME VARCHAR(50), AMOUNT NUMERIC(10,2))", false);
+            fill(name);
+        }
+        if (changeTarget) {
+            execute("DELETE FROM DATA_COMPARE_TARGET WHERE ID = " + literal(keyType, 100), false);
+            execute("UPDATE DATA_COMPARE_TARGET SET NAME = 'changed' WHERE ID = " + literal(keyType, 1500), false);
+            execute("UPDATE DATA_COMPARE_TARGET SET AMOUNT = 12345678.9 WHERE ID = " + literal(keyType, ROWS - 1), false);
+            execute("INSERT INTO DATA_COMPARE_TARGET VALUES (" + literal(keyType, ROWS + 5) + ", 'new', 1)", false);
+        }
+
+        int type = keyType.startsWith("VARCHAR") ? Types.VARCHAR : Types.INTEGER;
+        return new TableDataComparator(makeTable("DATA_COMPARE_SOURCE", type), makeTable("DATA_COMPARE_TARGET", type));
+    }
+
+    private String literal(String keyType, int i) {
+        return keyType.startsWith("VARCHAR") ? "'" + i + "'" : String.valueOf(i);
+    }
+
+    private SQLTable makeTable(String name, int keyType) throws Exception {
+        SQLTable t = new SQLTable(db, name, "", "TABLE", true);
+        db.addChild(t);
+        t.addColumn(new SQLColumn(t, "ID", keyType, 20, 0));
+        t.addColumn(new SQLColumn(t, "NAME", Types.VARCHAR, 50, 0));
+        t.addColumn(new SQLColumn(t, "AMOUNT", Types.NUMERIC, 10, 2));
+        t.addToPK(t.getColumnByName("ID"));
+        return t;
+    }
+
+    private SQLTable makeCompositeTable(String name) throws Exception {
+        SQLTable t = new SQLTable(db, name, "", "TABLE", true);
+        db.addChild(t);
+        t.addColumn(new SQLColumn(t, "GRP", Types.INTEGER, 10, 0));
+        t.addColumn(new SQLColumn(t, "ID", Types.INTEGER, 10, 0));
+        t.addColumn(new SQLColumn(t, "NAME", Types.VARCHAR, 50, 0));
+        t.addToPK(t.getColumnByName("GRP"));
+        t.addToPK(t.getColumnByName("ID"));
+        return t;
+    }
+
+    private void fill(String table) throws Exception {
+        Connection con = db.getConnection();
+        PreparedStatement stmt = null;
+        try {
+            stmt = con.prepareStatement("INSERT INTO " + table + " VALUES (?, ?, ?)");
+            for (int i = 0; i < ROWS; i++) {
+                stmt.setObject(1, Integer.valueOf(i));
+                stmt.setString(2, "name " + i);
+                stmt.setBigDecimal(3, new BigDecimal(i).movePointLeft(2));
+                stmt.executeUpdate();
+            }
+        } finally {
+            if (stmt != null) stmt.close();
+            con.close();
+        }
+    }
+
+    private void execute(String sql, boolean ignoreFailure) throws Exception {
+        Connection con = db.getConnection();
+        Statement stmt = null;
+        try {
+            stmt = con.createStatement();
+            stmt.executeUpdate(sql);
+        } catch (SQLException e) {
+            if (!ignoreFailure) throw e;
+        } finally {
+            if (stmt != null) stmt.close();
+            con.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.diff;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class TableFingerprintCacheTest extends TestCase {
+
+    private TableFingerprintCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        cache = new TableFingerprintCache();
+    }
+
+    public void testSameTablesHaveSameFingerprint() throws Exception {
+        SQLTable t1 = makeTable("table_1", 3);
+        SQLTable t2 = makeTable("table_1", 3);
+        assertEquals(cache.getFingerprint(t1, false), cache.getFingerprint(t2, false));
+    }
+
+    public void testColumnChangeInvalidatesTable() throws Exception {
+        SQLTable t1 = makeTable("table_1", 3);
+        SQLTable t2 = makeTable("table_1", 3);
+        long before = cache.getFingerprint(t1, false);
+
+        t1.getColumn(1).setType(Types.VARCHAR);
+        assertFalse(before == cache.getFingerprint(t1, false));
+        assertFalse(cache.getFingerprint(t1, false) == cache.getFingerprint(t2, false));
+
+        t1.getColumn(1).setType(Types.INTEGER);
+        assertEquals(before, cache.getFingerprint(t1, false));
+    }
+
+    public void testAddingColumnInvalidatesTable() throws Exception {
+        SQLTable t1 = makeTable("table_1", 3);
+        long before = cache.getFingerprint(t1, false);
+        t1.addColumn(new SQLColumn(t1, "column_3", Types.INTEGER, 3, 0));
+        assertFalse(before == cache.getFingerprint(t1, false));
+    }
+
+    public void testPrimaryKeyChangeInvalidatesTable() throws Exception {
+        SQLTable t1 = makeTable("table_1", 3);
+        long before = cache.getFingerprint(t1, false);
+        t1.addToPK(t1.getColumn(0));
+        assertFalse(before == cache.getFingerprint(t1, false));
+    }
+
+    public void testRenamedTableHasDifferentFingerprint() throws Exception {
+        SQLTable t1 = makeTable("table_1", 3);
+        SQLTable t2 = makeTable("table_2", 3);
+        assertFalse(cache.getFingerprint(t1, false) == cache.getFingerprint(t2, false));
+    }
+
+    public void testClear() throws Exception {
+        SQLTable t1 = makeTable("table_1", 3);
+        cache.getFingerprint(t1, false);
+        assertEquals(4, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Skipping matching tables must not change what a comparison reports.
+     */
+    public void testComparisonUnchangedByFingerprints() throws Exception {
+        List<SQLTable> left = new ArrayList<SQLTable>();
+        List<SQLTable> right = new ArrayList<SQLTable>();
+        for (int i = 0; i < 10; i++) {
+            left.add(makeTable("table_" + i, i % 4 + 1));
+            SQLTable t = makeTable("table_" + i, i % 4 + 1);
+            if (i % 3 == 0) {
+                t.getColumn(0).setType(Types.VARCHAR);
+            }
+            right.add(t);
+        }
+
+        CompareSQL full = new CompareSQL(left, right, false);
+        full.setFingerprintCache(null);
+        List<DiffChunk<SQLObject>> expected = full.generateTableDiffs();
+
+        CompareSQL fingerprinted = new CompareSQL(left, right, false);
+        fingerprinted.setFingerprintCache(cache);
+        List<DiffChunk<SQLObject>> actual = fingerprinted.generateTableDiffs();
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i).getData(), actual.get(i).getData());
+            assertEquals(expected.get(i).getType(), actual.get(i).getType());
+        }
+    }
+
+    private SQLTable makeTable(String name, int columnCount) throws SQLObjectException {
+        SQLTable t = new SQLTable(null, name, "remark on this", "TABLE", true);
+        for (int j = 0; j < columnCount; j++) {
+            t.addColumn(new SQLColumn(t, "column_" + j, Types.INTEGER, 3, 0));
+        }
+        return t;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class ParallelProfileSchedulerTest extends TestCase {
+
+    private ParallelProfileScheduler scheduler;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Profiles waiting for a free worker should be started biggest table
+     * first, with tables of unknown size last.
+     */
+    public void testBiggestTablesStartFirst() throws Exception {
+        scheduler = new ParallelProfileScheduler(1, 1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        scheduler.submit(new Callable<TableProfileResult>() {
+            public TableProfileResult call() throws Exception {
+                blocker.await();
+                return null;
+            }
+        }, "ds", 1, 1);
+
+        List<Future<TableProfileResult>> futures = new ArrayList<Future<TableProfileResult>>();
+        futures.add(scheduler.submit(recorder(order, "small"), "ds", 10, 1));
+        futures.add(scheduler.submit(recorder(order, "unknown"), "ds", -1, 50));
+        futures.add(scheduler.submit(recorder(order, "big"), "ds", 1000, 1));
+        futures.add(scheduler.submit(recorder(order, "medium"), "ds", 100, 1));
+
+        blocker.countDown();
+        for (Future<TableProfileResult> f : futures) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(4, order.size());
+        assertEquals("big", order.get(0));
+        assertEquals("medium", order.get(1));
+        assertEquals("small", order.get(2));
+        assertEquals("unknown", order.get(3));
+    }
+
+    /**
+     * No more than the configured number of profiles against one data source
+     * may run at the same time, even when there are idle workers.
+     */
+    public void testPerDataSourceLimit() throws Exception {
+        scheduler = new ParallelProfileScheduler(4, 1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<TableProfileResult>> futures = new ArrayList<Future<TableProfileResult>>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(scheduler.submit(new Callable<TableProfileResult>() {
+                public TableProfileResult call() throws Exception {
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), now));
+                    }
+                    Thread.sleep(20);
+                    running.decrementAndGet();
+                    return null;
+                }
+            }, "ds", i, 1));
+        }
+        for (Future<TableProfileResult> f : futures) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(1, maxRunning.get());
+    }
+
+    /**
+     * Profiles against different data sources should run concurrently.
+     */
+    public void testDifferentDataSourcesRunTogether() throws Exception {
+        scheduler = new ParallelProfileScheduler(2, 1);
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        Callable<TableProfileResult> waitForOther = new Callable<TableProfileResult>() {
+            public TableProfileResult call() throws Exception {
+                bothStarted.countDown();
+                assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+                return null;
+            }
+        };
+        Future<TableProfileResult> f1 = scheduler.submit(waitForOther, "ds1", -1, 1);
+        Future<TableProfileResult> f2 = scheduler.submit(waitForOther, "ds2", -1, 1);
+        f1.get(10, TimeUnit.SECONDS);
+        f2.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A profile cancelled while it is waiting must never be run.
+     */
+    public void testCancelledWhileWaiting() throws Exception {
+        scheduler = new ParallelProfileScheduler(1, 1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        Future<TableProfileResult> first = scheduler.submit(new Callable<TableProfileResult>() {
+            public TableProfileResult call() throws Exception {
+                blocker.await();
+                return null;
+            }
+        }, "ds", -1, 1);
+        Future<TableProfileResult> cancelled = scheduler.submit(recorder(order, "cancelled"), "ds", -1, 1);
+        Future<TableProfileResult> last = scheduler.submit(recorder(order, "last"), "ds", -1, 1);
+        assertTrue(cancelled.cancel(false));
+        blocker.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        last.get(10, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList("last"), order);
+    }
+
+    private Callable<TableProfileResult> recorder(final List<String> order, final String name) {
+        return new Callable<TableProfileResult>() {
+            public TableProfileResult call() throws Exception {
+                order.add(name);
+                return null;
+            }
+        };
+    }
+}
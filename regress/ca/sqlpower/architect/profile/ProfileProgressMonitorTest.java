@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+
+import junit.framework.TestCase;
+
+public class ProfileProgressMonitorTest extends TestCase {
+
+    /**
+     * Counts the calls to {@link Statement#cancel()} on a stub statement.
+     */
+    private static class CancelCounter implements InvocationHandler {
+        int cancelCount = 0;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("cancel")) {
+                cancelCount++;
+            } else if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (method.getName().equals("equals")) {
+                return proxy == args[0];
+            }
+            return null;
+        }
+    }
+
+    private static Statement createStatement(CancelCounter counter) {
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class<?>[] { Statement.class }, counter);
+    }
+
+    public void testCancelCancelsRunningStatements() throws Exception {
+        ProfileProgressMonitor pm = new ProfileProgressMonitor();
+        CancelCounter running = new CancelCounter();
+        CancelCounter finished = new CancelCounter();
+        Statement finishedStmt = createStatement(finished);
+        pm.statementStarted(createStatement(running));
+        pm.statementStarted(finishedStmt);
+        pm.statementFinished(finishedStmt);
+
+        pm.setCancelled(true);
+
+        assertTrue(pm.isCancelled());
+        assertEquals(1, running.cancelCount);
+        assertEquals(0, finished.cancelCount);
+    }
+
+    public void testStatementStartedAfterCancelIsCancelled() throws Exception {
+        ProfileProgressMonitor pm = new ProfileProgressMonitor();
+        pm.setCancelled(true);
+        CancelCounter counter = new CancelCounter();
+        pm.statementStarted(createStatement(counter));
+        assertEquals(1, counter.cancelCount);
+    }
+}
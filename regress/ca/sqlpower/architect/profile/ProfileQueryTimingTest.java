@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.profile.event.ProfileQueryListener;
+import ca.sqlpower.sql.DataSourceCollection;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Checks the query timings recorded by {@link ProfileConnectionPool} and
+ * their totals.
+ */
+public class ProfileQueryTimingTest extends TestCase {
+
+    /**
+     * A stub statement whose queries return the given number of rows, each
+     * holding the same string.
+     */
+    private static class StubStatement implements InvocationHandler {
+        private final int rows;
+        private final String value;
+
+        StubStatement(int rows, String value) {
+            this.rows = rows;
+            this.value = value;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("executeQuery")) {
+                return Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                        new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+                    int row = 0;
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("next")) {
+                            return ++row <= rows;
+                        } else if (method.getName().equals("getObject")) {
+                            return value;
+                        }
+                        return null;
+                    }
+                });
+            }
+            return defaultValue(proxy, method, args);
+        }
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        } else if (method.getName().equals("equals")) {
+            return proxy == args[0];
+        }
+        return null;
+    }
+
+    private SQLTable table;
+    private SQLColumn column;
+    private TableProfileResult tpr;
+    private ProfileConnectionPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        DataSourceCollection<SPDataSource> plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        JDBCDataSource ds = plini.getDataSource("regression_test", JDBCDataSource.class);
+        SQLDatabase db = new SQLDatabase(ds);
+        table = new SQLTable(db, "timed_table", "", "TABLE", true);
+        db.addChild(table);
+        column = new SQLColumn(table, "name", Types.VARCHAR, 50, 0);
+        column.setSourceDataTypeName("VARCHAR");
+        table.addColumn(column);
+        tpr = new TableProfileResult(table, new ProfileSettings());
+        pool = new ProfileConnectionPool(tpr, 0);
+    }
+
+    private Statement createStatement(int rows, String value) {
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class<?>[] { Statement.class }, new StubStatement(rows, value));
+    }
+
+    public void testTimingRecordedWhenResultsClosed() throws Exception {
+        Statement stmt = createStatement(3, "abcd");
+        ResultSet rs = pool.executeQuery(stmt, "SELECT name FROM timed_table", column);
+        while (rs.next()) {
+            assertEquals("abcd", rs.getObject(1));
+        }
+        assertTrue(tpr.getQueryTimings().isEmpty());
+        rs.close();
+
+        List<ProfileQueryTiming> timings = tpr.getQueryTimings();
+        assertEquals(1, timings.size());
+        ProfileQueryTiming timing = timings.get(0);
+        assertSame(table, timing.getTable());
+        assertSame(column, timing.getColumn());
+        assertEquals("SELECT name FROM timed_table", timing.getSql());
+        assertEquals(3, timing.getRowCount());
+        assertEquals(12, timing.getByteCount());
+        assertTrue(timing.getExecutionNanos() >= 0);
+        assertTrue(timing.getFetchNanos() >= 0);
+
+        rs.close();
+        pool.closeStatement(stmt);
+        assertEquals("Closing twice recorded the query twice", 1, tpr.getQueryTimings().size());
+    }
+
+    public void testClosingStatementFinishesQuery() throws Exception {
+        Statement stmt = createStatement(1, "x");
+        pool.executeQuery(stmt, "SELECT 1", null);
+        pool.closeStatement(stmt);
+        assertEquals(1, tpr.getQueryTimings().size());
+        assertNull(tpr.getQueryTimings().get(0).getColumn());
+    }
+
+    public void testNextQueryOnStatementFinishesPreviousOne() throws Exception {
+        Statement stmt = createStatement(1, "x");
+        pool.executeQuery(stmt, "SELECT 1", null);
+        ResultSet rs = pool.executeQuery(stmt, "SELECT 2", null);
+        assertEquals(1, tpr.getQueryTimings().size());
+        assertEquals("SELECT 1", tpr.getQueryTimings().get(0).getSql());
+        rs.close();
+        assertEquals(2, tpr.getQueryTimings().size());
+    }
+
+    public void testListenersAreTold() throws Exception {
+        final List<ProfileQueryTiming> heard = new ArrayList<ProfileQueryTiming>();
+        tpr.addProfileQueryListener(new ProfileQueryListener() {
+            public void queryFinished(TableProfileResult result, ProfileQueryTiming timing) {
+                assertSame(tpr, result);
+                heard.add(timing);
+            }
+        });
+        Statement stmt = createStatement(2, "x");
+        pool.executeQuery(stmt, "SELECT 1", column).close();
+        assertEquals(tpr.getQueryTimings(), heard);
+    }
+
+    public void testUntimedPoolReturnsDriverResults() throws Exception {
+        ProfileConnectionPool untimed = new ProfileConnectionPool(table.getParentDatabase(), 0, null);
+        Statement stmt = createStatement(1, "x");
+        ResultSet rs = untimed.executeQuery(stmt, "SELECT 1", null);
+        assertSame(StubStatement.class, Proxy.getInvocationHandler(rs).getClass().getEnclosingClass());
+        rs.close();
+        assertTrue(tpr.getQueryTimings().isEmpty());
+    }
+
+    public void testStatsByColumnType() throws Exception {
+        List<ProfileQueryTiming> timings = new ArrayList<ProfileQueryTiming>();
+        timings.add(new ProfileQueryTiming(table, null, "SELECT COUNT(*)", 5000000, 1000000, 1, 8));
+        timings.add(new ProfileQueryTiming(table, column, "SELECT MIN(name)", 2000000, 1000000, 1, 4));
+        timings.add(new ProfileQueryTiming(table, column, "SELECT name", -1, 3000000, 10, -1));
+
+        ProfileQueryStats total = ProfileQueryStats.of(timings);
+        assertEquals(3, total.getQueryCount());
+        assertEquals(7000000, total.getExecutionNanos());
+        assertEquals(5000000, total.getFetchNanos());
+        assertEquals(12, total.getRowCount());
+        assertEquals(12, total.getByteCount());
+        assertEquals(1000.0, total.getRowsPerSecond(), 0.001);
+
+        Map<String, ProfileQueryStats> byType = ProfileQueryStats.byColumnType(timings);
+        assertEquals(2, byType.size());
+        assertEquals(1, byType.get(ProfileQueryStats.NO_COLUMN_TYPE).getQueryCount());
+        assertEquals(2, byType.get("VARCHAR").getQueryCount());
+        assertEquals(11, byType.get("VARCHAR").getRowCount());
+    }
+}
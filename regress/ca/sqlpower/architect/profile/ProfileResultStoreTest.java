@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.DataSourceCollection;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ProfileResultStoreTest extends TestCase {
+
+    private SQLTable table;
+    private SQLColumn numberColumn;
+    private SQLColumn dateColumn;
+    private Map<SQLObject, String> saveIds;
+    private Map<String, SQLObject> loadIds;
+    private ProfileSettings settings;
+
+    @Override
+    protected void setUp() throws Exception {
+        DataSourceCollection<SPDataSource> plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        JDBCDataSource ds = plini.getDataSource("regression_test", JDBCDataSource.class);
+        SQLDatabase db = new SQLDatabase(ds);
+        table = new SQLTable(db, "stored_table", "", "TABLE", true);
+        db.addChild(table);
+        numberColumn = new SQLColumn(table, "amount", java.sql.Types.DECIMAL, 10, 2);
+        table.addColumn(numberColumn);
+        dateColumn = new SQLColumn(table, "updated", java.sql.Types.TIMESTAMP, 0, 0);
+        table.addColumn(dateColumn);
+
+        saveIds = new IdentityHashMap<SQLObject, String>();
+        saveIds.put(table, "TAB1");
+        saveIds.put(numberColumn, "COL2");
+        saveIds.put(dateColumn, "COL3");
+        loadIds = new HashMap<String, SQLObject>();
+        for (Map.Entry<SQLObject, String> entry : saveIds.entrySet()) {
+            loadIds.put(entry.getValue(), entry.getKey());
+        }
+        settings = new ProfileSettings();
+    }
+
+    private TableProfileResult makeTableResult() {
+        TableProfileResult tpr = new TableProfileResult(table, settings);
+        tpr.setCreateStartTime(1000);
+        tpr.setCreateEndTime(2500);
+        tpr.setRowCount(42);
+        tpr.setModificationStamp("2008-10-01 12:00:00");
+        tpr.setSamplingRate(0.25);
+        tpr.setSamplingError(3.5);
+
+        ColumnProfileResult amount = new ColumnProfileResult(numberColumn);
+        tpr.addColumnProfileResult(amount);
+        amount.setCreateStartTime(1100);
+        amount.setCreateEndTime(1200);
+        amount.setNullCount(3);
+        amount.setDistinctValueCount(17);
+        amount.setMinLength(1);
+        amount.setMaxLength(8);
+        amount.setAvgLength(4.5);
+        amount.setMinValue(new BigDecimal("-12.34"));
+        amount.setMaxValue(new BigDecimal("98765.43"));
+        amount.setAvgValue(Double.valueOf(301.5));
+        amount.setQuantileSketch("some sketch");
+        amount.setColumnDefinition("amount:" + Types.INTEGER + ":INT");
+        amount.addValueCount(new BigDecimal("1.00"), 10);
+        amount.addValueCount(null, 3);
+        amount.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, 29);
+
+        ColumnProfileResult updated = new ColumnProfileResult(dateColumn);
+        Timestamp ts = new Timestamp(1222862400000L);
+        ts.setNanos(123456789);
+        updated.setMinValue(ts);
+        updated.setMaxValue(ts);
+        updated.setException(new IOException("column went away"));
+        tpr.addColumnProfileResult(updated);
+        return tpr;
+    }
+
+    private List<TableProfileResult> roundTrip(List<TableProfileResult> results, boolean compress) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ProfileResultStore.write(out, results, saveIds, compress);
+        return ProfileResultStore.read(new ByteArrayInputStream(out.toByteArray()), loadIds, settings);
+    }
+
+    private void assertSameResults(TableProfileResult expected, TableProfileResult actual) {
+        assertSame(table, actual.getProfiledObject());
+        assertSame(settings, actual.getSettings());
+        assertEquals(expected.getUUID(), actual.getUUID());
+        assertEquals(expected.getCreateStartTime(), actual.getCreateStartTime());
+        assertEquals(expected.getCreateEndTime(), actual.getCreateEndTime());
+        assertEquals(expected.getRowCount(), actual.getRowCount());
+        assertEquals(expected.getModificationStamp(), actual.getModificationStamp());
+        assertEquals(expected.getSamplingRate(), actual.getSamplingRate());
+        assertEquals(expected.getSamplingError(), actual.getSamplingError());
+        assertEquals(expected.getReusedResultTime(), actual.getReusedResultTime());
+        assertNull(actual.getException());
+
+        List<ColumnProfileResult> expectedColumns = expected.getColumnProfileResults();
+        List<ColumnProfileResult> actualColumns = actual.getColumnProfileResults();
+        assertEquals(expectedColumns.size(), actualColumns.size());
+        for (int i = 0; i < expectedColumns.size(); i++) {
+            ColumnProfileResult e = expectedColumns.get(i);
+            ColumnProfileResult a = actualColumns.get(i);
+            assertSame(e.getProfiledObject(), a.getProfiledObject());
+            assertSame(actual, a.getParent());
+            assertEquals(e.getUUID(), a.getUUID());
+            assertEquals(e.getCreateStartTime(), a.getCreateStartTime());
+            assertEquals(e.getCreateEndTime(), a.getCreateEndTime());
+            assertEquals(e.getNullCount(), a.getNullCount());
+            assertEquals(e.getDistinctValueCount(), a.getDistinctValueCount());
+            assertEquals(e.getMinLength(), a.getMinLength());
+            assertEquals(e.getMaxLength(), a.getMaxLength());
+            assertEquals(e.getAvgLength(), a.getAvgLength());
+            assertEquals(e.getQuantileSketch(), a.getQuantileSketch());
+            assertEquals(e.getColumnDefinition(), a.getColumnDefinition());
+            assertEquals(e.getMinValue(), a.getMinValue());
+            assertEquals(e.getMaxValue(), a.getMaxValue());
+            assertEquals(e.getAvgValue(), a.getAvgValue());
+            if (e.getMinValue() != null) {
+                assertEquals(e.getMinValue().getClass(), a.getMinValue().getClass());
+            }
+            assertEquals(e.getValueCount(), a.getValueCount());
+            for (int j = 0; j < e.getValueCount().size(); j++) {
+                assertEquals(e.getValueCount().get(j).getCount(), a.getValueCount().get(j).getCount());
+                assertEquals(e.getValueCount().get(j).getPercent(), a.getValueCount().get(j).getPercent());
+                assertEquals(e.getValueCount().get(j).isOtherValues(), a.getValueCount().get(j).isOtherValues());
+            }
+        }
+    }
+
+    public void testRoundTripCompressed() throws Exception {
+        TableProfileResult tpr = makeTableResult();
+        List<TableProfileResult> loaded = roundTrip(Collections.singletonList(tpr), true);
+        assertEquals(1, loaded.size());
+        assertSameResults(tpr, loaded.get(0));
+    }
+
+    public void testRoundTripUncompressed() throws Exception {
+        TableProfileResult tpr = makeTableResult();
+        List<TableProfileResult> loaded = roundTrip(Collections.singletonList(tpr), false);
+        assertEquals(1, loaded.size());
+        assertSameResults(tpr, loaded.get(0));
+    }
+
+    public void testTypedValuesKeepTheirTypes() throws Exception {
+        TableProfileResult tpr = makeTableResult();
+        ColumnProfileResult loaded = roundTrip(Collections.singletonList(tpr), true)
+                .get(0).getColumnProfileResults().get(1);
+        Timestamp ts = (Timestamp) loaded.getMinValue();
+        assertEquals(123456789, ts.getNanos());
+        assertEquals(new BigDecimal("1.00"), roundTrip(Collections.singletonList(tpr), true)
+                .get(0).getColumnProfileResults().get(0).getValueCount().get(0).getValue());
+    }
+
+    public void testExceptionIsKept() throws Exception {
+        TableProfileResult tpr = makeTableResult();
+        ColumnProfileResult loaded = roundTrip(Collections.singletonList(tpr), true)
+                .get(0).getColumnProfileResults().get(1);
+        assertNotNull(loaded.getException());
+        assertEquals("java.io.IOException: column went away", loaded.getException().getMessage());
+    }
+
+    public void testObjectsWithoutIdsAreSkipped() throws Exception {
+        saveIds.remove(dateColumn);
+        TableProfileResult tpr = makeTableResult();
+        TableProfileResult loaded = roundTrip(Collections.singletonList(tpr), true).get(0);
+        assertEquals(1, loaded.getColumnProfileResults().size());
+        assertSame(numberColumn, loaded.getColumnProfileResults().get(0).getProfiledObject());
+
+        saveIds.remove(table);
+        assertTrue(roundTrip(Collections.singletonList(tpr), true).isEmpty());
+    }
+
+    public void testRejectsOtherFiles() throws Exception {
+        try {
+            ProfileResultStore.read(new ByteArrayInputStream("<?xml version=\"1.0\"?>".getBytes()), loadIds, settings);
+            fail("Read a store that wasn't one");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testSavedResultsLoadInBackground() throws Exception {
+        final int[] calls = new int[1];
+        final TableProfileResult tpr = makeTableResult();
+        final CountDownLatch release = new CountDownLatch(1);
+        ProfileManagerImpl pm = new ProfileManagerImpl();
+        pm.loadSavedResults(new Callable<List<TableProfileResult>>() {
+            public List<TableProfileResult> call() throws Exception {
+                calls[0]++;
+                release.await();
+                return Collections.singletonList(tpr);
+            }
+        });
+        assertTrue("Getting the results waited for the load", pm.getResults().isEmpty());
+
+        release.countDown();
+        pm.awaitSavedResults();
+        assertEquals(Collections.singletonList(tpr), pm.getResults());
+        pm.awaitSavedResults();
+        assertEquals(Collections.singletonList(tpr), pm.getResults());
+        assertEquals(1, calls[0]);
+        assertSame(pm, tpr.getParent());
+        assertTrue(tpr.getProgressMonitor().isFinished());
+    }
+
+    public void testClearDropsSavedResults() throws Exception {
+        final TableProfileResult tpr = makeTableResult();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ProfileManagerImpl pm = new ProfileManagerImpl();
+        pm.loadSavedResults(new Callable<List<TableProfileResult>>() {
+            public List<TableProfileResult> call() throws Exception {
+                loading.countDown();
+                release.await();
+                return Collections.singletonList(tpr);
+            }
+        });
+        loading.await();
+        pm.clear();
+        release.countDown();
+        pm.awaitSavedResults();
+        assertTrue(pm.getResults().isEmpty());
+    }
+}
@@ -20,6 +20,9 @@ package ca.sqlpower.architect.profile;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import ca.sqlpower.architect.profile.sketch.HyperLogLogTest;
+import ca.sqlpower.architect.profile.sketch.SpaceSavingTest;
+import ca.sqlpower.architect.profile.sketch.TDigestTest;
 
 public class ProfileTests {
 
@@ -30,6 +33,14 @@ public class ProfileTests {
         suite.addTestSuite(TableProfileManagerTest.class);
         suite.addTestSuite(AbstractProfileResultTest.class);
         suite.addTestSuite(TestProfileManager.class);
+        suite.addTestSuite(ParallelProfileSchedulerTest.class);
+        suite.addTestSuite(ProfileProgressMonitorTest.class);
+        suite.addTestSuite(HyperLogLogTest.class);
+        suite.addTestSuite(SpaceSavingTest.class);
+        suite.addTestSuite(TDigestTest.class);
+        suite.addTestSuite(StreamingProfileFormatTest.class);
+        suite.addTestSuite(ProfileResultStoreTest.class);
+        suite.addTestSuite(ProfileQueryTimingTest.class);
         //$JUnit-END$
         return suite;
     }
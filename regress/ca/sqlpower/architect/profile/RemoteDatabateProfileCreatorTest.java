@@ -34,7 +34,10 @@ package ca.sqlpower.architect.profile;
 
 import java.io.File;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.Collection;
 
 import junit.framework.TestCase;
@@ -115,6 +118,14 @@ public class RemoteDatabateProfileCreatorTest extends TestCase {
             rdpc.doProfile(tpr);
             Collection<ColumnProfileResult> cprCollection = tpr.getColumnProfileResult(table.getColumn(0));
             assertEquals(1, cprCollection.size());
+            
+            // the discovered descriptor is kept so the next run doesn't have to discover it
+            String savedDescriptor = dsType.getProperty(ProfileFunctionDescriptor.class.getName() + "_0");
+            assertNotNull(savedDescriptor);
+            ProfileFunctionDescriptor savedPfd = ProfileFunctionDescriptor.parseDescriptorString(savedDescriptor);
+            assertEquals(table.getColumn(0).getSourceDataTypeName(), savedPfd.getArchitectSpecificName());
+            assertTrue(savedPfd.isCountDist());
+            assertNull(dsType.getProperty(ProfileFunctionDescriptor.class.getName() + "_1"));
             for(ColumnProfileResult cpr : cprCollection) {
                 assertEquals(5.0, cpr.getAvgLength());
                 assertEquals(null, cpr.getAvgValue());
@@ -134,6 +145,424 @@ public class RemoteDatabateProfileCreatorTest extends TestCase {
         
     }
 
+    /**
+     * Failures that say nothing about the data type, such as timeouts and
+     * lost connections, must not be saved in a discovered descriptor.
+     */
+    public void testTransientFailures() throws Exception {
+        assertTrue(RemoteDatabaseProfileCreator.isTransientFailure(new SQLTimeoutException("timed out")));
+        assertTrue(RemoteDatabaseProfileCreator.isTransientFailure(new SQLException("lost", "08S01")));
+        assertTrue(RemoteDatabaseProfileCreator.isTransientFailure(new SQLException("timeout", "HYT00")));
+        assertTrue(RemoteDatabaseProfileCreator.isTransientFailure(new SQLException("deadlock", "40001")));
+        assertTrue(RemoteDatabaseProfileCreator.isTransientFailure(
+                new RuntimeException(new SQLException("cancelled", "57014"))));
+        SQLException chained = new SQLException("batch failed", "HY000");
+        chained.setNextException(new SQLException("lost", "08003"));
+        assertTrue(RemoteDatabaseProfileCreator.isTransientFailure(chained));
+
+        assertFalse(RemoteDatabaseProfileCreator.isTransientFailure(new SQLException("no such function", "42883")));
+        assertFalse(RemoteDatabaseProfileCreator.isTransientFailure(new SQLException("no state")));
+        assertFalse(RemoteDatabaseProfileCreator.isTransientFailure(new IllegalArgumentException()));
+    }
+
+    /**
+     * Profiling all columns of a table in one combined query has to give the
+     * same results as profiling them one query at a time.
+     */
+    public void testCombinedColumnQueries() throws Exception {
+        Connection con = null;
+        Statement stmt = null;
+        try {
+            con = ds.createConnection();
+            stmt = con.createStatement();
+            stmt.execute("create table combined_table (name varchar (50), amount integer)");
+            stmt.execute("insert into combined_table (name, amount) values ('hello', 10)");
+            stmt.execute("insert into combined_table (name, amount) values ('hi', 20)");
+            stmt.execute("insert into combined_table (name, amount) values (null, 20)");
+            ProfileSettings settings = new ProfileSettings();
+            settings.setCombiningColumnQueries(true);
+            RemoteDatabaseProfileCreator rdpc = new RemoteDatabaseProfileCreator(settings);
+            SQLDatabase db = new SQLDatabase(ds);
+            SQLTable table = db.getTableByName("combined_table");
+
+            final ArchitectProject project = new ArchitectProject();
+            StubArchitectSession session = new StubArchitectSession() {
+                @Override
+                public ArchitectProject getWorkspace() {
+                    return project;
+                }
+                @Override
+                public void runInForeground(Runnable runner) {
+                    runner.run();
+                }
+            };
+            project.setSession(session);
+            ProfileManager profileManager = new ProfileManagerImpl();
+            project.setProfileManager(profileManager);
+            TableProfileResult tpr = new TableProfileResult(table, settings);
+            profileManager.addChild(tpr, 0);
+            project.getRootObject().addDatabase(db, 0);
+            
+            rdpc.doProfile(tpr);
+            assertEquals(3, tpr.getRowCount());
+            assertEquals(2, tpr.getColumnProfileResults().size());
+            
+            ColumnProfileResult nameResult = tpr.getColumnProfileResults().get(0);
+            assertEquals(null, nameResult.getException());
+            assertEquals("hi", nameResult.getMaxValue());
+            assertEquals("hello", nameResult.getMinValue());
+            assertEquals(2, nameResult.getDistinctValueCount());
+            assertEquals(5, nameResult.getMaxLength());
+            assertEquals(2, nameResult.getMinLength());
+            assertEquals(1, nameResult.getNullCount());
+            
+            ColumnProfileResult amountResult = tpr.getColumnProfileResults().get(1);
+            assertEquals(null, amountResult.getException());
+            assertEquals(2, amountResult.getDistinctValueCount());
+            assertEquals(0, amountResult.getNullCount());
+            assertEquals(20, ((Number) amountResult.getMaxValue()).intValue());
+            assertEquals(10, ((Number) amountResult.getMinValue()).intValue());
+            assertEquals(Integer.valueOf(20), amountResult.getValueCount().get(0).getValue());
+            assertEquals(2, amountResult.getValueCount().get(0).getCount());
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    /**
+     * Profiling the columns of a table on several connections at once has to
+     * give the same results, in column order, as profiling them one at a time.
+     */
+    public void testParallelColumnProfiles() throws Exception {
+        Connection con = null;
+        Statement stmt = null;
+        try {
+            con = ds.createConnection();
+            stmt = con.createStatement();
+            stmt.execute("create table parallel_table (name varchar (50), amount integer, code varchar (10))");
+            stmt.execute("insert into parallel_table (name, amount, code) values ('hello', 10, 'a')");
+            stmt.execute("insert into parallel_table (name, amount, code) values ('hi', 20, 'b')");
+            stmt.execute("insert into parallel_table (name, amount, code) values (null, 20, null)");
+            ProfileSettings settings = new ProfileSettings();
+            settings.setColumnProfileThreadCount(3);
+            RemoteDatabaseProfileCreator rdpc = new RemoteDatabaseProfileCreator(settings);
+            SQLDatabase db = new SQLDatabase(ds);
+            SQLTable table = db.getTableByName("parallel_table");
+
+            final ArchitectProject project = new ArchitectProject();
+            StubArchitectSession session = new StubArchitectSession() {
+                @Override
+                public ArchitectProject getWorkspace() {
+                    return project;
+                }
+                @Override
+                public void runInForeground(Runnable runner) {
+                    runner.run();
+                }
+            };
+            project.setSession(session);
+            ProfileManager profileManager = new ProfileManagerImpl();
+            project.setProfileManager(profileManager);
+            TableProfileResult tpr = new TableProfileResult(table, settings);
+            profileManager.addChild(tpr, 0);
+            project.getRootObject().addDatabase(db, 0);
+            
+            rdpc.doProfile(tpr);
+            assertEquals(3, tpr.getRowCount());
+            assertEquals(3, tpr.getColumnProfileResults().size());
+            for (int i = 0; i < 3; i++) {
+                ColumnProfileResult cpr = tpr.getColumnProfileResults().get(i);
+                assertSame(table.getColumns().get(i), cpr.getProfiledObject());
+                assertEquals(null, cpr.getException());
+            }
+            
+            ColumnProfileResult nameResult = tpr.getColumnProfileResults().get(0);
+            assertEquals("hi", nameResult.getMaxValue());
+            assertEquals(2, nameResult.getDistinctValueCount());
+            assertEquals(1, nameResult.getNullCount());
+            
+            ColumnProfileResult amountResult = tpr.getColumnProfileResults().get(1);
+            assertEquals(2, amountResult.getDistinctValueCount());
+            assertEquals(20, ((Number) amountResult.getMaxValue()).intValue());
+            
+            ColumnProfileResult codeResult = tpr.getColumnProfileResults().get(2);
+            assertEquals("a", codeResult.getMinValue());
+            assertEquals(1, codeResult.getNullCount());
+
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    /**
+     * The top N query is limited on the database side, so only the requested
+     * number of values come back and the rest are counted as other values.
+     */
+    public void testTopNIsLimited() throws Exception {
+        Connection con = null;
+        Statement stmt = null;
+        try {
+            con = ds.createConnection();
+            stmt = con.createStatement();
+            stmt.execute("create table top_n_table (col1 integer)");
+            for (int i = 0; i < 10; i++) {
+                stmt.execute("insert into top_n_table (col1) values (" + (i % 4) + ")");
+            }
+            ProfileSettings settings = new ProfileSettings();
+            settings.setTopNCount(1);
+            RemoteDatabaseProfileCreator rdpc = new RemoteDatabaseProfileCreator(settings);
+            SQLDatabase db = new SQLDatabase(ds);
+            SQLTable table = db.getTableByName("top_n_table");
+
+            final ArchitectProject project = new ArchitectProject();
+            StubArchitectSession session = new StubArchitectSession() {
+                @Override
+                public ArchitectProject getWorkspace() {
+                    return project;
+                }
+                @Override
+                public void runInForeground(Runnable runner) {
+                    runner.run();
+                }
+            };
+            project.setSession(session);
+            ProfileManager profileManager = new ProfileManagerImpl();
+            project.setProfileManager(profileManager);
+            TableProfileResult tpr = new TableProfileResult(table, settings);
+            profileManager.addChild(tpr, 0);
+            project.getRootObject().addDatabase(db, 0);
+            
+            rdpc.doProfile(tpr);
+            ColumnProfileResult cpr = tpr.getColumnProfileResults().get(0);
+            assertEquals(null, cpr.getException());
+            assertEquals(2, cpr.getValueCount().size());
+            assertEquals(3, cpr.getValueCount().get(0).getCount());
+            assertTrue(cpr.getValueCount().get(1).isOtherValues());
+            assertEquals(7, cpr.getValueCount().get(1).getCount());
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    /**
+     * An incremental profile of a table that has not changed since its last
+     * profile should copy the earlier column profiles, and a table that has
+     * changed should be profiled again.
+     */
+    public void testIncrementalProfileSkipsUnchangedTable() throws Exception {
+        Connection con = null;
+        Statement stmt = null;
+        try {
+            con = ds.createConnection();
+            stmt = con.createStatement();
+            stmt.execute("create table incremental_table (col1 varchar (50))");
+            stmt.execute("insert into incremental_table (col1) values ('hello')");
+            stmt.execute("insert into incremental_table (col1) values ('hi')");
+            ProfileSettings settings = new ProfileSettings();
+            RemoteDatabaseProfileCreator rdpc = new RemoteDatabaseProfileCreator(settings);
+            SQLDatabase db = new SQLDatabase(ds);
+            SQLTable table = db.getTableByName("incremental_table");
+
+            final ArchitectProject project = new ArchitectProject();
+            StubArchitectSession session = new StubArchitectSession() {
+                @Override
+                public ArchitectProject getWorkspace() {
+                    return project;
+                }
+                @Override
+                public void runInForeground(Runnable runner) {
+                    runner.run();
+                }
+            };
+            project.setSession(session);
+            ProfileManager profileManager = new ProfileManagerImpl();
+            project.setProfileManager(profileManager);
+            project.getRootObject().addDatabase(db, 0);
+            
+            TableProfileResult first = new TableProfileResult(table, settings);
+            profileManager.addChild(first, 0);
+            new IncrementalProfileCreator(rdpc, null, settings).doProfile(first);
+            assertFalse(first.isReused());
+            assertEquals(2, first.getRowCount());
+            
+            TableProfileResult second = new TableProfileResult(table, settings);
+            profileManager.addChild(second, 1);
+            new IncrementalProfileCreator(rdpc, new TableProfileResult(first, table), settings).doProfile(second);
+            assertTrue(second.isReused());
+            assertEquals(first.getCreateStartTime(), second.getReusedResultTime());
+            assertEquals(2, second.getRowCount());
+            ColumnProfileResult cpr = second.getColumnProfileResults().get(0);
+            assertEquals(2, cpr.getDistinctValueCount());
+            assertEquals("hello", cpr.getMinValue());
+            assertEquals("hi", cpr.getMaxValue());
+            
+            stmt.execute("insert into incremental_table (col1) values ('howdy')");
+            TableProfileResult third = new TableProfileResult(table, settings);
+            profileManager.addChild(third, 2);
+            new IncrementalProfileCreator(rdpc, new TableProfileResult(second, table), settings).doProfile(third);
+            assertFalse(third.isReused());
+            assertEquals(3, third.getRowCount());
+            assertEquals(3, third.getColumnProfileResults().get(0).getDistinctValueCount());
+            
+            TableProfileResult retypedPrior = new TableProfileResult(third, table);
+            retypedPrior.getColumnProfileResults().get(0).setColumnDefinition(
+                    table.getColumn(0).getName() + ":" + Types.INTEGER + ":INTEGER");
+            TableProfileResult fourth = new TableProfileResult(table, settings);
+            profileManager.addChild(fourth, 3);
+            new IncrementalProfileCreator(rdpc, retypedPrior, settings).doProfile(fourth);
+            assertFalse(fourth.isReused());
+            assertEquals(ColumnProfileResult.describeColumn(table.getColumn(0)),
+                    fourth.getColumnProfileResults().get(0).getColumnDefinition());
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    /**
+     * A sampled profile should scale its counts up from the sample and record
+     * the sampling rate. HSQLDB has no sampling clause, so this uses a
+     * derived table that deterministically keeps the requested percentage of
+     * the rows.
+     */
+    public void testSampledProfileIsScaled() throws Exception {
+        Connection con = null;
+        Statement stmt = null;
+        try {
+            con = ds.createConnection();
+            stmt = con.createStatement();
+            stmt.execute("create table sampled_table (id integer, col1 varchar (50))");
+            for (int i = 1; i <= 100; i++) {
+                String value = (i % 4 == 0) ? "null" : "'value " + (i % 2) + "'";
+                stmt.execute("insert into sampled_table (id, col1) values (" + i + ", " + value + ")");
+            }
+            ds.getParentType().putProperty(
+                    RemoteDatabaseProfileCreator.propName(RemoteDatabaseProfileCreator.TableSampleSQLFunction.class),
+                    "(SELECT * FROM : WHERE id <= :) sample_rows");
+            ProfileSettings settings = new ProfileSettings();
+            settings.setSamplePercent(50);
+            RemoteSamplingProfileCreator creator = new RemoteSamplingProfileCreator(settings);
+            SQLDatabase db = new SQLDatabase(ds);
+            SQLTable table = db.getTableByName("sampled_table");
+
+            final ArchitectProject project = new ArchitectProject();
+            StubArchitectSession session = new StubArchitectSession() {
+                @Override
+                public ArchitectProject getWorkspace() {
+                    return project;
+                }
+                @Override
+                public void runInForeground(Runnable runner) {
+                    runner.run();
+                }
+            };
+            project.setSession(session);
+            ProfileManager profileManager = new ProfileManagerImpl();
+            project.setProfileManager(profileManager);
+            TableProfileResult tpr = new TableProfileResult(table, settings);
+            profileManager.addChild(tpr, 0);
+            project.getRootObject().addDatabase(db, 0);
+            
+            creator.doProfile(tpr);
+            assertNull(tpr.getException());
+            assertTrue(tpr.isSampled());
+            assertEquals(0.5, tpr.getSamplingRate());
+            assertTrue(tpr.getSamplingError() > 0);
+            assertEquals(100, tpr.getRowCount());
+            
+            ColumnProfileResult cpr = tpr.getColumnProfileResults().get(1);
+            assertNull(cpr.getException());
+            assertEquals(24, cpr.getNullCount());
+            assertEquals(2, cpr.getDistinctValueCount());
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    /**
+     * Reusing a sampled profile for an unchanged table must keep its sampling
+     * rate and error, since the reused counts are still estimates.
+     */
+    public void testIncrementalProfileKeepsSampling() throws Exception {
+        Connection con = null;
+        Statement stmt = null;
+        try {
+            con = ds.createConnection();
+            stmt = con.createStatement();
+            stmt.execute("create table sampled_reuse_table (id integer, col1 varchar (50))");
+            for (int i = 1; i <= 100; i++) {
+                stmt.execute("insert into sampled_reuse_table (id, col1) values (" + i + ", 'value " + (i % 2) + "')");
+            }
+            ds.getParentType().putProperty(
+                    RemoteDatabaseProfileCreator.propName(RemoteDatabaseProfileCreator.TableSampleSQLFunction.class),
+                    "(SELECT * FROM : WHERE id <= :) sample_rows");
+            ProfileSettings settings = new ProfileSettings();
+            settings.setSamplePercent(50);
+            RemoteSamplingProfileCreator creator = new RemoteSamplingProfileCreator(settings);
+            SQLDatabase db = new SQLDatabase(ds);
+            SQLTable table = db.getTableByName("sampled_reuse_table");
+
+            final ArchitectProject project = new ArchitectProject();
+            StubArchitectSession session = new StubArchitectSession() {
+                @Override
+                public ArchitectProject getWorkspace() {
+                    return project;
+                }
+                @Override
+                public void runInForeground(Runnable runner) {
+                    runner.run();
+                }
+            };
+            project.setSession(session);
+            ProfileManager profileManager = new ProfileManagerImpl();
+            project.setProfileManager(profileManager);
+            project.getRootObject().addDatabase(db, 0);
+            
+            TableProfileResult first = new TableProfileResult(table, settings);
+            profileManager.addChild(first, 0);
+            new IncrementalProfileCreator(creator, null, settings).doProfile(first);
+            assertTrue(first.isSampled());
+            
+            TableProfileResult second = new TableProfileResult(table, settings);
+            profileManager.addChild(second, 1);
+            new IncrementalProfileCreator(creator, new TableProfileResult(first, table), settings).doProfile(second);
+            assertTrue(second.isReused());
+            assertTrue(second.isSampled());
+            assertEquals(first.getSamplingRate(), second.getSamplingRate());
+            assertEquals(first.getSamplingError(), second.getSamplingError());
+            assertSame(table.getColumn(1), second.getColumnProfileResults().get(1).getProfiledObject());
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    public void testRowLimitTemplates() throws Exception {
+        RemoteDatabaseProfileCreator rdpc = new RemoteDatabaseProfileCreator(new ProfileSettings());
+        String query = "SELECT A, COUNT(*) AS COUNT1 FROM T GROUP BY A ORDER BY COUNT1 DESC";
+        assertEquals("SELECT TOP 10 A, COUNT(*) AS COUNT1 FROM T GROUP BY A ORDER BY COUNT1 DESC",
+                rdpc.new RowLimitSQLFunction("SELECT TOP {n} {query-without-select}")
+                .getRowLimitSQLFunction(query, 10));
+        assertEquals(query + " FETCH FIRST 10 ROWS ONLY",
+                rdpc.new RowLimitSQLFunction("{query} FETCH FIRST {n} ROWS ONLY")
+                .getRowLimitSQLFunction(query, 10));
+        assertEquals("SELECT * FROM (" + query + ") WHERE ROWNUM <= 10",
+                rdpc.new RowLimitSQLFunction("SELECT * FROM ({query}) WHERE ROWNUM <= {n}")
+                .getRowLimitSQLFunction(query, 10));
+        assertEquals(query + " LIMIT 10",
+                rdpc.new RowLimitSQLFunction("", " LIMIT ", "").getRowLimitSQLFunction(query, 10));
+    }
+
     /**
      * Removes all ProfileFunctionDescriptor entries from the given database type.
      */
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.profile.output.ProfileCSVFormat;
+import ca.sqlpower.architect.profile.output.ProfileFormat;
+import ca.sqlpower.architect.profile.output.ProfileHTMLFormat;
+import ca.sqlpower.architect.profile.output.ProfilePDFFormat;
+import ca.sqlpower.architect.profile.sketch.TDigest;
+import ca.sqlpower.sql.DataSourceCollection;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Checks that the streaming path of each profile format writes large reports
+ * without holding on to the results it has already written.
+ */
+public class StreamingProfileFormatTest extends TestCase {
+
+    /**
+     * The number of table results in the generated reports.
+     */
+    private static final int TABLE_COUNT = 500;
+
+    /**
+     * The number of columns in each table.
+     */
+    private static final int COLUMN_COUNT = 20;
+
+    /**
+     * An early table index at which some of the report must already have
+     * been written.
+     */
+    private static final int EARLY_TABLE = 50;
+
+    /**
+     * The share of the whole report that must have been written by the time
+     * the last table is read. A formatter that held on to the tables' sections
+     * until the end would have written almost nothing by then.
+     */
+    private static final double MIN_WRITTEN_BEFORE_LAST_TABLE = 0.9;
+
+    /**
+     * An output stream that counts and discards what is written to it.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Makes up the results of a report one table at a time as they are
+     * asked for, and records how much had been written at the early and last
+     * tables.
+     */
+    private class GeneratedResults implements Iterator<ProfileResult> {
+        private final CountingOutputStream out;
+        private int tableIndex = -1;
+        private Iterator<ColumnProfileResult> columns = null;
+        long bytesWrittenAtEarlyTable;
+        long bytesWrittenAtFinalTable;
+
+        GeneratedResults(CountingOutputStream out) {
+            this.out = out;
+        }
+
+        public boolean hasNext() {
+            return (columns != null && columns.hasNext()) || tableIndex < TABLE_COUNT - 1;
+        }
+
+        public ProfileResult next() {
+            if (columns != null && columns.hasNext()) {
+                return columns.next();
+            }
+            if (!hasNext()) throw new NoSuchElementException();
+            tableIndex++;
+            if (tableIndex == EARLY_TABLE) {
+                bytesWrittenAtEarlyTable = out.count;
+            } else if (tableIndex == TABLE_COUNT - 1) {
+                bytesWrittenAtFinalTable = out.count;
+            }
+            TableProfileResult tpr = makeTableResult(tableIndex);
+            columns = tpr.getColumnProfileResults().iterator();
+            return tpr;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private SQLTable table;
+
+    @Override
+    protected void setUp() throws Exception {
+        DataSourceCollection<SPDataSource> plini = new PlDotIni();
+        plini.read(new File("pl.regression.ini"));
+        JDBCDataSource ds = plini.getDataSource("regression_test", JDBCDataSource.class);
+        SQLDatabase db = new SQLDatabase(ds);
+        table = new SQLTable(db, "streamed_table", "", "TABLE", true);
+        db.addChild(table);
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            table.addColumn(new SQLColumn(table, "column_" + i, java.sql.Types.VARCHAR, 50, 0));
+        }
+    }
+
+    private TableProfileResult makeTableResult(int index) {
+        TableProfileResult tpr = new TableProfileResult(table, new ProfileSettings());
+        tpr.setCreateStartTime(index);
+        tpr.setCreateEndTime(index + 1);
+        tpr.setRowCount(1000);
+        for (SQLColumn col : table.getColumns()) {
+            ColumnProfileResult cpr = new ColumnProfileResult(col);
+            tpr.addColumnProfileResult(cpr);
+            cpr.setNullCount(index % 10);
+            cpr.setDistinctValueCount(100);
+            cpr.setMinValue("a value from table " + index);
+            cpr.setMaxValue("the last value in " + col.getName());
+            cpr.setAvgLength(12.5);
+            TDigest digest = new TDigest();
+            for (int i = 0; i < 100; i++) {
+                digest.add(i);
+            }
+            cpr.setQuantileDigest(digest);
+            for (int i = 0; i < 10; i++) {
+                cpr.addValueCount("top value " + i, 100 - i);
+            }
+        }
+        return tpr;
+    }
+
+    private void assertWritesAsItReads(ProfileFormat format) throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        GeneratedResults results = new GeneratedResults(out);
+        format.format(out, results);
+        assertFalse(results.hasNext());
+        assertTrue("Nothing was written before table " + EARLY_TABLE + " was read",
+                results.bytesWrittenAtEarlyTable > 0);
+        assertTrue("Only " + results.bytesWrittenAtFinalTable + " of " + out.count +
+                " bytes were written before the last table was read",
+                results.bytesWrittenAtFinalTable >= out.count * MIN_WRITTEN_BEFORE_LAST_TABLE);
+    }
+
+    public void testPDFWritesAsItReads() throws Exception {
+        assertWritesAsItReads(new ProfilePDFFormat());
+    }
+
+    public void testHTMLWritesAsItReads() throws Exception {
+        assertWritesAsItReads(new ProfileHTMLFormat("utf-8"));
+    }
+
+    public void testCSVWritesAsItReads() throws Exception {
+        assertWritesAsItReads(new ProfileCSVFormat());
+    }
+
+    /**
+     * The streaming and list paths of the CSV format should write the same
+     * report.
+     */
+    public void testCSVStreamMatchesList() throws Exception {
+        List<ProfileResult> profileResults = new ArrayList<ProfileResult>();
+        for (int i = 0; i < 3; i++) {
+            TableProfileResult tpr = makeTableResult(i);
+            profileResults.add(tpr);
+            profileResults.addAll(tpr.getColumnProfileResults());
+        }
+        ByteArrayOutputStream listOut = new ByteArrayOutputStream();
+        new ProfileCSVFormat().format(listOut, profileResults);
+        ByteArrayOutputStream streamOut = new ByteArrayOutputStream();
+        new ProfileCSVFormat().format(streamOut, profileResults.iterator());
+        assertEquals(listOut.toString(), streamOut.toString());
+    }
+}
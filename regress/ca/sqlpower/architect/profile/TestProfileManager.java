@@ -98,6 +98,20 @@ public class TestProfileManager extends TestProfileBase {
         assertEquals("Added event not fired when reprofiled!", 2, listener.getAddedEventCount());
     }
     
+    /**
+     * The queries are timed on a background copy of the result, so this makes
+     * sure the timings end up on the result the manager hands back.
+     */
+    public void testQueryTimingsReachProfiledResult() throws Exception {
+        TableProfileResult tpr = pm.createProfile(t1);
+        List<ProfileQueryTiming> timings = tpr.getQueryTimings();
+        assertFalse("No query timings on the profiled result", timings.isEmpty());
+        for (ProfileQueryTiming timing : timings) {
+            assertEquals(t1.getName(), timing.getTable().getName());
+            assertNotNull(timing.getSql());
+        }
+    }
+    
     public void testProfileRemovedEventFiresWhenProfiledRemoved() throws Exception {
         CountingProfileChangeListener listener = new CountingProfileChangeListener();
         pm.addProfileChangeListener(listener);
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile.sketch;
+
+import junit.framework.TestCase;
+
+public class HyperLogLogTest extends TestCase {
+
+    public void testEmpty() {
+        assertEquals(0, new HyperLogLog().cardinality());
+    }
+
+    /**
+     * Offering the same values many times must not change the estimate, and
+     * nulls must not be counted at all.
+     */
+    public void testDuplicatesAndNulls() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int repeat = 0; repeat < 50; repeat++) {
+            for (int i = 0; i < 100; i++) {
+                hll.offer("value " + i);
+            }
+            hll.offer(null);
+        }
+        assertEquals(100, hll.cardinality());
+    }
+
+    /**
+     * Small cardinalities use linear counting and should be close to exact.
+     */
+    public void testSmallCardinalityIsNearlyExact() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            hll.offer(Integer.valueOf(i));
+        }
+        long estimate = hll.cardinality();
+        assertTrue("Estimate was " + estimate, Math.abs(estimate - 1000) <= 10);
+    }
+
+    public void testLargeCardinalityWithinErrorBound() {
+        HyperLogLog hll = new HyperLogLog();
+        int n = 500000;
+        for (int i = 0; i < n; i++) {
+            hll.offer("row-" + i);
+        }
+        double error = Math.abs(hll.cardinality() - n) / (double) n;
+        assertTrue("Relative error was " + error, error < 0.03);
+    }
+
+    public void testMerge() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        HyperLogLog both = new HyperLogLog();
+        for (int i = 0; i < 20000; i++) {
+            a.offer(Long.valueOf(i));
+            both.offer(Long.valueOf(i));
+        }
+        for (int i = 10000; i < 30000; i++) {
+            b.offer(Long.valueOf(i));
+            both.offer(Long.valueOf(i));
+        }
+        a.merge(b);
+        assertEquals(both.cardinality(), a.cardinality());
+    }
+
+    public void testMergeDifferentPrecisionFails() {
+        try {
+            new HyperLogLog(10).merge(new HyperLogLog(12));
+            fail("Sketches of different precision should not merge");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
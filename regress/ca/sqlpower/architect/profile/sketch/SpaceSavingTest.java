@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile.sketch;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SpaceSavingTest extends TestCase {
+
+    /**
+     * With no more distinct items than the capacity, every count is exact.
+     */
+    public void testExactWithinCapacity() {
+        SpaceSaving<String> sketch = new SpaceSaving<String>(10);
+        for (int i = 0; i < 5; i++) sketch.offer("a");
+        for (int i = 0; i < 3; i++) sketch.offer("b");
+        sketch.offer(null);
+        sketch.offer(null);
+        sketch.offer("c");
+
+        List<SpaceSaving.Counter<String>> top = sketch.getTop(3);
+        assertEquals(3, top.size());
+        assertEquals("a", top.get(0).getItem());
+        assertEquals(5, top.get(0).getCount());
+        assertEquals("b", top.get(1).getItem());
+        assertEquals(3, top.get(1).getCount());
+        assertNull(top.get(2).getItem());
+        assertEquals(2, top.get(2).getCount());
+        assertEquals(0, top.get(2).getError());
+        assertEquals(11, sketch.getOfferedCount());
+    }
+
+    /**
+     * Frequent items must survive a long tail of distinct items that is much
+     * larger than the capacity, and their counts may only be overstated by
+     * the reported error.
+     */
+    public void testFrequentItemsSurviveLongTail() {
+        SpaceSaving<Integer> sketch = new SpaceSaving<Integer>(100);
+        int tail = 100000;
+        for (int i = 0; i < tail; i++) {
+            sketch.offer(Integer.valueOf(-1));
+            if (i % 2 == 0) sketch.offer(Integer.valueOf(-2));
+            sketch.offer(Integer.valueOf(i));
+        }
+        List<SpaceSaving.Counter<Integer>> top = sketch.getTop(2);
+        assertEquals(Integer.valueOf(-1), top.get(0).getItem());
+        assertEquals(Integer.valueOf(-2), top.get(1).getItem());
+        for (SpaceSaving.Counter<Integer> c : top) {
+            long trueCount = c.getItem().intValue() == -1 ? tail : tail / 2;
+            assertTrue(c.getCount() >= trueCount);
+            assertTrue(c.getCount() - c.getError() <= trueCount);
+        }
+    }
+
+    public void testGetTopLimitsSize() {
+        SpaceSaving<String> sketch = new SpaceSaving<String>(10);
+        sketch.offer("x");
+        assertEquals(1, sketch.getTop(5).size());
+        assertEquals(0, sketch.getTop(0).size());
+    }
+}
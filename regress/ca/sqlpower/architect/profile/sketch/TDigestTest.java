@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile.sketch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TDigestTest extends TestCase {
+
+    public void testEmpty() {
+        TDigest digest = new TDigest();
+        assertEquals(0, digest.getCount());
+        assertTrue(Double.isNaN(digest.quantile(0.5)));
+        assertEquals(0, digest.histogram(4)[0]);
+    }
+
+    /**
+     * With only a few values every centroid holds a single value, so the
+     * extremes and the median are exact.
+     */
+    public void testSmallInputIsExact() {
+        TDigest digest = new TDigest();
+        for (int i = 9; i >= 1; i--) {
+            digest.add(i);
+        }
+        assertEquals(9, digest.getCount());
+        assertEquals(1.0, digest.quantile(0), 0);
+        assertEquals(9.0, digest.quantile(1), 0);
+        assertEquals(5.0, digest.quantile(0.5), 0);
+        assertEquals(0.0, digest.cdf(0), 0);
+        assertEquals(1.0, digest.cdf(9), 0);
+    }
+
+    /**
+     * Quantiles of a large shuffled stream should be within a fraction of a
+     * percent of their true rank while keeping a bounded number of centroids.
+     */
+    public void testQuantilesWithinErrorBound() {
+        int n = 200000;
+        TDigest digest = new TDigest();
+        for (double value : shuffledRange(n, 1)) {
+            digest.add(value);
+        }
+        assertTrue("Centroids: " + digest.getCentroidCount(), digest.getCentroidCount() <= 200);
+        double[] qs = { 0.001, 0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99, 0.999 };
+        for (double q : qs) {
+            double estimate = digest.quantile(q);
+            double rankError = Math.abs(estimate / n - q);
+            assertTrue("Rank error for " + q + " was " + rankError, rankError < 0.005);
+        }
+    }
+
+    /**
+     * Digests of two parts of a data set merge into one that estimates the
+     * quantiles of the whole.
+     */
+    public void testMerge() {
+        int n = 100000;
+        double[] values = shuffledRange(n, 2);
+        TDigest a = new TDigest();
+        TDigest b = new TDigest();
+        for (int i = 0; i < n; i++) {
+            if (i % 2 == 0) {
+                a.add(values[i]);
+            } else {
+                b.add(values[i]);
+            }
+        }
+        a.merge(b);
+        assertEquals(n, a.getCount());
+        assertEquals(0.0, a.getMin(), 0);
+        assertEquals(n - 1, a.getMax(), 0);
+        assertEquals(0.5, a.quantile(0.5) / n, 0.005);
+        assertEquals(0.9, a.cdf(n * 0.9), 0.005);
+    }
+
+    public void testEncodeDecode() {
+        TDigest digest = new TDigest(50);
+        for (double value : shuffledRange(10000, 3)) {
+            digest.add(value);
+        }
+        TDigest decoded = TDigest.decode(digest.encode());
+        assertEquals(digest.getCompression(), decoded.getCompression(), 0);
+        assertEquals(digest.getCount(), decoded.getCount());
+        assertEquals(digest.getMin(), decoded.getMin(), 0);
+        assertEquals(digest.getMax(), decoded.getMax(), 0);
+        assertEquals(digest.encode(), decoded.encode());
+        for (double q = 0; q <= 1; q += 0.1) {
+            assertEquals(digest.quantile(q), decoded.quantile(q), 0);
+        }
+    }
+
+    /**
+     * Reading a digest whose last values are still buffered must not merge
+     * them, so several threads can read it at once and all see the same
+     * estimates as a copy that has merged them.
+     */
+    public void testReadingDoesNotChangeDigest() throws Exception {
+        final TDigest digest = new TDigest();
+        for (double value : shuffledRange(1050, 5)) {
+            digest.add(value);
+        }
+        final TDigest merged = new TDigest(digest);
+        final String encoded = merged.encode();
+        assertEquals(encoded, digest.encode());
+        assertEquals(merged.getCentroidCount(), digest.getCentroidCount());
+
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            assertEquals(merged.quantile(0.3), digest.quantile(0.3), 0);
+                            assertEquals(merged.cdf(500), digest.cdf(500), 0);
+                            assertEquals(encoded, digest.encode());
+                        }
+                    } catch (Throwable ex) {
+                        failures.add(ex);
+                    }
+                }
+            };
+            readers[t].start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(failures.toString(), 0, failures.size());
+    }
+
+    public void testHistogram() {
+        TDigest digest = new TDigest();
+        for (double value : shuffledRange(10000, 4)) {
+            digest.add(value);
+        }
+        long[] counts = digest.histogram(10);
+        long total = 0;
+        for (long count : counts) {
+            assertEquals(1000, count, 20);
+            total += count;
+        }
+        assertEquals(10000, total);
+    }
+
+    private static double[] shuffledRange(int n, long seed) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+        return values;
+    }
+}
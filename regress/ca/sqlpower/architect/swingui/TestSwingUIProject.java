@@ -53,6 +53,7 @@ import ca.sqlpower.architect.olap.MondrianModel;
 import ca.sqlpower.architect.olap.OLAPSession;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.profile.ProfileSettings;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeModel;
 import ca.sqlpower.object.SPObject;
@@ -1191,6 +1192,39 @@ public class TestSwingUIProject extends ArchitectTestCase {
         assertEquals(5, cpr.getMinLength());
         assertEquals(6, cpr.getMaxLength());
     }
+
+    public void testSaveAndLoadCoversProfileSettings() throws Exception {
+        ProfileSettings settings = session.getProfileManager().getDefaultProfileSettings();
+        settings.setTopNCount(7);
+        settings.setParallelProfiling(!settings.isParallelProfiling());
+        settings.setProfileThreadCount(3);
+        settings.setMaxProfilesPerDataSource(2);
+        settings.setIncrementalProfiling(!settings.isIncrementalProfiling());
+        settings.setQueryTimeout(45);
+        settings.setSamplePercent(12.5);
+        settings.setColumnProfileThreadCount(5);
+
+        File tmp = File.createTempFile("test", ".architect");
+        if (deleteOnExit) {
+            tmp.deleteOnExit();
+        }
+        PrintWriter out = new PrintWriter(tmp, ENCODING);
+        project.save(out, ENCODING);
+
+        ArchitectSwingSession session2 = session.getContext().createSession();
+        SwingUIProjectLoader project2 = new SwingUIProjectLoader(session2);
+        project2.load(new BufferedInputStream(new FileInputStream(tmp)), plIni);
+
+        ProfileSettings loaded = session2.getProfileManager().getDefaultProfileSettings();
+        assertEquals(7, loaded.getTopNCount());
+        assertEquals(settings.isParallelProfiling(), loaded.isParallelProfiling());
+        assertEquals(3, loaded.getProfileThreadCount());
+        assertEquals(2, loaded.getMaxProfilesPerDataSource());
+        assertEquals(settings.isIncrementalProfiling(), loaded.isIncrementalProfiling());
+        assertEquals(45, loaded.getQueryTimeout());
+        assertEquals(12.5, loaded.getSamplePercent());
+        assertEquals(5, loaded.getColumnProfileThreadCount());
+    }
     
     /**
      * Checks the entire object tree loaded in to ensure all the
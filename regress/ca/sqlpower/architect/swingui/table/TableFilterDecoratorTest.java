@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui.table;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.profile.ColumnProfileResult;
+import ca.sqlpower.architect.profile.ProfileManagerImpl;
+import ca.sqlpower.architect.profile.ProfileSettings;
+import ca.sqlpower.architect.profile.TableProfileResult;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class TableFilterDecoratorTest extends TestCase {
+
+    /**
+     * Remembers the events a table model fires.
+     */
+    private static class RecordingListener implements TableModelListener {
+        final List<TableModelEvent> events = new ArrayList<TableModelEvent>();
+
+        public void tableChanged(TableModelEvent e) {
+            events.add(e);
+        }
+    }
+
+    private SQLDatabase db;
+    private ProfileTableModel profileModel;
+    private TableFilterDecorator filterModel;
+    private TableProfileResult tprA;
+    private TableProfileResult tprB;
+    private TableProfileResult tprC;
+
+    @Override
+    protected void setUp() throws Exception {
+        db = new SQLDatabase();
+        db.setName("db");
+        tprA = makeTableResult("a", 3);
+        tprB = makeTableResult("b", 2);
+        tprC = makeTableResult("c", 4);
+        profileModel = new ProfileTableModel(new ProfileManagerImpl());
+        filterModel = new TableFilterDecorator(profileModel);
+    }
+
+    private TableProfileResult makeTableResult(String name, int columnCount) throws Exception {
+        SQLTable table = new SQLTable(db, name, "", "TABLE", true);
+        db.addChild(table);
+        TableProfileResult tpr = new TableProfileResult(table, new ProfileSettings());
+        for (int i = 0; i < columnCount; i++) {
+            SQLColumn col = new SQLColumn(table, name + "_col" + i, Types.INTEGER, 10, 0);
+            table.addColumn(col);
+            tpr.addColumnProfileResult(new ColumnProfileResult(col));
+        }
+        return tpr;
+    }
+
+    private ColumnProfileResult rowResult(int row) {
+        return (ColumnProfileResult) filterModel.getValueAt(row, ProfileTableModel.CPR_PSEUDO_COLUMN_INDEX);
+    }
+
+    public void testUnfilteredShowsAllRows() throws Exception {
+        profileModel.addTableResultsToScan(Arrays.asList(tprA, tprB));
+        assertEquals(5, filterModel.getRowCount());
+        assertSame(tprA.getColumnProfileResults().get(0), rowResult(0));
+        assertSame(tprB.getColumnProfileResults().get(1), rowResult(4));
+    }
+
+    public void testFilterShowsOneTable() throws Exception {
+        profileModel.addTableResultsToScan(Arrays.asList(tprA, tprB, tprC));
+        filterModel.setFilter(tprB);
+        assertEquals(2, filterModel.getRowCount());
+        assertSame(tprB.getColumnProfileResults().get(0), rowResult(0));
+        assertSame(tprB.getColumnProfileResults().get(1), rowResult(1));
+        assertEquals(3, filterModel.convertRowIndexToModel(0));
+    }
+
+    /**
+     * Rows inserted before the filtered rows must shift the index, and only
+     * rows that pass the filter may be reported as inserted.
+     */
+    public void testInsertUpdatesIndex() throws Exception {
+        profileModel.addTableResultToScan(tprC);
+        filterModel.setFilter(tprC);
+        assertEquals(4, filterModel.getRowCount());
+
+        RecordingListener l = new RecordingListener();
+        filterModel.addTableModelListener(l);
+        profileModel.addTableResultToScan(tprA);
+        assertEquals(0, l.events.size());
+        assertEquals(4, filterModel.getRowCount());
+        assertSame(tprC.getColumnProfileResults().get(0), rowResult(0));
+        assertEquals(3, filterModel.convertRowIndexToModel(0));
+    }
+
+    public void testDeleteUpdatesIndex() throws Exception {
+        profileModel.addTableResultsToScan(Arrays.asList(tprA, tprB, tprC));
+        filterModel.setFilter(tprC);
+        assertEquals(4, filterModel.getRowCount());
+
+        RecordingListener l = new RecordingListener();
+        filterModel.addTableModelListener(l);
+        profileModel.removeTableResultToScan(tprB);
+        assertEquals(0, l.events.size());
+        assertEquals(4, filterModel.getRowCount());
+        assertEquals(3, filterModel.convertRowIndexToModel(0));
+
+        profileModel.removeTableResultToScan(tprC);
+        assertEquals(1, l.events.size());
+        TableModelEvent e = l.events.get(0);
+        assertEquals(TableModelEvent.DELETE, e.getType());
+        assertEquals(0, e.getFirstRow());
+        assertEquals(3, e.getLastRow());
+        assertEquals(0, filterModel.getRowCount());
+    }
+
+    /**
+     * Adding a table to scan should report just its rows as inserted, in
+     * sorted position.
+     */
+    public void testProfileModelFiresInsert() throws Exception {
+        profileModel.addTableResultsToScan(Arrays.asList(tprA, tprC));
+        RecordingListener l = new RecordingListener();
+        profileModel.addTableModelListener(l);
+        profileModel.addTableResultToScan(tprB);
+
+        assertEquals(1, l.events.size());
+        TableModelEvent e = l.events.get(0);
+        assertEquals(TableModelEvent.INSERT, e.getType());
+        assertEquals(3, e.getFirstRow());
+        assertEquals(4, e.getLastRow());
+        assertEquals(9, profileModel.getRowCount());
+        assertSame(tprB.getColumnProfileResults().get(0), profileModel.getResultList().get(3));
+        assertSame(tprC.getColumnProfileResults().get(0), profileModel.getResultList().get(5));
+    }
+}
@@ -19,7 +19,9 @@
 
 package ca.sqlpower.architect;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
@@ -27,10 +29,12 @@ import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.swing.JOptionPane;
 import javax.xml.parsers.ParserConfigurationException;
@@ -47,6 +51,9 @@ import org.xml.sax.SAXException;
 import ca.sqlpower.architect.ddl.GenericDDLGenerator;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ColumnValueCount;
+import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.profile.ProfileResultStore;
+import ca.sqlpower.architect.profile.ProfileSettings;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.JDBCDataSource;
@@ -112,6 +119,14 @@ public class ProjectLoader {
 
     protected File file;
 
+    /**
+     * The profile result store named by the project that was just loaded,
+     * until {@link #setFile(File)} tells it which file the project came from.
+     * A project read from a stream that is never given a file is opened
+     * without the results in its store.
+     */
+    private ProfileStoreLoader pendingProfileStore;
+
     // ------------------ load and save support -------------------
 
     private static final Logger logger = Logger.getLogger(ProjectLoader.class);
@@ -210,6 +225,7 @@ public class ProjectLoader {
             ArchitectSession messageDelegate) throws IOException, SQLObjectException {
         UnclosableInputStream uin = new UnclosableInputStream(in);
         siblingSession = messageDelegate;
+        pendingProfileStore = null;
         try {
             dbcsLoadIdMap = new HashMap<String, JDBCDataSource>();
             sqlObjectLoadIdMap = new HashMap<String, SQLObject>();
@@ -985,7 +1001,87 @@ public class ProjectLoader {
     private class ProfileManagerFactory extends AbstractObjectCreationFactory {
         @Override
         public Object createObject(Attributes attributes) throws SQLObjectException {
-            return session.getProfileManager();
+            ProfileManager profileManager = session.getProfileManager();
+            loadProfileSettings(profileManager.getDefaultProfileSettings(), attributes);
+            String storeName = attributes.getValue("result-store");
+            if (storeName != null) {
+                pendingProfileStore = new ProfileStoreLoader(storeName, sqlObjectLoadIdMap,
+                        profileManager.getDefaultProfileSettings());
+            }
+            return profileManager;
+        }
+
+        /**
+         * Reads the default profile settings saved as attributes of the
+         * profiles element. Settings that are missing or can't be read keep
+         * their current values.
+         */
+        private void loadProfileSettings(ProfileSettings settings, Attributes attributes) {
+            try {
+                String value = attributes.getValue("topNCount");
+                if (value != null) settings.setTopNCount(Integer.parseInt(value));
+                value = attributes.getValue("parallelProfiling");
+                if (value != null) settings.setParallelProfiling(Boolean.valueOf(value));
+                value = attributes.getValue("profileThreadCount");
+                if (value != null) settings.setProfileThreadCount(Integer.parseInt(value));
+                value = attributes.getValue("maxProfilesPerDataSource");
+                if (value != null) settings.setMaxProfilesPerDataSource(Integer.parseInt(value));
+                value = attributes.getValue("incrementalProfiling");
+                if (value != null) settings.setIncrementalProfiling(Boolean.valueOf(value));
+                value = attributes.getValue("queryTimeout");
+                if (value != null) settings.setQueryTimeout(Integer.parseInt(value));
+                value = attributes.getValue("samplePercent");
+                if (value != null) settings.setSamplePercent(Double.parseDouble(value));
+                value = attributes.getValue("columnProfileThreadCount");
+                if (value != null) settings.setColumnProfileThreadCount(Integer.parseInt(value));
+            } catch (NumberFormatException ex) {
+                logger.warn("Couldn't read the saved profile settings", ex);
+            }
+        }
+    }
+
+    /**
+     * Reads the profile results of a loaded project from the
+     * {@link ProfileResultStore} the project file refers to. Once
+     * {@link ProjectLoader#setFile(File)} says where the project was loaded
+     * from, this is handed to the profile manager, which calls it on its
+     * worker thread.
+     */
+    private class ProfileStoreLoader implements Callable<List<TableProfileResult>> {
+        private final String storeName;
+        private final Map<String, SQLObject> objects;
+        private final ProfileSettings settings;
+
+        /**
+         * The file the project was loaded from. The store is expected in the
+         * same directory.
+         */
+        private File projectFile;
+
+        ProfileStoreLoader(String storeName, Map<String, SQLObject> objects, ProfileSettings settings) {
+            this.storeName = storeName;
+            this.objects = objects;
+            this.settings = settings;
+        }
+
+        public List<TableProfileResult> call() throws Exception {
+            File storeFile = new File(projectFile.getParentFile(), storeName);
+            InputStream in = null;
+            try {
+                in = new BufferedInputStream(new FileInputStream(storeFile));
+                return ProfileResultStore.read(in, objects, settings);
+            } catch (IOException e) {
+                logger.error("Could not read profile results from " + storeFile, e);
+                UserPrompter prompter = session.createUserPrompter(
+                        "The profile results of this project could not be read from\n" +
+                        storeFile.getAbsolutePath() + "\n(" + e.getMessage() + ").\n" +
+                        "The project will be opened without them.",
+                        UserPromptType.MESSAGE, UserPromptOptions.OK, UserPromptResponse.OK, null, "OK");
+                prompter.promptUser();
+                return Collections.emptyList();
+            } finally {
+                if (in != null) in.close();
+            }
         }
     }
 
@@ -1146,6 +1242,17 @@ public class ProjectLoader {
      */
     public void setFile(File argFile) {
         this.file = argFile;
+        if (pendingProfileStore != null) {
+            // the store is found beside the file the project was loaded from,
+            // so it can only be read once that file is known
+            if (argFile != null) {
+                pendingProfileStore.projectFile = argFile;
+                session.getProfileManager().loadSavedResults(pendingProfileStore);
+            } else {
+                logger.info("Project was loaded without a file; not loading its profile result store");
+            }
+            pendingProfileStore = null;
+        }
     }
 
     /**
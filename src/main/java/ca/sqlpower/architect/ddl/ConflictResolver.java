@@ -19,15 +19,23 @@
 
 package ca.sqlpower.architect.ddl;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -92,40 +100,23 @@ public class ConflictResolver implements Monitorable {
         /**
          * Adds the dependant imported and exported key relationships which must
          * be dropped before this conflict can be dropped. 
-         * @param dbmd The database metadata to consult.
+         * @param index The index of the target database's metadata to consult.
          */
-        private void addTableDependants(DatabaseMetaData dbmd) throws SQLException {
-            ResultSet ikrs = dbmd.getImportedKeys(getCatalog(), getSchema(), getName());
-            addDependantsFromKeys(ikrs);
-            ikrs.close();
-            
-            ikrs = dbmd.getExportedKeys(getCatalog(), getSchema(), getName());
-            addDependantsFromKeys(ikrs);
-            ikrs.close();
+        private void addTableDependants(MetadataIndex index) throws SQLException {
+            addDependantsFromKeys(index.getImportedKeys(getCatalog(), getSchema(), getName()));
+            addDependantsFromKeys(index.getExportedKeys(getCatalog(), getSchema(), getName()));
         }
 
         /**
-         * A subrountine of addTableDependants().  It adds dependant objects from 
-         * a DatabaseMetaData imported keys or exported keys resultset. 
-         * @param rs
-         * @throws SQLException
+         * A subrountine of addTableDependants().  It adds dependant objects for
+         * the given imported or exported keys.
          */
-        private void addDependantsFromKeys(ResultSet rs) throws SQLException {
-            Conflict prev = null;
-            while (rs.next()) {
-                Conflict c = new Conflict("FOREIGN KEY",
-                        rs.getString("FKTABLE_CAT"),
-                        rs.getString("FKTABLE_SCHEM"),
-                        rs.getString("FK_NAME"));
-
-                // multi-column keys get multiple rows in this result set.  We need to skip 'em.
-                if (c.equals(prev)) continue;
-                prev = c;
-                
+        private void addDependantsFromKeys(List<ForeignKey> keys) {
+            for (ForeignKey key : keys) {
+                Conflict c = new Conflict("FOREIGN KEY", key.fkCatalog, key.fkSchema, key.name);
                 ddlg.setTargetCatalog(c.getCatalog());
                 ddlg.setTargetSchema(c.getSchema());
-                c.setSqlDropStatement(
-                        ddlg.makeDropForeignKeySQL(rs.getString("FKTABLE_NAME"), c.getName()));
+                c.setSqlDropStatement(ddlg.makeDropForeignKeySQL(key.fkTable, c.getName()));
                 dependants.add(c);
             }
         }
@@ -186,6 +177,367 @@ public class ConflictResolver implements Monitorable {
         }
     }
     
+    /**
+     * The data source type property holding a query that lists the foreign
+     * keys of a whole schema at once. Without it, the keys of each
+     * conflicting table are looked up one table at a time. The query may
+     * refer to the schema with the {catalog} and {schema} placeholders, which
+     * are replaced with quoted SQL string literals, and must return every
+     * foreign key whose referencing or referenced table is in that schema.
+     * On platforms without schemas, {schema} is NULL, so the query should
+     * use {catalog} instead.
+     * Its columns are named like those of
+     * {@link DatabaseMetaData#getImportedKeys(String, String, String)}:
+     * FKTABLE_CAT, FKTABLE_SCHEM, FKTABLE_NAME, FK_NAME, PKTABLE_CAT,
+     * PKTABLE_SCHEM and PKTABLE_NAME.
+     * <p>
+     * Platforms that support such a query have a default for it in
+     * <code>pl.default.ini</code> (see
+     * {@link DDLUtils#getPlatformProperty(ca.sqlpower.sql.JDBCDataSourceType, String)}),
+     * which setting this property to an empty value turns off. Tables are
+     * matched to the keys by their schema, or by their catalog on platforms
+     * without schemas, so the query's catalog names only matter there. If
+     * none of the keys it returns belong to the schema it was run for, the
+     * keys are looked up one table at a time instead.
+     * <p>
+     * For example, on platforms with the standard information schema:
+     * <pre>
+     * SELECT fk.TABLE_CATALOG AS FKTABLE_CAT, fk.TABLE_SCHEMA AS FKTABLE_SCHEM,
+     *        fk.TABLE_NAME AS FKTABLE_NAME, fk.CONSTRAINT_NAME AS FK_NAME,
+     *        pk.TABLE_CATALOG AS PKTABLE_CAT, pk.TABLE_SCHEMA AS PKTABLE_SCHEM,
+     *        pk.TABLE_NAME AS PKTABLE_NAME
+     *   FROM INFORMATION_SCHEMA.REFERENTIAL_CONSTRAINTS rc
+     *   JOIN INFORMATION_SCHEMA.TABLE_CONSTRAINTS fk
+     *     ON fk.CONSTRAINT_SCHEMA = rc.CONSTRAINT_SCHEMA AND fk.CONSTRAINT_NAME = rc.CONSTRAINT_NAME
+     *   JOIN INFORMATION_SCHEMA.TABLE_CONSTRAINTS pk
+     *     ON pk.CONSTRAINT_SCHEMA = rc.UNIQUE_CONSTRAINT_SCHEMA AND pk.CONSTRAINT_NAME = rc.UNIQUE_CONSTRAINT_NAME
+     *  WHERE fk.TABLE_SCHEMA = {schema} OR pk.TABLE_SCHEMA = {schema}
+     * </pre>
+     */
+    public static final String FOREIGN_KEYS_QUERY =
+        "ca.sqlpower.architect.ddl.ConflictResolver.ForeignKeysQuery";
+
+    /**
+     * Schemas that the script creates at least this many tables in have all
+     * their tables read with one metadata call. In schemas with fewer, the
+     * tables are looked up by name, so a small script doesn't read every
+     * table of a large database.
+     */
+    private static final int BULK_LOOKUP_THRESHOLD = 10;
+
+    /**
+     * A foreign key in the target database, as far as dropping it is
+     * concerned.
+     */
+    private static class ForeignKey {
+        final String fkCatalog;
+        final String fkSchema;
+        final String fkTable;
+        final String name;
+
+        ForeignKey(String fkCatalog, String fkSchema, String fkTable, String name) {
+            this.fkCatalog = fkCatalog;
+            this.fkSchema = fkSchema;
+            this.fkTable = fkTable;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ForeignKey)) return false;
+            ForeignKey other = (ForeignKey) obj;
+            return ArchitectUtils.areEqual(fkCatalog, other.fkCatalog)
+                && ArchitectUtils.areEqual(fkSchema, other.fkSchema)
+                && ArchitectUtils.areEqual(fkTable, other.fkTable)
+                && ArchitectUtils.areEqual(name, other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.asList(fkCatalog, fkSchema, fkTable, name).hashCode();
+        }
+    }
+
+    /**
+     * The tables and foreign keys of the target database that the script can
+     * conflict with, read in as few metadata calls as possible. Tables are
+     * read a schema at a time. Foreign keys are read a schema at a time with
+     * the {@link #FOREIGN_KEYS_QUERY} if the platform has one, and otherwise
+     * once for each table that needs them.
+     * <p>
+     * Names are matched the way the target database matches unquoted
+     * identifiers: they are folded to the case the database stores them in
+     * before they are looked up, and compared without regard to case if the
+     * database doesn't tell mixed-case identifiers apart.
+     */
+    private class MetadataIndex {
+        private final Connection con;
+        private final DatabaseMetaData dbmd;
+        private final boolean storesUpperCase;
+        private final boolean storesLowerCase;
+        private final boolean caseInsensitive;
+
+        /**
+         * The tables read so far, by {@link #nameKey(String) name key}, for
+         * each catalog and schema they were looked up in. Each table is an
+         * array of its type, catalog, schema and name.
+         */
+        private final Map<List<String>, Map<String, List<String[]>>> tables =
+            new HashMap<List<String>, Map<String, List<String[]>>>();
+
+        /**
+         * The catalogs and schemas the foreign keys query has been run for,
+         * as {@link #namespaceKey(String, String)} keys, and whether it
+         * succeeded.
+         */
+        private final Map<List<String>, Boolean> keysQueried = new HashMap<List<String>, Boolean>();
+
+        /**
+         * The foreign keys read so far, by the
+         * {@link #tableKey(String, String, String) key} of the table they
+         * belong to.
+         */
+        private final Map<List<String>, Set<ForeignKey>> importedKeys = new HashMap<List<String>, Set<ForeignKey>>();
+
+        /**
+         * The foreign keys read so far, by the
+         * {@link #tableKey(String, String, String) key} of the table they
+         * refer to.
+         */
+        private final Map<List<String>, Set<ForeignKey>> exportedKeys = new HashMap<List<String>, Set<ForeignKey>>();
+
+        MetadataIndex(Connection con) throws SQLException {
+            this.con = con;
+            this.dbmd = con.getMetaData();
+            this.storesUpperCase = dbmd.storesUpperCaseIdentifiers();
+            this.storesLowerCase = dbmd.storesLowerCaseIdentifiers();
+            this.caseInsensitive = !dbmd.supportsMixedCaseIdentifiers();
+        }
+
+        /**
+         * Returns the given name in the case the database stores unquoted
+         * identifiers in, for looking it up in the database metadata.
+         */
+        private String toStoredCase(String name) {
+            if (name == null) return null;
+            if (storesUpperCase) return name.toUpperCase();
+            if (storesLowerCase) return name.toLowerCase();
+            return name;
+        }
+
+        /**
+         * Returns the key the given name is indexed by, which is the same
+         * for every name the database considers the same.
+         */
+        private String nameKey(String name) {
+            if (name == null || !caseInsensitive) return name;
+            return name.toUpperCase();
+        }
+
+        /**
+         * Returns the key of the schema, or the catalog on platforms without
+         * schemas, that holds tables in the given catalog and schema. The
+         * catalog is left out when there is a schema because platforms
+         * don't agree on what to report as the catalog of a schema.
+         */
+        private List<String> namespaceKey(String catalog, String schema) {
+            return Arrays.asList(schema == null ? nameKey(catalog) : null, nameKey(schema));
+        }
+
+        private List<String> tableKey(String catalog, String schema, String table) {
+            List<String> key = new ArrayList<String>(namespaceKey(catalog, schema));
+            key.add(nameKey(table));
+            return key;
+        }
+
+        /**
+         * Reads the tables with the given names in the given catalog and
+         * schema, or every table in them if there are many names.
+         */
+        void loadTables(String catalog, String schema, Collection<String> names) throws SQLException {
+            List<String> schemaKey = Arrays.asList(nameKey(catalog), nameKey(schema));
+            Map<String, List<String[]>> byName = tables.get(schemaKey);
+            if (byName == null) {
+                byName = new HashMap<String, List<String[]>>();
+                tables.put(schemaKey, byName);
+            }
+            catalog = toStoredCase(catalog);
+            schema = toStoredCase(schema);
+            if (names.size() >= BULK_LOOKUP_THRESHOLD) {
+                readTables(dbmd.getTables(catalog, schema, "%", null), byName, null);
+            } else {
+                for (String name : names) {
+                    if (name == null) continue;
+                    readTables(dbmd.getTables(catalog, schema, toStoredCase(name), null), byName, name);
+                }
+            }
+        }
+
+        /**
+         * Adds the tables in the given result set to the given map and closes
+         * it. If a name is given, only tables the database considers to have
+         * that name are added, since the name is a pattern to the database.
+         */
+        private void readTables(ResultSet rs, Map<String, List<String[]>> byName, String name) throws SQLException {
+            try {
+                while (rs.next()) {
+                    String[] table = new String[] {
+                            rs.getString("TABLE_TYPE"),
+                            rs.getString("TABLE_CAT"),
+                            rs.getString("TABLE_SCHEM"),
+                            rs.getString("TABLE_NAME") };
+                    String key = nameKey(table[3]);
+                    if (name != null && !nameKey(name).equals(key)) continue;
+                    List<String[]> sameName = byName.get(key);
+                    if (sameName == null) {
+                        sameName = new ArrayList<String[]>();
+                        byName.put(key, sameName);
+                    }
+                    sameName.add(table);
+                }
+            } finally {
+                rs.close();
+            }
+        }
+
+        /**
+         * Returns the tables with the given name that were read from the
+         * given catalog and schema.
+         */
+        List<String[]> findTables(String catalog, String schema, String name) {
+            Map<String, List<String[]>> byName = tables.get(Arrays.asList(nameKey(catalog), nameKey(schema)));
+            if (byName == null || byName.get(nameKey(name)) == null) return Collections.emptyList();
+            return byName.get(nameKey(name));
+        }
+
+        List<ForeignKey> getImportedKeys(String catalog, String schema, String table) throws SQLException {
+            return getKeys(importedKeys, catalog, schema, table, true);
+        }
+
+        List<ForeignKey> getExportedKeys(String catalog, String schema, String table) throws SQLException {
+            return getKeys(exportedKeys, catalog, schema, table, false);
+        }
+
+        private List<ForeignKey> getKeys(Map<List<String>, Set<ForeignKey>> keys,
+                String catalog, String schema, String table, boolean imported) throws SQLException {
+            List<String> tableKey = tableKey(catalog, schema, table);
+            if (!keys.containsKey(tableKey) && !queryKeys(catalog, schema)) {
+                ResultSet rs = imported ?
+                        dbmd.getImportedKeys(catalog, schema, table) :
+                        dbmd.getExportedKeys(catalog, schema, table);
+                try {
+                    Set<ForeignKey> tableKeys = new LinkedHashSet<ForeignKey>();
+                    while (rs.next()) {
+                        // multi-column keys get multiple rows in this result set, the set skips 'em
+                        tableKeys.add(new ForeignKey(rs.getString("FKTABLE_CAT"), rs.getString("FKTABLE_SCHEM"),
+                                rs.getString("FKTABLE_NAME"), rs.getString("FK_NAME")));
+                    }
+                    keys.put(tableKey, tableKeys);
+                } finally {
+                    rs.close();
+                }
+            }
+            Set<ForeignKey> tableKeys = keys.get(tableKey);
+            if (tableKeys == null) return Collections.emptyList();
+            return new ArrayList<ForeignKey>(tableKeys);
+        }
+
+        /**
+         * Reads every foreign key that refers to or from the given schema
+         * with the platform's foreign keys query, unless it has already been
+         * tried.
+         *
+         * @return True if the schema's foreign keys have been read, false if
+         *         there is no query, it failed, or none of the keys it
+         *         returned belong to the schema.
+         */
+        private boolean queryKeys(String catalog, String schema) {
+            List<String> schemaKey = namespaceKey(catalog, schema);
+            Boolean done = keysQueried.get(schemaKey);
+            if (done != null) return done;
+
+            String query = DDLUtils.getPlatformProperty(
+                    targetDatabase.getDataSource().getParentType(), FOREIGN_KEYS_QUERY);
+            if (query == null || query.trim().length() == 0) {
+                keysQueried.put(schemaKey, false);
+                return false;
+            }
+            String sql = query.replace("{catalog}", toLiteral(catalog)).replace("{schema}", toLiteral(schema));
+            Statement stmt = null;
+            ResultSet rs = null;
+            Map<List<String>, Set<ForeignKey>> newImported = new HashMap<List<String>, Set<ForeignKey>>();
+            Map<List<String>, Set<ForeignKey>> newExported = new HashMap<List<String>, Set<ForeignKey>>();
+            int rows = 0;
+            boolean inSchema = false;
+            try {
+                stmt = con.createStatement();
+                rs = stmt.executeQuery(sql);
+                while (rs.next()) {
+                    ForeignKey key = new ForeignKey(rs.getString("FKTABLE_CAT"), rs.getString("FKTABLE_SCHEM"),
+                            rs.getString("FKTABLE_NAME"), rs.getString("FK_NAME"));
+                    List<String> fkTableKey = tableKey(key.fkCatalog, key.fkSchema, key.fkTable);
+                    List<String> pkTableKey = tableKey(rs.getString("PKTABLE_CAT"),
+                            rs.getString("PKTABLE_SCHEM"), rs.getString("PKTABLE_NAME"));
+                    addKey(newImported, fkTableKey, key);
+                    addKey(newExported, pkTableKey, key);
+                    rows++;
+                    inSchema |= fkTableKey.subList(0, 2).equals(schemaKey)
+                        || pkTableKey.subList(0, 2).equals(schemaKey);
+                }
+            } catch (SQLException ex) {
+                logger.warn("Foreign keys query failed; looking up keys one table at a time. Query was: " + sql, ex);
+                keysQueried.put(schemaKey, false);
+                return false;
+            } finally {
+                try {
+                    if (rs != null) rs.close();
+                    if (stmt != null) stmt.close();
+                } catch (SQLException ex) {
+                    logger.error("Couldn't close foreign keys query", ex);
+                }
+            }
+            if (rows > 0 && !inSchema) {
+                logger.warn("None of the " + rows + " keys returned by the foreign keys query belong to '" +
+                        catalog + "'.'" + schema + "'; looking up keys one table at a time. " +
+                        "Query was: " + sql);
+                keysQueried.put(schemaKey, false);
+                return false;
+            }
+            mergeKeys(importedKeys, newImported);
+            mergeKeys(exportedKeys, newExported);
+            keysQueried.put(schemaKey, true);
+            return true;
+        }
+
+        private void addKey(Map<List<String>, Set<ForeignKey>> keys, List<String> tableKey, ForeignKey key) {
+            Set<ForeignKey> tableKeys = keys.get(tableKey);
+            if (tableKeys == null) {
+                tableKeys = new LinkedHashSet<ForeignKey>();
+                keys.put(tableKey, tableKeys);
+            }
+            tableKeys.add(key);
+        }
+
+        /**
+         * Adds keys read for a whole schema to the index.
+         */
+        private void mergeKeys(Map<List<String>, Set<ForeignKey>> keys, Map<List<String>, Set<ForeignKey>> newKeys) {
+            for (Map.Entry<List<String>, Set<ForeignKey>> entry : newKeys.entrySet()) {
+                Set<ForeignKey> existing = keys.get(entry.getKey());
+                if (existing == null) {
+                    keys.put(entry.getKey(), entry.getValue());
+                } else {
+                    existing.addAll(entry.getValue());
+                }
+            }
+        }
+    }
+
+    private static String toLiteral(String s) {
+        if (s == null) return "NULL";
+        return "'" + s.replace("'", "''") + "'";
+    }
+
     private SQLDatabase targetDatabase;
     private List<DDLStatement> ddlStatements;
     private List<Conflict> conflicts;
@@ -197,6 +549,7 @@ public class ConflictResolver implements Monitorable {
 	private boolean doingDropConflicting;
 	private boolean dropConflictingStarted;
 	private boolean dropConflictingFinished;
+	private boolean batchDrops = true;
 	
     /**
      * Creates a new ConflictResolver.  You should call findConflicting() after you get
@@ -232,56 +585,67 @@ public class ConflictResolver implements Monitorable {
    			}
    			
    			con = targetDatabase.getConnection();
-   			DatabaseMetaData dbmd = con.getMetaData();
-   			
+   			MetadataIndex index = new MetadataIndex(con);
+
+   			// find out which table names to look for in which schemas, so
+   			// each schema's tables can be read all at once
+   			List<DDLStatement> tableStatements = new ArrayList<DDLStatement>();
+   			Map<List<String>, Set<String>> namesBySchema = new LinkedHashMap<List<String>, Set<String>>();
    			Iterator<DDLStatement> it = ddlStatements.iterator();
    			while (it.hasNext()) {
    			    DDLStatement ddlStmt = (DDLStatement) it.next();
-   			    monitorableProgress += 1;
    			    if (ddlStmt.getType() != DDLStatement.StatementType.CREATE) continue;
    			    SQLObject so = ddlStmt.getObject();
    			    Class<? extends SQLObject> clazz = so.getClass();
-   			    
+
    			    if (clazz.equals(SQLTable.class)) {
-   			        SQLTable t = (SQLTable) so;
-   			        String cat = ddlStmt.getTargetCatalog();
-   			        String sch = ddlStmt.getTargetSchema();
-   			        if (logger.isDebugEnabled()) {
-   			            logger.debug("Finding conflicts for TABLE '" + cat + "'.'"
-   			                    + sch + "'.'" + t.getPhysicalName() + "'");
+   			        tableStatements.add(ddlStmt);
+   			        List<String> schemaKey = Arrays.asList(
+   			                ddlg.toIdentifier(ddlStmt.getTargetCatalog()),
+   			                ddlg.toIdentifier(ddlStmt.getTargetSchema()));
+   			        Set<String> names = namesBySchema.get(schemaKey);
+   			        if (names == null) {
+   			            names = new LinkedHashSet<String>();
+   			            namesBySchema.put(schemaKey, names);
    			        }
-   			        
-   			        ResultSet rs = dbmd.getTables(
-   			                ddlg.toIdentifier(cat),
-   			                ddlg.toIdentifier(sch),
-   			                ddlg.toIdentifier(t.getPhysicalName()),
-   			                null);
-   			        while (rs.next()) {
-   			            Conflict c = new Conflict(
-   			                    rs.getString("TABLE_TYPE"),
-   			                    rs.getString("TABLE_CAT"),
-   			                    rs.getString("TABLE_SCHEM"),
-   			                    rs.getString("TABLE_NAME"));
-   			            ddlg.setTargetCatalog(c.getCatalog());
-   			            ddlg.setTargetSchema(c.getSchema());
-   			            c.setSqlDropStatement(ddlg.makeDropTableSQL(c.getName()));
-   			            c.addTableDependants(dbmd);
-   			            conflicts.add(c);
-   			        }
-   			        rs.close();
-   			        
-   				} else if (clazz.equals(SQLRelationship.class)) {
-   					logger.error("Relationship conflicts are not supported yet!");
-                } else if (clazz.equals(SQLIndex.class)) {
-                    logger.error("Index conflicts not supported.");
-                } else if (clazz.equals(SQLSequence.class)) {
-                    logger.error("Sequence conflicts not supported.");
-   				} else {
-   					throw new IllegalArgumentException(
-   							"Unknown subclass of SQLObject: " + clazz.getName());
-   				}
+   			        names.add(ddlg.toIdentifier(((SQLTable) so).getPhysicalName()));
+   			    } else if (clazz.equals(SQLRelationship.class)) {
+   			        logger.error("Relationship conflicts are not supported yet!");
+   			    } else if (clazz.equals(SQLIndex.class)) {
+   			        logger.error("Index conflicts not supported.");
+   			    } else if (clazz.equals(SQLSequence.class)) {
+   			        logger.error("Sequence conflicts not supported.");
+   			    } else {
+   			        throw new IllegalArgumentException(
+   			                "Unknown subclass of SQLObject: " + clazz.getName());
+   			    }
    			}
-   			
+   			for (Map.Entry<List<String>, Set<String>> entry : namesBySchema.entrySet()) {
+   			    index.loadTables(entry.getKey().get(0), entry.getKey().get(1), entry.getValue());
+   			}
+   			monitorableProgress = ddlStatements.size() - tableStatements.size();
+
+   			for (DDLStatement ddlStmt : tableStatements) {
+   			    monitorableProgress += 1;
+   			    SQLTable t = (SQLTable) ddlStmt.getObject();
+   			    String cat = ddlStmt.getTargetCatalog();
+   			    String sch = ddlStmt.getTargetSchema();
+   			    if (logger.isDebugEnabled()) {
+   			        logger.debug("Finding conflicts for TABLE '" + cat + "'.'"
+   			                + sch + "'.'" + t.getPhysicalName() + "'");
+   			    }
+
+   			    for (String[] table : index.findTables(ddlg.toIdentifier(cat), ddlg.toIdentifier(sch),
+   			            ddlg.toIdentifier(t.getPhysicalName()))) {
+   			        Conflict c = new Conflict(table[0], table[1], table[2], table[3]);
+   			        ddlg.setTargetCatalog(c.getCatalog());
+   			        ddlg.setTargetSchema(c.getSchema());
+   			        c.setSqlDropStatement(ddlg.makeDropTableSQL(c.getName()));
+   			        c.addTableDependants(index);
+   			        conflicts.add(c);
+   			    }
+   			}
+
    			if (logger.isDebugEnabled()) {
    				logger.debug("Found conflicts: " + conflicts);
    			}
@@ -316,10 +680,19 @@ public class ConflictResolver implements Monitorable {
     			con = targetDatabase.getConnection();
     			stmt = con.createStatement();
     			Set<Conflict> alreadyDropped = new HashSet<Conflict>();
-    			while (it.hasNext()) {
-    				Conflict c = (Conflict) it.next();
-    				monitorableProgress++;
-    				dropConflict(c, stmt, alreadyDropped);
+    			if (batchDrops && con.getMetaData().supportsBatchUpdates()) {
+    			    List<String> drops = new ArrayList<String>();
+    			    while (it.hasNext()) {
+    			        collectDrops((Conflict) it.next(), drops, alreadyDropped);
+    			    }
+    			    executeDrops(stmt, drops);
+    			    monitorableProgress = conflicts.size();
+    			} else {
+    			    while (it.hasNext()) {
+    			        Conflict c = (Conflict) it.next();
+    			        monitorableProgress++;
+    			        dropConflict(c, stmt, alreadyDropped);
+    			    }
     			}
     		} finally {
     			dropConflictingFinished = true;
@@ -362,6 +735,62 @@ public class ConflictResolver implements Monitorable {
         }
     }
 
+    /**
+     * Adds the drop statements for the given conflict and all its
+     * dependencies to the given list, dependencies first. This is the batch
+     * mode counterpart of {@link #dropConflict(Conflict, Statement, Set)}.
+     */
+    private void collectDrops(Conflict c, List<String> drops, Set<Conflict> alreadyDropped) {
+        for (Conflict c2 : c.getDependants()) {
+            collectDrops(c2, drops, alreadyDropped);
+        }
+        if (!alreadyDropped.contains(c)) {
+            alreadyDropped.add(c);
+            drops.add(c.getSqlDropStatement());
+        }
+    }
+
+    /**
+     * Runs the given drop statements as one batch. If one fails, it is
+     * recorded as the last SQL statement before the exception is rethrown.
+     */
+    private void executeDrops(Statement stmt, List<String> drops) throws SQLException {
+        if (drops.isEmpty()) return;
+        for (String sql : drops) {
+            if (logger.isDebugEnabled()) logger.debug("Adding drop to batch: " + sql);
+            stmt.addBatch(sql);
+        }
+        try {
+            stmt.executeBatch();
+            lastSQLStatement = drops.get(drops.size() - 1);
+        } catch (BatchUpdateException ex) {
+            int[] counts = ex.getUpdateCounts();
+            int failed = counts == null ? 0 : counts.length;
+            for (int i = 0; counts != null && i < counts.length; i++) {
+                if (counts[i] == Statement.EXECUTE_FAILED) {
+                    failed = i;
+                    break;
+                }
+            }
+            lastSQLStatement = drops.get(Math.min(failed, drops.size() - 1));
+            throw ex;
+        }
+    }
+
+    /**
+     * Sets whether {@link #dropConflicting()} sends all its drop statements
+     * to the database as one batch, if the driver supports batches. The
+     * statements are the same, and in the same order, either way. Defaults to
+     * true.
+     */
+    public void setBatchDrops(boolean batchDrops) {
+        this.batchDrops = batchDrops;
+    }
+
+    public boolean isBatchDrops() {
+        return batchDrops;
+    }
+
     /**
      * @return True if and only if no conflicts were found.
      */
@@ -372,6 +801,16 @@ public class ConflictResolver implements Monitorable {
         return conflicts.isEmpty();
     }
 
+    /**
+     * Returns the conflicts found by {@link #findConflicting()}.
+     */
+    public List<Conflict> getConflicts() {
+        if (conflicts == null) {
+            throw new IllegalStateException("You have to call findConflicting() before getConflicts()");
+        }
+        return Collections.unmodifiableList(conflicts);
+    }
+
     /**
      * @return A multi-line String representation of the conflicting objects. 
      */
@@ -19,6 +19,8 @@
 
 package ca.sqlpower.architect.ddl;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
@@ -78,6 +80,34 @@ public interface DDLGenerator {
      */
     public String generateDDLScript(Collection<SQLTable> tables) throws SQLException, SQLObjectException;
 
+    /**
+     * Writes the same script as {@link #generateDDLScript(Collection)} to the
+     * given writer, one statement at a time as each is generated. Neither the
+     * script nor its statements are kept in memory, so this is the way to
+     * export the DDL of a very large model to a file. The list returned by
+     * {@link #getDdlStatements()} is empty afterwards.
+     * 
+     * @param tables The collection of tables the generated script should create.
+     * @param out Where to write the script. It is flushed but not closed.
+     * @throws SQLException If there is a problem getting type info from the target DB.
+     * @throws SQLObjectException If there are problems with the Architect objects.
+     * @throws IOException If the script can't be written.
+     */
+    public void writeDDLScript(Collection<SQLTable> tables, Writer out)
+    throws SQLException, SQLObjectException, IOException;
+
+    /**
+     * Writes the script of the statements already generated, the ones
+     * returned by {@link #getDdlStatements()}, to the given writer, one
+     * statement at a time. The script has the same header and transaction
+     * statements as the one {@link #generateDDLScript(Collection)} returns,
+     * but is never held in memory as a whole.
+     * 
+     * @param out Where to write the script. It is flushed but not closed.
+     * @throws IOException If the script can't be written.
+     */
+    public void writeDDLScript(Writer out) throws IOException;
+
 
     /**
      * Adds a comment (remark) to the passed object (table, column, view, ...)
@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.DDLStatement.StatementType;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Runs a DDL script against a target database over several connections at
+ * once. The statements are split into groups with
+ * {@link #groupStatements(List)}, and the groups are run one after another.
+ * The statements within a group don't depend on each other, so they are
+ * spread over the connections and sent in JDBC batches where the driver
+ * supports them.
+ * <p>
+ * A statement that fails doesn't stop the script. Its exception is recorded
+ * and returned with the others when the script is finished.
+ */
+public class DDLScriptExecutor {
+
+    private static final Logger logger = Logger.getLogger(DDLScriptExecutor.class);
+
+    /**
+     * The largest number of statements sent to the database in one batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    /**
+     * A statement that failed, and why.
+     */
+    public static class Failure {
+        private final DDLStatement statement;
+        private final SQLException exception;
+
+        Failure(DDLStatement statement, SQLException exception) {
+            this.statement = statement;
+            this.exception = exception;
+        }
+
+        public DDLStatement getStatement() {
+            return statement;
+        }
+
+        public SQLException getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            return statement.getSQLText() + ": " + exception.getMessage();
+        }
+    }
+
+    /**
+     * Told about each statement as it finishes. Calls are never made by two
+     * threads at once, so implementations don't have to be thread safe.
+     */
+    public static interface ExecutionListener {
+
+        /**
+         * @param failure
+         *            Why the statement failed, or null if it succeeded.
+         */
+        void statementExecuted(DDLStatement statement, SQLException failure);
+    }
+
+    private final SQLDatabase target;
+
+    /**
+     * The most connections to run statements on at once.
+     */
+    private int connectionCount = 4;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Whether to send statements in batches if the driver says it supports
+     * them.
+     */
+    private boolean useBatches = true;
+
+    /**
+     * Whether the current run sends statements in batches. This is turned
+     * off for the rest of the run if the driver turns out not to accept DDL
+     * in a batch.
+     */
+    private volatile boolean batching;
+
+    private volatile boolean cancelled;
+
+    private ExecutionListener listener;
+
+    /**
+     * The failures of the current run, in the order they happened.
+     */
+    private final List<Failure> failures = new ArrayList<Failure>();
+
+    private int executedCount;
+
+    public DDLScriptExecutor(SQLDatabase target) {
+        if (target == null) {
+            throw new NullPointerException("Null target database");
+        }
+        this.target = target;
+    }
+
+    /**
+     * Splits the given script into groups that have to run one after
+     * another, but whose statements can run in any order.
+     * <p>
+     * Only statements that create tables, indices, columns and relationships
+     * or comment on them are run alongside others. Each of them follows the
+     * earlier statements on the same table, and a relationship follows the
+     * earlier statements on both of its tables. Every other statement, such
+     * as a drop or an alter, is put in a group of its own after everything
+     * before it, so scripts that change existing objects run in their
+     * original order.
+     *
+     * @return The groups in the order they have to run, with the statements
+     *         of each group in their original order.
+     */
+    public static List<List<DDLStatement>> groupStatements(List<DDLStatement> statements) {
+        List<List<DDLStatement>> groups = new ArrayList<List<DDLStatement>>();
+        Map<SQLTable, Integer> lastGroup = new IdentityHashMap<SQLTable, Integer>();
+        int barrier = -1;
+        for (DDLStatement stmt : statements) {
+            List<SQLTable> tables = getTables(stmt);
+            int group;
+            if (tables == null) {
+                group = groups.size();
+                barrier = group;
+            } else {
+                group = barrier + 1;
+                for (SQLTable t : tables) {
+                    Integer g = lastGroup.get(t);
+                    if (g != null) group = Math.max(group, g + 1);
+                }
+                for (SQLTable t : tables) {
+                    lastGroup.put(t, group);
+                }
+            }
+            while (groups.size() <= group) {
+                groups.add(new ArrayList<DDLStatement>());
+            }
+            groups.get(group).add(stmt);
+        }
+        return groups;
+    }
+
+    /**
+     * Returns the tables the given statement creates or changes, or null if
+     * it has to run on its own.
+     */
+    private static List<SQLTable> getTables(DDLStatement stmt) {
+        if (!StatementType.CREATE.equals(stmt.getType()) && !StatementType.COMMENT.equals(stmt.getType())) {
+            return null;
+        }
+        SQLObject obj = stmt.getObject();
+        if (obj instanceof SQLRelationship) {
+            SQLRelationship r = (SQLRelationship) obj;
+            if (r.getPkTable() == null || r.getFkTable() == null) return null;
+            List<SQLTable> tables = new ArrayList<SQLTable>(2);
+            tables.add(r.getFkTable());
+            if (r.getPkTable() != r.getFkTable()) {
+                tables.add(r.getPkTable());
+            }
+            return tables;
+        }
+        SQLTable table = obj instanceof SQLTable ? (SQLTable) obj : SQLPowerUtils.getAncestor(obj, SQLTable.class);
+        if (table == null) return null;
+        return Collections.singletonList(table);
+    }
+
+    /**
+     * Runs the given statements against the target database. Statements that
+     * fail are skipped, and the rest of the script still runs.
+     *
+     * @return The statements that failed, in the order they appear in the
+     *         script. Empty if all of them succeeded.
+     * @throws SQLObjectException
+     *             If a connection to the target database can't be made.
+     */
+    public List<Failure> execute(List<DDLStatement> statements) throws SQLObjectException, SQLException {
+        synchronized (this) {
+            failures.clear();
+            executedCount = 0;
+        }
+        cancelled = false;
+        List<List<DDLStatement>> groups = groupStatements(statements);
+        int widestGroup = 1;
+        for (List<DDLStatement> group : groups) {
+            widestGroup = Math.max(widestGroup, group.size());
+        }
+        int poolSize = Math.max(1, Math.min(connectionCount, widestGroup));
+        logger.debug("Executing " + statements.size() + " statements in " + groups.size() +
+                " groups on " + poolSize + " connections");
+
+        BlockingQueue<Connection> connections = new LinkedBlockingQueue<Connection>();
+        ExecutorService executor = null;
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                connections.add(target.getConnection());
+            }
+            batching = useBatches && connections.peek().getMetaData().supportsBatchUpdates();
+            if (poolSize > 1) {
+                executor = Executors.newFixedThreadPool(poolSize);
+            }
+
+            for (List<DDLStatement> group : groups) {
+                if (cancelled) break;
+                int chunkSize = batching ?
+                        Math.max(1, Math.min(batchSize, (group.size() + poolSize - 1) / poolSize)) : 1;
+                List<Future<Object>> chunks = new ArrayList<Future<Object>>();
+                for (int i = 0; i < group.size(); i += chunkSize) {
+                    chunks.add(submitChunk(executor, connections,
+                            group.subList(i, Math.min(group.size(), i + chunkSize))));
+                }
+                for (Future<Object> chunk : chunks) {
+                    waitFor(chunk);
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (Connection con : connections) {
+                try {
+                    con.close();
+                } catch (SQLException ex) {
+                    logger.error("Couldn't close connection", ex);
+                }
+            }
+        }
+
+        final Map<DDLStatement, Integer> positions = new IdentityHashMap<DDLStatement, Integer>();
+        for (int i = 0; i < statements.size(); i++) {
+            positions.put(statements.get(i), i);
+        }
+        List<Failure> report;
+        synchronized (this) {
+            report = new ArrayList<Failure>(failures);
+        }
+        Collections.sort(report, new Comparator<Failure>() {
+            public int compare(Failure f1, Failure f2) {
+                return positions.get(f1.getStatement()) - positions.get(f2.getStatement());
+            }
+        });
+        return report;
+    }
+
+    /**
+     * Starts running the given statements on a connection from the pool. The
+     * statements are run on the given executor, or on this thread if it is
+     * null.
+     */
+    private Future<Object> submitChunk(ExecutorService executor,
+            final BlockingQueue<Connection> connections, final List<DDLStatement> chunk) {
+        FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() throws SQLException, InterruptedException {
+                if (cancelled) return null;
+                Connection con = connections.take();
+                try {
+                    executeChunk(con, chunk);
+                } finally {
+                    connections.add(con);
+                }
+                return null;
+            }
+        });
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    private void waitFor(Future<Object> chunk) throws SQLException {
+        try {
+            chunk.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Runs the given statements on the given connection, as one batch if
+     * batches are in use. If the batch fails part way through, the
+     * statements after the one that failed are run one at a time. If the
+     * driver turns out not to support batches before any statement has run,
+     * batches are turned off and the statements are run one at a time. Any
+     * other failure of the batch is reported against all of its statements,
+     * since there is no telling which of them were applied.
+     */
+    private void executeChunk(Connection con, List<DDLStatement> chunk) throws SQLException {
+        Statement stmt = con.createStatement();
+        try {
+            List<DDLStatement> remaining = chunk;
+            if (batching && chunk.size() > 1) {
+                boolean batched = true;
+                try {
+                    for (DDLStatement ddl : chunk) {
+                        stmt.addBatch(ddl.getSQLText());
+                    }
+                } catch (SQLException ex) {
+                    // nothing has run yet, so the statements can still be run one at a time
+                    logger.info("Driver won't batch DDL; running statements one at a time", ex);
+                    batching = false;
+                    batched = false;
+                }
+                if (batched) {
+                    try {
+                        stmt.executeBatch();
+                        for (DDLStatement ddl : chunk) {
+                            executed(ddl, null);
+                        }
+                        return;
+                    } catch (BatchUpdateException ex) {
+                        int[] counts = ex.getUpdateCounts();
+                        if (counts != null && counts.length == chunk.size()) {
+                            // the driver ran every statement and marked the ones that failed
+                            for (int i = 0; i < chunk.size(); i++) {
+                                executed(chunk.get(i), counts[i] == Statement.EXECUTE_FAILED ? ex : null);
+                            }
+                            return;
+                        }
+                        // the driver stopped at the first failure
+                        int done = counts == null ? 0 : counts.length;
+                        for (int i = 0; i < done; i++) {
+                            executed(chunk.get(i), null);
+                        }
+                        executed(chunk.get(done), ex);
+                        remaining = chunk.subList(done + 1, chunk.size());
+                    } catch (SQLFeatureNotSupportedException ex) {
+                        logger.info("Driver won't run DDL in a batch; running statements one at a time", ex);
+                        batching = false;
+                    } catch (SQLException ex) {
+                        // there is no telling which statements ran, so running
+                        // them again could apply some twice. Every statement
+                        // in the batch is reported with the failure instead.
+                        logger.info("DDL batch failed: " + ex.getMessage());
+                        for (DDLStatement ddl : chunk) {
+                            executed(ddl, ex);
+                        }
+                        return;
+                    }
+                }
+                stmt.close();
+                stmt = con.createStatement();
+            }
+
+            for (DDLStatement ddl : remaining) {
+                if (cancelled) return;
+                try {
+                    logger.info("executing: " + ddl.getSQLText());
+                    stmt.executeUpdate(ddl.getSQLText());
+                    executed(ddl, null);
+                } catch (SQLException ex) {
+                    logger.info("sql statement failed: " + ex.getMessage());
+                    executed(ddl, ex);
+                }
+            }
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private synchronized void executed(DDLStatement ddl, SQLException failure) {
+        executedCount++;
+        if (failure != null) {
+            failures.add(new Failure(ddl, failure));
+        }
+        if (listener != null) {
+            listener.statementExecuted(ddl, failure);
+        }
+    }
+
+    /**
+     * Stops the script after the statements that are running now. The
+     * statements that haven't started are not run.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the number of statements run so far, whether they succeeded or
+     * not.
+     */
+    public synchronized int getExecutedCount() {
+        return executedCount;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Sets the most connections the statements are run on at once. With a
+     * count of 1 or less, the whole script runs on one connection on the
+     * calling thread. Defaults to 4.
+     */
+    public void setConnectionCount(int connectionCount) {
+        this.connectionCount = connectionCount;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the largest number of statements sent to the database in one
+     * batch. Defaults to {@link #DEFAULT_BATCH_SIZE}.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public boolean isUseBatches() {
+        return useBatches;
+    }
+
+    /**
+     * Sets whether statements are sent to the database in batches when the
+     * driver supports it. Defaults to true.
+     */
+    public void setUseBatches(boolean useBatches) {
+        this.useBatches = useBatches;
+    }
+
+    public void setExecutionListener(ExecutionListener listener) {
+        this.listener = listener;
+    }
+}
@@ -18,7 +18,13 @@
  */
 package ca.sqlpower.architect.ddl;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
 
 import org.apache.log4j.Logger;
@@ -39,6 +45,18 @@ public class DDLUtils {
     private static final Class<? extends DDLGenerator> DEFAULT_DDL_GENERATOR_CLASS = 
         GenericDDLGenerator.class;
 
+    /**
+     * The resource holding the default data source type properties for each
+     * DDL generator. See {@link #getPlatformProperty(JDBCDataSourceType, String)}.
+     */
+    private static final String PLATFORM_DEFAULTS_RESOURCE = "ca/sqlpower/architect/pl.default.ini";
+
+    /**
+     * The default properties read from {@link #PLATFORM_DEFAULTS_RESOURCE},
+     * by DDL generator class name. Null until they are first needed.
+     */
+    private static Map<String, Map<String, String>> platformDefaults;
+
 	/**
 	 * DDLUtils is a container for static methods.  You can't make an instance of it.
 	 */
@@ -183,4 +201,73 @@ public class DDLUtils {
         return (DDLGenerator) generatorClass.newInstance();
     }
 
+    /**
+     * Returns a property of the given data source type, or the default value
+     * of the property for the type's DDL generator if the type doesn't set
+     * it. The defaults are in the section of <code>pl.default.ini</code>
+     * named for the generator class or the nearest superclass that has one.
+     * Setting the property to an empty value on the data source type turns
+     * the default off.
+     *
+     * @return The value, or null if it is neither set nor has a default, or
+     *         is set to an empty value.
+     */
+    public static String getPlatformProperty(JDBCDataSourceType dst, String key) {
+        if (dst == null) return null;
+        String value = dst.getProperty(key);
+        if (value != null) {
+            return value.trim().length() == 0 ? null : value;
+        }
+        String className = dst.getDDLGeneratorClass();
+        if (className == null) return null;
+        Map<String, Map<String, String>> defaults = getPlatformDefaults();
+        try {
+            Class<?> c = Class.forName(className, false, DDLUtils.class.getClassLoader());
+            for ( ; c != null; c = c.getSuperclass()) {
+                Map<String, String> section = defaults.get(c.getName());
+                if (section != null && section.containsKey(key)) {
+                    return section.get(key);
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            logger.warn("Couldn't load DDL Generator class " + className +
+                    " specified in database type " + dst.getName() + " to look up " + key);
+        }
+        return null;
+    }
+
+    private static synchronized Map<String, Map<String, String>> getPlatformDefaults() {
+        if (platformDefaults != null) return platformDefaults;
+        platformDefaults = new HashMap<String, Map<String, String>>();
+        InputStream in = DDLUtils.class.getClassLoader().getResourceAsStream(PLATFORM_DEFAULTS_RESOURCE);
+        if (in == null) {
+            logger.warn("Couldn't find " + PLATFORM_DEFAULTS_RESOURCE);
+            return platformDefaults;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            Map<String, String> section = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith(";")) continue;
+                if (line.startsWith("[") && line.endsWith("]")) {
+                    section = new HashMap<String, String>();
+                    platformDefaults.put(line.substring(1, line.length() - 1), section);
+                } else if (section != null && line.indexOf('=') > 0) {
+                    int eq = line.indexOf('=');
+                    section.put(line.substring(0, eq), line.substring(eq + 1));
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Couldn't read " + PLATFORM_DEFAULTS_RESOURCE, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                logger.error("Couldn't close " + PLATFORM_DEFAULTS_RESOURCE, e);
+            }
+        }
+        return platformDefaults;
+    }
 }
@@ -18,6 +18,8 @@
  */
 package ca.sqlpower.architect.ddl;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
@@ -26,10 +28,17 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.log4j.Logger;
 
@@ -41,6 +50,7 @@ import ca.sqlpower.diff.DiffChunk;
 import ca.sqlpower.object.SPResolverRegistry;
 import ca.sqlpower.object.SPVariableHelper;
 import ca.sqlpower.object.SPVariableResolver;
+import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sqlobject.SQLCheckConstraint;
 import ca.sqlpower.sqlobject.SQLCheckConstraintVariableResolver;
 import ca.sqlpower.sqlobject.SQLCheckConstraintVariableResolver.SQLCheckConstraintVariable;
@@ -90,15 +100,59 @@ public class GenericDDLGenerator implements DDLGenerator {
 
 	/**
 	 * This is where each DDL statement gets accumulated while it is
-	 * being generated.
+	 * being generated. Each thread has its own buffer so that the statements
+	 * for several tables can be generated at once; see
+	 * {@link #setThreadCount(int)}.
 	 */
-	private StringBuffer ddl;
+	private final ThreadLocal<StringBuffer> ddl = new ThreadLocal<StringBuffer>() {
+	    @Override
+	    protected StringBuffer initialValue() {
+	        return new StringBuffer(500).append(EOL);
+	    }
+	};
 
 	/**
 	 * Complete DDL statements (of type DDLStatement) are accumulated in this list.
 	 */
 	private List<DDLStatement> ddlStatements;
 
+	/**
+	 * While {@link #generateDDLStatements(Collection)} renders the statements
+	 * for one table, they are collected in this thread's list instead of
+	 * going straight to {@link #ddlStatements} or the script writer. Null
+	 * the rest of the time.
+	 */
+	private final ThreadLocal<List<DDLStatement>> blockStatements = new ThreadLocal<List<DDLStatement>>();
+
+	/**
+	 * The number of threads that render the statements for separate tables
+	 * in {@link #generateDDLStatements(Collection)}.
+	 */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The type maps and rendered column types shared with other generators,
+	 * or null to build them afresh on every run.
+	 */
+	private TypeMapCache typeMapCache = TypeMapCache.getSharedInstance();
+
+	/**
+	 * While {@link #writeDDLScript(Collection, Writer)} is running, complete
+	 * DDL statements are written here instead of being accumulated in
+	 * {@link #ddlStatements}. Null the rest of the time.
+	 */
+	private Writer scriptWriter;
+
+	/**
+	 * Carries an IOException from {@link #endStatement(StatementType, SQLObject)},
+	 * which can't throw one, out to {@link #writeDDLScript(Collection, Writer)}.
+	 */
+	private static class ScriptWriteException extends RuntimeException {
+	    ScriptWriteException(IOException cause) {
+	        super(cause);
+	    }
+	}
+
 	/**
 	 * This is initialized to the System line.separator property.
 	 */
@@ -107,6 +161,9 @@ public class GenericDDLGenerator implements DDLGenerator {
 	/**
 	 * A mapping from JDBC type code (Integer values) to
 	 * GenericTypeDescriptor objects which describe that data type.
+	 * While {@link #generateDDLStatements(Collection)} runs, this is an
+	 * unmodifiable view so it can be shared by the threads generating
+	 * statements.
 	 */
 	protected Map<Integer, GenericTypeDescriptor> typeMap;
 
@@ -123,6 +180,9 @@ public class GenericDDLGenerator implements DDLGenerator {
 	 * multiple objects in this top-level scope use the same name.
      * XXX Consider changing this to a Set as it appears that the values
      * stored in the Map are never used.
+     * <p>
+     * The map is synchronized because the statements for several tables may
+     * be generated at once.
 	 */
 	protected Map<String, SQLObject> topLevelNames;
 
@@ -157,9 +217,7 @@ public class GenericDDLGenerator implements DDLGenerator {
     public GenericDDLGenerator(boolean allowConnection) throws SQLException {
         this.allowConnection = allowConnection;
         ddlStatements = new ArrayList<DDLStatement>();
-        ddl = new StringBuffer(500);
-        println("");
-        topLevelNames = new CaseInsensitiveHashMap();  // for tracking dup table/relationship names
+        topLevelNames = Collections.synchronizedMap(new CaseInsensitiveHashMap());  // for tracking dup table/relationship names
         createTypeMap();
     }
 
@@ -173,19 +231,67 @@ public class GenericDDLGenerator implements DDLGenerator {
     public String generateDDLScript(Collection<SQLTable> tables) throws SQLException, SQLObjectException {
         List<DDLStatement> statements = generateDDLStatements(tables);
 
-		ddl = new StringBuffer(4000);
+		ddl.set(new StringBuffer(4000));
 		writeHeader();
 		writeDDLTransactionBegin();
 
 		Iterator<DDLStatement> it = statements.iterator();
 		while (it.hasNext()) {
 			DDLStatement ddlStmt = (DDLStatement) it.next();
-			ddl.append(ddlStmt.getSQLText());
+			ddl.get().append(ddlStmt.getSQLText());
 			println(getStatementTerminator());
 		}
 
 		writeDDLTransactionEnd();
-		return ddl.toString();
+		return ddl.get().toString();
+	}
+
+	public void writeDDLScript(Collection<SQLTable> tables, Writer out)
+	        throws SQLException, SQLObjectException, IOException {
+	    writeScriptStart(out);
+	    scriptWriter = out;
+	    try {
+	        generateDDLStatements(tables);
+	    } catch (ScriptWriteException ex) {
+	        throw (IOException) ex.getCause();
+	    } finally {
+	        scriptWriter = null;
+	    }
+	    writeScriptEnd(out);
+	}
+
+	public void writeDDLScript(Writer out) throws IOException {
+	    writeScriptStart(out);
+	    if (ddlStatements != null) {
+	        for (DDLStatement stmt : ddlStatements) {
+	            out.write(stmt.getSQLText());
+	            out.write(stmt.getSqlTerminator());
+	            out.write(EOL);
+	        }
+	    }
+	    writeScriptEnd(out);
+	}
+
+	/**
+	 * Writes the header and the start of the transaction that come before the
+	 * statements of a script.
+	 */
+	private void writeScriptStart(Writer out) throws IOException {
+	    ddl.set(new StringBuffer(4000));
+	    writeHeader();
+	    writeDDLTransactionBegin();
+	    out.write(ddl.get().toString());
+	}
+
+	/**
+	 * Writes the end of the transaction that comes after the statements of a
+	 * script, and flushes the writer.
+	 */
+	private void writeScriptEnd(Writer out) throws IOException {
+	    ddl.set(new StringBuffer(500));
+	    writeDDLTransactionEnd();
+	    out.write(ddl.get().toString());
+	    out.flush();
 	}
 
 
@@ -201,8 +307,8 @@ public class GenericDDLGenerator implements DDLGenerator {
 	 */
 	public final List<DDLStatement> generateDDLStatements(Collection<SQLTable> tables) throws SQLException, SQLObjectException {
 		ddlStatements = new ArrayList<DDLStatement>();
-		ddl = new StringBuffer(500);
-        topLevelNames = new CaseInsensitiveHashMap();
+		ddl.set(new StringBuffer(500));
+        topLevelNames = Collections.synchronizedMap(new CaseInsensitiveHashMap());
 
         /*
          * topological sort ensures parent tables are created before their
@@ -213,35 +319,64 @@ public class GenericDDLGenerator implements DDLGenerator {
         DepthFirstSearch dfs = new DepthFirstSearch(tableList);
         tableList = dfs.getFinishOrder();
 
+        ExecutorService executor = null;
 		try {
+		    JDBCDataSource dataSource = null;
 			if (allowConnection && tableList.size() > 0) {
                 SQLDatabase parentDb = SQLPowerUtils.getAncestor(tableList.get(0), SQLDatabase.class);
                 if (parentDb.isPlayPenDatabase()) {
                     con = null;
                 } else {
                     con = parentDb.getConnection();
+                    dataSource = parentDb.getDataSource();
                 }
 			} else {
 				con = null;
 			}
 
-			createTypeMap();
-
-			for (SQLTable t : tableList) {
+			Map<Integer, GenericTypeDescriptor> cachedTypeMap = null;
+			if (typeMapCache != null) {
+			    cachedTypeMap = typeMapCache.getTypeMap(getClass(), dataSource);
+			}
+			if (cachedTypeMap != null) {
+			    typeMap = cachedTypeMap;
+			} else {
+			    createTypeMap();
+			    if (typeMapCache != null) {
+			        typeMap = typeMapCache.putTypeMap(getClass(), dataSource, typeMap);
+			    } else {
+			        typeMap = Collections.unmodifiableMap(typeMap);
+			    }
+			}
 
-				addTable(t);
+			// naming objects fires events on them, which has to happen on
+			// this thread, so every name is settled before any table is rendered
+			createPhysicalNames(tableList);
 
-                for (SQLIndex index : t.getIndices()) {
-                   if (index.isPrimaryKeyIndex()) continue;
-                    addIndex(index);
-                }
+			if (threadCount > 1 && tableList.size() > 1 && canGenerateTablesConcurrently()) {
+			    executor = Executors.newFixedThreadPool(Math.min(threadCount, tableList.size()));
 			}
 
-            for (SQLTable t : tableList) {
-				writeExportedRelationships(t);
+			// blocks are rendered in any order but emitted in the order of
+			// tableList, all the tables and indices before any relationship
+			List<Future<List<DDLStatement>>> pending = new ArrayList<Future<List<DDLStatement>>>();
+			boolean first = true;
+			for (SQLTable t : tableList) {
+			    pending.add(submitBlock(executor, t, false, first));
+			    first = false;
+			    if (executor == null) emitBlock(pending.remove(0));
+			}
+			for (SQLTable t : tableList) {
+			    pending.add(submitBlock(executor, t, true, false));
+			    if (executor == null) emitBlock(pending.remove(0));
+			}
+			for (Future<List<DDLStatement>> block : pending) {
+			    emitBlock(block);
 			}
-
 		} finally {
+		    if (executor != null) {
+		        executor.shutdownNow();
+		    }
 			try {
 				if (con != null) con.close();
 			} catch (SQLException ex) {
@@ -251,6 +386,113 @@ public class GenericDDLGenerator implements DDLGenerator {
 		return ddlStatements;
 	}
 
+	/**
+	 * Sets the physical name of each of the given tables and of their
+	 * columns, indices and exported relationships if it hasn't been set yet.
+	 */
+	private void createPhysicalNames(List<SQLTable> tableList) throws SQLObjectException {
+	    for (SQLTable t : tableList) {
+	        createPhysicalName(topLevelNames, t);
+	        for (SQLColumn c : t.getColumns()) {
+	            createPhysicalName(topLevelNames, c);
+	        }
+	        for (SQLIndex index : t.getIndices()) {
+	            createPhysicalName(topLevelNames, index);
+	        }
+	        for (SQLRelationship r : t.getExportedKeys()) {
+	            createPhysicalName(topLevelNames, r);
+	        }
+	    }
+	}
+
+	/**
+	 * Starts rendering the statements that create one table and its indices,
+	 * or the table's exported relationships. The statements are rendered on
+	 * the given executor, or on this thread if it is null.
+	 *
+	 * @param first
+	 *            True for the first block of the script. Every other block
+	 *            starts with the blank line that follows the previous
+	 *            statement.
+	 */
+	private Future<List<DDLStatement>> submitBlock(ExecutorService executor,
+	        final SQLTable t, final boolean relationships, final boolean first) {
+	    FutureTask<List<DDLStatement>> block = new FutureTask<List<DDLStatement>>(
+	            new Callable<List<DDLStatement>>() {
+	        public List<DDLStatement> call() throws SQLException, SQLObjectException {
+	            List<DDLStatement> statements = new ArrayList<DDLStatement>();
+	            blockStatements.set(statements);
+	            ddl.set(new StringBuffer(500));
+	            if (!first) println("");
+	            try {
+	                if (relationships) {
+	                    writeExportedRelationships(t);
+	                } else {
+	                    addTable(t);
+	                    for (SQLIndex index : t.getIndices()) {
+	                        if (index.isPrimaryKeyIndex()) continue;
+	                        addIndex(index);
+	                    }
+	                }
+	            } finally {
+	                blockStatements.remove();
+	            }
+	            return statements;
+	        }
+	    });
+	    if (executor == null) {
+	        block.run();
+	    } else {
+	        executor.execute(block);
+	    }
+	    return block;
+	}
+
+	/**
+	 * Waits for the given block of statements to be rendered and adds them to
+	 * {@link #ddlStatements}, or writes them to the script writer if one is
+	 * set.
+	 */
+	private void emitBlock(Future<List<DDLStatement>> block) throws SQLException, SQLObjectException {
+	    List<DDLStatement> statements;
+	    try {
+	        statements = block.get();
+	    } catch (InterruptedException ex) {
+	        Thread.currentThread().interrupt();
+	        throw new SQLObjectException("Interrupted while generating DDL", ex);
+	    } catch (ExecutionException ex) {
+	        Throwable cause = ex.getCause();
+	        if (cause instanceof SQLException) throw (SQLException) cause;
+	        if (cause instanceof SQLObjectException) throw (SQLObjectException) cause;
+	        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+	        if (cause instanceof Error) throw (Error) cause;
+	        throw new SQLObjectException("Error generating DDL", cause);
+	    }
+	    for (DDLStatement stmt : statements) {
+	        if (scriptWriter != null) {
+	            try {
+	                scriptWriter.write(stmt.getSQLText());
+	                scriptWriter.write(stmt.getSqlTerminator());
+	                scriptWriter.write(EOL);
+	            } catch (IOException ex) {
+	                throw new ScriptWriteException(ex);
+	            }
+	        } else {
+	            ddlStatements.add(stmt);
+	        }
+	    }
+	}
+
+	/**
+	 * Returns true if the statements for separate tables can be rendered on
+	 * separate threads. This is only the case when rendering one table
+	 * doesn't depend on the tables rendered before it. Subclasses that keep
+	 * such state should override this to return false.
+	 */
+	protected boolean canGenerateTablesConcurrently() {
+	    return true;
+	}
+
 	/**
 	 * Stores all the ddl since the last call to endStatement as a SQL
 	 * statement. You have to call this at the end of each statement.
@@ -259,12 +501,26 @@ public class GenericDDLGenerator implements DDLGenerator {
 	 * @param sqlObject the object to which the statement pertains
 	 */
 	public final void endStatement(StatementType type, SQLObject sqlObject) {
+		String text = ddl.get().toString();
 		if (logger.isInfoEnabled()) {
-			logger.info("endStatement: " + ddl.toString());
+			logger.info("endStatement: " + text);
 		}
 
-		ddlStatements.add(new DDLStatement(sqlObject, type, ddl.toString(), getStatementTerminator(), getTargetCatalog(), getTargetSchema()));
-		ddl = new StringBuffer(500);
+		List<DDLStatement> block = blockStatements.get();
+		if (block != null) {
+		    block.add(new DDLStatement(sqlObject, type, text, getStatementTerminator(), getTargetCatalog(), getTargetSchema()));
+		} else if (scriptWriter != null) {
+		    try {
+		        scriptWriter.write(text);
+		        scriptWriter.write(getStatementTerminator());
+		        scriptWriter.write(EOL);
+		    } catch (IOException ex) {
+		        throw new ScriptWriteException(ex);
+		    }
+		} else {
+		    ddlStatements.add(new DDLStatement(sqlObject, type, text, getStatementTerminator(), getTargetCatalog(), getTargetSchema()));
+		}
+		ddl.set(new StringBuffer(500));
 		println("");
 	}
 
@@ -1055,6 +1311,11 @@ public class GenericDDLGenerator implements DDLGenerator {
 	 * DatabaseMetaData.  Subclasses for specific DB platforms will be
 	 * able to override this implementation with one that uses a
 	 * static, pre-defined type map.
+	 * <p>
+	 * The map built during {@link #generateDDLStatements(Collection)} is
+	 * shared through the {@link TypeMapCache} by every generator of the same
+	 * class that targets the same data source, so it must not depend on any
+	 * other setting of the generator.
 	 */
 	protected void createTypeMap() throws SQLException {
 		typeMap = new HashMap<Integer, GenericTypeDescriptor>();
@@ -1099,11 +1360,11 @@ public class GenericDDLGenerator implements DDLGenerator {
 	}
 
 	protected void println(String text) {
-		ddl.append(text).append(EOL);
+		ddl.get().append(text).append(EOL);
 	}
 
 	protected void print(String text) {
-		ddl.append(text);
+		ddl.get().append(text);
 	}
 
 	/**
@@ -1193,6 +1454,38 @@ public class GenericDDLGenerator implements DDLGenerator {
 		this.typeMap = argTypeMap;
 	}
 
+    /**
+     * Returns the number of threads that render the statements for separate
+     * tables.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads that render the statements for separate
+     * tables in {@link #generateDDLStatements(Collection)}. With a count of 1
+     * or less, every table is rendered on the calling thread. The statements
+     * are the same, and in the same order, either way. Defaults to the number
+     * of available processors.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public TypeMapCache getTypeMapCache() {
+        return typeMapCache;
+    }
+
+    /**
+     * Sets the cache of type maps shared with other generators. If null, the
+     * type map is built afresh on each run. Defaults to
+     * {@link TypeMapCache#getSharedInstance()}.
+     */
+    public void setTypeMapCache(TypeMapCache typeMapCache) {
+        this.typeMapCache = typeMapCache;
+    }
+
     public Map<String, ProfileFunctionDescriptor> getProfileFunctionMap() {
         return this.profileFunctionMap;
     }
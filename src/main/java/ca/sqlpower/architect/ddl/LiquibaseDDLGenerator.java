@@ -153,6 +153,16 @@ public class LiquibaseDDLGenerator extends GenericDDLGenerator implements DDLGen
 		generateId = flag;
 	}
 
+	/**
+	 * Generated changeSet ids are numbered in the order the statements are
+	 * rendered, so tables can only be rendered on separate threads when ids
+	 * aren't being generated.
+	 */
+	@Override
+	protected boolean canGenerateTablesConcurrently() {
+		return !(separateChangeSets && generateId);
+	}
+
 	protected void startOfStatement() {
 		if (separateChangeSets) {
 			writeOpenChangeSet();
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ca.sqlpower.sql.JDBCDataSource;
+
+/**
+ * Caches the type map of each DDL generator class, keyed by the class and the
+ * data source it was built from, so that forward engineering the same model
+ * again doesn't rebuild it each time. A generator that is allowed to connect
+ * builds its map from the target database's type info, so this saves a round
+ * trip to the database on each run. The maps built from a data source are
+ * forgotten when the data source changes, or when they are older than the
+ * {@link #setTypeMapLifetime(long) type map lifetime}, since the database's
+ * types may change without it.
+ */
+public class TypeMapCache {
+
+    private static final TypeMapCache sharedInstance = new TypeMapCache();
+
+    /**
+     * Returns the cache that DDL generators use unless they are given another.
+     */
+    public static TypeMapCache getSharedInstance() {
+        return sharedInstance;
+    }
+
+    /**
+     * A type map and when it was cached.
+     */
+    private static class CachedTypeMap {
+        final Map<Integer, GenericTypeDescriptor> typeMap;
+        final long created = System.currentTimeMillis();
+
+        CachedTypeMap(Map<Integer, GenericTypeDescriptor> typeMap) {
+            this.typeMap = typeMap;
+        }
+    }
+
+    /**
+     * Forgets the type maps built from a data source whenever one of its
+     * properties, such as its URL or user, changes.
+     */
+    private final PropertyChangeListener dataSourceListener = new PropertyChangeListener() {
+        public void propertyChange(PropertyChangeEvent evt) {
+            if (evt.getSource() instanceof JDBCDataSource) {
+                invalidate((JDBCDataSource) evt.getSource());
+            }
+        }
+    };
+
+    /**
+     * The type maps, keyed by a list of the generator class and the URL of
+     * the data source the map was built from, which is null for maps built
+     * without a connection.
+     */
+    private final Map<List<Object>, CachedTypeMap> typeMaps = new HashMap<List<Object>, CachedTypeMap>();
+
+    /**
+     * How long, in milliseconds, a type map built from a data source is
+     * used before it is built again.
+     */
+    private long typeMapLifetime = 10 * 60 * 1000;
+
+    /**
+     * Returns the type map the given generator class built for the given
+     * data source, or null if it hasn't been cached or has expired.
+     *
+     * @param dataSource
+     *            The data source the generator connected to, or null if it
+     *            didn't connect.
+     */
+    public synchronized Map<Integer, GenericTypeDescriptor> getTypeMap(
+            Class<? extends DDLGenerator> generatorClass, JDBCDataSource dataSource) {
+        List<Object> key = typeMapKey(generatorClass, dataSource);
+        CachedTypeMap cached = typeMaps.get(key);
+        if (cached == null) return null;
+        if (dataSource != null && System.currentTimeMillis() - cached.created >= typeMapLifetime) {
+            typeMaps.remove(key);
+            return null;
+        }
+        return cached.typeMap;
+    }
+
+    /**
+     * Caches the type map the given generator class built for the given data
+     * source. If another map was cached for them in the meantime, it is kept.
+     * The maps built from the data source are forgotten when it changes.
+     *
+     * @return An unmodifiable copy of the cached type map, which is safe to
+     *         share between generators and threads.
+     */
+    public Map<Integer, GenericTypeDescriptor> putTypeMap(
+            Class<? extends DDLGenerator> generatorClass, JDBCDataSource dataSource,
+            Map<Integer, GenericTypeDescriptor> typeMap) {
+        Map<Integer, GenericTypeDescriptor> cachedMap;
+        synchronized (this) {
+            List<Object> key = typeMapKey(generatorClass, dataSource);
+            CachedTypeMap cached = typeMaps.get(key);
+            if (cached == null) {
+                cached = new CachedTypeMap(
+                        Collections.unmodifiableMap(new HashMap<Integer, GenericTypeDescriptor>(typeMap)));
+                typeMaps.put(key, cached);
+            }
+            cachedMap = cached.typeMap;
+        }
+        if (dataSource != null) {
+            // outside the lock, so the cache never calls out while holding
+            // it. Removing first keeps the listener from being added twice.
+            dataSource.removePropertyChangeListener(dataSourceListener);
+            dataSource.addPropertyChangeListener(dataSourceListener);
+        }
+        return cachedMap;
+    }
+
+    private static List<Object> typeMapKey(Class<? extends DDLGenerator> generatorClass, JDBCDataSource dataSource) {
+        return Arrays.<Object>asList(generatorClass, dataSource == null ? null : dataSource.getUrl());
+    }
+
+    /**
+     * Forgets the type maps built from the given data source, so the next
+     * run that connects to it reads its type info again. This happens by
+     * itself when the data source fires a property change.
+     */
+    public synchronized void invalidate(JDBCDataSource dataSource) {
+        String url = dataSource.getUrl();
+        for (Iterator<List<Object>> it = typeMaps.keySet().iterator(); it.hasNext(); ) {
+            Object keyUrl = it.next().get(1);
+            if (keyUrl == null ? url == null : keyUrl.equals(url)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets all cached type maps.
+     */
+    public synchronized void clear() {
+        typeMaps.clear();
+    }
+
+    public synchronized long getTypeMapLifetime() {
+        return typeMapLifetime;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a type map built from a data source is
+     * used before the next run that connects to it reads the database's type
+     * info again. Maps built without a connection don't expire. Defaults to
+     * ten minutes.
+     */
+    public synchronized void setTypeMapLifetime(long typeMapLifetime) {
+        this.typeMapLifetime = typeMapLifetime;
+    }
+}
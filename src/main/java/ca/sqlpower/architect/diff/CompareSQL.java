@@ -19,12 +19,22 @@ package ca.sqlpower.architect.diff;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -63,17 +73,45 @@ public class CompareSQL implements Monitorable {
 	 */
     final static Comparator<SQLObject> uuidComparator = new SPObjectUUIDComparator<SQLObject>();
 
+    /**
+     * The match key of a null object. It is distinct from the key of an
+     * object with a null name, which the comparators do not consider equal to
+     * a null object.
+     */
+    private static final Object NULL_OBJECT_KEY = new Object();
+
 	/**
 	 * The source tables that this compare object will use when asked
-	 * to generate diffs.
+	 * to generate diffs, by match key (see {@link #getMatchKey(SQLObject)}).
+	 * The tables are kept in the order of {@link #getObjectComparator()}.
 	 */
-	private TreeSet<SQLTable> sourceTableSet;
+	private Map<Object, SQLTable> sourceTables;
 
 	/**
 	 * The target tables that this compare object will use when asked
-	 * to generate diffs.
+	 * to generate diffs, by match key and in the same order as the
+	 * source tables.
 	 */
-	private TreeSet<SQLTable> targetTableSet;
+	private Map<Object, SQLTable> targetTables;
+
+    /**
+     * The number of threads that compare matched tables, relationships and
+     * indices.
+     */
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Runs the comparisons of matched objects during
+     * {@link #generateTableDiffs(ArchitectSession)}. This is null when they
+     * are run on the calling thread.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The fingerprints used to skip comparing tables that are the same, or
+     * null to compare every table in full.
+     */
+    private TableFingerprintCache fingerprintCache = TableFingerprintCache.getSharedInstance();
 
 	/**
 	 * The amount of work that needs to be done (for the progress monitor).
@@ -138,17 +176,15 @@ public class CompareSQL implements Monitorable {
 		boolean sourceValid = true;
 		boolean targetValid = true;
 		this.useUUID = useUUID;
-		this.sourceTableSet = new TreeSet<SQLTable>(getObjectComparator());
-		this.sourceTableSet.addAll(sourceTables);
-		this.targetTableSet = new TreeSet<SQLTable>(getObjectComparator());
-		this.targetTableSet.addAll(targetTables);
+		this.sourceTables = mapByMatchKey(sourceTables);
+		this.targetTables = mapByMatchKey(targetTables);
 		this.suppressSimilarities = suppressSimilarities;
 
 
-		if (sourceTableSet.size() != sourceTables.size()){
+		if (this.sourceTables.size() != sourceTables.size()){
 			sourceValid = false;
 		}
-		if (targetTableSet.size() != targetTables.size()){
+		if (this.targetTables.size() != targetTables.size()){
 			targetValid = false;
 		}
 		if (!sourceValid || !targetValid){
@@ -165,7 +201,7 @@ public class CompareSQL implements Monitorable {
 
 		results = new ArrayList<DiffChunk<SQLObject>>();
 		setProgress(0);
-		setJobSize(targetTableSet.size()*2 + sourceTableSet.size()*2);
+		setJobSize(this.targetTables.size()*2 + this.sourceTables.size()*2);
 		setFinished(false);
 		setStarted(false);
 	}
@@ -174,189 +210,257 @@ public class CompareSQL implements Monitorable {
 	return generateTableDiffs(null);
 	}
 	
+	/**
+	 * Compares the source and target tables, then the relationships between
+	 * them, then (if {@link #isCompareIndices()}) their indices.
+	 * <p>
+	 * Tables are matched by looking up their match keys (see
+	 * {@link #getMatchKey(SQLObject)}) rather than by merging two sorted
+	 * sets, and each matched pair is compared on its own task, as are the
+	 * relationships of each primary key table and the indices. The results
+	 * are gathered in the same order a one-table-at-a-time comparison would
+	 * produce them.
+	 */
 	public List<DiffChunk<SQLObject>> generateTableDiffs(ArchitectSession session) throws SQLObjectException {
+	    generateTableDiffs(session, new DiffChunkConsumer() {
+	        public void chunkAdded(DiffChunk<SQLObject> chunk) {
+	            results.add(chunk);
+	        }
+	        public void diffFinished() {
+	            // the caller gets the whole list when we return
+	        }
+	    });
+	    return results;
+	}
+
+	/**
+	 * Performs the same comparison as {@link #generateTableDiffs(ArchitectSession)},
+	 * but hands each chunk to the given consumer as soon as it is known
+	 * instead of collecting them all into a list. The chunks of each matched
+	 * table pair are delivered as soon as that pair (and every pair before
+	 * it) has been compared, so a consumer can show the first tables while
+	 * the rest are still being worked on. Chunks are not kept after they are
+	 * delivered.
+	 * <p>
+	 * The consumer's {@link DiffChunkConsumer#diffFinished()} is always
+	 * called before this method returns, even if it throws.
+	 */
+	public void generateTableDiffs(ArchitectSession session, DiffChunkConsumer consumer) throws SQLObjectException {
 		setStarted(true);
 		setFinished(false);
+		if (threadCount > 1) {
+		    executor = Executors.newFixedThreadPool(threadCount);
+		}
 	    try {
-			Iterator<SQLTable> sourceIter = sourceTableSet.iterator();
-			Iterator<SQLTable> targetIter = targetTableSet.iterator();
-			SQLTable targetTable;
-			SQLTable sourceTable;
-			boolean sourceContinue;
-			boolean targetContinue;
-
-			//Checks if both lists of tables contain any tables at all, if they do
-			//the iterator is initialized for the list
-			if (sourceIter.hasNext()) {
-
-				sourceContinue = true;
-				sourceTable = sourceIter.next();
-				sourceTable.populate();
-			} else {
-				sourceContinue = false;
-				sourceTable = null;
-			}
-
-			if (targetIter.hasNext()) {
-				targetContinue = true;
-				targetTable = targetIter.next();
-				targetTable.populate();
-			} else {
-				targetContinue = false;
-				targetTable = null;
-			}
-
-			// Will loop until one or both the list reaches its last table
-			while (sourceContinue && targetContinue && !isCancelled()) {
-			    logger.debug("Generating table diffs for " + sourceTable.getName());
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(sourceTable, session);
-			        ArchitectUtils.setUpstreamTypesInTable(targetTable, session);
-			    }
-			    DiffChunk<SQLObject> chunk = null;
-			    int compareResult = getObjectComparator().compare(sourceTable, targetTable);
-
-				// bring the source table up to the same level as the target
-				if (compareResult < 0) {
-					chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.LEFTONLY);
-					incProgress(1, sourceTable, targetTable);
-					//results.addAll(generateColumnDiffs(sourceTable, null));
-					if (sourceIter.hasNext()) {
-						sourceTable = (SQLTable) sourceIter.next();
-						sourceTable.populate();
-					} else {
-						sourceContinue = false;
-
-					}
-				}
-
-				// bring the target table up to the same level as the source
-				if (compareResult > 0) {
-					chunk = new DiffChunk<SQLObject>(targetTable, DiffType.RIGHTONLY);
-					incProgress(1, sourceTable, targetTable);
-					// now don't do the columns it's already handled
-					//results.addAll(generateColumnDiffs(null, targetTable));
-					if (targetIter.hasNext()) {
-						targetTable = (SQLTable) targetIter.next();
-						targetTable.populate();
-					} else {
-						targetContinue = false;
-					}
-				}
-
-				if (compareResult == 0) {
-                    List<PropertyChange> changes = generatePropertyChanges(sourceTable, targetTable);
-					if (changes.size() > 0) {
-						if (nameComparator.compare(sourceTable, targetTable) != 0) {
-							chunk = new DiffChunk<SQLObject>(targetTable, DiffType.NAME_CHANGED);
-							chunk.setOriginalData(sourceTable);
-						} else if (!StringUtils.equals(sourceTable.getRemarks(), targetTable.getRemarks())) {
-                            // If the remarks are the same, then don't generate SQL script
-                            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SQL_MODIFIED);
-                        } else {
-                            // If the remarks were changed, generate SQL script for that
-                            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.MODIFIED);
-                        }
-                        for (PropertyChange change : changes) {
-                            chunk.addPropertyChange(change);
-                        }
-                    } else {
-                        chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SAME);
-                    }
-                    incProgress(1, sourceTable, targetTable);
-                    List<DiffChunk<SQLObject>> columns = generateColumnDiffs(sourceTable, targetTable);
-                    if (!(chunk.getType() == DiffType.SAME && suppressSimilarities) || columns.size() > 0) {
-                        results.add(chunk);
-                        results.addAll(columns);
-                    }
-					if (!targetIter.hasNext() && !sourceIter.hasNext())
-					{
-						targetContinue = false;
-						sourceContinue = false;
-					}
-					if (targetIter.hasNext()) {
-						targetTable = (SQLTable) targetIter.next();
-						targetTable.populate();
-					} else {
-						targetContinue = false;
-					}
-
-					if (sourceIter.hasNext()) {
-						sourceTable = (SQLTable) sourceIter.next();
-						sourceTable.populate();
-					}
-
-					else {
-						sourceContinue = false;
-					}
-				} else {
-				    // If we are adding column diffs, the table diff must be in the list first.
-				    // If we are not generating column diffs, we have waited until now to add the chunk.
-				    results.add(chunk);
-				}
+	        List<TablePair> pairs = matchTables();
+
+	        // populating tables and setting their upstream types isn't thread
+	        // safe, so it's all done up front on this thread
+	        for (TablePair pair : pairs) {
+	            if (isCancelled()) break;
+	            if (pair.source != null) {
+	                prepareTable(pair.source, session);
+	            }
+	            if (pair.target != null) {
+	                prepareTable(pair.target, session);
+	            }
+	        }
 
-			}
-			// If any tables in the sourceList still exist, the changes are added
-			while (sourceContinue && !isCancelled()) {
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(sourceTable, session);
-			    }
-				results.add(new DiffChunk<SQLObject>(sourceTable, DiffType.LEFTONLY));
-				incProgress(1, sourceTable, null);
-				//results.addAll(generateColumnDiffs(sourceTable, null));
-				if (sourceIter.hasNext()) {
-					sourceTable = (SQLTable) sourceIter.next();
-					sourceTable.populate();
-				} else {
-					sourceContinue = false;
-				}
-			}
+	        Future<List<DiffChunk<SQLObject>>> indexDiffs = null;
+	        if (compareIndex) {
+	            indexDiffs = submitIndexDiffs(sourceTables.values(), targetTables.values());
+	        }
+	        List<Future<List<DiffChunk<SQLObject>>>> relationshipDiffs =
+	            submitRelationshipDiffs(sourceTables.values(), targetTables.values());
+
+	        for (TablePair pair : pairs) {
+	            if (isCancelled()) break;
+	            if (pair.source != null && pair.target != null) {
+	                final SQLTable sourceTable = pair.source;
+	                final SQLTable targetTable = pair.target;
+	                pair.diffs = submit(new Callable<List<DiffChunk<SQLObject>>>() {
+	                    public List<DiffChunk<SQLObject>> call() throws SQLObjectException {
+	                        return generateMatchedTableDiffs(sourceTable, targetTable);
+	                    }
+	                });
+	            }
+	        }
 
-			//If any remaining tables in the targetList still exist, they are now being added
-			while (targetContinue && !isCancelled()) {
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(targetTable, session);
-			    }
-				results.add(new DiffChunk<SQLObject>(targetTable, DiffType.RIGHTONLY));
-				incProgress(1, null, targetTable);
+	        for (TablePair pair : pairs) {
+	            if (isCancelled()) break;
+	            if (pair.diffs != null) {
+	                deliver(getResult(pair.diffs), consumer);
+	                pair.diffs = null;
+	            } else if (pair.source != null) {
+	                consumer.chunkAdded(new DiffChunk<SQLObject>(pair.source, DiffType.LEFTONLY));
+	                incProgress(1, pair.source, null);
+	            } else if (pair.target != null) {
+	                consumer.chunkAdded(new DiffChunk<SQLObject>(pair.target, DiffType.RIGHTONLY));
+	                incProgress(1, null, pair.target);
+	            }
+	        }
 
-				//results.addAll(generateColumnDiffs(null, targetTable));
-				if (targetIter.hasNext()) {
-					targetTable = (SQLTable) targetIter.next();
-					targetTable.populate();
-				} else {
-					targetContinue = false;
-				}
-			}
-			results.addAll(generateRelationshipDiffs(sourceTableSet, targetTableSet));
+	        for (Future<List<DiffChunk<SQLObject>>> diffs : relationshipDiffs) {
+	            deliver(getResult(diffs), consumer);
+	        }
 
-			if (compareIndex) {
-			    results.addAll(generateIndexDiffs(sourceTableSet, targetTableSet));
-			}
+	        if (indexDiffs != null) {
+	            deliver(getResult(indexDiffs), consumer);
+	        }
 		} finally {
+		    if (executor != null) {
+		        executor.shutdownNow();
+		        executor = null;
+		    }
 			setJobSize(null);
 			setFinished(true);
+			consumer.diffFinished();
 		}
-		return results;
 	}
 
-    private List<DiffChunk<SQLObject>> generateRelationshipDiffs(
-			Collection<SQLTable> sourceTables, Collection<SQLTable> targetTables) throws SQLObjectException {
-		SQLRelationshipComparator relComparator = new SQLRelationshipComparator(useUUID);
-		Set<SQLRelationship> sourceRels = new TreeSet<SQLRelationship>(relComparator);
-		Set<SQLRelationship> targetRels = new TreeSet<SQLRelationship>(relComparator);
-		
+	private void deliver(List<DiffChunk<SQLObject>> chunks, DiffChunkConsumer consumer) {
+	    for (DiffChunk<SQLObject> chunk : chunks) {
+	        consumer.chunkAdded(chunk);
+	    }
+	}
 
-		for (SQLTable t : sourceTables) {
-			incProgress(1, t, null);
-			sourceRels.addAll(SQLRelationship.getExportedKeys(t.getImportedKeys()));
-		}
+    /**
+     * Populates the given table and sets the upstream types of its columns
+     * if there is a session to find them in.
+     */
+    private void prepareTable(SQLTable table, ArchitectSession session) throws SQLObjectException {
+        table.populate();
+        if (session != null) {
+            ArchitectUtils.setUpstreamTypesInTable(table, session);
+        }
+    }
 
-		for (SQLTable t : targetTables) {
-			incProgress(1, null, t);
-			targetRels.addAll(SQLRelationship.getExportedKeys(t.getImportedKeys()));
-		}
+    /**
+     * Creates the DiffChunks for a source and target table that match each
+     * other: one for the tables themselves followed by the chunks for their
+     * columns. If the tables and all their columns are the same and
+     * similarities are suppressed, the list is empty.
+     */
+    private List<DiffChunk<SQLObject>> generateMatchedTableDiffs(SQLTable sourceTable, SQLTable targetTable)
+    throws SQLObjectException {
+        List<DiffChunk<SQLObject>> diffs = new ArrayList<DiffChunk<SQLObject>>();
+        if (isCancelled()) return diffs;
+
+        if (fingerprintCache != null && fingerprintCache.getFingerprint(sourceTable, useUUID) ==
+                fingerprintCache.getFingerprint(targetTable, useUUID)) {
+            logger.debug("Fingerprints of " + sourceTable.getName() + " match; skipping table diffs");
+            incProgress(1, sourceTable, targetTable);
+            if (!suppressSimilarities) {
+                diffs.add(new DiffChunk<SQLObject>(sourceTable, DiffType.SAME));
+                Set<SQLColumn> columns = new TreeSet<SQLColumn>(getObjectComparator());
+                columns.addAll(sourceTable.getColumns());
+                for (SQLColumn column : columns) {
+                    diffs.add(new DiffChunk<SQLObject>(column, DiffType.SAME));
+                }
+            }
+            return diffs;
+        }
+
+        logger.debug("Generating table diffs for " + sourceTable.getName());
+
+        DiffChunk<SQLObject> chunk;
+        List<PropertyChange> changes = generatePropertyChanges(sourceTable, targetTable);
+        if (changes.size() > 0) {
+            if (nameComparator.compare(sourceTable, targetTable) != 0) {
+                chunk = new DiffChunk<SQLObject>(targetTable, DiffType.NAME_CHANGED);
+                chunk.setOriginalData(sourceTable);
+            } else if (!StringUtils.equals(sourceTable.getRemarks(), targetTable.getRemarks())) {
+                // If the remarks are the same, then don't generate SQL script
+                chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SQL_MODIFIED);
+            } else {
+                // If the remarks were changed, generate SQL script for that
+                chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.MODIFIED);
+            }
+            for (PropertyChange change : changes) {
+                chunk.addPropertyChange(change);
+            }
+        } else {
+            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SAME);
+        }
+        incProgress(1, sourceTable, targetTable);
+        List<DiffChunk<SQLObject>> columns = generateColumnDiffs(sourceTable, targetTable);
+        if (!(chunk.getType() == DiffType.SAME && suppressSimilarities) || columns.size() > 0) {
+            // the table diff must be in the list before its column diffs
+            diffs.add(chunk);
+            diffs.addAll(columns);
+        }
+        return diffs;
+    }
 
+    /**
+     * Collects the relationships of the given tables and starts comparing
+     * them. The relationship comparator orders relationships by their primary
+     * key table first, so the relationships are split up by primary key table
+     * and each group is compared on its own task. Concatenating the results in
+     * the order of the primary key tables gives the same list as comparing
+     * all the relationships at once.
+     *
+     * @return The results of comparing each group, in order.
+     */
+    private List<Future<List<DiffChunk<SQLObject>>>> submitRelationshipDiffs(
+            Collection<SQLTable> sourceTables, Collection<SQLTable> targetTables) throws SQLObjectException {
+        final SQLRelationshipComparator relComparator = new SQLRelationshipComparator(useUUID);
+        Map<Object, RelationshipGroup> groups = new HashMap<Object, RelationshipGroup>();
+
+        for (SQLTable t : sourceTables) {
+            incProgress(1, t, null);
+            for (SQLRelationship r : SQLRelationship.getExportedKeys(t.getImportedKeys())) {
+                getRelationshipGroup(groups, r.getPkTable()).sourceRels.add(r);
+            }
+        }
+
+        for (SQLTable t : targetTables) {
+            incProgress(1, null, t);
+            for (SQLRelationship r : SQLRelationship.getExportedKeys(t.getImportedKeys())) {
+                getRelationshipGroup(groups, r.getPkTable()).targetRels.add(r);
+            }
+        }
+
+        List<RelationshipGroup> orderedGroups = new ArrayList<RelationshipGroup>(groups.values());
+        Collections.sort(orderedGroups, new Comparator<RelationshipGroup>() {
+            public int compare(RelationshipGroup g1, RelationshipGroup g2) {
+                return compareMatchKeys(g1.key, g1.pkTable, g2.key, g2.pkTable);
+            }
+        });
+
+        List<Future<List<DiffChunk<SQLObject>>>> futures = new ArrayList<Future<List<DiffChunk<SQLObject>>>>();
+        for (final RelationshipGroup group : orderedGroups) {
+            futures.add(submit(new Callable<List<DiffChunk<SQLObject>>>() {
+                public List<DiffChunk<SQLObject>> call() throws SQLObjectException {
+                    Set<SQLRelationship> sourceRels = new TreeSet<SQLRelationship>(relComparator);
+                    sourceRels.addAll(group.sourceRels);
+                    Set<SQLRelationship> targetRels = new TreeSet<SQLRelationship>(relComparator);
+                    targetRels.addAll(group.targetRels);
+                    return generateRelationshipDiffs(sourceRels, targetRels, relComparator);
+                }
+            }));
+        }
+        return futures;
+    }
+
+    private RelationshipGroup getRelationshipGroup(Map<Object, RelationshipGroup> groups, SQLTable pkTable) {
+        Object key = getMatchKey(pkTable);
+        RelationshipGroup group = groups.get(key);
+        if (group == null) {
+            group = new RelationshipGroup(key, pkTable);
+            groups.put(key, group);
+        }
+        return group;
+    }
+
+    /**
+     * Creates a List of DiffChunks that describe the differences between the
+     * given sets of relationships. The sets must be sorted by the given
+     * comparator.
+     */
+    private List<DiffChunk<SQLObject>> generateRelationshipDiffs(Set<SQLRelationship> sourceRels,
+            Set<SQLRelationship> targetRels, SQLRelationshipComparator relComparator)
+            throws SQLObjectException {
 		logger.debug("Source relationships: "+sourceRels);
 		logger.debug("Target relationships: "+targetRels);
 
@@ -480,22 +584,20 @@ public class CompareSQL implements Monitorable {
 	
 
 	/**
-     * Creates a List of DiffChunks that describe the differences between the
-     * indices of the given tables.
-     * 
+     * Collects the indices of the given tables and starts comparing them.
+     * Unlike relationships, indices are not ordered by their table, so they
+     * are all compared as one task.
      *
-     * @param sourceTable The "left side" for the comparison.  If null, then all indices
-     * in the target table will be considered obsolete.
-     * @param targetTable The "right side" for the comparison.  If null, then all indices
-     * in the source table will be considered new.
+     * @param sourceTables The "left side" for the comparison.
+     * @param targetTables The "right side" for the comparison.
 	 * @throws SQLObjectException If the getIndices() methods of the source or target
      * tables run into trouble.
      */
-	private List<DiffChunk<SQLObject>> generateIndexDiffs(
+	private Future<List<DiffChunk<SQLObject>>> submitIndexDiffs(
 	        Collection<SQLTable> sourceTables, Collection<SQLTable> targetTables) throws SQLObjectException {
-	    SQLIndexComparator indComparator = new SQLIndexComparator(useUUID);
-	    Set<SQLIndex> sourceInds = new TreeSet<SQLIndex>(indComparator);
-	    Set<SQLIndex> targetInds = new TreeSet<SQLIndex>(indComparator);
+	    final SQLIndexComparator indComparator = new SQLIndexComparator(useUUID);
+	    final Set<SQLIndex> sourceInds = new TreeSet<SQLIndex>(indComparator);
+	    final Set<SQLIndex> targetInds = new TreeSet<SQLIndex>(indComparator);
 
 	    for (SQLTable t : sourceTables) {
 	        incProgress(1, t, null);
@@ -511,6 +613,19 @@ public class CompareSQL implements Monitorable {
 	        }
 	    }
 
+	    return submit(new Callable<List<DiffChunk<SQLObject>>>() {
+	        public List<DiffChunk<SQLObject>> call() throws SQLObjectException {
+	            return generateIndexDiffs(sourceInds, targetInds, indComparator);
+	        }
+	    });
+	}
+
+	/**
+     * Creates a List of DiffChunks that describe the differences between the
+     * given sets of indices. The sets must be sorted by the given comparator.
+     */
+	private List<DiffChunk<SQLObject>> generateIndexDiffs(Set<SQLIndex> sourceInds,
+	        Set<SQLIndex> targetInds, SQLIndexComparator indComparator) throws SQLObjectException {
 	    logger.debug("Source indices: "+sourceInds);
 	    logger.debug("Target indices: "+targetInds);
 
@@ -817,38 +932,219 @@ public class CompareSQL implements Monitorable {
 
 	    List<PropertyChange> changes = new ArrayList<PropertyChange>();
 	    
-
-	    try {
-	        SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(null, sourceObject);
-	        Map<String, Object> sourceProperties = PersisterUtils.getInterestingProperties(sourceObject, converter);
-	        converter = new SessionPersisterSuperConverter(null, targetObject);
-	        Map<String, Object> targetProperties = PersisterUtils.getInterestingProperties(targetObject, converter);
-	        
-
-	        Iterator<String> i = sourceProperties.keySet().iterator();
-	        while (i.hasNext()) {
-	            String propertyName = i.next();
-	            String oldValue = String.valueOf(sourceProperties.get(propertyName));
-	            String newValue = String.valueOf(targetProperties.get(propertyName));
-	            if (oldValue.equals("")) oldValue = "null";
-	            if (newValue.equals("")) newValue = "null";
-	            if (!oldValue.equals(newValue)) {
-	                logger.debug(propertyName + "differs");
-	                changes.add(new PropertyChange(propertyName, oldValue, newValue));
-	            }
+	    Map<String, String> sourceProperties = getComparedProperties(sourceObject);
+	    Map<String, String> targetProperties = getComparedProperties(targetObject);
+
+	    Iterator<String> i = sourceProperties.keySet().iterator();
+	    while (i.hasNext()) {
+	        String propertyName = i.next();
+	        String oldValue = sourceProperties.get(propertyName);
+	        String newValue = String.valueOf(targetProperties.get(propertyName));
+	        if (!oldValue.equals(newValue)) {
+	            logger.debug(propertyName + "differs");
+	            changes.add(new PropertyChange(propertyName, oldValue, newValue));
 	        }
-	    } catch (Exception e) {
-	        throw new SQLObjectException("Error generating property diffs", e);
 	    }
-	    
 
 	    return changes;
 	}
 
+    /**
+     * Returns the interesting properties of the given object as the strings
+     * they are compared by, in the order they are compared. Empty values are
+     * given as "null".
+     */
+    static Map<String, String> getComparedProperties(SQLObject o) throws SQLObjectException {
+        Map<String, Object> properties;
+        try {
+            SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(null, o);
+            properties = PersisterUtils.getInterestingProperties(o, converter);
+        } catch (Exception e) {
+            throw new SQLObjectException("Error generating property diffs", e);
+        }
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            String value = String.valueOf(property.getValue());
+            if (value.equals("")) value = "null";
+            values.put(property.getKey(), value);
+        }
+        return values;
+    }
+
 	private Comparator<SQLObject> getObjectComparator() {
 		return useUUID ? uuidComparator : nameComparator;
 	}
 
+    /**
+     * Returns a key for the given object such that two objects have equal
+     * keys exactly when {@link #getObjectComparator()} considers them equal.
+     * When comparing by name, this is the lower case physical name (or name,
+     * if it has no physical name), which is the name the
+     * {@link SQLObjectComparator} compares. When comparing by UUID, it is
+     * the UUID.
+     */
+    private Object getMatchKey(SQLObject o) {
+        return getMatchKey(o, useUUID);
+    }
+
+    /**
+     * Returns the match key of the given object when comparing by name or
+     * by UUID. See {@link #getMatchKey(SQLObject)}.
+     */
+    static Object getMatchKey(SQLObject o, boolean useUUID) {
+        if (o == null) return NULL_OBJECT_KEY;
+        if (useUUID) return o.getUUID();
+        String name = o.getPhysicalName();
+        if (name == null || name.trim().equals("")) {
+            name = o.getName();
+        }
+        return name == null ? null : name.toLowerCase(Locale.getDefault());
+    }
+
+    /**
+     * Orders two objects the way {@link #getObjectComparator()} does, given
+     * their match keys. When comparing by name, the keys are compared
+     * directly so the names don't have to be normalized again.
+     */
+    private int compareMatchKeys(Object key1, SQLObject o1, Object key2, SQLObject o2) {
+        if (useUUID || o1 == null || o2 == null) {
+            return getObjectComparator().compare(o1, o2);
+        }
+        String n1 = (String) key1;
+        String n2 = (String) key2;
+        if (n1 == null) return n2 == null ? 0 : -1;
+        if (n2 == null) return 1;
+        return n1.compareTo(n2);
+    }
+
+    /**
+     * Returns the given tables by match key, in the order of
+     * {@link #getObjectComparator()}. Tables that match an earlier table are
+     * left out, so the map is smaller than the collection if there are
+     * duplicates.
+     */
+    private Map<Object, SQLTable> mapByMatchKey(Collection<SQLTable> tables) {
+        Map<Object, SQLTable> tablesByKey = new HashMap<Object, SQLTable>();
+        for (SQLTable t : tables) {
+            Object key = getMatchKey(t);
+            if (!tablesByKey.containsKey(key)) {
+                tablesByKey.put(key, t);
+            }
+        }
+        List<Map.Entry<Object, SQLTable>> entries =
+            new ArrayList<Map.Entry<Object, SQLTable>>(tablesByKey.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Object, SQLTable>>() {
+            public int compare(Map.Entry<Object, SQLTable> e1, Map.Entry<Object, SQLTable> e2) {
+                return compareMatchKeys(e1.getKey(), e1.getValue(), e2.getKey(), e2.getValue());
+            }
+        });
+        Map<Object, SQLTable> sorted = new LinkedHashMap<Object, SQLTable>();
+        for (Map.Entry<Object, SQLTable> entry : entries) {
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        return sorted;
+    }
+
+    /**
+     * Pairs up the source and target tables with the same match key, in
+     * the order the tables should be reported.
+     */
+    private List<TablePair> matchTables() {
+        Map<Object, TablePair> pairs = new HashMap<Object, TablePair>();
+        for (Map.Entry<Object, SQLTable> entry : sourceTables.entrySet()) {
+            TablePair pair = new TablePair(entry.getKey());
+            pair.source = entry.getValue();
+            pairs.put(entry.getKey(), pair);
+        }
+        for (Map.Entry<Object, SQLTable> entry : targetTables.entrySet()) {
+            TablePair pair = pairs.get(entry.getKey());
+            if (pair == null) {
+                pair = new TablePair(entry.getKey());
+                pairs.put(entry.getKey(), pair);
+            }
+            pair.target = entry.getValue();
+        }
+        List<TablePair> orderedPairs = new ArrayList<TablePair>(pairs.values());
+        Collections.sort(orderedPairs, new Comparator<TablePair>() {
+            public int compare(TablePair p1, TablePair p2) {
+                return compareMatchKeys(p1.key, p1.getTable(), p2.key, p2.getTable());
+            }
+        });
+        return orderedPairs;
+    }
+
+    /**
+     * Runs the given task on the executor, or right away on this thread if
+     * there is no executor.
+     */
+    private <T> Future<T> submit(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<T>(task);
+        if (executor == null) {
+            future.run();
+        } else {
+            executor.execute(future);
+        }
+        return future;
+    }
+
+    /**
+     * Waits for the given task to finish and returns its result, rethrowing
+     * whatever exception it failed with.
+     */
+    private <T> T getResult(Future<T> future) throws SQLObjectException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLObjectException("Interrupted while comparing", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SQLObjectException) throw (SQLObjectException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new SQLObjectException("Error generating diffs", cause);
+        }
+    }
+
+    /**
+     * A source and target table that match each other. One of them is null
+     * if the table only exists on one side.
+     */
+    private static class TablePair {
+        final Object key;
+        SQLTable source;
+        SQLTable target;
+
+        /**
+         * The diffs of the two tables and their columns, if there are
+         * tables on both sides.
+         */
+        Future<List<DiffChunk<SQLObject>>> diffs;
+
+        TablePair(Object key) {
+            this.key = key;
+        }
+
+        SQLTable getTable() {
+            return source != null ? source : target;
+        }
+    }
+
+    /**
+     * The relationships on both sides whose primary key tables match.
+     */
+    private static class RelationshipGroup {
+        final Object key;
+        final SQLTable pkTable;
+        final List<SQLRelationship> sourceRels = new ArrayList<SQLRelationship>();
+        final List<SQLRelationship> targetRels = new ArrayList<SQLRelationship>();
+
+        RelationshipGroup(Object key, SQLTable pkTable) {
+            this.key = key;
+            this.pkTable = pkTable;
+        }
+    }
+
     // ------------------ Monitorable Interface --------------------
 
     public synchronized Integer getJobSize() {
@@ -934,4 +1230,37 @@ public class CompareSQL implements Monitorable {
     public void setCompareIndices(boolean compareIndices) {
         this.compareIndex = compareIndices;
     }
+
+    /**
+     * Returns the number of threads that compare matched objects.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads that compare matched tables, relationships
+     * and indices. With a count of 1 or less, everything is compared on the
+     * thread that calls {@link #generateTableDiffs(ArchitectSession)}. The
+     * diffs are the same, and in the same order, either way. Defaults to the
+     * number of available processors.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public TableFingerprintCache getFingerprintCache() {
+        return fingerprintCache;
+    }
+
+    /**
+     * Sets the cache of table fingerprints used to recognize matching tables
+     * that are the same without comparing their properties and columns. A
+     * SAME chunk is reported for such tables and each of their columns, just
+     * as a full comparison would. If null, every matching table is compared
+     * in full. Defaults to {@link TableFingerprintCache#getSharedInstance()}.
+     */
+    public void setFingerprintCache(TableFingerprintCache fingerprintCache) {
+        this.fingerprintCache = fingerprintCache;
+    }
 }
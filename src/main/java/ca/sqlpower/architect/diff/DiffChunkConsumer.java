@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.diff;
+
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.sqlobject.SQLObject;
+
+/**
+ * Receives the chunks of a comparison one at a time, as soon as
+ * {@link CompareSQL} has worked them out, instead of as one list at the end.
+ * This lets callers render or filter the results while the comparison is
+ * still running, and discard chunks they have no use for.
+ * <p>
+ * Chunks are delivered in the same order {@link CompareSQL#generateTableDiffs()}
+ * would return them, on the thread that called
+ * {@link CompareSQL#generateTableDiffs(ca.sqlpower.architect.ArchitectSession, DiffChunkConsumer)}.
+ */
+public interface DiffChunkConsumer {
+
+    /**
+     * Called once for each chunk of the comparison, in order.
+     */
+    void chunkAdded(DiffChunk<SQLObject> chunk);
+
+    /**
+     * Called once after the last chunk has been delivered, or after the
+     * comparison was cancelled or failed. No more chunks follow.
+     */
+    void diffFinished();
+}
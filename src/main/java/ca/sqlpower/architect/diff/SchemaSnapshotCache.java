@@ -0,0 +1,724 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.diff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLObjectUtils;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
+import ca.sqlpower.sqlobject.SQLRelationship.Deferrability;
+import ca.sqlpower.sqlobject.SQLRelationship.UpdateDeleteRule;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Keeps snapshots of the tables of physical databases on disk, so comparing
+ * against a database that was compared before doesn't have to read all of
+ * its metadata through JDBC again. There is one snapshot for each data
+ * source, catalog and schema, which is replaced every time it is saved.
+ * <p>
+ * A snapshot holds the tables, columns, primary keys, relationships and,
+ * unless they were left out, indices, with the same properties the project
+ * file saves for them.
+ * Loading one gives a detached tree of SQLObjects under a database that has
+ * no data source, so nothing in it ever goes back to the database.
+ * <p>
+ * Whether a snapshot is still up to date can be checked cheaply on data
+ * source types that define a {@link #TABLE_STAMPS_QUERY}. The stamps of the
+ * tables are saved with the snapshot, and a table whose stamp hasn't changed
+ * since can be taken from the snapshot instead of the database (see
+ * {@link Snapshot#mergeUnchanged(Collection, Map, List)}).
+ */
+public class SchemaSnapshotCache {
+
+    private static final Logger logger = Logger.getLogger(SchemaSnapshotCache.class);
+
+    /**
+     * The data source type property holding a query that lists the tables of
+     * a schema along with a value that changes whenever a table's definition
+     * changes, such as its last DDL time. The first column of the result must
+     * be the table name and the second the stamp. The query may refer to the
+     * compared catalog and schema with the {catalog} and {schema}
+     * placeholders, which are replaced with quoted SQL string literals. For
+     * example, on Oracle:
+     * <pre>
+     * SELECT OBJECT_NAME, LAST_DDL_TIME FROM ALL_OBJECTS
+     *  WHERE OWNER = {schema} AND OBJECT_TYPE IN ('TABLE', 'VIEW')
+     * </pre>
+     */
+    public static final String TABLE_STAMPS_QUERY =
+        "ca.sqlpower.architect.diff.SchemaSnapshotCache.TableStampsQuery";
+
+    /**
+     * The file name suffix of snapshot files.
+     */
+    public static final String FILE_SUFFIX = ".snapshot";
+
+    /**
+     * The first four bytes of every snapshot ("ASNP").
+     */
+    private static final int MAGIC = 0x41534e50;
+
+    private static final int VERSION = 2;
+
+    /**
+     * A table or column position that refers to nothing.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The directory the snapshots are kept in.
+     */
+    private final File directory;
+
+    /**
+     * @param directory
+     *            The directory to keep the snapshots in. It is created when
+     *            the first snapshot is saved.
+     */
+    public SchemaSnapshotCache(File directory) {
+        if (directory == null) {
+            throw new NullPointerException("Null directory");
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the directory snapshots are kept in by default, which is in
+     * the user's home directory.
+     */
+    public static File getDefaultDirectory() {
+        return new File(System.getProperty("user.home"), ".architect-snapshots");
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the file the snapshot of the given catalog and schema of the
+     * given data source is kept in.
+     */
+    public File getFile(String dataSourceName, String catalog, String schema) {
+        String key = toKey(dataSourceName, catalog, schema);
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            byte[] digest = md5.digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16));
+                name.append(Character.forDigit(b & 0xf, 16));
+            }
+            return new File(directory, name + FILE_SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Every JVM has MD5", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Every JVM has UTF-8", e);
+        }
+    }
+
+    /**
+     * Returns the time the snapshot of the given catalog and schema was
+     * taken, or null if there is no snapshot of it that can be read. Only the
+     * start of the file is read.
+     */
+    public Date getSnapshotTime(String dataSourceName, String catalog, String schema) {
+        File file = getFile(dataSourceName, catalog, schema);
+        if (!file.canRead()) return null;
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            DataInputStream data = new DataInputStream(in);
+            if (!readHeader(data, toKey(dataSourceName, catalog, schema))) return null;
+            return new Date(data.readLong());
+        } catch (IOException e) {
+            logger.warn("Couldn't read the time of snapshot " + file, e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Loads the snapshot of the given catalog and schema.
+     * 
+     * @return The snapshot, or null if there is none.
+     * @throws IOException
+     *             If the snapshot file can't be read.
+     */
+    public Snapshot load(String dataSourceName, String catalog, String schema)
+            throws IOException, SQLObjectException {
+        File file = getFile(dataSourceName, catalog, schema);
+        if (!file.exists()) return null;
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            DataInputStream header = new DataInputStream(in);
+            if (!readHeader(header, toKey(dataSourceName, catalog, schema))) return null;
+            long time = header.readLong();
+            DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+            return read(data, new Date(time));
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Saves a snapshot of the given tables, replacing the one saved before.
+     * The tables are populated as needed.
+     * 
+     * @param tables
+     *            The tables of the catalog and schema.
+     * @param stamps
+     *            The stamps of the tables by name, as returned by
+     *            {@link #queryTableStamps(SQLDatabase, String, String)}
+     *            before the tables were read, or null if there are none.
+     * @param includeIndices
+     *            Whether to save the indices other than the primary keys.
+     *            If not, they are not read from the database either.
+     */
+    public void save(String dataSourceName, String catalog, String schema,
+            Collection<SQLTable> tables, Map<String, String> stamps, boolean includeIndices)
+            throws IOException, SQLObjectException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create snapshot directory " + directory);
+        }
+        File file = getFile(dataSourceName, catalog, schema);
+        File temp = File.createTempFile("snapshot", ".tmp", directory);
+        boolean saved = false;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+        try {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            writeString(header, toKey(dataSourceName, catalog, schema));
+            header.writeLong(System.currentTimeMillis());
+            header.flush();
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip));
+            write(data, new ArrayList<SQLTable>(tables),
+                    stamps == null ? Collections.<String, String>emptyMap() : stamps, includeIndices);
+            data.flush();
+            gzip.finish();
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Couldn't replace snapshot " + file);
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Couldn't rename " + temp + " to " + file);
+            }
+            saved = true;
+        } finally {
+            close(out);
+            if (!saved) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given data source's type defines a
+     * {@link #TABLE_STAMPS_QUERY}.
+     */
+    public static boolean supportsTableStamps(JDBCDataSource ds) {
+        if (ds == null || ds.getParentType() == null) return false;
+        String query = ds.getParentType().getProperty(TABLE_STAMPS_QUERY);
+        return query != null && query.trim().length() > 0;
+    }
+
+    /**
+     * Runs the data source type's {@link #TABLE_STAMPS_QUERY} for the given
+     * catalog and schema.
+     * 
+     * @return The stamp of each table by name, or null if the data source
+     *         type has no such query.
+     */
+    public static Map<String, String> queryTableStamps(SQLDatabase db, String catalog, String schema)
+            throws SQLException, SQLObjectException {
+        if (!supportsTableStamps(db.getDataSource())) return null;
+        String sql = db.getDataSource().getParentType().getProperty(TABLE_STAMPS_QUERY)
+            .replace("{catalog}", toLiteral(catalog))
+            .replace("{schema}", toLiteral(schema));
+        Map<String, String> stamps = new HashMap<String, String>();
+        Connection con = null;
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            con = db.getConnection();
+            stmt = con.createStatement();
+            logger.debug("Querying table stamps: " + sql);
+            rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                Object stamp = rs.getObject(2);
+                stamps.put(rs.getString(1), stamp == null ? null : stamp.toString());
+            }
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up after the table stamps query", ex);
+            }
+            if (con != null) con.close();
+        }
+        return stamps;
+    }
+
+    /**
+     * Tables loaded from a snapshot, and the stamps they were saved with.
+     */
+    public static class Snapshot {
+
+        private final Date time;
+        private final SQLObject container;
+        private final List<SQLTable> tables;
+        private final Map<String, String> stamps;
+        private final boolean hasIndices;
+
+        Snapshot(Date time, SQLObject container, List<SQLTable> tables, Map<String, String> stamps,
+                boolean hasIndices) {
+            this.time = time;
+            this.container = container;
+            this.tables = tables;
+            this.stamps = stamps;
+            this.hasIndices = hasIndices;
+        }
+
+        /**
+         * The time the snapshot was taken.
+         */
+        public Date getTime() {
+            return time;
+        }
+
+        /**
+         * The catalog or schema (or database, if there is neither) that holds
+         * the tables of the snapshot.
+         */
+        public SQLObject getContainer() {
+            return container;
+        }
+
+        public List<SQLTable> getTables() {
+            return Collections.unmodifiableList(tables);
+        }
+
+        /**
+         * Whether the indices of the tables were saved. If not, the tables
+         * of the snapshot only have their primary keys.
+         */
+        public boolean hasIndices() {
+            return hasIndices;
+        }
+
+        /**
+         * Returns the stamp the given table had when the snapshot was taken,
+         * or null if it is not known.
+         */
+        public String getStamp(String tableName) {
+            return stamps.get(tableName);
+        }
+
+        /**
+         * Replaces the tables of the given live list that haven't changed
+         * since this snapshot was taken with their copies from the snapshot.
+         * A table is unchanged if it is in the snapshot and its stamp is the
+         * same as when the snapshot was taken. Tables without a known stamp
+         * are always taken to have changed.
+         * 
+         * @param liveTables
+         *            The tables the database has now. They don't have to be
+         *            populated.
+         * @param liveStamps
+         *            The stamps the tables have now.
+         * @param changed
+         *            The live tables that have changed are added to this list,
+         *            so the caller can make sure they are up to date.
+         * @return The live tables, with the unchanged ones replaced, in the
+         *         same order.
+         */
+        public List<SQLTable> mergeUnchanged(Collection<SQLTable> liveTables,
+                Map<String, String> liveStamps, List<SQLTable> changed) {
+            Map<String, SQLTable> snapshotTables = new HashMap<String, SQLTable>();
+            for (SQLTable t : tables) {
+                snapshotTables.put(t.getName(), t);
+            }
+            List<SQLTable> merged = new ArrayList<SQLTable>(liveTables.size());
+            for (SQLTable live : liveTables) {
+                SQLTable saved = snapshotTables.get(live.getName());
+                String liveStamp = liveStamps.get(live.getName());
+                if (saved != null && liveStamp != null && liveStamp.equals(stamps.get(live.getName()))) {
+                    merged.add(saved);
+                } else {
+                    changed.add(live);
+                    merged.add(live);
+                }
+            }
+            return merged;
+        }
+    }
+
+    private void write(DataOutputStream data, List<SQLTable> tables, Map<String, String> stamps,
+            boolean includeIndices) throws IOException, SQLObjectException {
+        Map<SQLTable, Integer> tablePositions = new IdentityHashMap<SQLTable, Integer>();
+        for (int i = 0; i < tables.size(); i++) {
+            tablePositions.put(tables.get(i), i);
+        }
+
+        data.writeBoolean(includeIndices);
+        data.writeInt(tables.size());
+        for (SQLTable t : tables) {
+            writeString(data, t.getCatalogName());
+            writeString(data, t.getSchemaName());
+            writeString(data, t.getName());
+            writeString(data, t.getPhysicalName());
+            writeString(data, t.getRemarks());
+            writeString(data, t.getObjectType());
+            writeString(data, stamps.get(t.getName()));
+
+            List<SQLColumn> columns = t.getColumns();
+            data.writeInt(columns.size());
+            for (SQLColumn c : columns) {
+                writeString(data, c.getName());
+                writeString(data, c.getPhysicalName());
+                data.writeInt(c.getType());
+                writeString(data, c.getSourceDataTypeName());
+                data.writeInt(c.getPrecision());
+                data.writeInt(c.getScale());
+                data.writeInt(c.getNullable());
+                writeString(data, c.getRemarks());
+                writeString(data, c.getDefaultValue());
+                data.writeBoolean(c.isAutoIncrement());
+                writeString(data, c.isAutoIncrementSequenceNameSet() ? c.getAutoIncrementSequenceName() : null);
+            }
+
+            SQLIndex pk = t.getPrimaryKeyIndex();
+            writeString(data, pk == null ? null : pk.getName());
+            List<SQLIndex.Column> pkColumns = pk == null ?
+                    Collections.<SQLIndex.Column>emptyList() : pk.getChildren(SQLIndex.Column.class);
+            data.writeInt(pkColumns.size());
+            for (SQLIndex.Column ic : pkColumns) {
+                data.writeInt(columns.indexOf(ic.getColumn()));
+            }
+
+            List<SQLIndex> indices = new ArrayList<SQLIndex>();
+            if (includeIndices) {
+                for (SQLIndex index : t.getIndices()) {
+                    if (!index.isPrimaryKeyIndex()) {
+                        indices.add(index);
+                    }
+                }
+            }
+            data.writeInt(indices.size());
+            for (SQLIndex index : indices) {
+                writeString(data, index.getName());
+                writeString(data, index.getPhysicalName());
+                data.writeBoolean(index.isUnique());
+                writeString(data, index.getQualifier());
+                writeString(data, index.getType());
+                data.writeBoolean(index.isClustered());
+                writeString(data, index.getFilterCondition());
+                List<SQLIndex.Column> indexColumns = index.getChildren(SQLIndex.Column.class);
+                data.writeInt(indexColumns.size());
+                for (SQLIndex.Column ic : indexColumns) {
+                    data.writeInt(ic.getColumn() == null ? NONE : columns.indexOf(ic.getColumn()));
+                    writeString(data, ic.getName());
+                    writeString(data, ic.getAscendingOrDescending().name());
+                }
+            }
+        }
+
+        List<SQLRelationship> relationships = new ArrayList<SQLRelationship>();
+        for (SQLTable t : tables) {
+            relationships.addAll(SQLRelationship.getExportedKeys(t.getImportedKeys()));
+        }
+        data.writeInt(relationships.size());
+        for (SQLRelationship r : relationships) {
+            SQLTable pkTable = r.getPkTable();
+            Integer pkTablePosition = tablePositions.get(pkTable);
+            writeString(data, r.getName());
+            writeString(data, r.getPhysicalName());
+            data.writeInt(tablePositions.get(r.getFkTable()));
+            data.writeInt(pkTablePosition == null ? NONE : pkTablePosition);
+            if (pkTablePosition == null) {
+                // the primary key table isn't in the snapshot, so just
+                // enough of it is saved to put the relationship back
+                writeString(data, pkTable.getCatalogName());
+                writeString(data, pkTable.getSchemaName());
+                writeString(data, pkTable.getName());
+            }
+            data.writeInt(r.getUpdateRule().getCode());
+            data.writeInt(r.getDeleteRule().getCode());
+            data.writeInt(r.getDeferrability().getCode());
+            data.writeInt(r.getPkCardinality());
+            data.writeInt(r.getFkCardinality());
+            data.writeBoolean(r.isIdentifying());
+            List<ColumnMapping> mappings = r.getChildren(ColumnMapping.class);
+            data.writeInt(mappings.size());
+            for (ColumnMapping m : mappings) {
+                SQLColumn pkColumn = m.getPkColumn();
+                if (pkTablePosition == null) {
+                    writeString(data, pkColumn.getName());
+                    data.writeInt(pkColumn.getType());
+                    data.writeInt(pkColumn.getPrecision());
+                    data.writeInt(pkColumn.getScale());
+                } else {
+                    data.writeInt(pkTable.getColumns().indexOf(pkColumn));
+                }
+                data.writeInt(r.getFkTable().getColumns().indexOf(m.getFkColumn()));
+            }
+        }
+    }
+
+    private Snapshot read(DataInputStream data, Date time) throws IOException, SQLObjectException {
+        SQLDatabase db = new SQLDatabase();
+        SQLObject container = db;
+        Map<String, String> stamps = new HashMap<String, String>();
+
+        boolean hasIndices = data.readBoolean();
+        int tableCount = data.readInt();
+        List<SQLTable> tables = new ArrayList<SQLTable>(tableCount);
+        for (int i = 0; i < tableCount; i++) {
+            String catalogName = readString(data);
+            String schemaName = readString(data);
+            SQLTable t = SQLObjectUtils.addSimulatedTable(db, catalogName, schemaName, readString(data));
+            if (i == 0) {
+                container = t.getParent();
+            }
+            t.setPhysicalName(readString(data));
+            t.setRemarks(readString(data));
+            t.setObjectType(readString(data));
+            String stamp = readString(data);
+            if (stamp != null) {
+                stamps.put(t.getName(), stamp);
+            }
+
+            int columnCount = data.readInt();
+            for (int j = 0; j < columnCount; j++) {
+                String name = readString(data);
+                String physicalName = readString(data);
+                int type = data.readInt();
+                String nativeType = readString(data);
+                int precision = data.readInt();
+                int scale = data.readInt();
+                int nullable = data.readInt();
+                String remarks = readString(data);
+                String defaultValue = readString(data);
+                boolean autoIncrement = data.readBoolean();
+                SQLColumn c = new SQLColumn(t, name, type, nativeType, precision, scale, nullable,
+                        remarks, defaultValue, autoIncrement);
+                c.setPhysicalName(physicalName);
+                String sequenceName = readString(data);
+                if (sequenceName != null) {
+                    c.setAutoIncrementSequenceName(sequenceName);
+                }
+                t.addColumn(c);
+            }
+
+            String pkName = readString(data);
+            int pkColumnCount = data.readInt();
+            for (int j = 0; j < pkColumnCount; j++) {
+                t.addToPK(t.getColumn(data.readInt()));
+            }
+            if (pkName != null && t.getPrimaryKeyIndex() != null) {
+                t.getPrimaryKeyIndex().setName(pkName);
+            }
+
+            int indexCount = data.readInt();
+            for (int j = 0; j < indexCount; j++) {
+                String name = readString(data);
+                String physicalName = readString(data);
+                boolean unique = data.readBoolean();
+                String qualifier = readString(data);
+                String type = readString(data);
+                boolean clustered = data.readBoolean();
+                String filterCondition = readString(data);
+                SQLIndex index = new SQLIndex(name, unique, qualifier, type, filterCondition);
+                index.setPhysicalName(physicalName);
+                index.setClustered(clustered);
+                int indexColumnCount = data.readInt();
+                for (int k = 0; k < indexColumnCount; k++) {
+                    int position = data.readInt();
+                    String columnName = readString(data);
+                    AscendDescend order = AscendDescend.valueOf(readString(data));
+                    if (position == NONE) {
+                        logger.warn("Index " + name + " on " + t.getName() + " refers to expression " +
+                                columnName + ", which snapshots don't keep");
+                    } else {
+                        index.addIndexColumn(t.getColumn(position), order);
+                    }
+                }
+                t.addChild(index);
+            }
+            tables.add(t);
+        }
+
+        int relationshipCount = data.readInt();
+        for (int i = 0; i < relationshipCount; i++) {
+            SQLRelationship r = new SQLRelationship();
+            r.setName(readString(data));
+            r.setPhysicalName(readString(data));
+            SQLTable fkTable = tables.get(data.readInt());
+            int pkTablePosition = data.readInt();
+            SQLTable pkTable;
+            if (pkTablePosition == NONE) {
+                String catalogName = readString(data);
+                String schemaName = readString(data);
+                String tableName = readString(data);
+                pkTable = db.getTableByName(catalogName, schemaName, tableName);
+                if (pkTable == null) {
+                    pkTable = SQLObjectUtils.addSimulatedTable(db, catalogName, schemaName, tableName);
+                }
+            } else {
+                pkTable = tables.get(pkTablePosition);
+            }
+            r.setUpdateRule(UpdateDeleteRule.ruleForCode(data.readInt()));
+            r.setDeleteRule(UpdateDeleteRule.ruleForCode(data.readInt()));
+            r.setDeferrability(Deferrability.ruleForCode(data.readInt(), Deferrability.NOT_DEFERRABLE));
+            int pkCardinality = data.readInt();
+            int fkCardinality = data.readInt();
+            r.setIdentifying(data.readBoolean());
+            int mappingCount = data.readInt();
+            for (int j = 0; j < mappingCount; j++) {
+                SQLColumn pkColumn;
+                if (pkTablePosition == NONE) {
+                    String name = readString(data);
+                    int type = data.readInt();
+                    int precision = data.readInt();
+                    int scale = data.readInt();
+                    pkColumn = pkTable.getColumnByName(name);
+                    if (pkColumn == null) {
+                        pkColumn = new SQLColumn(pkTable, name, type, precision, scale);
+                        pkTable.addColumn(pkColumn);
+                    }
+                } else {
+                    pkColumn = pkTable.getColumn(data.readInt());
+                }
+                r.addMapping(pkColumn, fkTable.getColumn(data.readInt()));
+            }
+            r.attachRelationship(pkTable, fkTable, false);
+            r.setPkCardinality(pkCardinality);
+            r.setFkCardinality(fkCardinality);
+        }
+
+        return new Snapshot(time, container, tables, stamps, hasIndices);
+    }
+
+    /**
+     * Reads the start of a snapshot up to its time.
+     * 
+     * @return True if the stream is a snapshot of the given key that this
+     *         version can read.
+     */
+    private static boolean readHeader(DataInputStream data, String key) throws IOException {
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a schema snapshot");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            logger.info("Ignoring snapshot of unsupported version " + version);
+            return false;
+        }
+        String fileKey = readString(data);
+        if (!key.equals(fileKey)) {
+            logger.warn("Snapshot file is for " + fileKey + ", not " + key);
+            return false;
+        }
+        return true;
+    }
+
+    private static String toKey(String dataSourceName, String catalog, String schema) {
+        return dataSourceName + "\u0000" + (catalog == null ? "" : catalog) +
+            "\u0000" + (schema == null ? "" : schema);
+    }
+
+    private static String toLiteral(String s) {
+        if (s == null) return "NULL";
+        return "'" + s.replace("'", "''") + "'";
+    }
+
+    private static void writeString(DataOutputStream data, String s) throws IOException {
+        if (s == null) {
+            data.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void close(InputStream in) {
+        try {
+            if (in != null) in.close();
+        } catch (IOException e) {
+            logger.error("Couldn't close snapshot file", e);
+        }
+    }
+
+    private static void close(OutputStream out) {
+        try {
+            if (out != null) out.close();
+        } catch (IOException e) {
+            logger.error("Couldn't close snapshot file", e);
+        }
+    }
+}
@@ -0,0 +1,918 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.diff;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Compares the rows of two tables that are meant to hold the same data, such
+ * as a table and the copy the Data Mover made of it, without reading either
+ * table in full.
+ * <p>
+ * The tables are split into ranges of their primary key. For each range, both
+ * databases are asked for the number of rows in it and the sum of a hash of
+ * each row, using the {@link #ROW_HASH_EXPRESSION} of their data source type.
+ * Ranges that match are skipped. Ranges that don't are split again, until
+ * they hold few enough rows that the rows themselves are read from both
+ * sides and compared one by one. A difference of a few rows in a table of a
+ * billion is found with a few thousand small aggregate queries.
+ * <p>
+ * Ranges are split arithmetically when the first primary key column is an
+ * integer. For other keys, and for ranges that hold a single value of an
+ * integer first column, the larger side of the range numbers its primary
+ * keys with <code>ROW_NUMBER()</code> and returns only the keys to split at.
+ * On databases without window functions, the keys of the range are read in
+ * full instead, which for the first split of a table with a non-integer key
+ * means reading every key of the table once; only keys are read, not rows.
+ * Since primary keys are unique, every range that holds more rows than the
+ * leaf size can be split, and no more than about that many rows are read
+ * into memory at once.
+ * <p>
+ * Row hashes are only comparable when both tables are on the same platform,
+ * so the hashes are only used when both data source types have the same row
+ * hash expression. Otherwise, every range is read and compared row by row.
+ * This still keeps only one range of rows in memory at a time.
+ */
+public class TableDataComparator {
+
+    private static final Logger logger = Logger.getLogger(TableDataComparator.class);
+
+    /**
+     * The data source type property holding an SQL expression that hashes
+     * one row to an integer. The comparator adds up the hashes of the rows in
+     * each range. The expression can refer to the compared columns with two
+     * placeholders: {columns} is replaced with the quoted column names
+     * separated by commas, and {concat} is replaced with the columns cast to
+     * VARCHAR and joined with a '|' separator using the standard || operator,
+     * with nulls as empty strings. The sum must not overflow, so the
+     * expression should be of a type wide enough to add up a few billion
+     * hashes. For example:
+     * <ul>
+     *  <li>MySQL: <code>CRC32(CONCAT_WS('|', {columns}))</code>
+     *  <li>SQL Server: <code>CAST(CHECKSUM({columns}) AS BIGINT)</code>
+     *  <li>Oracle: <code>ORA_HASH({concat})</code>
+     *  <li>PostgreSQL: <code>('x' || SUBSTR(MD5({concat}), 1, 8))::BIT(32)::INT</code>
+     * </ul>
+     */
+    public static final String ROW_HASH_EXPRESSION =
+        "ca.sqlpower.architect.diff.TableDataComparator.RowHashExpression";
+
+    /**
+     * The number of parts a differing range is split into by default.
+     */
+    public static final int DEFAULT_FANOUT = 16;
+
+    /**
+     * The number of rows a range can have before it is split rather than
+     * compared row by row, by default.
+     */
+    public static final int DEFAULT_LEAF_SIZE = 1000;
+
+    /**
+     * The number of differing rows after which the comparison stops, by
+     * default.
+     */
+    public static final int DEFAULT_MAX_DIFFERENCES = 1000;
+
+    /**
+     * A row that is different in the two tables.
+     */
+    public static class RowDifference {
+        private final DiffType type;
+        private final List<Object> key;
+        private final List<Object> sourceValues;
+        private final List<Object> targetValues;
+
+        RowDifference(DiffType type, List<Object> key, List<Object> sourceValues, List<Object> targetValues) {
+            this.type = type;
+            this.key = key;
+            this.sourceValues = sourceValues;
+            this.targetValues = targetValues;
+        }
+
+        /**
+         * {@link DiffType#LEFTONLY} for a row only in the source table,
+         * {@link DiffType#RIGHTONLY} for a row only in the target table, or
+         * {@link DiffType#MODIFIED} for a row whose values are different.
+         */
+        public DiffType getType() {
+            return type;
+        }
+
+        /**
+         * The primary key values of the row.
+         */
+        public List<Object> getKey() {
+            return key;
+        }
+
+        /**
+         * The values of the compared columns in the source table, or null if
+         * the row isn't there.
+         */
+        public List<Object> getSourceValues() {
+            return sourceValues;
+        }
+
+        /**
+         * The values of the compared columns in the target table, or null if
+         * the row isn't there.
+         */
+        public List<Object> getTargetValues() {
+            return targetValues;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + key + ": " + sourceValues + " -> " + targetValues;
+        }
+    }
+
+    /**
+     * A range of primary key values. Each bound holds the values of the first
+     * one or more key columns, and is compared with the keys in key column
+     * order: a key is in the range if it is not below the lower bound and is
+     * below the upper bound, looking only at as many columns as the bound
+     * has. A null bound means the range is unbounded on that side.
+     */
+    private static class KeyRange {
+        final List<Object> lower;
+        final List<Object> upper;
+
+        KeyRange(List<Object> lower, List<Object> upper) {
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + lower + ", " + upper + ")";
+        }
+    }
+
+    /**
+     * One of the tables being compared, with the open connection to its
+     * database.
+     */
+    private class Side {
+        final SQLTable table;
+        final Connection con;
+        final String quote;
+        final String qualifiedName;
+        final String hashExpression;
+
+        /**
+         * False once the database has refused a query that numbers rows
+         * with ROW_NUMBER(), so split points are read by scanning keys.
+         */
+        boolean rowNumbers = true;
+
+        Side(SQLTable table, Connection con, String hashExpression) throws SQLException {
+            this.table = table;
+            this.con = con;
+            String q = con.getMetaData().getIdentifierQuoteString();
+            this.quote = (q == null || q.trim().length() == 0) ? "" : q;
+            this.qualifiedName = DDLUtils.toQualifiedName(table.getCatalogName(), table.getSchemaName(),
+                    table.getName(), quote, quote);
+            this.hashExpression = hashExpression;
+        }
+
+        String quote(String name) {
+            return quote + name + quote;
+        }
+    }
+
+    private final SQLTable source;
+    private final SQLTable target;
+
+    /**
+     * The names of the primary key columns, in key order.
+     */
+    private final List<String> keyColumns = new ArrayList<String>();
+
+    /**
+     * The names of the other columns both tables have.
+     */
+    private final List<String> valueColumns = new ArrayList<String>();
+
+    /**
+     * True if the first key column is an integer, so ranges can be split
+     * arithmetically.
+     */
+    private final boolean integerKey;
+
+    private int fanout = DEFAULT_FANOUT;
+    private int leafSize = DEFAULT_LEAF_SIZE;
+    private int maxDifferences = DEFAULT_MAX_DIFFERENCES;
+
+    private List<RowDifference> differences;
+    private boolean truncated;
+    private volatile boolean cancelled;
+    private volatile int queryCount;
+    private volatile int rangeCount;
+
+    /**
+     * @param source
+     *            The table the data came from. Its primary key decides the
+     *            ranges, and its columns that the target also has are
+     *            compared.
+     * @param target
+     *            The table the data was copied to. It must be in a different
+     *            database, or have a different name, than the source.
+     * @throws ArchitectDiffException
+     *             If the source table has no primary key, or the target
+     *             table is missing one of the key columns.
+     */
+    public TableDataComparator(SQLTable source, SQLTable target) throws SQLObjectException {
+        this.source = source;
+        this.target = target;
+        for (SQLColumn col : source.getColumns()) {
+            if (target.getColumnByName(col.getName()) == null) {
+                if (col.isPrimaryKey()) {
+                    throw new ArchitectDiffException("Key column " + col.getName() +
+                            " of " + source.getName() + " is missing from " + target.getName());
+                }
+                logger.debug("Not comparing " + col.getName() + " because the target doesn't have it");
+            } else if (col.isPrimaryKey()) {
+                keyColumns.add(col.getName());
+            } else {
+                valueColumns.add(col.getName());
+            }
+        }
+        if (keyColumns.isEmpty()) {
+            throw new ArchitectDiffException("Can't compare the data of " + source.getName() +
+                    " because it has no primary key");
+        }
+        int keyType = source.getColumnByName(keyColumns.get(0)).getType();
+        integerKey = keyType == Types.INTEGER || keyType == Types.BIGINT ||
+            keyType == Types.SMALLINT || keyType == Types.TINYINT;
+    }
+
+    /**
+     * Compares the rows of the two tables.
+     *
+     * @return The differing rows, at most {@link #getMaxDifferences()} of
+     *         them. Rows in the same range are in no particular order.
+     */
+    public List<RowDifference> compare() throws SQLException, SQLObjectException {
+        differences = new ArrayList<RowDifference>();
+        truncated = false;
+        queryCount = 0;
+        rangeCount = 0;
+        Connection sourceCon = null;
+        Connection targetCon = null;
+        try {
+            sourceCon = SQLPowerUtils.getAncestor(source, SQLDatabase.class).getConnection();
+            targetCon = SQLPowerUtils.getAncestor(target, SQLDatabase.class).getConnection();
+            String sourceHash = getHashExpression(source);
+            String targetHash = getHashExpression(target);
+            if (sourceHash == null || !sourceHash.equals(targetHash)) {
+                logger.debug("Row hashes aren't comparable; every range will be compared row by row");
+                sourceHash = null;
+                targetHash = null;
+            }
+            Side sourceSide = new Side(source, sourceCon, sourceHash);
+            Side targetSide = new Side(target, targetCon, targetHash);
+
+            KeyRange all = new KeyRange(null, null);
+            if (integerKey) {
+                Long[] sourceBounds = queryBounds(sourceSide);
+                Long[] targetBounds = queryBounds(targetSide);
+                Long min = min(sourceBounds[0], targetBounds[0]);
+                Long max = max(sourceBounds[1], targetBounds[1]);
+                if (min == null) return differences;
+                if (max.longValue() < Long.MAX_VALUE) {
+                    all = new KeyRange(Collections.<Object>singletonList(min),
+                            Collections.<Object>singletonList(max.longValue() + 1));
+                }
+            }
+            compareRange(sourceSide, targetSide, all);
+            pairUpDifferences();
+            logger.debug("Compared " + source.getName() + " with " + target.getName() + " in " +
+                    rangeCount + " ranges and " + queryCount + " queries");
+            return differences;
+        } finally {
+            close(sourceCon);
+            close(targetCon);
+        }
+    }
+
+    /**
+     * Compares one range of the tables, recursing into smaller ranges if it
+     * differs.
+     */
+    private void compareRange(Side sourceSide, Side targetSide, KeyRange range) throws SQLException {
+        if (cancelled || truncated) return;
+        rangeCount++;
+        Object[] sourceSummary = summarize(sourceSide, range);
+        Object[] targetSummary = summarize(targetSide, range);
+        long sourceCount = ((Long) sourceSummary[0]).longValue();
+        long targetCount = ((Long) targetSummary[0]).longValue();
+        if (sourceCount == 0 && targetCount == 0) return;
+        if (sourceSide.hashExpression != null && sourceCount == targetCount &&
+                equal(sourceSummary[1], targetSummary[1])) {
+            return;
+        }
+        long count = Math.max(sourceCount, targetCount);
+        if (count > leafSize) {
+            List<KeyRange> parts = split(sourceCount >= targetCount ? sourceSide : targetSide, range, count);
+            if (parts.size() > 1) {
+                for (KeyRange part : parts) {
+                    compareRange(sourceSide, targetSide, part);
+                }
+                return;
+            }
+        }
+        compareRows(sourceSide, targetSide, range);
+    }
+
+    /**
+     * Returns the number of rows in the range and, if the side has a hash
+     * expression, the sum of their hashes.
+     */
+    private Object[] summarize(Side side, KeyRange range) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*)");
+        if (side.hashExpression != null) {
+            sql.append(", SUM(").append(expandHashExpression(side)).append(")");
+        }
+        sql.append(" FROM ").append(side.qualifiedName);
+        List<Object> params = new ArrayList<Object>();
+        appendWhere(side, range, sql, params);
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = prepare(side, range, sql.toString(), params);
+            rs = stmt.executeQuery();
+            rs.next();
+            Object hash = side.hashExpression == null ? null : normalize(rs.getObject(2));
+            return new Object[] { Long.valueOf(rs.getLong(1)), hash };
+        } finally {
+            close(rs, stmt);
+        }
+    }
+
+    /**
+     * Splits the range into up to {@link #getFanout()} parts holding about
+     * the same number of rows of the given side.
+     *
+     * @return The parts, or just the range itself if it can't be split.
+     */
+    private List<KeyRange> split(Side side, KeyRange range, long count) throws SQLException {
+        if (integerKey && range.lower != null && range.upper != null &&
+                range.lower.size() == 1 && range.upper.size() == 1) {
+            List<KeyRange> parts = splitIntegers(range);
+            if (parts.size() > 1) return parts;
+        }
+
+        long step = (count + fanout - 1) / fanout;
+        List<List<Object>> splitKeys = null;
+        if (side.rowNumbers) {
+            try {
+                splitKeys = numberSplitKeys(side, range, step);
+            } catch (SQLException ex) {
+                logger.info("Couldn't number the keys of " + side.qualifiedName +
+                        "; reading its keys to split ranges instead", ex);
+                side.rowNumbers = false;
+            }
+        }
+        if (splitKeys == null) {
+            splitKeys = scanSplitKeys(side, range, step);
+        }
+
+        List<KeyRange> parts = new ArrayList<KeyRange>();
+        List<Object> lower = range.lower;
+        for (List<Object> key : splitKeys) {
+            if (lower == null || !normalizeKey(key).equals(normalizeKey(lower))) {
+                parts.add(new KeyRange(lower, key));
+                lower = key;
+            }
+        }
+        parts.add(new KeyRange(lower, range.upper));
+        return parts;
+    }
+
+    /**
+     * Returns every step-th key of the range in key order, skipping the
+     * first, by numbering the keys with ROW_NUMBER() in the database. Only
+     * the split points are read.
+     */
+    private List<List<Object>> numberSplitKeys(Side side, KeyRange range, long step) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        appendKeyColumns(side, sql);
+        sql.append(" FROM (SELECT ");
+        appendKeyColumns(side, sql);
+        sql.append(", ROW_NUMBER() OVER (ORDER BY ");
+        appendKeyColumns(side, sql);
+        sql.append(") AS split_row FROM ").append(side.qualifiedName);
+        List<Object> params = new ArrayList<Object>();
+        appendWhere(side, range, sql, params);
+        sql.append(") split_keys WHERE split_row IN (");
+        for (int i = 1; i < fanout; i++) {
+            if (i > 1) sql.append(", ");
+            sql.append(i * step + 1);
+        }
+        sql.append(") ORDER BY ");
+        appendKeyColumns(side, sql);
+        return readKeys(side, range, sql.toString(), params, 1);
+    }
+
+    /**
+     * Returns every step-th key of the range in key order, skipping the
+     * first, by reading all of the range's keys. This is the fallback for
+     * databases without ROW_NUMBER().
+     */
+    private List<List<Object>> scanSplitKeys(Side side, KeyRange range, long step) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        appendKeyColumns(side, sql);
+        sql.append(" FROM ").append(side.qualifiedName);
+        List<Object> params = new ArrayList<Object>();
+        appendWhere(side, range, sql, params);
+        sql.append(" ORDER BY ");
+        appendKeyColumns(side, sql);
+        return readKeys(side, range, sql.toString(), params, step);
+    }
+
+    /**
+     * Runs a query for key columns and returns every step-th key it
+     * returns, skipping the first unless step is 1.
+     */
+    private List<List<Object>> readKeys(Side side, KeyRange range, String sql, List<Object> params,
+            long step) throws SQLException {
+        List<List<Object>> keys = new ArrayList<List<Object>>();
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = prepare(side, range, sql, params);
+            stmt.setFetchSize(leafSize);
+            rs = stmt.executeQuery();
+            long row = 0;
+            while (rs.next()) {
+                if (step == 1 || (row > 0 && row % step == 0)) {
+                    List<Object> key = new ArrayList<Object>(keyColumns.size());
+                    for (int i = 0; i < keyColumns.size(); i++) {
+                        key.add(rs.getObject(i + 1));
+                    }
+                    keys.add(key);
+                }
+                row++;
+            }
+        } finally {
+            close(rs, stmt);
+        }
+        return keys;
+    }
+
+    /**
+     * Splits a range of an integer first key column arithmetically. The
+     * width of the range may not fit in a long, so the arithmetic is done
+     * with BigIntegers.
+     *
+     * @return The parts, or just the range itself if it holds a single value
+     *         or is empty.
+     */
+    private List<KeyRange> splitIntegers(KeyRange range) {
+        List<KeyRange> parts = new ArrayList<KeyRange>();
+        BigInteger lower = BigInteger.valueOf(((Number) range.lower.get(0)).longValue());
+        BigInteger upper = BigInteger.valueOf(((Number) range.upper.get(0)).longValue());
+        BigInteger step = upper.subtract(lower).add(BigInteger.valueOf(fanout - 1))
+            .divide(BigInteger.valueOf(fanout));
+        if (step.signum() <= 0) {
+            parts.add(range);
+            return parts;
+        }
+        for (BigInteger start = lower; start.compareTo(upper) < 0; start = start.add(step)) {
+            parts.add(new KeyRange(Collections.<Object>singletonList(start.longValue()),
+                    Collections.<Object>singletonList(start.add(step).min(upper).longValue())));
+        }
+        return parts;
+    }
+
+    /**
+     * Reads the rows of the range from both sides and records the ones that
+     * differ.
+     */
+    private void compareRows(Side sourceSide, Side targetSide, KeyRange range) throws SQLException {
+        Map<List<Object>, List<Object>> sourceRows = readRows(sourceSide, range);
+        Map<List<Object>, List<Object>> targetRows = readRows(targetSide, range);
+        for (Map.Entry<List<Object>, List<Object>> entry : sourceRows.entrySet()) {
+            List<Object> targetValues = targetRows.remove(entry.getKey());
+            if (targetValues == null) {
+                addDifference(new RowDifference(DiffType.LEFTONLY, entry.getKey(), entry.getValue(), null));
+            } else if (!entry.getValue().equals(targetValues)) {
+                addDifference(new RowDifference(DiffType.MODIFIED, entry.getKey(), entry.getValue(), targetValues));
+            }
+        }
+        for (Map.Entry<List<Object>, List<Object>> entry : targetRows.entrySet()) {
+            addDifference(new RowDifference(DiffType.RIGHTONLY, entry.getKey(), null, entry.getValue()));
+        }
+    }
+
+    /**
+     * Reads the rows of the range from one side.
+     *
+     * @return The compared values of each row by its key, both normalized
+     *         so they can be compared with the other side's.
+     */
+    private Map<List<Object>, List<Object>> readRows(Side side, KeyRange range) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        appendKeyColumns(side, sql);
+        for (String col : valueColumns) {
+            sql.append(", ").append(side.quote(col));
+        }
+        sql.append(" FROM ").append(side.qualifiedName);
+        List<Object> params = new ArrayList<Object>();
+        appendWhere(side, range, sql, params);
+        Map<List<Object>, List<Object>> rows = new LinkedHashMap<List<Object>, List<Object>>();
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = prepare(side, range, sql.toString(), params);
+            stmt.setFetchSize(leafSize);
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                List<Object> key = new ArrayList<Object>(keyColumns.size());
+                for (int i = 0; i < keyColumns.size(); i++) {
+                    key.add(normalize(rs.getObject(i + 1)));
+                }
+                List<Object> values = new ArrayList<Object>(valueColumns.size());
+                for (int i = 0; i < valueColumns.size(); i++) {
+                    values.add(normalize(rs.getObject(keyColumns.size() + i + 1)));
+                }
+                rows.put(key, values);
+            }
+        } finally {
+            close(rs, stmt);
+        }
+        return rows;
+    }
+
+    private void addDifference(RowDifference diff) {
+        if (differences.size() >= maxDifferences) {
+            truncated = true;
+            return;
+        }
+        differences.add(diff);
+    }
+
+    /**
+     * Combines the rows that were reported as only in the source and only
+     * in the target in different ranges. This happens to string keys when
+     * the two databases don't sort them the same way, so the ranges don't
+     * hold the same keys on both sides.
+     */
+    private void pairUpDifferences() {
+        Map<List<Object>, RowDifference> sourceOnly = new LinkedHashMap<List<Object>, RowDifference>();
+        for (RowDifference diff : differences) {
+            if (diff.getType() == DiffType.LEFTONLY) {
+                sourceOnly.put(diff.getKey(), diff);
+            }
+        }
+        if (sourceOnly.isEmpty()) return;
+        Map<List<Object>, RowDifference> paired = new LinkedHashMap<List<Object>, RowDifference>();
+        for (Iterator<RowDifference> it = differences.iterator(); it.hasNext(); ) {
+            RowDifference diff = it.next();
+            if (diff.getType() != DiffType.RIGHTONLY) continue;
+            RowDifference sourceDiff = sourceOnly.get(diff.getKey());
+            if (sourceDiff == null) continue;
+            it.remove();
+            if (sourceDiff.getSourceValues().equals(diff.getTargetValues())) {
+                paired.put(diff.getKey(), null);
+            } else {
+                paired.put(diff.getKey(), new RowDifference(DiffType.MODIFIED, diff.getKey(),
+                        sourceDiff.getSourceValues(), diff.getTargetValues()));
+            }
+        }
+        for (ListIterator<RowDifference> it = differences.listIterator(); it.hasNext(); ) {
+            RowDifference diff = it.next();
+            if (diff.getType() != DiffType.LEFTONLY || !paired.containsKey(diff.getKey())) continue;
+            RowDifference modified = paired.get(diff.getKey());
+            if (modified == null) {
+                it.remove();
+            } else {
+                it.set(modified);
+            }
+        }
+    }
+
+    private void appendKeyColumns(Side side, StringBuilder sql) {
+        boolean first = true;
+        for (String col : keyColumns) {
+            if (!first) sql.append(", ");
+            sql.append(side.quote(col));
+            first = false;
+        }
+    }
+
+    /**
+     * Appends the WHERE clause that limits a query to the range, and adds the
+     * values it compares the key columns with to the parameter list.
+     */
+    private void appendWhere(Side side, KeyRange range, StringBuilder sql, List<Object> params) {
+        if (range.lower != null) {
+            sql.append(" WHERE ");
+            appendBound(side, range.lower, ">", sql, params);
+        }
+        if (range.upper != null) {
+            sql.append(range.lower == null ? " WHERE " : " AND ");
+            appendBound(side, range.upper, "<", sql, params);
+        }
+    }
+
+    /**
+     * Appends a condition comparing the key columns with a bound in key
+     * order. For a lower bound (a, b), this is
+     * <code>k1 &gt;= a AND (k1 &gt; a OR (k1 = a AND k2 &gt;= b))</code>. The
+     * first condition is redundant, but lets the database use an index on
+     * the first key column.
+     *
+     * @param op
+     *            "&gt;" for a lower bound, or "&lt;" for an upper bound.
+     */
+    private void appendBound(Side side, List<Object> bound, String op, StringBuilder sql, List<Object> params) {
+        String first = side.quote(keyColumns.get(0));
+        if (bound.size() == 1) {
+            sql.append(first).append(op.equals(">") ? " >= ?" : " < ?");
+            params.add(bound.get(0));
+            return;
+        }
+        sql.append(first).append(op).append("= ? AND ");
+        params.add(bound.get(0));
+        for (int i = 0; i < bound.size() - 1; i++) {
+            String col = side.quote(keyColumns.get(i));
+            sql.append("(").append(col).append(" ").append(op).append(" ? OR (")
+                .append(col).append(" = ? AND ");
+            params.add(bound.get(i));
+            params.add(bound.get(i));
+        }
+        sql.append(side.quote(keyColumns.get(bound.size() - 1))).append(op.equals(">") ? " >= ?" : " < ?");
+        params.add(bound.get(bound.size() - 1));
+        for (int i = 0; i < bound.size() - 1; i++) {
+            sql.append("))");
+        }
+    }
+
+    private PreparedStatement prepare(Side side, KeyRange range, String sql, List<Object> params) throws SQLException {
+        queryCount++;
+        logger.debug("Range " + range + ": " + sql);
+        PreparedStatement stmt = side.con.prepareStatement(sql);
+        int param = 1;
+        for (Object value : params) {
+            stmt.setObject(param++, value);
+        }
+        return stmt;
+    }
+
+    /**
+     * Returns the smallest and largest value of the first key column, or
+     * nulls if the table is empty.
+     */
+    private Long[] queryBounds(Side side) throws SQLException {
+        String key = side.quote(keyColumns.get(0));
+        String sql = "SELECT MIN(" + key + "), MAX(" + key + ") FROM " + side.qualifiedName;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = prepare(side, new KeyRange(null, null), sql, Collections.<Object>emptyList());
+            rs = stmt.executeQuery();
+            rs.next();
+            long min = rs.getLong(1);
+            if (rs.wasNull()) return new Long[] { null, null };
+            return new Long[] { min, rs.getLong(2) };
+        } finally {
+            close(rs, stmt);
+        }
+    }
+
+    /**
+     * Returns the table's data source type's row hash expression, or null if
+     * it has none.
+     */
+    private static String getHashExpression(SQLTable table) {
+        JDBCDataSourceType dsType = SQLPowerUtils.getAncestor(table, SQLDatabase.class)
+            .getDataSource().getParentType();
+        String expression = dsType == null ? null : dsType.getProperty(ROW_HASH_EXPRESSION);
+        if (expression == null || expression.trim().length() == 0) return null;
+        return expression;
+    }
+
+    private String expandHashExpression(Side side) {
+        List<String> columns = new ArrayList<String>(keyColumns);
+        columns.addAll(valueColumns);
+        StringBuilder list = new StringBuilder();
+        StringBuilder concat = new StringBuilder();
+        for (String col : columns) {
+            if (list.length() > 0) {
+                list.append(", ");
+                concat.append(" || '|' || ");
+            }
+            list.append(side.quote(col));
+            concat.append("COALESCE(CAST(").append(side.quote(col)).append(" AS VARCHAR(4000)), '')");
+        }
+        return side.hashExpression.replace("{columns}", list).replace("{concat}", concat);
+    }
+
+    /**
+     * Converts a value read from either database to a form that is equal to
+     * the same value read from the other, whatever types the drivers used.
+     */
+    private static Object normalize(Object value) throws SQLException {
+        if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            return clob.getSubString(1, (int) clob.length());
+        } else if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            value = blob.getBytes(1, (int) blob.length());
+        }
+        if (value instanceof byte[]) {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : (byte[]) value) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } else if (value instanceof Number) {
+            if (value instanceof Double || value instanceof Float) {
+                double d = ((Number) value).doubleValue();
+                if (Double.isNaN(d) || Double.isInfinite(d)) return value;
+            }
+            BigDecimal d = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+            // stripTrailingZeros leaves zero with a scale, and turns 100 into 1E+2
+            if (d.signum() == 0) return BigDecimal.ZERO;
+            d = d.stripTrailingZeros();
+            return d.scale() < 0 ? d.setScale(0) : d;
+        } else if (value instanceof java.util.Date) {
+            return Long.valueOf(((java.util.Date) value).getTime());
+        }
+        return value;
+    }
+
+    private static List<Object> normalizeKey(List<Object> key) throws SQLException {
+        List<Object> normalized = new ArrayList<Object>(key.size());
+        for (Object value : key) {
+            normalized.add(normalize(value));
+        }
+        return normalized;
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    private static Long min(Long l1, Long l2) {
+        if (l1 == null) return l2;
+        if (l2 == null) return l1;
+        return Math.min(l1.longValue(), l2.longValue());
+    }
+
+    private static Long max(Long l1, Long l2) {
+        if (l1 == null) return l2;
+        if (l2 == null) return l1;
+        return Math.max(l1.longValue(), l2.longValue());
+    }
+
+    private static void close(ResultSet rs, PreparedStatement stmt) {
+        try {
+            if (rs != null) rs.close();
+        } catch (SQLException ex) {
+            logger.error("Couldn't close result set", ex);
+        }
+        try {
+            if (stmt != null) stmt.close();
+        } catch (SQLException ex) {
+            logger.error("Couldn't close statement", ex);
+        }
+    }
+
+    private static void close(Connection con) {
+        try {
+            if (con != null) con.close();
+        } catch (SQLException ex) {
+            logger.error("Couldn't close connection", ex);
+        }
+    }
+
+    /**
+     * Stops a comparison in progress. The differences found so far are
+     * returned.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns true if the comparison stopped because it found
+     * {@link #getMaxDifferences()} differing rows.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * The number of queries run so far by the current or last comparison.
+     */
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+    /**
+     * The number of key ranges checked so far by the current or last
+     * comparison.
+     */
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    /**
+     * The names of the columns whose values are compared, not counting the
+     * primary key columns.
+     */
+    public List<String> getValueColumns() {
+        return Collections.unmodifiableList(valueColumns);
+    }
+
+    /**
+     * The names of the primary key columns.
+     */
+    public List<String> getKeyColumns() {
+        return Collections.unmodifiableList(keyColumns);
+    }
+
+    public int getFanout() {
+        return fanout;
+    }
+
+    /**
+     * Sets the number of parts a differing range is split into. Must be at
+     * least 2.
+     */
+    public void setFanout(int fanout) {
+        if (fanout < 2) throw new IllegalArgumentException("Fanout must be at least 2, not " + fanout);
+        this.fanout = fanout;
+    }
+
+    public int getLeafSize() {
+        return leafSize;
+    }
+
+    /**
+     * Sets the number of rows a differing range can hold before it is split
+     * rather than compared row by row.
+     */
+    public void setLeafSize(int leafSize) {
+        if (leafSize < 1) throw new IllegalArgumentException("Leaf size must be positive, not " + leafSize);
+        this.leafSize = leafSize;
+    }
+
+    public int getMaxDifferences() {
+        return maxDifferences;
+    }
+
+    public void setMaxDifferences(int maxDifferences) {
+        this.maxDifferences = maxDifferences;
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.diff;
+
+import java.beans.PropertyChangeEvent;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Computes and caches structural fingerprints of tables so a comparison can
+ * tell that two tables are the same without comparing them property by
+ * property. The fingerprints form a Merkle tree: each column's fingerprint
+ * is a hash of the properties {@link CompareSQL} compares, and a table's
+ * fingerprint is a hash of its own compared properties, which of its columns
+ * are in the primary key, and its columns' fingerprints in comparison order.
+ * Two tables with equal fingerprints therefore produce no table or column
+ * differences.
+ * <p>
+ * Each fingerprint is cached with the object it describes and thrown away
+ * when the object fires an event: a change to a column invalidates it and its
+ * table, and a change to a table or its primary key index invalidates the
+ * table. Indices and relationships are compared separately from the tables,
+ * so only primary key membership is part of a table's fingerprint.
+ * <p>
+ * Fingerprints are 64-bit hashes, so there is a very small chance that two
+ * different tables have the same fingerprint.
+ */
+public class TableFingerprintCache {
+
+    private static final TableFingerprintCache sharedInstance = new TableFingerprintCache();
+
+    /**
+     * Returns the cache that comparisons use unless they are given another.
+     */
+    public static TableFingerprintCache getSharedInstance() {
+        return sharedInstance;
+    }
+
+    /**
+     * A weak reference that is equal to other references to the same object.
+     * SQLObjects may override equals(), so a WeakHashMap can't be used.
+     */
+    private static class IdentityWeakReference extends WeakReference<SQLObject> {
+        private final int hash;
+
+        IdentityWeakReference(SQLObject o, ReferenceQueue<SQLObject> queue) {
+            super(o, queue);
+            hash = System.identityHashCode(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof IdentityWeakReference)) return false;
+            Object referent = get();
+            return referent != null && referent == ((IdentityWeakReference) obj).get();
+        }
+    }
+
+    /**
+     * The cached fingerprints of one object. It listens to the object so it
+     * can forget them when the object changes.
+     */
+    private class Entry extends AbstractSPListener {
+
+        /**
+         * The fingerprint when comparing by name (index 0) and by UUID (index
+         * 1), or null if it has not been computed since the last change.
+         * Column fingerprints don't depend on how columns are matched, so
+         * only the first is used for columns.
+         */
+        final Long[] fingerprints = new Long[2];
+
+        /**
+         * Counts the changes to the object, so a fingerprint computed while
+         * the object was changing is not cached.
+         */
+        int version;
+
+        /**
+         * The primary key index this entry also listens to, if it is for a
+         * table. This is weak because the index refers to its table.
+         */
+        WeakReference<SQLIndex> primaryKeyIndex;
+
+        void clear() {
+            fingerprints[0] = null;
+            fingerprints[1] = null;
+            version++;
+        }
+
+        @Override
+        public void childAdded(SPChildEvent e) {
+            invalidate(e.getSource());
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            invalidate(e.getSource());
+        }
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            invalidate((SPObject) evt.getSource());
+        }
+    }
+
+    private final Map<IdentityWeakReference, Entry> entries = new HashMap<IdentityWeakReference, Entry>();
+
+    private final ReferenceQueue<SQLObject> collectedObjects = new ReferenceQueue<SQLObject>();
+
+    /**
+     * Returns the fingerprint of the given table.
+     *
+     * @param table
+     *            The table to fingerprint. It should already be populated.
+     * @param useUUID
+     *            True if the comparison matches columns by UUID, false if by
+     *            name.
+     */
+    public long getFingerprint(SQLTable table, boolean useUUID) throws SQLObjectException {
+        int mode = useUUID ? 1 : 0;
+        Entry entry;
+        int version;
+        synchronized (this) {
+            entry = getEntry(table);
+            if (entry.fingerprints[mode] != null) return entry.fingerprints[mode];
+            version = entry.version;
+            watchPrimaryKeyIndex(entry, table.getPrimaryKeyIndex());
+        }
+
+        Hash hash = new Hash();
+        hash.add(table.getClass().getName());
+        addProperties(hash, table);
+        Set<SQLColumn> columns = new TreeSet<SQLColumn>(
+                useUUID ? CompareSQL.uuidComparator : CompareSQL.nameComparator);
+        columns.addAll(table.getColumns());
+        for (SQLColumn column : columns) {
+            Object key = CompareSQL.getMatchKey(column, useUUID);
+            hash.add(key == null ? null : key.toString());
+            hash.add(column.isPrimaryKey() ? "pk" : "");
+            hash.add(getColumnFingerprint(column));
+        }
+        long fingerprint = hash.getValue();
+
+        synchronized (this) {
+            if (entry.version == version) {
+                entry.fingerprints[mode] = fingerprint;
+            }
+        }
+        return fingerprint;
+    }
+
+    private long getColumnFingerprint(SQLColumn column) throws SQLObjectException {
+        Entry entry;
+        int version;
+        synchronized (this) {
+            entry = getEntry(column);
+            if (entry.fingerprints[0] != null) return entry.fingerprints[0];
+            version = entry.version;
+        }
+
+        Hash hash = new Hash();
+        hash.add(column.getClass().getName());
+        addProperties(hash, column);
+        long fingerprint = hash.getValue();
+
+        synchronized (this) {
+            if (entry.version == version) {
+                entry.fingerprints[0] = fingerprint;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Adds the compared properties of the given object to the hash, sorted by
+     * name so that the order they are reported in doesn't matter.
+     */
+    private void addProperties(Hash hash, SQLObject o) throws SQLObjectException {
+        for (Map.Entry<String, String> property :
+                new TreeMap<String, String>(CompareSQL.getComparedProperties(o)).entrySet()) {
+            hash.add(property.getKey());
+            hash.add(property.getValue());
+        }
+    }
+
+    /**
+     * Forgets all cached fingerprints and stops listening to the objects they
+     * describe.
+     */
+    public synchronized void clear() {
+        for (Map.Entry<IdentityWeakReference, Entry> e : entries.entrySet()) {
+            SQLObject o = e.getKey().get();
+            if (o != null) {
+                o.removeSPListener(e.getValue());
+            }
+            watchPrimaryKeyIndex(e.getValue(), null);
+        }
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of objects with cached fingerprints.
+     */
+    public synchronized int size() {
+        expungeCollectedObjects();
+        return entries.size();
+    }
+
+    /**
+     * Returns the entry for the given object, creating it and starting to
+     * listen to the object if it has none. Must be called while holding this
+     * cache's lock.
+     */
+    private Entry getEntry(SQLObject o) {
+        expungeCollectedObjects();
+        IdentityWeakReference ref = new IdentityWeakReference(o, collectedObjects);
+        Entry entry = entries.get(ref);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(ref, entry);
+            o.addSPListener(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Makes the given table entry listen to the given primary key index
+     * instead of the one it was listening to. Must be called while holding
+     * this cache's lock.
+     */
+    private void watchPrimaryKeyIndex(Entry entry, SQLIndex index) {
+        SQLIndex oldIndex = entry.primaryKeyIndex == null ? null : entry.primaryKeyIndex.get();
+        if (oldIndex == index) return;
+        if (oldIndex != null) {
+            oldIndex.removeSPListener(entry);
+        }
+        if (index != null) {
+            index.addSPListener(entry);
+            entry.primaryKeyIndex = new WeakReference<SQLIndex>(index);
+        } else {
+            entry.primaryKeyIndex = null;
+        }
+    }
+
+    /**
+     * Forgets the fingerprints of the given object and all its ancestors,
+     * since each of them includes the object's fingerprint.
+     */
+    private synchronized void invalidate(SPObject source) {
+        for (SPObject o = source; o != null; o = o.getParent()) {
+            if (o instanceof SQLObject) {
+                Entry entry = entries.get(new IdentityWeakReference((SQLObject) o, null));
+                if (entry != null) {
+                    entry.clear();
+                }
+            }
+        }
+    }
+
+    private void expungeCollectedObjects() {
+        Reference<? extends SQLObject> ref;
+        while ((ref = collectedObjects.poll()) != null) {
+            entries.remove(ref);
+        }
+    }
+
+    /**
+     * The 64-bit FNV-1a hash of a sequence of strings and numbers, with a
+     * final mixing step. Each value is followed by a separator so that
+     * different sequences of the same characters hash differently.
+     */
+    private static class Hash {
+        private long h = 0xcbf29ce484222325L;
+
+        void add(String s) {
+            if (s == null) {
+                addChar('\u0001');
+            } else {
+                for (int i = 0; i < s.length(); i++) {
+                    addChar(s.charAt(i));
+                }
+            }
+            addChar('\u0000');
+        }
+
+        void add(long value) {
+            for (int i = 0; i < 4; i++) {
+                addChar((char) (value >>> (i * 16)));
+            }
+            addChar('\u0000');
+        }
+
+        private void addChar(char c) {
+            h ^= c;
+            h *= 0x100000001b3L;
+        }
+
+        long getValue() {
+            long v = h;
+            v ^= v >>> 33;
+            v *= 0xff51afd7ed558ccdL;
+            v ^= v >>> 33;
+            v *= 0xc4ceb9fe1a85ec53L;
+            v ^= v >>> 33;
+            return v;
+        }
+    }
+}
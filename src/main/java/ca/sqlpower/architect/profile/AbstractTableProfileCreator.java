@@ -54,10 +54,19 @@ public abstract class AbstractTableProfileCreator implements TableProfileCreator
                 doProfileImpl(tpr);
             }
         } catch (Exception ex) {
-            tpr.setException(ex);
-            logger.error("Profile failed. Saving exception:", ex);
+            if (pm.isCancelled()) {
+                // cancelling the profile cancels its running statements, which then fail
+                logger.debug("Profile cancelled. Ignoring exception:", ex);
+            } else {
+                tpr.setException(ex);
+                logger.error("Profile failed. Saving exception:", ex);
+            }
         } finally {
             tpr.setCreateEndTime(System.currentTimeMillis());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Profiled " + tpr.getProfiledObject().getName() + " in " +
+                        tpr.getTimeToCreate() + "ms; " + ProfileQueryStats.of(tpr.getQueryTimings()));
+            }
             pm.setProgress(pm.getProgress() + 1);
             pm.setFinished(true);
             // this somehow fixes a progress bar visibility issue
@@ -24,12 +24,14 @@ import java.util.List;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.architect.profile.sketch.TDigest;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.object.annotation.Accessor;
 import ca.sqlpower.object.annotation.Constructor;
 import ca.sqlpower.object.annotation.ConstructorParameter;
 import ca.sqlpower.object.annotation.Mutator;
 import ca.sqlpower.object.annotation.NonProperty;
+import ca.sqlpower.object.annotation.Transient;
 import ca.sqlpower.sqlobject.SQLColumn;
 
 public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
@@ -53,6 +55,33 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
     private double avgLength;
     private int nullCount;
     private List<ColumnValueCount> topTen = new ArrayList<ColumnValueCount>();
+
+    /**
+     * A summary of the distribution of the column's numeric values, from which
+     * percentiles and histograms can be estimated. Null if the profile creator
+     * did not collect one or the column has no numeric values.
+     */
+    private TDigest quantileDigest;
+
+    /**
+     * {@link #quantileDigest} in the text form given by
+     * {@link TDigest#encode()}, kept so the digest is only encoded once.
+     */
+    private String quantileSketch;
+
+    /**
+     * The name, JDBC type and source data type name the profiled column had
+     * when it was profiled, in the form given by {@link #describeColumn(SQLColumn)}.
+     * Compared against the column's current definition to tell whether this
+     * result still describes it.
+     */
+    private String columnDefinition;
+    
+    /**
+     * The percentiles that reports and the profile viewer show for columns
+     * that have a {@link #getQuantileDigest() quantile digest}.
+     */
+    public static final double[] REPORTED_QUANTILES = { 0.05, 0.25, 0.5, 0.75, 0.95 };
     
     /**
      * This creates a column profile result which stores information about a profiled column.
@@ -61,6 +90,7 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
     public ColumnProfileResult(@ConstructorParameter(propertyName="profiledObject") SQLColumn profiledObject) {
         super(profiledObject);
         setName("New Column Profile");
+        this.columnDefinition = describeColumn(profiledObject);
     }
     
     /**
@@ -75,7 +105,13 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
         this.maxLength = cprToCopy.maxLength;
         this.minLength = cprToCopy.minLength;
         this.minValue = cprToCopy.minValue;
+        this.maxValue = cprToCopy.maxValue;
         this.nullCount = cprToCopy.nullCount;
+        if (cprToCopy.quantileDigest != null) {
+            this.quantileDigest = new TDigest(cprToCopy.quantileDigest);
+        }
+        this.quantileSketch = cprToCopy.quantileSketch;
+        this.columnDefinition = cprToCopy.columnDefinition;
         setParent(cprToCopy.getParent());
         for (int i = 0; i < cprToCopy.getValueCount().size(); i++) {
             ColumnValueCount cvc = cprToCopy.getValueCount().get(i);
@@ -179,6 +215,86 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
         firePropertyChange("minValue", oldVal, this.minValue);
     }
 
+    /**
+     * Returns the summary of the column's numeric values, or null if there is
+     * none. The returned digest must not be modified.
+     */
+    @NonProperty
+    public TDigest getQuantileDigest() {
+        return quantileDigest;
+    }
+
+    /**
+     * Sets the summary of the column's numeric values. This result keeps a
+     * copy of the digest, so adding to the given one afterward has no effect
+     * on it.
+     */
+    @NonProperty
+    public void setQuantileDigest(TDigest quantileDigest) {
+        String oldSketch = this.quantileSketch;
+        this.quantileDigest = quantileDigest == null ? null : new TDigest(quantileDigest);
+        this.quantileSketch = quantileDigest == null ? null : this.quantileDigest.encode();
+        firePropertyChange("quantileSketch", oldSketch, this.quantileSketch);
+    }
+
+    /**
+     * Returns the {@link #getQuantileDigest() quantile digest} in the text
+     * form given by {@link TDigest#encode()}, or null if there is none. This
+     * is the form the digest is saved in.
+     */
+    @Transient @Accessor
+    public String getQuantileSketch() {
+        return quantileSketch;
+    }
+
+    @Transient @Mutator
+    public void setQuantileSketch(String quantileSketch) {
+        String oldSketch = this.quantileSketch;
+        this.quantileDigest = quantileSketch == null ? null : TDigest.decode(quantileSketch);
+        this.quantileSketch = quantileSketch;
+        firePropertyChange("quantileSketch", oldSketch, quantileSketch);
+    }
+
+    /**
+     * Returns the definition the profiled column had when this result was
+     * created, as given by {@link #describeColumn(SQLColumn)}.
+     */
+    @Accessor
+    public String getColumnDefinition() {
+        return columnDefinition;
+    }
+
+    @Mutator
+    public void setColumnDefinition(String columnDefinition) {
+        String oldDefinition = this.columnDefinition;
+        this.columnDefinition = columnDefinition;
+        firePropertyChange("columnDefinition", oldDefinition, columnDefinition);
+    }
+
+    /**
+     * Describes the parts of a column's definition that a profile depends on:
+     * its name, JDBC type and source data type name. Returns null for a null
+     * column.
+     */
+    public static String describeColumn(SQLColumn col) {
+        if (col == null) return null;
+        return col.getName() + ":" + col.getType() + ":" + col.getSourceDataTypeName();
+    }
+
+    /**
+     * Returns the estimated values of the {@link #REPORTED_QUANTILES}, or null
+     * if this result has no quantile digest.
+     */
+    @NonProperty
+    public double[] getReportedQuantileValues() {
+        if (quantileDigest == null || quantileDigest.getCount() == 0) return null;
+        double[] values = new double[REPORTED_QUANTILES.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = quantileDigest.quantile(REPORTED_QUANTILES[i]);
+        }
+        return values;
+    }
+
     @Override
     public String toString() {
         return "[ColumnProfileResult:" +
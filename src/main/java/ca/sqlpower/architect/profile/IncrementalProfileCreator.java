@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Wraps another profile creator to skip tables that have not changed since
+ * they were last profiled. Before the table is profiled, a few cheap probes
+ * are run against it: the row count, and the platform's last modified or
+ * statistics timestamp if its data source type defines a
+ * {@link #LAST_MODIFIED_QUERY}. If they match what was recorded for the
+ * earlier profile, the earlier column profiles are copied into the new result
+ * and marked with the time they were originally computed. Otherwise the
+ * wrapped creator profiles the table as usual, as it does when any column
+ * was added, removed, renamed or retyped since the earlier profile.
+ * <p>
+ * Without a last modified query, only the row count is compared, so changes
+ * that update rows in place will not be noticed. Platforms where this matters
+ * should define the query.
+ */
+public class IncrementalProfileCreator extends AbstractTableProfileCreator {
+
+    private static final Logger logger = Logger.getLogger(IncrementalProfileCreator.class);
+
+    /**
+     * The data source type property holding a query that returns a single
+     * value which changes whenever a table's data changes, such as a last
+     * modified or statistics timestamp. The query may refer to the profiled
+     * table with the {catalog}, {schema} and {table} placeholders, which are
+     * replaced with quoted SQL string literals. For example, on MySQL:
+     * <pre>
+     * SELECT UPDATE_TIME FROM information_schema.TABLES
+     *  WHERE TABLE_SCHEMA = {catalog} AND TABLE_NAME = {table}
+     * </pre>
+     */
+    public static final String LAST_MODIFIED_QUERY =
+        "ca.sqlpower.architect.profile.IncrementalProfileCreator.LastModifiedQuery";
+
+    /**
+     * The creator that profiles tables that have changed.
+     */
+    private final AbstractTableProfileCreator delegate;
+
+    /**
+     * The earlier profile of the table, or null if there is none to compare
+     * against. This must be a copy that belongs to the table being profiled.
+     */
+    private final TableProfileResult priorResult;
+
+    /**
+     * The settings whose query timeout applies to the probes.
+     */
+    private final ProfileSettings settings;
+
+    /**
+     * @param delegate
+     *            The creator that profiles the table if it has changed.
+     * @param priorResult
+     *            A copy of the most recent successful profile of the table,
+     *            whose column profiles belong to the profiled table's
+     *            columns. If null, the table is always profiled, and only its
+     *            modification stamp is recorded for the next run.
+     * @param settings
+     *            The settings whose query timeout the probes use.
+     */
+    public IncrementalProfileCreator(AbstractTableProfileCreator delegate, TableProfileResult priorResult,
+            ProfileSettings settings) {
+        if (delegate == null) {
+            throw new NullPointerException("Null delegate");
+        }
+        if (settings == null) {
+            throw new NullPointerException("Null settings");
+        }
+        this.delegate = delegate;
+        this.priorResult = priorResult;
+        this.settings = settings;
+    }
+
+    @Override
+    protected boolean doProfileImpl(TableProfileResult tpr) throws Exception {
+        SQLTable table = tpr.getProfiledObject();
+        ProfileConnectionPool pool = new ProfileConnectionPool(tpr, settings.getQueryTimeout());
+        boolean changed;
+        List<ColumnProfileResult> priorColumns = null;
+        try {
+            String stamp = queryModificationStamp(table, pool);
+            tpr.setModificationStamp(stamp);
+            if (priorResult == null) {
+                changed = true;
+            } else if ((priorColumns = matchPriorColumns(table)) == null) {
+                logger.debug("Columns of " + table.getName() + " changed since it was last profiled");
+                changed = true;
+            } else if (!equal(stamp, priorResult.getModificationStamp()) ||
+                    queryRowCount(table, pool) != priorResult.getRowCount()) {
+                logger.debug(table.getName() + " changed since it was last profiled");
+                changed = true;
+            } else {
+                changed = false;
+            }
+        } finally {
+            pool.close();
+        }
+        if (changed) {
+            return delegate.doProfileImpl(tpr);
+        }
+
+        logger.debug(table.getName() + " is unchanged; reusing its profile from " + priorResult.getCreateStartTime());
+        tpr.setRowCount(priorResult.getRowCount());
+        tpr.setReusedResultTime(priorResult.isReused() ?
+                priorResult.getReusedResultTime() : priorResult.getCreateStartTime());
+        tpr.setSamplingRate(priorResult.getSamplingRate());
+        tpr.setSamplingError(priorResult.getSamplingError());
+        List<SQLColumn> columns = table.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            tpr.addColumnProfileResult(new ColumnProfileResult(priorColumns.get(i), columns.get(i)));
+        }
+        return true;
+    }
+
+    /**
+     * Finds the prior column profile of each of the table's current columns.
+     *
+     * @return The prior column profiles in the order of the table's columns,
+     *         or null if a column was added, removed, renamed or retyped
+     *         since the prior profile was made.
+     */
+    private List<ColumnProfileResult> matchPriorColumns(SQLTable table) throws SQLObjectException {
+        List<SQLColumn> columns = table.getColumns();
+        if (priorResult.getColumnProfileResults().size() != columns.size()) return null;
+        Map<SQLColumn, ColumnProfileResult> priorByColumn = new HashMap<SQLColumn, ColumnProfileResult>();
+        for (ColumnProfileResult cpr : priorResult.getColumnProfileResults()) {
+            priorByColumn.put(cpr.getProfiledObject(), cpr);
+        }
+        List<ColumnProfileResult> matched = new ArrayList<ColumnProfileResult>();
+        for (SQLColumn col : columns) {
+            ColumnProfileResult cpr = priorByColumn.get(col);
+            if (cpr == null || !equal(cpr.getColumnDefinition(), ColumnProfileResult.describeColumn(col))) {
+                return null;
+            }
+            matched.add(cpr);
+        }
+        return matched;
+    }
+
+    /**
+     * Counts the rows in the given table.
+     */
+    private int queryRowCount(SQLTable table, ProfileConnectionPool pool) throws Exception {
+        Connection con = null;
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            con = pool.getConnection();
+            String quote = con.getMetaData().getIdentifierQuoteString();
+            String sql = "SELECT COUNT(*) FROM " + DDLUtils.toQualifiedName(table.getCatalogName(),
+                    table.getSchemaName(), table.getName(), quote, quote);
+            stmt = pool.createStatement(con);
+            rs = pool.executeQuery(stmt, sql, null);
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            closeAll(rs, stmt, con, pool);
+        }
+    }
+
+    /**
+     * Runs the data source type's last modified query for the given table.
+     *
+     * @return The value the query returned, or null if the data source type
+     *         has no such query or it failed.
+     */
+    private String queryModificationStamp(SQLTable table, ProfileConnectionPool pool) throws Exception {
+        JDBCDataSourceType dsType = table.getParentDatabase().getDataSource().getParentType();
+        String query = dsType.getProperty(LAST_MODIFIED_QUERY);
+        if (query == null || query.trim().length() == 0) return null;
+
+        String sql = query.replace("{catalog}", toLiteral(table.getCatalogName()))
+            .replace("{schema}", toLiteral(table.getSchemaName()))
+            .replace("{table}", toLiteral(table.getName()));
+        Connection con = null;
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            con = pool.getConnection();
+            stmt = pool.createStatement(con);
+            rs = pool.executeQuery(stmt, sql, null);
+            if (!rs.next()) return null;
+            Object stamp = rs.getObject(1);
+            return stamp == null ? null : stamp.toString();
+        } catch (SQLException e) {
+            logger.warn("Last modified query failed for " + table.getName() +
+                    "; falling back to the row count. Query was: " + sql, e);
+            return null;
+        } finally {
+            closeAll(rs, stmt, con, pool);
+        }
+    }
+
+    private static String toLiteral(String s) {
+        if (s == null) return "NULL";
+        return "'" + s.replace("'", "''") + "'";
+    }
+
+    private static boolean equal(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
+    private static void closeAll(ResultSet rs, Statement stmt, Connection con, ProfileConnectionPool pool) {
+        try {
+            if (rs != null) rs.close();
+        } catch (SQLException ex) {
+            logger.error("Couldn't clean up result set", ex);
+        }
+        pool.closeStatement(stmt);
+        pool.releaseConnection(con);
+    }
+
+    @Override
+    public String toString() {
+        return "Incremental " + delegate;
+    }
+}
@@ -32,6 +32,7 @@ import java.util.Map.Entry;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.architect.profile.sketch.TDigest;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLTable;
@@ -99,10 +100,14 @@ public class LocalReservoirProfileCreator extends AbstractTableProfileCreator {
             
             logger.debug("About to execute profiling query: " + sql);
             try {
+                long start = System.nanoTime();
                 JDBCReserviorDataSource ds = new JDBCReserviorDataSource(con, sql.toString());
                 Reservoir<Object[]> r = new BasicReservoir<Object[]>();
                 sample = r.getSample(ds, sampleSize);
                 tpr.setRowCount(ds.getRowCount());
+                // the reservoir runs the query itself, so execution can't be told apart from fetching
+                tpr.addQueryTiming(new ProfileQueryTiming(table, null, sql.toString(),
+                        -1, System.nanoTime() - start, ds.getRowCount(), -1));
             } catch (Throwable ex) {
                 logger.error("something bad happened", ex);
                 throw new RuntimeException(ex);
@@ -152,6 +157,9 @@ public class LocalReservoirProfileCreator extends AbstractTableProfileCreator {
                 
                 int nullCount = 0;
                 
+                // for estimating percentiles of numeric values
+                TDigest quantiles = null;
+                
                 for (int row = 0; row < sample.length; row++) {
                     Object val = sample[row][col];
                     String sval = (val == null ? null : String.valueOf(val));
@@ -164,6 +172,8 @@ public class LocalReservoirProfileCreator extends AbstractTableProfileCreator {
                         nullCount++;
                     } else if (val instanceof Number) {
                         sum += ((Number) val).doubleValue();
+                        if (quantiles == null) quantiles = new TDigest();
+                        quantiles.add(((Number) val).doubleValue());
                     }
                     
                     if (sval != null) {
@@ -192,6 +202,7 @@ public class LocalReservoirProfileCreator extends AbstractTableProfileCreator {
                 cpr.setMinLength(minLength);
                 cpr.setMinValue(minValue);
                 cpr.setNullCount(nullCount);
+                cpr.setQuantileDigest(quantiles);
                 
                 List<Map.Entry<Object, Integer>> topNList = new ArrayList<Entry<Object,Integer>>(valueCounts.entrySet());
                 Collections.sort(topNList, new TopNValuesComparator());
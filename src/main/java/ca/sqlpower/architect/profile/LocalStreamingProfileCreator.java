@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.architect.profile.sketch.HyperLogLog;
+import ca.sqlpower.architect.profile.sketch.SpaceSaving;
+import ca.sqlpower.architect.profile.sketch.TDigest;
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.MonitorableImpl;
+
+/**
+ * A profile creator that reads every row of the table exactly once and
+ * profiles all of its columns in the local JVM as the rows go by. Like the
+ * {@link LocalReservoirProfileCreator}, the same set of aggregates is computed
+ * for every data type regardless of what the remote database supports, but
+ * the results describe the whole table rather than a sample of it.
+ * <p>
+ * No rows are kept in memory. Instead, each column keeps a fixed-size summary:
+ * a {@link HyperLogLog} sketch estimates the number of distinct values and a
+ * {@link SpaceSaving} sketch finds the most frequent values. Null counts, row
+ * counts, minimums, maximums and lengths are exact. The distinct count is
+ * within about 1% of the true count, and the top value counts are exact
+ * unless the column has more distinct values than the sketch can track, in
+ * which case they may be slightly overstated.
+ * <p>
+ * The table is read with a forward-only, read-only statement inside a
+ * transaction, which is what most drivers need before they will fetch the
+ * rows in batches of the statement's fetch size rather than all at once.
+ * The fetch size is the {@link #FETCH_SIZE_PROPERTY} of the data source
+ * type; MySQL's driver, for example, only streams rows when it is
+ * {@link Integer#MIN_VALUE}. Drivers that ignore the fetch size will still
+ * read the whole table into memory, which limits the size of table this
+ * creator can profile on those platforms.
+ */
+public class LocalStreamingProfileCreator extends AbstractTableProfileCreator {
+
+    private static final Logger logger = Logger.getLogger(LocalStreamingProfileCreator.class);
+
+    /**
+     * The data source type property holding the fetch size to give the
+     * driver for the table scan, if the platform's driver needs something
+     * other than {@link #DEFAULT_FETCH_SIZE} to stream rows.
+     */
+    public static final String FETCH_SIZE_PROPERTY =
+        "ca.sqlpower.architect.profile.LocalStreamingProfileCreator.FetchSize";
+
+    /**
+     * The number of rows to ask the driver to fetch from the server at a
+     * time when the data source type does not set a {@link #FETCH_SIZE_PROPERTY}.
+     */
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /**
+     * The number of rows read between checks for cancellation and updates to
+     * the progress message.
+     */
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    /**
+     * The smallest number of distinct values the top N sketch of each column
+     * tracks. The more values are tracked, the more accurate the reported
+     * counts of the top values are on columns with many distinct values.
+     */
+    private static final int MIN_TOP_N_CAPACITY = 1000;
+
+    /**
+     * Accumulates the profile of one column as rows are read.
+     */
+    private static class ColumnAccumulator {
+        final HyperLogLog distinctValues = new HyperLogLog();
+        final SpaceSaving<Object> topValues;
+        /**
+         * Created when the first numeric value is seen.
+         */
+        TDigest quantiles = null;
+        int nullCount = 0;
+        Comparable<Object> minValue = null;
+        Comparable<Object> maxValue = null;
+        double valueSum = 0.0;
+        long numericCount = 0;
+        long lengthSum = 0;
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+
+        ColumnAccumulator(int topNCapacity) {
+            topValues = new SpaceSaving<Object>(topNCapacity);
+        }
+
+        @SuppressWarnings("unchecked")
+        void add(Object val) {
+            topValues.offer(val);
+            if (val == null) {
+                nullCount++;
+                return;
+            }
+            distinctValues.offer(val);
+            if (val instanceof Number) {
+                double d = ((Number) val).doubleValue();
+                valueSum += d;
+                numericCount++;
+                if (quantiles == null) quantiles = new TDigest();
+                quantiles.add(d);
+            }
+            int length = String.valueOf(val).length();
+            lengthSum += length;
+            if (length < minLength) minLength = length;
+            if (length > maxLength) maxLength = length;
+
+            if (val instanceof Comparable) {
+                Comparable<Object> cval = (Comparable<Object>) val;
+                if (minValue == null || cval.compareTo(minValue) < 0) {
+                    minValue = cval;
+                }
+                if (maxValue == null || cval.compareTo(maxValue) > 0) {
+                    maxValue = cval;
+                }
+            }
+        }
+    }
+
+    /**
+     * The settings for this profile creator.
+     */
+    private final ProfileSettings settings;
+
+    public LocalStreamingProfileCreator(ProfileSettings settings) {
+        if (settings == null) {
+            throw new NullPointerException("Null settings");
+        }
+        this.settings = settings;
+    }
+
+    @Override
+    protected boolean doProfileImpl(TableProfileResult tpr) throws SQLException, SQLObjectException {
+        SQLTable table = tpr.getProfiledObject();
+        List<SQLColumn> columns = table.getColumns();
+
+        MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
+        pm.setJobSize(columns.size() + 1);
+        pm.setProgress(1);
+
+        int topNCapacity = Math.max(MIN_TOP_N_CAPACITY, settings.getTopNCount() * 100);
+        List<ColumnAccumulator> accumulators = new ArrayList<ColumnAccumulator>(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            accumulators.add(new ColumnAccumulator(topNCapacity));
+        }
+
+        long startTime = System.currentTimeMillis();
+        int rowCount = 0;
+        ProfileConnectionPool pool = new ProfileConnectionPool(tpr, settings.getQueryTimeout());
+        Connection con = null;
+        Statement stmt = null;
+        ResultSet rs = null;
+        boolean autoCommit = true;
+        try {
+            con = pool.getConnection();
+            autoCommit = con.getAutoCommit();
+            if (autoCommit) {
+                con.setAutoCommit(false);
+            }
+            String quote = con.getMetaData().getIdentifierQuoteString();
+            if (quote == null || quote.trim().length() == 0) quote = "";
+            StringBuilder sql = new StringBuilder();
+            sql.append("SELECT ");
+            boolean first = true;
+            for (SQLColumn col : columns) {
+                if (!first) sql.append(", ");
+                sql.append(quote).append(col.getName()).append(quote);
+                first = false;
+            }
+            sql.append("\nFROM ").append(DDLUtils.toQualifiedName(table.getCatalogName(),
+                    table.getSchemaName(), table.getName(), quote, quote));
+
+            logger.debug("About to execute profiling query: " + sql);
+            stmt = pool.createStatement(con, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(getFetchSize(table));
+            rs = pool.executeQuery(stmt, sql.toString(), null);
+            int columnCount = columns.size();
+            while (rs.next()) {
+                for (int i = 0; i < columnCount; i++) {
+                    accumulators.get(i).add(rs.getObject(i + 1));
+                }
+                rowCount++;
+                if (rowCount % PROGRESS_INTERVAL == 0) {
+                    if (pm.isCancelled()) {
+                        return false;
+                    }
+                    pm.setMessage(table.getName() + " (" + rowCount + " rows)");
+                }
+            }
+            logger.debug("Finished reading " + rowCount + " rows from " + table.getName());
+        } finally {
+            try {
+                if (rs != null) rs.close();
+            } catch (SQLException ex) {
+                logger.error("Failed to close result set. Squishing this exception: ", ex);
+            }
+            pool.closeStatement(stmt);
+            if (con != null && autoCommit) {
+                try {
+                    con.setAutoCommit(true);
+                } catch (SQLException ex) {
+                    logger.error("Failed to restore auto-commit. Squishing this exception: ", ex);
+                }
+            }
+            pool.releaseConnection(con);
+            pool.close();
+        }
+
+        tpr.setRowCount(rowCount);
+        for (int i = 0; i < columns.size(); i++) {
+            pm.setProgress(i + 1);
+            ColumnProfileResult cpr = new ColumnProfileResult(columns.get(i));
+            cpr.setCreateStartTime(startTime);
+            populateColumnProfile(cpr, accumulators.get(i));
+            cpr.setCreateEndTime(System.currentTimeMillis());
+            tpr.addColumnProfileResult(cpr);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the fetch size for scanning the given table: the
+     * {@link #FETCH_SIZE_PROPERTY} of its data source type, or
+     * {@link #DEFAULT_FETCH_SIZE} if that is not set or not a number.
+     */
+    private int getFetchSize(SQLTable table) {
+        JDBCDataSourceType dsType = table.getParentDatabase().getDataSource().getParentType();
+        String fetchSize = DDLUtils.getPlatformProperty(dsType, FETCH_SIZE_PROPERTY);
+        if (fetchSize == null) return DEFAULT_FETCH_SIZE;
+        try {
+            return Integer.parseInt(fetchSize.trim());
+        } catch (NumberFormatException ex) {
+            logger.warn("Invalid streaming fetch size \"" + fetchSize + "\" for " + dsType.getName() +
+                    "; using " + DEFAULT_FETCH_SIZE);
+            return DEFAULT_FETCH_SIZE;
+        }
+    }
+
+    /**
+     * Copies the values gathered for one column into its profile result.
+     */
+    private void populateColumnProfile(ColumnProfileResult cpr, ColumnAccumulator acc) {
+        long nonNullCount = acc.topValues.getOfferedCount() - acc.nullCount;
+        cpr.setNullCount(acc.nullCount);
+        cpr.setDistinctValueCount((int) Math.min(acc.distinctValues.cardinality(), nonNullCount));
+        cpr.setMinValue(acc.minValue);
+        cpr.setMaxValue(acc.maxValue);
+        if (acc.numericCount > 0) {
+            cpr.setAvgValue(acc.valueSum / acc.numericCount);
+            cpr.setQuantileDigest(acc.quantiles);
+        }
+        if (nonNullCount > 0) {
+            cpr.setMinLength(acc.minLength);
+            cpr.setMaxLength(acc.maxLength);
+            cpr.setAvgLength((double) acc.lengthSum / nonNullCount);
+        }
+
+        long sumOfTopNCount = 0;
+        for (SpaceSaving.Counter<Object> counter : acc.topValues.getTop(settings.getTopNCount())) {
+            cpr.addValueCount(counter.getItem(), (int) counter.getCount());
+            sumOfTopNCount += counter.getCount();
+        }
+        long otherCount = acc.topValues.getOfferedCount() - sumOfTopNCount;
+        if (otherCount > 0) {
+            cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, (int) otherCount);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Local Streaming";
+    }
+}
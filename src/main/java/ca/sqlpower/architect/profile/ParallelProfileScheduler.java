@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs table profiles on a bounded pool of worker threads. Pending profiles
+ * are handed to the pool biggest table first, and no more than a fixed number
+ * of profiles against the same data source are allowed to run at once so one
+ * large profile run does not flood a single database server.
+ * <p>
+ * Profiles that cannot be started yet because the pool or their data source
+ * is busy wait in this scheduler rather than in the pool's work queue, which
+ * is what allows the ordering and per-data-source limits to be honoured.
+ */
+class ParallelProfileScheduler {
+
+    private static final Logger logger = Logger.getLogger(ParallelProfileScheduler.class);
+
+    /**
+     * A profile that has been submitted to this scheduler. The future is
+     * handed back to the caller immediately, but the work is only given to a
+     * worker thread once there is room for it.
+     */
+    private class ScheduledProfile extends FutureTask<TableProfileResult> {
+
+        /**
+         * The data source the profiled table belongs to. This is what the
+         * per-data-source limit is counted against.
+         */
+        private final String dataSourceKey;
+
+        /**
+         * The estimated number of rows in the profiled table, or -1 if the
+         * size is unknown.
+         */
+        private final long rowCountEstimate;
+
+        /**
+         * The number of columns in the profiled table. Used to order tables
+         * of unknown or equal size since wider tables take longer to profile.
+         */
+        private final int columnCount;
+
+        /**
+         * The order this profile was submitted in. Keeps the ordering stable
+         * for tables of the same size.
+         */
+        private final long sequence;
+
+        ScheduledProfile(Callable<TableProfileResult> callable, String dataSourceKey,
+                long rowCountEstimate, int columnCount, long sequence) {
+            super(callable);
+            this.dataSourceKey = dataSourceKey;
+            this.rowCountEstimate = rowCountEstimate;
+            this.columnCount = columnCount;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                profileFinished(this);
+            }
+        }
+    }
+
+    /**
+     * Orders scheduled profiles biggest table first. Tables with a known row
+     * count come before tables whose size is unknown.
+     */
+    private static final Comparator<ScheduledProfile> BIGGEST_FIRST = new Comparator<ScheduledProfile>() {
+        public int compare(ScheduledProfile o1, ScheduledProfile o2) {
+            if (o1.rowCountEstimate != o2.rowCountEstimate) {
+                return o1.rowCountEstimate > o2.rowCountEstimate ? -1 : 1;
+            }
+            if (o1.columnCount != o2.columnCount) {
+                return o1.columnCount > o2.columnCount ? -1 : 1;
+            }
+            if (o1.sequence == o2.sequence) return 0;
+            return o1.sequence < o2.sequence ? -1 : 1;
+        }
+    };
+
+    /**
+     * The worker threads that populate the profiles.
+     */
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * Profiles that have been submitted but not yet given to a worker, in the
+     * order they will be started.
+     */
+    private final List<ScheduledProfile> pending = new ArrayList<ScheduledProfile>();
+
+    /**
+     * The number of running profiles for each data source.
+     */
+    private final Map<String, Integer> runningPerDataSource = new HashMap<String, Integer>();
+
+    /**
+     * The total number of profiles currently given to a worker thread.
+     */
+    private int runningCount = 0;
+
+    /**
+     * The maximum number of profiles that may run at once.
+     */
+    private int threadCount;
+
+    /**
+     * The maximum number of profiles against one data source that may run at
+     * once.
+     */
+    private int maxPerDataSource;
+
+    /**
+     * Used to keep the ordering stable for profiles of the same size.
+     */
+    private long nextSequence = 0;
+
+    /**
+     * @param threadCount
+     *            The maximum number of profiles to populate at once. Values
+     *            less than 1 are treated as 1.
+     * @param maxPerDataSource
+     *            The maximum number of profiles against the same data source
+     *            to populate at once. Values less than 1 are treated as 1.
+     */
+    ParallelProfileScheduler(int threadCount, int maxPerDataSource) {
+        this.threadCount = Math.max(1, threadCount);
+        this.maxPerDataSource = Math.max(1, maxPerDataSource);
+        workers = new ThreadPoolExecutor(this.threadCount, this.threadCount,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Updates the limits of this scheduler. Profiles that are already running
+     * are not affected, but any waiting profiles will be started according to
+     * the new limits.
+     */
+    synchronized void setLimits(int threadCount, int maxPerDataSource) {
+        int newThreadCount = Math.max(1, threadCount);
+        if (newThreadCount > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(newThreadCount);
+            workers.setCorePoolSize(newThreadCount);
+        } else {
+            workers.setCorePoolSize(newThreadCount);
+            workers.setMaximumPoolSize(newThreadCount);
+        }
+        this.threadCount = newThreadCount;
+        this.maxPerDataSource = Math.max(1, maxPerDataSource);
+        dispatch();
+    }
+
+    /**
+     * Schedules the given profile work. The returned future completes when
+     * the callable has run, and can be cancelled before or during the run.
+     *
+     * @param callable
+     *            The work that populates the profile.
+     * @param dataSourceKey
+     *            Identifies the data source of the profiled table.
+     * @param rowCountEstimate
+     *            The estimated size of the table, or -1 if it is not known.
+     * @param columnCount
+     *            The number of columns in the profiled table.
+     */
+    synchronized Future<TableProfileResult> submit(Callable<TableProfileResult> callable,
+            String dataSourceKey, long rowCountEstimate, int columnCount) {
+        if (workers.isShutdown()) {
+            throw new IllegalStateException("This profile scheduler has been shut down");
+        }
+        ScheduledProfile profile = new ScheduledProfile(callable, dataSourceKey,
+                rowCountEstimate, columnCount, nextSequence++);
+        int index = Collections.binarySearch(pending, profile, BIGGEST_FIRST);
+        pending.add(-(index + 1), profile);
+        dispatch();
+        return profile;
+    }
+
+    /**
+     * Gives as many waiting profiles to the worker threads as the limits
+     * allow, in priority order. Profiles that were cancelled while waiting are
+     * dropped.
+     */
+    private synchronized void dispatch() {
+        Iterator<ScheduledProfile> it = pending.iterator();
+        while (it.hasNext() && runningCount < threadCount) {
+            ScheduledProfile profile = it.next();
+            if (profile.isDone()) {
+                it.remove();
+                continue;
+            }
+            Integer running = runningPerDataSource.get(profile.dataSourceKey);
+            if (running == null) running = 0;
+            if (running >= maxPerDataSource) continue;
+
+            it.remove();
+            runningPerDataSource.put(profile.dataSourceKey, running + 1);
+            runningCount++;
+            logger.debug("Starting profile on data source " + profile.dataSourceKey +
+                    " (" + runningCount + " running)");
+            workers.execute(profile);
+        }
+    }
+
+    /**
+     * Frees the slot the given profile was holding and starts the next
+     * waiting profiles.
+     */
+    private synchronized void profileFinished(ScheduledProfile profile) {
+        runningCount--;
+        Integer running = runningPerDataSource.get(profile.dataSourceKey);
+        if (running == null || running <= 1) {
+            runningPerDataSource.remove(profile.dataSourceKey);
+        } else {
+            runningPerDataSource.put(profile.dataSourceKey, running - 1);
+        }
+        if (!workers.isShutdown()) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Stops this scheduler. Waiting profiles are cancelled, and profiles that
+     * are already running are allowed to finish.
+     */
+    synchronized void shutdown() {
+        for (ScheduledProfile profile : pending) {
+            profile.cancel(false);
+        }
+        pending.clear();
+        workers.shutdown();
+    }
+}
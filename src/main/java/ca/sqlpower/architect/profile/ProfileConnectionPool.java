@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.util.Monitorable;
+
+/**
+ * Hands out connections and statements to a profile creator for the duration
+ * of one table profile. Connections given back with
+ * {@link #releaseConnection(Connection)} are kept open and handed out again,
+ * so the row count and every column query of a table share one connection
+ * instead of each borrowing its own from the database. The connections are
+ * only returned to the database when the pool is closed.
+ * <p>
+ * Every statement created by the pool has the configured query timeout, and
+ * is registered with the profile's progress monitor while it is open so it
+ * can be cancelled on the server when the user cancels the profile.
+ * <p>
+ * Queries run through {@link #executeQuery(Statement, String, SQLColumn)} are
+ * timed, and their timings are added to the profile result the pool was made
+ * for when their results are closed.
+ */
+public class ProfileConnectionPool {
+
+    private static final Logger logger = Logger.getLogger(ProfileConnectionPool.class);
+
+    private final SQLDatabase db;
+
+    /**
+     * The number of seconds a statement may run before the driver cancels
+     * it, or 0 for no limit.
+     */
+    private final int queryTimeout;
+
+    /**
+     * The progress monitor of the profile the statements are run for. Null
+     * if the monitor can't cancel statements.
+     */
+    private final ProfileProgressMonitor pm;
+
+    /**
+     * The open connections that are not currently in use.
+     */
+    private final List<Connection> idleConnections = new ArrayList<Connection>();
+
+    /**
+     * The result that query timings are added to, or null if queries are not
+     * timed.
+     */
+    private final TableProfileResult timedResult;
+
+    /**
+     * The query whose results are open on each statement.
+     */
+    private final Map<Statement, TimedQuery> openQueries = new IdentityHashMap<Statement, TimedQuery>();
+
+    /**
+     * Times one query from the start of its execution until its results are
+     * closed, and counts the rows and values read from the results. It is the
+     * invocation handler of the result set proxy that
+     * {@link ProfileConnectionPool#executeQuery(Statement, String, SQLColumn)}
+     * hands back.
+     */
+    private class TimedQuery implements InvocationHandler {
+        private final Statement stmt;
+        private final String sql;
+        private final SQLColumn column;
+        private final long executionNanos;
+        private final long executedAt;
+        private ResultSet rs;
+        private long rowCount;
+        private long byteCount;
+        private boolean finished;
+
+        TimedQuery(Statement stmt, String sql, SQLColumn column, long executionNanos, long executedAt) {
+            this.stmt = stmt;
+            this.sql = sql;
+            this.column = column;
+            this.executionNanos = executionNanos;
+            this.executedAt = executedAt;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                finish();
+            }
+            Object value;
+            try {
+                value = method.invoke(rs, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (name.equals("next")) {
+                if (Boolean.TRUE.equals(value)) rowCount++;
+            } else if (value != null && name.startsWith("get") && args != null && args.length == 1
+                    && method.getDeclaringClass() == ResultSet.class) {
+                byteCount += estimateSize(value);
+            }
+            return value;
+        }
+
+        /**
+         * Adds this query's timing to the profile result the first time it
+         * is called.
+         */
+        void finish() {
+            synchronized (ProfileConnectionPool.this) {
+                if (finished) return;
+                finished = true;
+                if (openQueries.get(stmt) == this) {
+                    openQueries.remove(stmt);
+                }
+            }
+            long fetchNanos = System.nanoTime() - executedAt;
+            timedResult.addQueryTiming(new ProfileQueryTiming(timedResult.getProfiledObject(), column, sql,
+                    executionNanos, fetchNanos, rowCount, byteCount));
+        }
+    }
+
+    /**
+     * @param db
+     *            The database to profile.
+     * @param queryTimeout
+     *            The number of seconds each statement may run, or 0 for no
+     *            limit.
+     * @param pm
+     *            The progress monitor of the profile. Statements are only
+     *            cancelled along with the profile if this is a
+     *            {@link ProfileProgressMonitor}.
+     */
+    public ProfileConnectionPool(SQLDatabase db, int queryTimeout, Monitorable pm) {
+        this(db, queryTimeout, pm, null);
+    }
+
+    /**
+     * Creates a pool for profiling the given result's table that times the
+     * queries it runs and adds their timings to the result.
+     * 
+     * @param tpr
+     *            The result being populated.
+     * @param queryTimeout
+     *            The number of seconds each statement may run, or 0 for no
+     *            limit.
+     */
+    public ProfileConnectionPool(TableProfileResult tpr, int queryTimeout) {
+        this(tpr.getProfiledObject().getParentDatabase(), queryTimeout, tpr.getProgressMonitor(), tpr);
+    }
+
+    private ProfileConnectionPool(SQLDatabase db, int queryTimeout, Monitorable pm, TableProfileResult timedResult) {
+        this.db = db;
+        this.timedResult = timedResult;
+        this.queryTimeout = queryTimeout;
+        if (pm instanceof ProfileProgressMonitor) {
+            this.pm = (ProfileProgressMonitor) pm;
+        } else {
+            this.pm = null;
+        }
+    }
+
+    /**
+     * Returns an idle connection from this pool, or a new connection to the
+     * database if there are none. The connection must be given back with
+     * {@link #releaseConnection(Connection)} rather than closed.
+     */
+    public synchronized Connection getConnection() throws SQLObjectException {
+        if (!idleConnections.isEmpty()) {
+            return idleConnections.remove(idleConnections.size() - 1);
+        }
+        return db.getConnection();
+    }
+
+    /**
+     * Gives back a connection obtained from {@link #getConnection()}. Does
+     * nothing if con is null.
+     */
+    public synchronized void releaseConnection(Connection con) {
+        if (con != null) {
+            idleConnections.add(con);
+        }
+    }
+
+    /**
+     * Creates a statement on the given connection with escape processing
+     * turned off and this pool's query timeout set. The statement must be
+     * closed with {@link #closeStatement(Statement)}.
+     */
+    public Statement createStatement(Connection con) throws SQLException {
+        return configureStatement(con.createStatement());
+    }
+
+    /**
+     * Creates a statement like {@link #createStatement(Connection)} does, but
+     * whose result sets have the given type and concurrency.
+     */
+    public Statement createStatement(Connection con, int resultSetType, int resultSetConcurrency)
+    throws SQLException {
+        return configureStatement(con.createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    private Statement configureStatement(Statement stmt) {
+        try {
+            stmt.setEscapeProcessing(false);
+            if (queryTimeout > 0) {
+                stmt.setQueryTimeout(queryTimeout);
+            }
+        } catch (SQLException ex) {
+            logger.warn("Couldn't configure profiling statement. Carrying on with driver defaults.", ex);
+        }
+        if (pm != null) {
+            pm.statementStarted(stmt);
+        }
+        return stmt;
+    }
+
+    /**
+     * Runs a query on a statement created by this pool. If this pool was made
+     * for a profile result, the query is timed until the returned results or
+     * the statement are closed, or the statement runs another query.
+     * 
+     * @param stmt
+     *            The statement to run the query on.
+     * @param sql
+     *            The query.
+     * @param column
+     *            The column the query profiles, or null if it profiles the
+     *            table as a whole or several columns at once.
+     */
+    public ResultSet executeQuery(Statement stmt, String sql, SQLColumn column) throws SQLException {
+        if (timedResult == null) {
+            return stmt.executeQuery(sql);
+        }
+        finishQuery(stmt);
+        long start = System.nanoTime();
+        ResultSet rs = stmt.executeQuery(sql);
+        long executedAt = System.nanoTime();
+        TimedQuery query = new TimedQuery(stmt, sql, column, executedAt - start, executedAt);
+        query.rs = rs;
+        synchronized (this) {
+            openQueries.put(stmt, query);
+        }
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, query);
+    }
+
+    /**
+     * Records the timing of the query whose results are open on the given
+     * statement, if there is one. Its results are about to be closed by the
+     * driver.
+     */
+    private void finishQuery(Statement stmt) {
+        TimedQuery query;
+        synchronized (this) {
+            query = openQueries.get(stmt);
+        }
+        if (query != null) {
+            query.finish();
+        }
+    }
+
+    /**
+     * Returns a rough size in bytes of a value read from a result set. See
+     * {@link ProfileQueryTiming#getByteCount()}.
+     */
+    private static long estimateSize(Object value) {
+        if (value instanceof String) {
+            return ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof Boolean) {
+            return 1;
+        }
+        return 8;
+    }
+
+    /**
+     * Closes a statement created by {@link #createStatement(Connection)},
+     * logging rather than throwing any exception. Does nothing if stmt is
+     * null.
+     */
+    public void closeStatement(Statement stmt) {
+        if (stmt == null) return;
+        finishQuery(stmt);
+        if (pm != null) {
+            pm.statementFinished(stmt);
+        }
+        try {
+            stmt.close();
+        } catch (SQLException ex) {
+            logger.error("Couldn't clean up statement", ex);
+        }
+    }
+
+    /**
+     * Returns all the idle connections to the database. Connections that are
+     * still in use are the caller's responsibility.
+     */
+    public synchronized void close() {
+        for (Connection con : idleConnections) {
+            try {
+                con.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up connection", ex);
+            }
+        }
+        idleConnections.clear();
+    }
+}
@@ -21,6 +21,7 @@ package ca.sqlpower.architect.profile;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 
 import ca.sqlpower.architect.profile.event.ProfileChangeListener;
@@ -78,6 +79,10 @@ public interface ProfileManager extends SPObject {
      * state.  Then starts a new worker thread which will populate the results
      * one after the other.  It is likely that none of the profiles will be
      * populated yet by the time this method returns.
+     * <p>
+     * If the default profile settings have parallel profiling turned on, the
+     * results are instead populated several at a time, largest table first,
+     * within the thread and per-data-source limits given by those settings.
      */
     public Collection<Future<TableProfileResult>> asynchCreateProfiles(Collection<SQLTable> tables);
 
@@ -135,6 +140,27 @@ public interface ProfileManager extends SPObject {
      * part of this profile manager, but have not been calculated yet.
      */
     public void setProcessingOrder(List<TableProfileResult> tpr);
+
+    /**
+     * Reads in results that were saved with the project on this profile
+     * manager's worker thread, and adds them on the foreground thread once
+     * they have been read. Until then, {@link #getResults()} and the profiled
+     * tables' {@link #PROFILE_COUNT_PROPERTY} client properties do not
+     * include them. If the results are {@link #clear() cleared} first, the
+     * saved results are dropped.
+     * 
+     * @param loader
+     *            Returns the saved results, already populated.
+     */
+    public void loadSavedResults(Callable<List<TableProfileResult>> loader);
+
+    /**
+     * Waits until the results given to {@link #loadSavedResults(Callable)}
+     * have been read, and adds them now if they have not been added yet.
+     * Anything that needs every result, such as saving the project, should
+     * call this first. Returns at once if no saved results are loading.
+     */
+    public void awaitSavedResults();
     
     /**
      * Closes the Executor service. This stops it from running any further jobs.
@@ -28,12 +28,14 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ArchitectProject;
 import ca.sqlpower.architect.profile.event.ProfileChangeEvent;
 import ca.sqlpower.architect.profile.event.ProfileChangeListener;
+import ca.sqlpower.architect.profile.event.ProfileQueryListener;
 import ca.sqlpower.dao.PersistedSPObject;
 import ca.sqlpower.dao.SPPersisterListener;
 import ca.sqlpower.dao.SPSessionPersister;
@@ -152,6 +154,13 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
      */
     private ExecutorService profileExecutor = Executors.newSingleThreadExecutor();
 
+    /**
+     * Populates profiles on several threads at once when the default profile
+     * settings ask for parallel profiling. This is created the first time it
+     * is needed.
+     */
+    private ParallelProfileScheduler parallelScheduler;
+
     /**
      * The creator that will be used to create profiles.
      */
@@ -161,13 +170,21 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
      * Watches for database removals and updates the manager accordingly.
      */
     private final DatabaseRemovalWatcher databaseRemovalWatcher = new DatabaseRemovalWatcher();
+
+    /**
+     * The results saved with the project that are being read in, or null if
+     * there are none waiting to be added. See {@link #loadSavedResults(Callable)}.
+     */
+    private Future<List<TableProfileResult>> savedResults;
     
     /**
      * A list of the different existing profile creators that can be used.
      */
     private List<TableProfileCreator> profileCreators = Arrays.asList(
             (TableProfileCreator)new RemoteDatabaseProfileCreator(getDefaultProfileSettings()),
-            new LocalReservoirProfileCreator(getDefaultProfileSettings()));
+            new LocalReservoirProfileCreator(getDefaultProfileSettings()),
+            new LocalStreamingProfileCreator(getDefaultProfileSettings()),
+            new RemoteSamplingProfileCreator(getDefaultProfileSettings()));
 
     /**
      * A Callable interface which populates a single profile result then returns
@@ -200,11 +217,40 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
          */
         private final TableProfileResult tpr;
 
+        /**
+         * A copy of the earlier profile of the same table to compare against
+         * when profiling incrementally, or null if the table should simply be
+         * profiled.
+         */
+        private final TableProfileResult priorTPR;
+
+        /**
+         * Set to true if the profile should be checked against earlier
+         * profiles of the same table and skipped if the table is unchanged.
+         */
+        private final boolean incremental;
+
         ProfileResultCallable(TableProfileResult actualTPR) {
+            this(actualTPR, null, false);
+        }
+
+        /**
+         * @param actualTPR
+         *            The profile result to populate.
+         * @param priorResult
+         *            The earlier profile of the same table to compare against
+         *            when profiling incrementally, or null if there is none.
+         * @param incremental
+         *            True if the table should only be profiled when it has
+         *            changed since priorResult was made.
+         */
+        ProfileResultCallable(TableProfileResult actualTPR, TableProfileResult priorResult, boolean incremental) {
             if (actualTPR == null) throw new NullPointerException("Can't populate a null profile result!");
             this.actualTPR = actualTPR;
+            this.incremental = incremental;
             SQLTable table;
             TableProfileResult tempTPR;
+            TableProfileResult tempPriorTPR = null;
             try {
                 SQLTable profileTable = actualTPR.getProfiledObject();
                 table = new SQLTable(profileTable.getParentDatabase(), true);
@@ -226,6 +272,10 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
                 ProfileManager backgroundPM = new ProfileManagerImpl();
                 backgroundPM.setUUID(actualTPR.getParent().getUUID());
                 tempTPR.setParent(backgroundPM);
+                
+                if (priorResult != null) {
+                    tempPriorTPR = new TableProfileResult(priorResult, table);
+                }
             } catch (Exception e) {
                 //If an exception is thrown during setup define the profile to have an exception on
                 //it and handle appropriately when doing the profile.
@@ -233,6 +283,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
                 actualTPR.setException(e);
             }
             tpr = tempTPR;
+            priorTPR = tempPriorTPR;
         }
         
         /**
@@ -243,7 +294,24 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
             if (actualTPR.getException() != null) {
                 throw actualTPR.getException();
             }
-            creator.doProfile(tpr);
+            // the timings aren't copied back with the rest of the result, so
+            // they are passed on to the real result as each query finishes
+            ProfileQueryListener timingForwarder = new ProfileQueryListener() {
+                public void queryFinished(TableProfileResult result, ProfileQueryTiming timing) {
+                    actualTPR.addQueryTiming(timing);
+                }
+            };
+            tpr.addProfileQueryListener(timingForwarder);
+            try {
+                if (incremental && creator instanceof AbstractTableProfileCreator) {
+                    new IncrementalProfileCreator((AbstractTableProfileCreator) creator, priorTPR,
+                            getDefaultProfileSettings()).doProfile(tpr);
+                } else {
+                    creator.doProfile(tpr);
+                }
+            } finally {
+                tpr.removeProfileQueryListener(timingForwarder);
+            }
             Runnable runner = new Runnable() {
                 public void run() {
                     //None of the profiling creates or saves any data source information so an
@@ -337,6 +405,77 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
             table.putClientProperty(ProfileManager.class, PROFILE_COUNT_PROPERTY, getResults(table).size());
         }
     }
+
+    /* docs inherited from interface */
+    public void loadSavedResults(Callable<List<TableProfileResult>> loader) {
+        FutureTask<List<TableProfileResult>> load = new FutureTask<List<TableProfileResult>>(loader) {
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                final Future<List<TableProfileResult>> load = this;
+                Runnable adder = new Runnable() {
+                    public void run() {
+                        addSavedResults(load);
+                    }
+                };
+                try {
+                    getRunnableDispatcher().runInForeground(adder);
+                } catch (SessionNotFoundException e) {
+                    adder.run();
+                }
+            }
+        };
+        synchronized (this) {
+            if (savedResults != null) {
+                savedResults.cancel(true);
+            }
+            savedResults = load;
+        }
+        profileExecutor.execute(load);
+    }
+
+    /* docs inherited from interface */
+    public void awaitSavedResults() {
+        Future<List<TableProfileResult>> load;
+        synchronized (this) {
+            load = savedResults;
+        }
+        if (load == null) return;
+        try {
+            load.get();
+        } catch (InterruptedException e) {
+            logger.info("Interrupted while waiting for the saved profile results");
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            // reported when the results are added
+        }
+        addSavedResults(load);
+    }
+
+    /**
+     * Adds the results read by the given load if it is still the one waiting
+     * in {@link #savedResults}. Each load is added at most once, whichever of
+     * the foreground thread and {@link #awaitSavedResults()} gets to it first.
+     * The load must be done.
+     */
+    private void addSavedResults(Future<List<TableProfileResult>> load) {
+        synchronized (this) {
+            if (savedResults != load) return;
+            savedResults = null;
+        }
+        List<TableProfileResult> loaded;
+        try {
+            loaded = load.get();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("The saved results were not done loading", e);
+        } catch (ExecutionException e) {
+            logger.error("Could not load the saved profile results", e.getCause());
+            return;
+        }
+        logger.debug("Loaded " + loaded.size() + " saved profile results");
+        addResults(loaded, true);
+    }
     
     /* docs inherited from interface */
     public TableProfileResult createProfile(SQLTable table) throws SQLObjectException {
@@ -344,7 +483,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
         addResults(Collections.singletonList(tpr), false);
         
         try {
-            profileExecutor.submit(new ProfileResultCallable(tpr)).get();
+            scheduleProfile(tpr).get();
             assert (tpr.getProgressMonitor().isFinished());
         } catch (InterruptedException ex) {
             logger.info("Profiling was interrupted (likely because this manager is being shut down)");
@@ -374,11 +513,98 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
 
     /* docs inherited from interface */
     public Future<TableProfileResult> scheduleProfile(TableProfileResult result) {
-        return profileExecutor.submit(new ProfileResultCallable(result));
+        ProfileSettings settings = getDefaultProfileSettings();
+        ProfileResultCallable callable;
+        if (settings != null && settings.isIncrementalProfiling()) {
+            callable = new ProfileResultCallable(result, findPriorResult(result), true);
+        } else {
+            callable = new ProfileResultCallable(result);
+        }
+        if (settings == null || !settings.isParallelProfiling()) {
+            return profileExecutor.submit(callable);
+        }
+        
+        synchronized (this) {
+            if (parallelScheduler == null) {
+                parallelScheduler = new ParallelProfileScheduler(
+                        settings.getProfileThreadCount(), settings.getMaxProfilesPerDataSource());
+            } else {
+                parallelScheduler.setLimits(
+                        settings.getProfileThreadCount(), settings.getMaxProfilesPerDataSource());
+            }
+        }
+        SQLTable table = result.getProfiledObject();
+        int columnCount;
+        try {
+            columnCount = table.getColumns().size();
+        } catch (SQLObjectException e) {
+            columnCount = 0;
+        }
+        return parallelScheduler.submit(callable, dataSourceKey(table),
+                estimateRowCount(table), columnCount);
+    }
+
+    /**
+     * Finds the most recent profile of the same table as the given result
+     * that finished without an error. Incremental profiling compares the
+     * table against this profile to decide if it needs profiling again.
+     * 
+     * @return The most recent earlier profile of the table, or null if there
+     *         is none.
+     */
+    private TableProfileResult findPriorResult(TableProfileResult result) {
+        TableProfileResult prior = null;
+        for (TableProfileResult tpr : getResults(result.getProfiledObject())) {
+            // results loaded from a project file are complete but their
+            // progress monitors were never run, so check the end time instead
+            if (tpr == result || tpr.getCreateEndTime() == 0 || 
+                    tpr.getProgressMonitor().isCancelled() || tpr.getException() != null) {
+                continue;
+            }
+            if (prior == null || tpr.getCreateStartTime() > prior.getCreateStartTime()) {
+                prior = tpr;
+            }
+        }
+        return prior;
+    }
+
+    /**
+     * Returns a key identifying the data source the given table belongs to.
+     * Profiles with the same key count against the same per-data-source
+     * limit when profiling in parallel.
+     */
+    private static String dataSourceKey(SQLTable table) {
+        SQLDatabase db = table.getParentDatabase();
+        if (db == null || db.getDataSource() == null) return "";
+        return db.getDataSource().getName();
+    }
+
+    /**
+     * Estimates the size of the given table from the row counts of the
+     * existing profiles of it. This avoids a trip to the database just to
+     * decide the order tables get profiled in.
+     * 
+     * @return The largest row count of an existing profile of the table, or
+     *         -1 if the table has not been profiled before.
+     */
+    private long estimateRowCount(SQLTable table) {
+        long estimate = -1;
+        for (TableProfileResult tpr : getResults(table)) {
+            if (tpr.getProgressMonitor().isFinished() && tpr.getException() == null) {
+                estimate = Math.max(estimate, tpr.getRowCount());
+            }
+        }
+        return estimate;
     }
     
     /* docs inherited from interface */
     public void clear() {
+        synchronized (this) {
+            if (savedResults != null) {
+                savedResults.cancel(true);
+                savedResults = null;
+            }
+        }
         List<TableProfileResult> oldResults = new ArrayList<TableProfileResult>(results);
         results.clear();
         fireProfilesRemoved(oldResults);
@@ -535,6 +761,11 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
 
     public void close() {
         profileExecutor.shutdown();
+        synchronized (this) {
+            if (parallelScheduler != null) {
+                parallelScheduler.shutdown();
+            }
+        }
     }
 
     @NonBound
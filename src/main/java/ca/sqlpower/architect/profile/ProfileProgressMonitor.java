@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.util.MonitorableImpl;
+
+/**
+ * The progress monitor of a {@link TableProfileResult}. Besides tracking
+ * progress, it keeps track of the statements the profile creator is currently
+ * running against the profiled database. Cancelling the monitor cancels those
+ * statements as well, so a long running aggregate query stops on the server
+ * right away instead of running to completion before the profile creator
+ * gets a chance to notice the cancellation.
+ */
+public class ProfileProgressMonitor extends MonitorableImpl {
+
+    private static final Logger logger = Logger.getLogger(ProfileProgressMonitor.class);
+
+    /**
+     * The statements that may currently be executing. Access to this set
+     * must be synchronized on this monitor.
+     */
+    private final Set<Statement> runningStatements = new HashSet<Statement>();
+
+    /**
+     * Registers a statement that is about to be executed so it can be
+     * cancelled along with the profile. If the profile has already been
+     * cancelled, the statement is cancelled immediately.
+     */
+    public synchronized void statementStarted(Statement stmt) {
+        if (isCancelled()) {
+            cancelStatement(stmt);
+        }
+        runningStatements.add(stmt);
+    }
+
+    /**
+     * Forgets a statement that was registered with
+     * {@link #statementStarted(Statement)}. This should be called before the
+     * statement is closed.
+     */
+    public synchronized void statementFinished(Statement stmt) {
+        runningStatements.remove(stmt);
+    }
+
+    /**
+     * Cancels the profile and, if cancelled is true, every statement that is
+     * currently running for it.
+     */
+    @Override
+    public synchronized void setCancelled(boolean cancelled) {
+        super.setCancelled(cancelled);
+        if (cancelled) {
+            for (Statement stmt : runningStatements) {
+                cancelStatement(stmt);
+            }
+        }
+    }
+
+    private static void cancelStatement(Statement stmt) {
+        try {
+            stmt.cancel();
+        } catch (SQLException ex) {
+            logger.warn("Couldn't cancel profiling statement. It will run to completion.", ex);
+        }
+    }
+}
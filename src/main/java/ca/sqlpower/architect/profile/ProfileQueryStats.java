@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Totals the timings of a number of profiling queries.
+ */
+public class ProfileQueryStats {
+
+    /**
+     * The key {@link #byColumnType(Collection)} uses for queries that did not
+     * profile one particular column.
+     */
+    public static final String NO_COLUMN_TYPE = "(table)";
+
+    private int queryCount;
+    private long executionNanos;
+    private long fetchNanos;
+    private long rowCount;
+    private long byteCount;
+
+    /**
+     * Returns the totals of the given timings.
+     */
+    public static ProfileQueryStats of(Collection<ProfileQueryTiming> timings) {
+        ProfileQueryStats stats = new ProfileQueryStats();
+        for (ProfileQueryTiming timing : timings) {
+            stats.add(timing);
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the totals of the given timings for each source data type of
+     * the profiled columns, sorted by type name.
+     */
+    public static Map<String, ProfileQueryStats> byColumnType(Collection<ProfileQueryTiming> timings) {
+        Map<String, ProfileQueryStats> statsByType = new TreeMap<String, ProfileQueryStats>();
+        for (ProfileQueryTiming timing : timings) {
+            String type = NO_COLUMN_TYPE;
+            if (timing.getColumn() != null && timing.getColumn().getSourceDataTypeName() != null) {
+                type = timing.getColumn().getSourceDataTypeName();
+            }
+            ProfileQueryStats stats = statsByType.get(type);
+            if (stats == null) {
+                stats = new ProfileQueryStats();
+                statsByType.put(type, stats);
+            }
+            stats.add(timing);
+        }
+        return statsByType;
+    }
+
+    public void add(ProfileQueryTiming timing) {
+        queryCount++;
+        executionNanos += Math.max(timing.getExecutionNanos(), 0);
+        fetchNanos += timing.getFetchNanos();
+        rowCount += timing.getRowCount();
+        byteCount += Math.max(timing.getByteCount(), 0);
+    }
+
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+    public long getExecutionNanos() {
+        return executionNanos;
+    }
+
+    public long getFetchNanos() {
+        return fetchNanos;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the total of the estimated byte counts that are known.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Returns the number of rows read per second of query time, or 0 if no
+     * time was recorded.
+     */
+    public double getRowsPerSecond() {
+        long nanos = executionNanos + fetchNanos;
+        if (nanos == 0) return 0;
+        return rowCount * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return queryCount + " queries: execute " + (executionNanos / 1000000) + "ms, fetch " +
+            (fetchNanos / 1000000) + "ms, " + rowCount + " rows, " + byteCount + " bytes";
+    }
+}
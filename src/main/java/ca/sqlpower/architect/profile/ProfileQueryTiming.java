@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * How long one profiling query took and how much data it returned. The time
+ * spent inside the driver's executeQuery call is recorded separately from the
+ * time spent reading the results. On most databases the first is the server's
+ * work, and the second is mainly network transfer and the creator's own
+ * processing of each row.
+ */
+public class ProfileQueryTiming {
+
+    /**
+     * The table the query profiled.
+     */
+    private final SQLTable table;
+
+    /**
+     * The column the query profiled, or null if it profiled the table as a
+     * whole or several columns at once.
+     */
+    private final SQLColumn column;
+
+    private final String sql;
+
+    private final long executionNanos;
+
+    private final long fetchNanos;
+
+    private final long rowCount;
+
+    private final long byteCount;
+
+    /**
+     * @param table
+     *            The table the query profiled.
+     * @param column
+     *            The column the query profiled, or null if it profiled the
+     *            table as a whole or several columns at once.
+     * @param sql
+     *            The query text.
+     * @param executionNanos
+     *            The time the driver took to execute the query, or -1 if it
+     *            was not measured apart from the fetch time.
+     * @param fetchNanos
+     *            The time from the end of execution until the results were
+     *            closed.
+     * @param rowCount
+     *            The number of rows read from the results.
+     * @param byteCount
+     *            An estimate of the size of the values read from the results,
+     *            or -1 if unknown.
+     */
+    public ProfileQueryTiming(SQLTable table, SQLColumn column, String sql,
+            long executionNanos, long fetchNanos, long rowCount, long byteCount) {
+        this.table = table;
+        this.column = column;
+        this.sql = sql;
+        this.executionNanos = executionNanos;
+        this.fetchNanos = fetchNanos;
+        this.rowCount = rowCount;
+        this.byteCount = byteCount;
+    }
+
+    public SQLTable getTable() {
+        return table;
+    }
+
+    /**
+     * Returns the column the query profiled, or null if it profiled the table
+     * as a whole or several columns at once.
+     */
+    public SQLColumn getColumn() {
+        return column;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Returns the time in nanoseconds the driver took to execute the query,
+     * or -1 if it was not measured apart from the fetch time.
+     */
+    public long getExecutionNanos() {
+        return executionNanos;
+    }
+
+    /**
+     * Returns the time in nanoseconds from the end of execution until the
+     * results were closed.
+     */
+    public long getFetchNanos() {
+        return fetchNanos;
+    }
+
+    /**
+     * Returns the total time in nanoseconds the query took.
+     */
+    public long getTotalNanos() {
+        return Math.max(executionNanos, 0) + fetchNanos;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns an estimate of the size in bytes of the values the creator read
+     * from the results, or -1 if unknown. JDBC drivers don't report how many
+     * bytes they receive, so this counts one byte per character of strings,
+     * the length of binary values, and eight bytes for any other value.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    @Override
+    public String toString() {
+        return (column == null ? table.getName() : table.getName() + "." + column.getName()) +
+            ": execute " + (executionNanos / 1000000) + "ms, fetch " + (fetchNanos / 1000000) +
+            "ms, " + rowCount + " rows";
+    }
+}
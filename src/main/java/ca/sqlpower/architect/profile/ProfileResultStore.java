@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Reads and writes profile results in a compact binary form, so a project
+ * with many profiles can keep them in a file beside the project file instead
+ * of in the project XML.
+ * <p>
+ * The results are stored by column: the values of one property for every
+ * table result come one after another, then the next property, and so on.
+ * The column results and their top N values follow in the same way. Values
+ * keep their type (string, decimal, timestamp and so on) rather than being
+ * turned into text. After a short uncompressed header, the data may be
+ * gzipped.
+ * <p>
+ * Profiled tables and columns are referred to by the same IDs the project
+ * file gives them, so a store can only be read back together with the
+ * project file it was saved with.
+ */
+public class ProfileResultStore {
+
+    /**
+     * The file name suffix added to a project file's name to get the name of
+     * its profile result store.
+     */
+    public static final String FILE_SUFFIX = ".profiles";
+
+    /**
+     * The first four bytes of every store ("APRS").
+     */
+    private static final int MAGIC = 0x41505253;
+
+    private static final int VERSION = 2;
+
+    /**
+     * The oldest store version that can still be read. Version 1 stores do
+     * not record the column definitions that were profiled.
+     */
+    private static final int OLDEST_READABLE_VERSION = 1;
+
+    /**
+     * Set in the header when everything after the header is gzipped.
+     */
+    private static final int FLAG_COMPRESSED = 1;
+
+    // type tags for stored values
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte DECIMAL = 2;
+    private static final byte TIMESTAMP = 3;
+    private static final byte INTEGER = 4;
+    private static final byte LONG = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte DATE = 7;
+    private static final byte BOOLEAN = 8;
+
+    private ProfileResultStore() {
+        // static utility class
+    }
+
+    /**
+     * Writes the given table results and their column results to the given
+     * stream. The stream is not closed.
+     * 
+     * @param out
+     *            The stream to write to.
+     * @param results
+     *            The table results to store.
+     * @param ids
+     *            The ID of every profiled table and column. Table results
+     *            whose table has no ID, and column results whose column has
+     *            no ID, are left out.
+     * @param compress
+     *            Whether to gzip the results.
+     */
+    public static void write(OutputStream out, List<TableProfileResult> results,
+            Map<SQLObject, String> ids, boolean compress) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeByte(compress ? FLAG_COMPRESSED : 0);
+        header.flush();
+
+        GZIPOutputStream gzip = null;
+        DataOutputStream data;
+        if (compress) {
+            gzip = new GZIPOutputStream(new UncloseableOutputStream(out));
+            data = new DataOutputStream(new BufferedOutputStream(gzip));
+        } else {
+            data = new DataOutputStream(new BufferedOutputStream(new UncloseableOutputStream(out)));
+        }
+
+        List<TableProfileResult> tables = new ArrayList<TableProfileResult>();
+        for (TableProfileResult tpr : results) {
+            if (ids.get(tpr.getProfiledObject()) != null) {
+                tables.add(tpr);
+            }
+        }
+        List<ColumnProfileResult> columns = new ArrayList<ColumnProfileResult>();
+        List<ColumnValueCount> valueCounts = new ArrayList<ColumnValueCount>();
+
+        data.writeInt(tables.size());
+        for (TableProfileResult tpr : tables) writeString(data, ids.get(tpr.getProfiledObject()));
+        writeCommonItems(data, tables);
+        for (TableProfileResult tpr : tables) data.writeInt(tpr.getRowCount());
+        for (TableProfileResult tpr : tables) writeString(data, tpr.getModificationStamp());
+        for (TableProfileResult tpr : tables) data.writeDouble(tpr.getSamplingRate());
+        for (TableProfileResult tpr : tables) data.writeDouble(tpr.getSamplingError());
+        for (TableProfileResult tpr : tables) data.writeLong(tpr.getReusedResultTime());
+        for (TableProfileResult tpr : tables) {
+            int count = 0;
+            for (ColumnProfileResult cpr : tpr.getColumnProfileResults()) {
+                if (ids.get(cpr.getProfiledObject()) != null) {
+                    columns.add(cpr);
+                    count++;
+                }
+            }
+            data.writeInt(count);
+        }
+
+        data.writeInt(columns.size());
+        for (ColumnProfileResult cpr : columns) writeString(data, ids.get(cpr.getProfiledObject()));
+        writeCommonItems(data, columns);
+        for (ColumnProfileResult cpr : columns) data.writeDouble(cpr.getAvgLength());
+        for (ColumnProfileResult cpr : columns) data.writeInt(cpr.getMinLength());
+        for (ColumnProfileResult cpr : columns) data.writeInt(cpr.getMaxLength());
+        for (ColumnProfileResult cpr : columns) data.writeInt(cpr.getNullCount());
+        for (ColumnProfileResult cpr : columns) data.writeInt(cpr.getDistinctValueCount());
+        for (ColumnProfileResult cpr : columns) writeString(data, cpr.getQuantileSketch());
+        for (ColumnProfileResult cpr : columns) writeString(data, cpr.getColumnDefinition());
+        for (ColumnProfileResult cpr : columns) writeValue(data, cpr.getAvgValue());
+        for (ColumnProfileResult cpr : columns) writeValue(data, cpr.getMinValue());
+        for (ColumnProfileResult cpr : columns) writeValue(data, cpr.getMaxValue());
+        for (ColumnProfileResult cpr : columns) {
+            List<ColumnValueCount> topN = cpr.getValueCount();
+            data.writeInt(topN.size());
+            valueCounts.addAll(topN);
+        }
+
+        data.writeInt(valueCounts.size());
+        for (ColumnValueCount cvc : valueCounts) data.writeInt(cvc.getCount());
+        for (ColumnValueCount cvc : valueCounts) writeValue(data, cvc.getValue());
+        for (ColumnValueCount cvc : valueCounts) data.writeDouble(cvc.getPercent());
+        for (ColumnValueCount cvc : valueCounts) data.writeBoolean(cvc.isOtherValues());
+
+        data.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads back the table results, and their column results, that
+     * {@link #write(OutputStream, List, Map, boolean)} stored.
+     * 
+     * @param in
+     *            The stream to read. It is not closed.
+     * @param objects
+     *            The profiled tables and columns by their IDs in the project
+     *            file.
+     * @param settings
+     *            The settings to give the table results.
+     * @throws IOException
+     *             If the stream is not a profile result store, or refers to a
+     *             table or column that is not in the given map.
+     */
+    public static List<TableProfileResult> read(InputStream in, Map<String, SQLObject> objects,
+            ProfileSettings settings) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Not a profile result store");
+        }
+        int version = header.readInt();
+        if (version < OLDEST_READABLE_VERSION || version > VERSION) {
+            throw new IOException("Unsupported profile result store version " + version);
+        }
+        int flags = header.readByte();
+        DataInputStream data;
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+        } else {
+            data = new DataInputStream(new BufferedInputStream(in));
+        }
+
+        int tableCount = data.readInt();
+        List<TableProfileResult> tables = new ArrayList<TableProfileResult>(tableCount);
+        for (int i = 0; i < tableCount; i++) {
+            SQLTable table = lookUp(objects, readString(data), SQLTable.class);
+            tables.add(new TableProfileResult(table, settings));
+        }
+        readCommonItems(data, tables);
+        for (TableProfileResult tpr : tables) tpr.setRowCount(data.readInt());
+        for (TableProfileResult tpr : tables) tpr.setModificationStamp(readString(data));
+        for (TableProfileResult tpr : tables) tpr.setSamplingRate(data.readDouble());
+        for (TableProfileResult tpr : tables) tpr.setSamplingError(data.readDouble());
+        for (TableProfileResult tpr : tables) tpr.setReusedResultTime(data.readLong());
+        int[] columnCounts = new int[tableCount];
+        for (int i = 0; i < tableCount; i++) columnCounts[i] = data.readInt();
+
+        int columnCount = data.readInt();
+        List<ColumnProfileResult> columns = new ArrayList<ColumnProfileResult>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            SQLColumn column = lookUp(objects, readString(data), SQLColumn.class);
+            columns.add(new ColumnProfileResult(column));
+        }
+        readCommonItems(data, columns);
+        for (ColumnProfileResult cpr : columns) cpr.setAvgLength(data.readDouble());
+        for (ColumnProfileResult cpr : columns) cpr.setMinLength(data.readInt());
+        for (ColumnProfileResult cpr : columns) cpr.setMaxLength(data.readInt());
+        for (ColumnProfileResult cpr : columns) cpr.setNullCount(data.readInt());
+        for (ColumnProfileResult cpr : columns) cpr.setDistinctValueCount(data.readInt());
+        for (ColumnProfileResult cpr : columns) cpr.setQuantileSketch(readString(data));
+        if (version >= 2) {
+            for (ColumnProfileResult cpr : columns) cpr.setColumnDefinition(readString(data));
+        }
+        for (ColumnProfileResult cpr : columns) cpr.setAvgValue(readValue(data));
+        for (ColumnProfileResult cpr : columns) cpr.setMinValue(readValue(data));
+        for (ColumnProfileResult cpr : columns) cpr.setMaxValue(readValue(data));
+        int[] valueCountCounts = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) valueCountCounts[i] = data.readInt();
+
+        int valueCountCount = data.readInt();
+        int[] counts = new int[valueCountCount];
+        Object[] values = new Object[valueCountCount];
+        double[] percents = new double[valueCountCount];
+        boolean[] otherValues = new boolean[valueCountCount];
+        for (int i = 0; i < valueCountCount; i++) counts[i] = data.readInt();
+        for (int i = 0; i < valueCountCount; i++) values[i] = readValue(data);
+        for (int i = 0; i < valueCountCount; i++) percents[i] = data.readDouble();
+        for (int i = 0; i < valueCountCount; i++) otherValues[i] = data.readBoolean();
+
+        int next = 0;
+        for (int i = 0; i < columnCount; i++) {
+            ColumnProfileResult cpr = columns.get(i);
+            for (int j = 0; j < valueCountCounts[i]; j++, next++) {
+                cpr.addValueCount(new ColumnValueCount(values[next], counts[next], percents[next], otherValues[next]));
+            }
+        }
+
+        next = 0;
+        for (int i = 0; i < tableCount; i++) {
+            for (int j = 0; j < columnCounts[i]; j++, next++) {
+                tables.get(i).addColumnProfileResult(columns.get(next));
+            }
+        }
+        return tables;
+    }
+
+    private static void writeCommonItems(DataOutputStream data, List<? extends AbstractProfileResult<?>> results) throws IOException {
+        for (AbstractProfileResult<?> pr : results) data.writeLong(pr.getCreateStartTime());
+        for (AbstractProfileResult<?> pr : results) data.writeLong(pr.getCreateEndTime());
+        for (AbstractProfileResult<?> pr : results) {
+            Exception ex = pr.getException();
+            writeString(data, ex == null ? null : ex.getClass().getName());
+            writeString(data, ex == null ? null : ex.getMessage());
+        }
+        for (AbstractProfileResult<?> pr : results) writeString(data, pr.getUUID());
+    }
+
+    /**
+     * Reads the properties that {@link #writeCommonItems(DataOutputStream, List)}
+     * wrote. Exceptions can't be recreated exactly, so each one is read back
+     * as a plain exception whose message names the original type.
+     */
+    private static void readCommonItems(DataInputStream data, List<? extends AbstractProfileResult<?>> results) throws IOException {
+        for (AbstractProfileResult<?> pr : results) pr.setCreateStartTime(data.readLong());
+        for (AbstractProfileResult<?> pr : results) pr.setCreateEndTime(data.readLong());
+        for (AbstractProfileResult<?> pr : results) {
+            String type = readString(data);
+            String message = readString(data);
+            if (type != null) {
+                pr.setException(new Exception(message == null ? type : type + ": " + message));
+            }
+        }
+        for (AbstractProfileResult<?> pr : results) pr.setUUID(readString(data));
+    }
+
+    private static <T extends SQLObject> T lookUp(Map<String, SQLObject> objects, String id, Class<T> type)
+            throws IOException {
+        SQLObject o = objects.get(id);
+        if (!type.isInstance(o)) {
+            throw new IOException("Profile result store refers to " + id +
+                    ", which is not a " + type.getSimpleName() + " in the project");
+        }
+        return type.cast(o);
+    }
+
+    /**
+     * Writes a string that may be null and may be longer than
+     * {@link DataOutputStream#writeUTF(String)} allows.
+     */
+    private static void writeString(DataOutputStream data, String s) throws IOException {
+        if (s == null) {
+            data.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Writes a value with a tag giving its type. Values of types that have no
+     * tag are stored as their string form, as the project XML has always
+     * done.
+     */
+    private static void writeValue(DataOutputStream data, Object value) throws IOException {
+        if (value == null) {
+            data.writeByte(NULL);
+        } else if (value instanceof BigDecimal) {
+            BigDecimal d = (BigDecimal) value;
+            data.writeByte(DECIMAL);
+            data.writeInt(d.scale());
+            byte[] unscaled = d.unscaledValue().toByteArray();
+            data.writeInt(unscaled.length);
+            data.write(unscaled);
+        } else if (value instanceof Timestamp) {
+            Timestamp ts = (Timestamp) value;
+            data.writeByte(TIMESTAMP);
+            data.writeLong(ts.getTime());
+            data.writeInt(ts.getNanos());
+        } else if (value instanceof java.sql.Date) {
+            data.writeByte(DATE);
+            data.writeLong(((java.sql.Date) value).getTime());
+        } else if (value instanceof Integer) {
+            data.writeByte(INTEGER);
+            data.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            data.writeByte(LONG);
+            data.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            data.writeByte(DOUBLE);
+            data.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            data.writeByte(BOOLEAN);
+            data.writeBoolean((Boolean) value);
+        } else {
+            data.writeByte(STRING);
+            writeString(data, String.valueOf(value));
+        }
+    }
+
+    private static Object readValue(DataInputStream data) throws IOException {
+        byte type = data.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(data);
+        case DECIMAL:
+            int scale = data.readInt();
+            byte[] unscaled = new byte[data.readInt()];
+            data.readFully(unscaled);
+            return new BigDecimal(new BigInteger(unscaled), scale);
+        case TIMESTAMP:
+            Timestamp ts = new Timestamp(data.readLong());
+            ts.setNanos(data.readInt());
+            return ts;
+        case DATE:
+            return new java.sql.Date(data.readLong());
+        case INTEGER:
+            return data.readInt();
+        case LONG:
+            return data.readLong();
+        case DOUBLE:
+            return data.readDouble();
+        case BOOLEAN:
+            return data.readBoolean();
+        default:
+            throw new IOException("Unknown value type " + type + " in profile result store");
+        }
+    }
+
+    /**
+     * Keeps the stream given to {@link ProfileResultStore#write} open when the
+     * gzip stream wrapped around it is finished.
+     */
+    private static class UncloseableOutputStream extends java.io.FilterOutputStream {
+        UncloseableOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
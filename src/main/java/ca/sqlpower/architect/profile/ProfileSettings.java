@@ -65,6 +65,59 @@ public class ProfileSettings extends AbstractSPObject {
 
     private int topNCount = 10;
 
+    /**
+     * When true, the remote database profiler calculates the aggregates for
+     * all of a table's columns in one wide query (or a few, if the platform
+     * limits the size of a select list) instead of one query per column.
+     */
+    private boolean combiningColumnQueries = false;
+
+    /**
+     * When true, the profile manager populates several table profiles at once
+     * instead of one after the other.
+     */
+    private boolean parallelProfiling = false;
+
+    /**
+     * The maximum number of table profiles that will be populated at the same
+     * time when {@link #parallelProfiling} is on.
+     */
+    private int profileThreadCount = 4;
+
+    /**
+     * The maximum number of table profiles against any one data source that
+     * will be populated at the same time when {@link #parallelProfiling} is
+     * on. This keeps a large profile run from flooding a single server.
+     */
+    private int maxProfilesPerDataSource = 2;
+
+    /**
+     * When true, re-profiling a table that has already been profiled first
+     * checks whether the table has changed since, and copies the earlier
+     * column profiles instead of profiling it again if it has not.
+     */
+    private boolean incrementalProfiling = false;
+
+    /**
+     * The percentage of each table's rows that the
+     * {@link RemoteSamplingProfileCreator} asks the database to sample.
+     */
+    private double samplePercent = 1;
+
+    /**
+     * The number of seconds each profiling query may run on the server
+     * before it is cancelled, or 0 to let queries run as long as they need.
+     */
+    private int queryTimeout = 0;
+
+    /**
+     * The number of columns of one table the {@link RemoteDatabaseProfileCreator}
+     * profiles at the same time, each on its own connection. Databases that
+     * spread each query over many nodes finish wide tables much sooner this
+     * way. This has no effect when {@link #combiningColumnQueries} is on.
+     */
+    private int columnProfileThreadCount = 1;
+
     public ProfileSettings() {
         setName("Profile Settings");
     }
@@ -194,6 +247,102 @@ public class ProfileSettings extends AbstractSPObject {
         setTopNCount(Integer.valueOf(topNCount));
     }
 
+    @Accessor
+    public boolean isCombiningColumnQueries() {
+        return combiningColumnQueries;
+    }
+
+    @Mutator
+    public void setCombiningColumnQueries(boolean combiningColumnQueries) {
+        boolean oldCombining = this.combiningColumnQueries;
+        this.combiningColumnQueries = combiningColumnQueries;
+        firePropertyChange("combiningColumnQueries", oldCombining, combiningColumnQueries);
+    }
+
+    @Accessor
+    public boolean isParallelProfiling() {
+        return parallelProfiling;
+    }
+
+    @Mutator
+    public void setParallelProfiling(boolean parallelProfiling) {
+        boolean oldParallel = this.parallelProfiling;
+        this.parallelProfiling = parallelProfiling;
+        firePropertyChange("parallelProfiling", oldParallel, parallelProfiling);
+    }
+
+    @Accessor
+    public int getProfileThreadCount() {
+        return profileThreadCount;
+    }
+
+    @Mutator
+    public void setProfileThreadCount(int profileThreadCount) {
+        int oldCount = this.profileThreadCount;
+        this.profileThreadCount = profileThreadCount;
+        firePropertyChange("profileThreadCount", oldCount, profileThreadCount);
+    }
+
+    @Accessor
+    public int getMaxProfilesPerDataSource() {
+        return maxProfilesPerDataSource;
+    }
+
+    @Mutator
+    public void setMaxProfilesPerDataSource(int maxProfilesPerDataSource) {
+        int oldMax = this.maxProfilesPerDataSource;
+        this.maxProfilesPerDataSource = maxProfilesPerDataSource;
+        firePropertyChange("maxProfilesPerDataSource", oldMax, maxProfilesPerDataSource);
+    }
+
+    @Accessor
+    public boolean isIncrementalProfiling() {
+        return incrementalProfiling;
+    }
+
+    @Mutator
+    public void setIncrementalProfiling(boolean incrementalProfiling) {
+        boolean oldIncremental = this.incrementalProfiling;
+        this.incrementalProfiling = incrementalProfiling;
+        firePropertyChange("incrementalProfiling", oldIncremental, incrementalProfiling);
+    }
+
+    @Accessor
+    public double getSamplePercent() {
+        return samplePercent;
+    }
+
+    @Mutator
+    public void setSamplePercent(double samplePercent) {
+        double oldPercent = this.samplePercent;
+        this.samplePercent = samplePercent;
+        firePropertyChange("samplePercent", oldPercent, samplePercent);
+    }
+
+    @Accessor
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    @Mutator
+    public void setQueryTimeout(int queryTimeout) {
+        int oldTimeout = this.queryTimeout;
+        this.queryTimeout = queryTimeout;
+        firePropertyChange("queryTimeout", oldTimeout, queryTimeout);
+    }
+
+    @Accessor
+    public int getColumnProfileThreadCount() {
+        return columnProfileThreadCount;
+    }
+
+    @Mutator
+    public void setColumnProfileThreadCount(int columnProfileThreadCount) {
+        int oldCount = this.columnProfileThreadCount;
+        this.columnProfileThreadCount = columnProfileThreadCount;
+        firePropertyChange("columnProfileThreadCount", oldCount, columnProfileThreadCount);
+    }
+
     @Override
     protected boolean removeChildImpl(SPObject child) {
         return false;
@@ -19,12 +19,25 @@
 
 package ca.sqlpower.architect.profile;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
@@ -32,7 +45,6 @@ import ca.sqlpower.architect.ddl.DDLUtils;
 import ca.sqlpower.sql.JDBCDataSourceType;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLColumn;
-import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.util.Monitorable;
 import ca.sqlpower.util.MonitorableImpl;
@@ -62,12 +74,6 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
     private static final Logger logger = Logger.getLogger(RemoteDatabaseProfileCreator.class);
     
-    /**
-     * A map from data type names used in Architect to the database's actual
-     * data type stored in a profile function descriptor.
-     */
-    private Map<String, ProfileFunctionDescriptor> profileFunctionMap;
-    
     /**
      * This class is used to hold the specific start and end to a LENGTH
      * SQL command based on the database in use.
@@ -180,20 +186,200 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
     }
     
     /**
-     * An object to store the string length function for the database.
+     * This class is used to hold the database specific way of limiting the
+     * number of rows a query returns, such as a LIMIT or FETCH FIRST clause,
+     * a TOP n after the SELECT or a ROWNUM filter around the query. This lets
+     * the database stop after the top N values of a column instead of sending
+     * every group back.
+     * <p>
+     * The function is a template in which {n} stands for the number of rows
+     * and {query} for the query, or {query-without-select} for the query
+     * without its leading SELECT keyword. For example
+     * <code>{query} FETCH FIRST {n} ROWS ONLY</code>,
+     * <code>SELECT TOP {n} {query-without-select}</code> or
+     * <code>SELECT * FROM ({query}) WHERE ROWNUM &lt;= {n}</code>.
+     * <p>
+     * The older form of three parts separated by : characters, with the
+     * query between the first and second part and the number of rows
+     * between the second and third, such as <code>: LIMIT :</code>, is
+     * still understood.
      */
-    private StringLengthSQLFunction stringLengthSQLFunction;
+    public class RowLimitSQLFunction {
+        
+        /**
+         * The row limited query, with the placeholders still in it.
+         */
+        private String template;
+        
+        public RowLimitSQLFunction(String template) {
+            this.template = template;
+        }
+        
+        public RowLimitSQLFunction(String startOfRowLimit, String middleOfRowLimit, String endOfRowLimit) {
+            this(startOfRowLimit + "{query}" + middleOfRowLimit + "{n}" + endOfRowLimit);
+        }
+        
+        /**
+         * Returns the given query wrapped in the database specific row
+         * limiting syntax so it returns at most <tt>rowLimit</tt> rows.
+         */
+        public String getRowLimitSQLFunction(String query, int rowLimit) {
+            StringBuffer sql = new StringBuffer();
+            int pos = 0;
+            for (int start = template.indexOf('{'); start >= 0; start = template.indexOf('{', start + 1)) {
+                String rest = template.substring(start);
+                String value;
+                if (rest.startsWith("{n}")) {
+                    value = String.valueOf(rowLimit);
+                } else if (rest.startsWith("{query}")) {
+                    value = query;
+                } else if (rest.startsWith("{query-without-select}")) {
+                    value = query.replaceFirst("^\\s*(?i:SELECT)\\s+", "");
+                } else {
+                    continue;
+                }
+                sql.append(template.substring(pos, start)).append(value);
+                pos = template.indexOf('}', start) + 1;
+                start = pos - 1;
+            }
+            sql.append(template.substring(pos));
+            return sql.toString();
+        }
+    }
     
     /**
-     * An object to store the average function for the database.
+     * This class is used to hold the database specific way of reading only a
+     * sample of a table's blocks or rows, such as a TABLESAMPLE or SAMPLE
+     * clause. Sampling is pushed to the database so it does not have to scan
+     * the whole table.
+     * <p>
+     * The function is configured as three or four parts separated by :
+     * characters. The table name goes between the first and second part and
+     * the sampling percentage between the second and third part. If there is
+     * a fourth part, a random seed goes between the third and fourth part so
+     * every query of one profile sees the same sample. For example
+     * <code>: TABLESAMPLE SYSTEM (:) REPEATABLE (:)</code> or
+     * <code>: SAMPLE BLOCK (:) SEED (:)</code>.
      */
-    private AverageSQLFunction averageSQLFunction;
+    public class TableSampleSQLFunction {
+        
+        /**
+         * The part of the sampled table reference that comes before the table name.
+         */
+        private String startOfSample;
+        
+        /**
+         * The part of the sampled table reference that comes after the table
+         * name but before the percentage.
+         */
+        private String middleOfSample;
+        
+        /**
+         * The part of the sampled table reference that comes after the
+         * percentage, and before the seed if there is one.
+         */
+        private String endOfSample;
+        
+        /**
+         * The part of the sampled table reference that comes after the seed,
+         * or null if the platform's sampling clause does not take a seed.
+         */
+        private String endOfSeed;
+        
+        public TableSampleSQLFunction(String startOfSample, String middleOfSample,
+                String endOfSample, String endOfSeed) {
+            this.startOfSample = startOfSample;
+            this.middleOfSample = middleOfSample;
+            this.endOfSample = endOfSample;
+            this.endOfSeed = endOfSeed;
+        }
+        
+        /**
+         * Returns the given table name with the database specific sampling
+         * clause for the given percentage of the table applied to it.
+         */
+        public String getTableSampleSQLFunction(String tableName, double percent, int seed) {
+            String sample = startOfSample + tableName + middleOfSample +
+                BigDecimal.valueOf(percent).toPlainString() + endOfSample;
+            if (endOfSeed != null) {
+                sample += seed + endOfSeed;
+            }
+            return sample;
+        }
+    }
     
     /**
-     * An object to store the case when null function for the database.
+     * The database specific profiling functions for one data source type. A
+     * new instance is set up for every table profiled rather than storing the
+     * functions in this profile creator, which lets a single creator populate
+     * several table profiles at the same time.
      */
-    private CaseWhenNullSQLFunction caseWhenNullSQLFunction;
+    private class PlatformFunctions {
+        
+        /**
+         * A map from data type names used in Architect to the database's actual
+         * data type stored in a profile function descriptor. It is synchronized
+         * because the columns of a table may be profiled in parallel.
+         */
+        private final Map<String, ProfileFunctionDescriptor> profileFunctionMap =
+            Collections.synchronizedMap(new HashMap<String, ProfileFunctionDescriptor>());
+        
+        /**
+         * An object to store the string length function for the database.
+         */
+        private StringLengthSQLFunction stringLengthSQLFunction;
+        
+        /**
+         * An object to store the average function for the database.
+         */
+        private AverageSQLFunction averageSQLFunction;
+        
+        /**
+         * An object to store the case when null function for the database.
+         */
+        private CaseWhenNullSQLFunction caseWhenNullSQLFunction;
+        
+        /**
+         * An object to store the row limiting function for the database. This
+         * is null if the data source type does not define one, in which case
+         * only {@link Statement#setMaxRows(int)} limits the top N query.
+         */
+        private RowLimitSQLFunction rowLimitSQLFunction;
+        
+        /**
+         * An object to store the table sampling function for the database.
+         * This is null if the table is not being sampled.
+         */
+        private TableSampleSQLFunction tableSampleSQLFunction;
+        
+        /**
+         * The percentage of the table that is sampled.
+         */
+        private double samplePercent = 100;
+        
+        /**
+         * The seed given to the sampling clause so every query of one profile
+         * sees the same sample on platforms that support it.
+         */
+        private int sampleSeed;
+        
+        /**
+         * Scales a count taken from the sample up to an estimate for the
+         * whole table.
+         */
+        private int scaleCount(int sampleCount) {
+            if (tableSampleSQLFunction == null) return sampleCount;
+            return (int) Math.min(Integer.MAX_VALUE, Math.round(sampleCount * 100.0 / samplePercent));
+        }
+    }
 
+    /**
+     * The number of select list entries allowed in one combined profiling
+     * query when the JDBC driver does not report a limit of its own. See
+     * {@link ProfileSettings#isCombiningColumnQueries()}.
+     */
+    private static final int DEFAULT_MAX_SELECT_LIST_SIZE = 1000;
+    
     /**
      * The settings for this profile creator.
      */
@@ -207,16 +393,27 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
         try {
             
-            doTableProfile(tpr);
-            
             SQLTable table = tpr.getProfiledObject();
             JDBCDataSourceType dsType = table.getParentDatabase().getDataSource().getParentType();
-            createProfileFunctions(dsType);
-            for (SQLColumn col : table.getColumns()) {
-                ColumnProfileResult columnResult = new ColumnProfileResult(col);
-                tpr.addColumnProfileResult(columnResult);
-                doColumnProfile(columnResult, pm);
-                pm.setProgress(pm.getProgress() + 1);
+            PlatformFunctions functions = createProfileFunctions(dsType);
+            ProfileConnectionPool pool = new ProfileConnectionPool(tpr, settings.getQueryTimeout());
+            try {
+                doTableProfile(tpr, pool, functions);
+
+                if (settings.isCombiningColumnQueries()) {
+                    doCombinedColumnProfiles(tpr, pool, functions, pm);
+                } else if (settings.getColumnProfileThreadCount() > 1 && table.getColumns().size() > 1) {
+                    doParallelColumnProfiles(tpr, pool, functions, pm);
+                } else {
+                    for (SQLColumn col : table.getColumns()) {
+                        ColumnProfileResult columnResult = new ColumnProfileResult(col);
+                        tpr.addColumnProfileResult(columnResult);
+                        doColumnProfile(columnResult, pool, functions, pm);
+                        pm.setProgress(pm.getProgress() + 1);
+                    }
+                }
+            } finally {
+                pool.close();
             }
 
             return !pm.isCancelled();
@@ -231,8 +428,11 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * is performed.
      * 
      * @param tpr The table profile result to populate.
+     * @param pool The pool to borrow a connection and statement from.
+     * @param functions The database specific profiling functions to use.
      */
-    private void doTableProfile(TableProfileResult tpr) throws SQLException, SQLObjectException {
+    private void doTableProfile(TableProfileResult tpr, ProfileConnectionPool pool, PlatformFunctions functions)
+    throws SQLException, SQLObjectException {
         logger.debug("Doing profile for table " + tpr.getProfiledObject());
         MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
         pm.setProgress(0);
@@ -242,8 +442,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         try {
             SQLTable table = tpr.getProfiledObject();
             pm.setJobSize(table.getColumns().size() + 1);
-            SQLDatabase db = table.getParentDatabase();
-            conn = db.getConnection();
+            conn = pool.getConnection();
             String databaseIdentifierQuoteString = null;
 
             databaseIdentifierQuoteString = conn.getMetaData().getIdentifierQuoteString();
@@ -251,21 +450,22 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             StringBuffer sql = new StringBuffer();
             sql.append("SELECT COUNT(*) AS ROW__COUNT");
             sql.append("\nFROM ");
-            sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
-                    table.getSchemaName(),
-                    table.getName(),
-                    databaseIdentifierQuoteString,
-                    databaseIdentifierQuoteString));
-            stmt = conn.createStatement();
-            stmt.setEscapeProcessing(false);
+            sql.append(tableReference(table, databaseIdentifierQuoteString, functions));
+            stmt = pool.createStatement(conn);
             String lastSQL = sql.toString();
 
             pm.setProgress(pm.getProgress() + 1);
             
-            rs = stmt.executeQuery(lastSQL);
+            rs = pool.executeQuery(stmt, lastSQL, null);
 
             if (rs.next()) {
-                tpr.setRowCount(rs.getInt("ROW__COUNT"));
+                int rowCount = rs.getInt("ROW__COUNT");
+                if (functions.tableSampleSQLFunction != null) {
+                    double samplingRate = functions.samplePercent / 100;
+                    tpr.setSamplingRate(samplingRate);
+                    tpr.setSamplingError(estimateSamplingError(rowCount, samplingRate));
+                }
+                tpr.setRowCount(functions.scaleCount(rowCount));
             } else {
                 throw new AssertionError("No rows came back from COUNT(*) query!");
             }
@@ -277,14 +477,8 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             } catch (SQLException ex) {
                 logger.error("Couldn't clean up result set", ex);
             }
-            try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException ex) {
-                logger.error("Couldn't clean up statement", ex);
-            }
-            if (conn != null) {
-                conn.close();
-            }
+            pool.closeStatement(stmt);
+            pool.releaseConnection(conn);
         }
     }
 
@@ -298,7 +492,9 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * for col in the RDBMS it's stored in (the data types supported by the various
      * aggregate functions differ by platform).
      * @param col The column to perform the profiling on.
+     * @param pool The pool to create statements with.
      * @param con The connection to use to the database <tt>col</tt> is in.
+     * @param functions The database specific profiling functions to use.
      * @param pm The progress monitor for this operation.  It will be polled to see if the current
      * profiling operation has been cancelled.  It will not be manipulated in any other way.
      * @throws SQLException If profiling fails.  This is most likely due to an incorrect
@@ -308,7 +504,9 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             ColumnProfileResult cpr,
             ProfileFunctionDescriptor pfd,
             SQLColumn col,
+            ProfileConnectionPool pool,
             Connection con,
+            PlatformFunctions functions,
             Monitorable pm) throws SQLException {
 
         logger.debug("Starting execProfileFunctions for " + col);
@@ -318,7 +516,6 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         Statement stmt = null;
         ResultSet rs = null;
         String lastSQL = null;
-        String columnName = null;
         String databaseIdentifierQuoteString = null;
         cpr.setCreateStartTime(createStartTime);
         SQLTable table = col.getParent();
@@ -326,161 +523,35 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         try {
             databaseIdentifierQuoteString = con.getMetaData().getIdentifierQuoteString();
             sql.append("SELECT 1");
-            int tryCount = 0;
-            if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
-                sql.append(",\n COUNT(DISTINCT ");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS DISTINCTCOUNT_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMin() && pfd.isMinValue() ) {
-                sql.append(",\n MIN(");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS MINVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMax() && pfd.isMaxValue() ) {
-                sql.append(",\n MAX(");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS MAXVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingAvg() && pfd.isAvgValue() ) {
-                sql.append(",\n ");
-                sql.append(averageSQLFunction.getAverageSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+
-                        databaseIdentifierQuoteString));
-                sql.append(" AS AVGVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMinLength() && pfd.isMinLength() ) {
-                sql.append(",\n MIN(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS MINLENGTH_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
-                sql.append(",\n MAX(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS MAXLENGTH_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
-                sql.append(",\n AVG(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS AVGLENGTH_"+i);
-                tryCount++;
-            }
+            int tryCount = appendProfileFunctions(sql, pfd, col, i, databaseIdentifierQuoteString, functions);
 
-            if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
-                sql.append(",\n SUM(");
-                sql.append(caseWhenNullSQLFunction.getCaseWhenNullSQLFunction(
-                        databaseIdentifierQuoteString+
-                        col.getName()+
-                        databaseIdentifierQuoteString,
-                "1"));
-                sql.append(") AS NULLCOUNT_"+i);
-                tryCount++;
-            }
+            stmt = pool.createStatement(con);
 
             if ( tryCount > 0 && !pm.isCancelled() ) {
                 sql.append("\n FROM ");
 
-                sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
-                        table.getSchemaName(),
-                        table.getName(),
-                        databaseIdentifierQuoteString,
-                        databaseIdentifierQuoteString));
-
-                stmt = con.createStatement();
-                stmt.setEscapeProcessing(false);
+                sql.append(tableReference(table, databaseIdentifierQuoteString, functions));
 
                 lastSQL = sql.toString();
                 
                 if (pm.isCancelled()) return;
-                rs = stmt.executeQuery(lastSQL);
+                rs = pool.executeQuery(stmt, lastSQL, col);
                 if (pm.isCancelled()) return;
 
                 if (rs.next()) {
-                    if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
-                        columnName = "DISTINCTCOUNT_"+i;
-                        cpr.setDistinctValueCount(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingMin() && pfd.isMinValue() ) {
-                        columnName = "MINVALUE_"+i;
-                        cpr.setMinValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingMax() && pfd.isMaxValue() ) {
-                        columnName = "MAXVALUE_"+i;
-                        cpr.setMaxValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingAvg() && pfd.isAvgValue() ) {
-                        columnName = "AVGVALUE_"+i;
-                        cpr.setAvgValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingMinLength() && pfd.isMinLength() ) {
-                        columnName = "MINLENGTH_"+i;
-                        cpr.setMinLength(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
-                        columnName = "MAXLENGTH_"+i;
-                        cpr.setMaxLength(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
-                        columnName = "AVGLENGTH_"+i;
-                        cpr.setAvgLength(rs.getDouble(columnName));
-                    }
-
-                    if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
-                        columnName = "NULLCOUNT_"+i;
-                        cpr.setNullCount(rs.getInt(columnName));
-                    }
+                    readProfileFunctions(rs, cpr, pfd, i, functions);
                 }
                 else {
                     throw new IllegalStateException("Query executed, but returns no rows:\n" +
-                            lastSQL + "\nColumn Name: " + columnName );
+                            lastSQL + "\nColumn Name: " + col.getName());
                 }
                 rs.close();
                 rs = null;
             }
 
             if (settings.isFindingTopTen() && pfd.isCountDist() && !pm.isCancelled() ) {
-                sql = new StringBuffer();
-                sql.append("SELECT ").append(databaseIdentifierQuoteString);
-                sql.append(col.getName()).append(databaseIdentifierQuoteString);
-                sql.append(" AS MYVALUE, COUNT(*) AS COUNT1 FROM ");
-                sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
-                        table.getSchemaName(),
-                        table.getName(),
-                        databaseIdentifierQuoteString,
-                        databaseIdentifierQuoteString));
-                sql.append(" GROUP BY ").append(databaseIdentifierQuoteString);
-                sql.append(col.getName()).append(databaseIdentifierQuoteString);
-                sql.append(" ORDER BY COUNT1 DESC");
-
-                lastSQL = sql.toString();
-                rs = stmt.executeQuery(lastSQL);
-                int topNCount = settings.getTopNCount();
-                int topNSum = 0;
-                for (int n = 0; rs.next() && n < topNCount; n++) {
-                    cpr.addValueCount(rs.getObject("MYVALUE"), rs.getInt("COUNT1"));
-                    topNSum += rs.getInt("COUNT1");
-                }
-                int remainingCount = cpr.getParent().getRowCount() - topNSum;
-                if (remainingCount > 0) {
-                    cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, remainingCount);
-                }
-                rs.close();
-                rs = null;
+                lastSQL = createTopNQuery(col, databaseIdentifierQuoteString, functions);
+                execTopNQuery(cpr, pool, stmt, lastSQL, functions);
             }
 
             cpr.setCreateEndTime(System.currentTimeMillis());
@@ -493,13 +564,192 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             try {
                 if (rs != null)
                     rs.close();
-                if (stmt != null)
-                    stmt.close();
             } catch (SQLException ex) {
                 logger.error("Couldn't clean up result set", ex);
             }
+            pool.closeStatement(stmt);
+        }
+
+    }
+
+    /**
+     * Appends one select list entry for every profiling function that is both
+     * requested by the settings and supported by the given descriptor. Each
+     * entry is preceded by a comma and its alias is suffixed with the given
+     * index, so expressions for several columns can share one statement.
+     * 
+     * @return The number of select list entries appended.
+     */
+    private int appendProfileFunctions(
+            StringBuffer sql,
+            ProfileFunctionDescriptor pfd,
+            SQLColumn col,
+            int i,
+            String databaseIdentifierQuoteString,
+            PlatformFunctions functions) {
+        int tryCount = 0;
+        String quotedName = databaseIdentifierQuoteString + col.getName() + databaseIdentifierQuoteString;
+        if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
+            sql.append(",\n COUNT(DISTINCT ");
+            sql.append(quotedName);
+            sql.append(") AS DISTINCTCOUNT_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingMin() && pfd.isMinValue() ) {
+            sql.append(",\n MIN(");
+            sql.append(quotedName);
+            sql.append(") AS MINVALUE_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingMax() && pfd.isMaxValue() ) {
+            sql.append(",\n MAX(");
+            sql.append(quotedName);
+            sql.append(") AS MAXVALUE_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingAvg() && pfd.isAvgValue() ) {
+            sql.append(",\n ");
+            sql.append(functions.averageSQLFunction.getAverageSQLFunction(quotedName));
+            sql.append(" AS AVGVALUE_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingMinLength() && pfd.isMinLength() ) {
+            sql.append(",\n MIN(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedName));
+            sql.append(") AS MINLENGTH_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
+            sql.append(",\n MAX(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedName));
+            sql.append(") AS MAXLENGTH_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
+            sql.append(",\n AVG(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedName));
+            sql.append(") AS AVGLENGTH_"+i);
+            tryCount++;
         }
 
+        if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
+            sql.append(",\n SUM(");
+            sql.append(functions.caseWhenNullSQLFunction.getCaseWhenNullSQLFunction(quotedName, "1"));
+            sql.append(") AS NULLCOUNT_"+i);
+            tryCount++;
+        }
+        return tryCount;
+    }
+
+    /**
+     * Returns the number of select list entries {@link #appendProfileFunctions}
+     * will generate for the given descriptor under the current settings.
+     */
+    private int countProfileFunctions(ProfileFunctionDescriptor pfd) {
+        int count = 0;
+        if (settings.isFindingDistinctCount() && pfd.isCountDist()) count++;
+        if (settings.isFindingMin() && pfd.isMinValue()) count++;
+        if (settings.isFindingMax() && pfd.isMaxValue()) count++;
+        if (settings.isFindingAvg() && pfd.isAvgValue()) count++;
+        if (settings.isFindingMinLength() && pfd.isMinLength()) count++;
+        if (settings.isFindingMaxLength() && pfd.isMaxLength()) count++;
+        if (settings.isFindingAvgLength() && pfd.isAvgLength()) count++;
+        if (settings.isFindingNullCount() && pfd.isSumDecode()) count++;
+        return count;
+    }
+
+    /**
+     * Copies the values of the select list entries generated by
+     * {@link #appendProfileFunctions} for the column with the given index
+     * from the current row of the result set into the given column profile
+     * result.
+     */
+    private void readProfileFunctions(
+            ResultSet rs,
+            ColumnProfileResult cpr,
+            ProfileFunctionDescriptor pfd,
+            int i,
+            PlatformFunctions functions) throws SQLException {
+        if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
+            cpr.setDistinctValueCount(rs.getInt("DISTINCTCOUNT_"+i));
+        }
+        if (settings.isFindingMin() && pfd.isMinValue() ) {
+            cpr.setMinValue(rs.getObject("MINVALUE_"+i));
+        }
+        if (settings.isFindingMax() && pfd.isMaxValue() ) {
+            cpr.setMaxValue(rs.getObject("MAXVALUE_"+i));
+        }
+        if (settings.isFindingAvg() && pfd.isAvgValue() ) {
+            cpr.setAvgValue(rs.getObject("AVGVALUE_"+i));
+        }
+        if (settings.isFindingMinLength() && pfd.isMinLength() ) {
+            cpr.setMinLength(rs.getInt("MINLENGTH_"+i));
+        }
+        if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
+            cpr.setMaxLength(rs.getInt("MAXLENGTH_"+i));
+        }
+        if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
+            cpr.setAvgLength(rs.getDouble("AVGLENGTH_"+i));
+        }
+        if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
+            cpr.setNullCount(functions.scaleCount(rs.getInt("NULLCOUNT_"+i)));
+        }
+    }
+
+    /**
+     * Creates the query that finds the most common values of the given column.
+     * If the data source type defines a {@link RowLimitSQLFunction}, the query
+     * is limited to the number of values the settings ask for so the database
+     * does not have to send back every group.
+     */
+    private String createTopNQuery(SQLColumn col, String databaseIdentifierQuoteString,
+            PlatformFunctions functions) {
+        SQLTable table = col.getParent();
+        StringBuffer sql = new StringBuffer();
+        sql.append("SELECT ").append(databaseIdentifierQuoteString);
+        sql.append(col.getName()).append(databaseIdentifierQuoteString);
+        sql.append(" AS MYVALUE, COUNT(*) AS COUNT1 FROM ");
+        sql.append(tableReference(table, databaseIdentifierQuoteString, functions));
+        sql.append(" GROUP BY ").append(databaseIdentifierQuoteString);
+        sql.append(col.getName()).append(databaseIdentifierQuoteString);
+        sql.append(" ORDER BY COUNT1 DESC");
+        if (functions.rowLimitSQLFunction != null) {
+            return functions.rowLimitSQLFunction.getRowLimitSQLFunction(sql.toString(), settings.getTopNCount());
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Runs the given top N query and adds the most common values it returns,
+     * plus an "other values" entry for the remaining rows, to the given
+     * column profile result.
+     * <p>
+     * The statement's maximum row count is set to the number of values
+     * wanted, so drivers that honour it can stop fetching early even on
+     * platforms without a {@link RowLimitSQLFunction}.
+     */
+    private void execTopNQuery(ColumnProfileResult cpr, ProfileConnectionPool pool, Statement stmt, String topNSQL,
+            PlatformFunctions functions) throws SQLException {
+        ResultSet rs = null;
+        try {
+            int topNCount = settings.getTopNCount();
+            if (topNCount > 0) {
+                stmt.setMaxRows(topNCount);
+            }
+            rs = pool.executeQuery(stmt, topNSQL, cpr.getProfiledObject());
+            int topNSum = 0;
+            for (int n = 0; rs.next() && n < topNCount; n++) {
+                int count = functions.scaleCount(rs.getInt("COUNT1"));
+                cpr.addValueCount(rs.getObject("MYVALUE"), count);
+                topNSum += count;
+            }
+            int remainingCount = cpr.getParent().getRowCount() - topNSum;
+            if (remainingCount > 0) {
+                cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, remainingCount);
+            }
+        } finally {
+            if (rs != null) rs.close();
+        }
     }
     
     /**
@@ -507,60 +757,343 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * the column referenced by <tt>cpr</tt>.
      * 
      * @param cpr The profile result to populate
+     * @param pool The pool to borrow a connection and statements from.
+     * @param functions The database specific profiling functions to use.
      * @param pm The progress monitor.  This progress monitor is only used for checking
      * if the operation is canceled; it is not updated with progress information.
      */
-    protected void doColumnProfile(ColumnProfileResult cpr, MonitorableImpl pm) throws SQLException, SQLObjectException {
+    private void doColumnProfile(ColumnProfileResult cpr, ProfileConnectionPool pool,
+            PlatformFunctions functions, MonitorableImpl pm)
+    throws SQLException, SQLObjectException {
         logger.debug("Doing profile for column " + cpr.getProfiledObject().getName());
         if (pm.isCancelled()) {
             return;
         }
         
         Connection con = null;
-        Statement stmt = null;
-        ResultSet rs = null;
-        String lastSQL = null;
         try {
             SQLColumn col = cpr.getProfiledObject();
-            SQLDatabase db = col.getParent().getParentDatabase();
-            con = db.getConnection();
-            stmt = con.createStatement();
-            stmt.setEscapeProcessing(false);
+            con = pool.getConnection();
             
-            ProfileFunctionDescriptor pfd = profileFunctionMap.get(col.getSourceDataTypeName());
             long profileStartTime = System.currentTimeMillis();
-
-            if (pfd == null) {
-                logger.debug(col.getName()+ " Unknown DataType:(" +
-                        col.getSourceDataTypeName() + ").");
-                logger.debug("Known data types are: " + profileFunctionMap.keySet());
-                pfd = discoverProfileFunctionDescriptor(col, con, pm);
-                profileFunctionMap.put(col.getSourceDataTypeName(), pfd);
-            }
+            ProfileFunctionDescriptor pfd = getProfileFunctionDescriptor(col, pool, con, functions, pm);
 
             try {
-                execProfileFunctions(cpr, pfd, col, con, pm);
+                execProfileFunctions(cpr, pfd, col, pool, con, functions, pm);
             } catch (Exception ex) {
                 cpr.setCreateStartTime(profileStartTime);
                 cpr.setException(ex);
                 cpr.setCreateEndTime(System.currentTimeMillis());
-                logger.error("Error in Column Profiling: "+lastSQL, ex);
+                logger.error("Error in Column Profiling", ex);
+            }
+
+        } finally {
+            pool.releaseConnection(con);
+        }
+    }
+
+    /**
+     * Profiles each of the given table's columns with its own queries, like
+     * {@link #doColumnProfile(ColumnProfileResult, ProfileConnectionPool, PlatformFunctions, MonitorableImpl)},
+     * but runs up to {@link ProfileSettings#getColumnProfileThreadCount()} of
+     * them at the same time, each on its own connection from the pool. The
+     * column results are added to the table result in column order before any
+     * of them is profiled, so their order does not depend on which column
+     * finishes first.
+     * 
+     * @param tpr The table profile result whose column results to create and populate.
+     * @param pool The pool to borrow connections and statements from.
+     * @param functions The database specific profiling functions to use.
+     * @param pm The progress monitor. It is polled for cancellation and advanced
+     * once for each column profiled.
+     */
+    private void doParallelColumnProfiles(TableProfileResult tpr, final ProfileConnectionPool pool,
+            final PlatformFunctions functions, final MonitorableImpl pm)
+    throws SQLException, SQLObjectException {
+        SQLTable table = tpr.getProfiledObject();
+        List<ColumnProfileResult> cprs = new ArrayList<ColumnProfileResult>();
+        for (SQLColumn col : table.getColumns()) {
+            ColumnProfileResult columnResult = new ColumnProfileResult(col);
+            tpr.addColumnProfileResult(columnResult);
+            cprs.add(columnResult);
+        }
+        
+        int threadCount = Math.min(settings.getColumnProfileThreadCount(), cprs.size());
+        logger.debug("Profiling " + cprs.size() + " columns of " + table.getName() +
+                " on " + threadCount + " connections");
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final ColumnProfileResult cpr : cprs) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        doColumnProfile(cpr, pool, functions, pm);
+                        synchronized (pm) {
+                            pm.setProgress(pm.getProgress() + 1);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof SQLException) throw (SQLException) cause;
+                    if (cause instanceof SQLObjectException) throw (SQLObjectException) cause;
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    throw new RuntimeException(cause);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for column profiles", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Performs profiling of all the given table's columns using as few scans
+     * of the table as possible. The aggregate functions for every column are
+     * combined into one wide SELECT statement, which is only split into
+     * several statements when the platform's select list or statement length
+     * limits require it. The top N values still need one GROUP BY query per
+     * column.
+     * <p>
+     * If one of the combined statements fails, the columns it covered are
+     * profiled one at a time instead so the failure can be attributed to the
+     * column that caused it.
+     * 
+     * @param tpr The table profile result whose column results to create and populate.
+     * @param pool The pool to borrow a connection and statements from.
+     * @param functions The database specific profiling functions to use.
+     * @param pm The progress monitor. It is polled for cancellation and advanced
+     * once for each column profiled.
+     */
+    private void doCombinedColumnProfiles(TableProfileResult tpr, ProfileConnectionPool pool,
+            PlatformFunctions functions, MonitorableImpl pm)
+    throws SQLException, SQLObjectException {
+        SQLTable table = tpr.getProfiledObject();
+        List<ColumnProfileResult> cprs = new ArrayList<ColumnProfileResult>();
+        List<ProfileFunctionDescriptor> pfds = new ArrayList<ProfileFunctionDescriptor>();
+        for (SQLColumn col : table.getColumns()) {
+            ColumnProfileResult columnResult = new ColumnProfileResult(col);
+            tpr.addColumnProfileResult(columnResult);
+            cprs.add(columnResult);
+        }
+        
+        Connection con = null;
+        try {
+            con = pool.getConnection();
+            DatabaseMetaData dbmd = con.getMetaData();
+            String databaseIdentifierQuoteString = dbmd.getIdentifierQuoteString();
+            int maxSelectListSize = dbmd.getMaxColumnsInSelect();
+            if (maxSelectListSize <= 0) {
+                maxSelectListSize = DEFAULT_MAX_SELECT_LIST_SIZE;
+            }
+            int maxStatementLength = dbmd.getMaxStatementLength();
+            String fromClause = "\n FROM " + tableReference(table, databaseIdentifierQuoteString, functions);
+            
+            for (ColumnProfileResult cpr : cprs) {
+                if (pm.isCancelled()) return;
+                pfds.add(getProfileFunctionDescriptor(cpr.getProfiledObject(), pool, con, functions, pm));
+            }
+            
+            // columns that were profiled individually after their combined query failed
+            boolean[] profiledAlone = new boolean[cprs.size()];
+            int start = 0;
+            while (start < cprs.size()) {
+                if (pm.isCancelled()) return;
+                StringBuffer sql = new StringBuffer("SELECT 1");
+                int selectListSize = 1;
+                int end = start;
+                while (end < cprs.size()) {
+                    StringBuffer columnSQL = new StringBuffer();
+                    int count = appendProfileFunctions(columnSQL, pfds.get(end),
+                            cprs.get(end).getProfiledObject(), end, databaseIdentifierQuoteString, functions);
+                    boolean tooWide = selectListSize + count > maxSelectListSize;
+                    boolean tooLong = maxStatementLength > 0 &&
+                        sql.length() + columnSQL.length() + fromClause.length() > maxStatementLength;
+                    if (end > start && (tooWide || tooLong)) break;
+                    sql.append(columnSQL);
+                    selectListSize += count;
+                    end++;
+                }
+                
+                long startTime = System.currentTimeMillis();
+                for (int i = start; i < end; i++) {
+                    cprs.get(i).setCreateStartTime(startTime);
+                }
+                if (selectListSize > 1) {
+                    sql.append(fromClause);
+                    try {
+                        execCombinedProfileFunctions(pool, con, sql.toString(), cprs, pfds, start, end, functions);
+                    } catch (SQLException ex) {
+                        logger.info("Combined profiling query failed. Profiling columns " + start +
+                                " to " + (end - 1) + " of " + table.getName() + " individually.", ex);
+                        for (int i = start; i < end; i++) {
+                            if (pm.isCancelled()) return;
+                            ColumnProfileResult cpr = cprs.get(i);
+                            try {
+                                execProfileFunctions(cpr, pfds.get(i), cpr.getProfiledObject(), pool, con, functions, pm);
+                            } catch (Exception columnEx) {
+                                cpr.setException(columnEx);
+                                cpr.setCreateEndTime(System.currentTimeMillis());
+                                logger.error("Error in Column Profiling", columnEx);
+                            }
+                            profiledAlone[i] = true;
+                        }
+                    }
+                }
+                start = end;
+            }
+            
+            Statement stmt = null;
+            try {
+                stmt = pool.createStatement(con);
+                for (int i = 0; i < cprs.size(); i++) {
+                    if (pm.isCancelled()) return;
+                    ColumnProfileResult cpr = cprs.get(i);
+                    ProfileFunctionDescriptor pfd = pfds.get(i);
+                    if (!profiledAlone[i]) {
+                        if (settings.isFindingTopTen() && pfd != null && pfd.isCountDist()) {
+                            String topNSQL = createTopNQuery(cpr.getProfiledObject(),
+                                    databaseIdentifierQuoteString, functions);
+                            try {
+                                execTopNQuery(cpr, pool, stmt, topNSQL, functions);
+                            } catch (SQLException ex) {
+                                cpr.setException(ex);
+                                logger.error("Error in Column Profiling: " + topNSQL, ex);
+                            }
+                        }
+                        cpr.setCreateEndTime(System.currentTimeMillis());
+                    }
+                    pm.setProgress(pm.getProgress() + 1);
+                }
+            } finally {
+                pool.closeStatement(stmt);
             }
+        } finally {
+            pool.releaseConnection(con);
+        }
+    }
 
+    /**
+     * Executes one combined aggregate statement built by
+     * {@link #doCombinedColumnProfiles(TableProfileResult, ProfileConnectionPool, PlatformFunctions, MonitorableImpl)}
+     * and copies the values for the columns in the range [start, end) into
+     * their profile results.
+     */
+    private void execCombinedProfileFunctions(
+            ProfileConnectionPool pool,
+            Connection con,
+            String combinedSQL,
+            List<ColumnProfileResult> cprs,
+            List<ProfileFunctionDescriptor> pfds,
+            int start,
+            int end,
+            PlatformFunctions functions) throws SQLException {
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = pool.createStatement(con);
+            logger.debug("Executing combined profiling query for " + (end - start) + " columns");
+            rs = pool.executeQuery(stmt, combinedSQL, null);
+            if (!rs.next()) {
+                throw new IllegalStateException("Query executed, but returns no rows:\n" + combinedSQL);
+            }
+            for (int i = start; i < end; i++) {
+                if (pfds.get(i) != null) {
+                    readProfileFunctions(rs, cprs.get(i), pfds.get(i), i, functions);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.debug("Combined profiling query failed. Query was:\n" + combinedSQL);
+            throw ex;
         } finally {
             try {
                 if (rs != null) rs.close();
             } catch (SQLException ex) {
                 logger.error("Couldn't clean up result set", ex);
             }
-            try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException ex) {
-                logger.error("Couldn't clean up statement", ex);
+            pool.closeStatement(stmt);
+        }
+    }
+
+    /**
+     * Returns the profile function descriptor for the given column's data
+     * type. If the data source type does not define one, it is discovered by
+     * trial and error, remembered for the rest of this profile run, and added
+     * to the data source type so later runs do not have to discover it again.
+     * If a function failed for a reason that has nothing to do with the data
+     * type, such as a timeout or a lost connection, the descriptor is only
+     * used for this run.
+     */
+    private ProfileFunctionDescriptor getProfileFunctionDescriptor(SQLColumn col, ProfileConnectionPool pool,
+            Connection con, PlatformFunctions functions, Monitorable pm) {
+        ProfileFunctionDescriptor pfd = functions.profileFunctionMap.get(col.getSourceDataTypeName());
+        if (pfd == null) {
+            logger.debug(col.getName()+ " Unknown DataType:(" +
+                    col.getSourceDataTypeName() + ").");
+            logger.debug("Known data types are: " + functions.profileFunctionMap.keySet());
+            List<Exception> transientFailures = new ArrayList<Exception>();
+            pfd = discoverProfileFunctionDescriptor(col, pool, con, functions, pm, transientFailures);
+            functions.profileFunctionMap.put(col.getSourceDataTypeName(), pfd);
+            if (!transientFailures.isEmpty()) {
+                logger.info("Not saving the profile functions discovered for " + col.getSourceDataTypeName() +
+                        " because some failed for reasons other than the data type: " + transientFailures);
+            } else if (pfd != null && !pm.isCancelled()) {
+                saveDiscoveredDescriptor(col.getParent().getParentDatabase().getDataSource().getParentType(), pfd);
             }
-            if (con != null) {
-                con.close();
+        }
+        return pfd;
+    }
+
+    /**
+     * Adds a discovered profile function descriptor to the given data source
+     * type, after the descriptors it already has. The data source type's
+     * properties are saved with the rest of the pl.ini file, so the descriptor
+     * is picked up by {@link #createProfileFunctions(JDBCDataSourceType)} in
+     * later profile runs and can be corrected in the data source type editor.
+     * <p>
+     * Descriptors are only saved if every profiling function was actually
+     * tried, which is not the case if the settings turn some of them off.
+     * Descriptors for which every function failed are not saved either, since
+     * that is more likely a connection problem than a data type that can't be
+     * profiled at all.
+     */
+    private void saveDiscoveredDescriptor(JDBCDataSourceType dsType, ProfileFunctionDescriptor pfd) {
+        if (!(settings.isFindingDistinctCount() && settings.isFindingMin() && settings.isFindingMax()
+                && settings.isFindingAvg() && settings.isFindingMinLength() && settings.isFindingMaxLength()
+                && settings.isFindingAvgLength() && settings.isFindingNullCount())) {
+            return;
+        }
+        if (pfd.getArchitectSpecificName() == null || pfd.getArchitectSpecificName().indexOf(',') >= 0) {
+            // the descriptor string is comma separated, so this name can't be stored
+            return;
+        }
+        if (countProfileFunctions(pfd) == 0) {
+            logger.debug("Not saving descriptor for " + pfd.getDataTypeName() + " because every function failed");
+            return;
+        }
+        
+        // several profiles may be discovering descriptors for the same type at once
+        synchronized (dsType) {
+            String prefix = ProfileFunctionDescriptor.class.getName() + "_";
+            int index = 0;
+            for (;; index++) {
+                String descriptor = dsType.getProperty(prefix + index);
+                if (descriptor == null) break;
+                if (ProfileFunctionDescriptor.parseDescriptorString(descriptor).getArchitectSpecificName()
+                        .equals(pfd.getArchitectSpecificName())) {
+                    return;
+                }
             }
+            logger.debug("Saving discovered profile function descriptor " + prefix + index + " for " +
+                    dsType.getName() + ": " + ProfileFunctionDescriptor.createDescriptorString(pfd));
+            dsType.putProperty(prefix + index, ProfileFunctionDescriptor.createDescriptorString(pfd));
         }
     }
 
@@ -575,12 +1108,13 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * integer values represent for the data types.
      * <p>
      * This method also sets up the string length SQL function, average SQL
-     * function, and case when null SQL function as they are also database
-     * specific.
+     * function, case when null SQL function and the optional row limit SQL
+     * function as they are also database specific.
      */
-    private void createProfileFunctions(JDBCDataSourceType dsType) {
+    private PlatformFunctions createProfileFunctions(JDBCDataSourceType dsType) {
         
-        profileFunctionMap = new HashMap<String, ProfileFunctionDescriptor>();
+        PlatformFunctions functions = new PlatformFunctions();
+        Map<String, ProfileFunctionDescriptor> profileFunctionMap = functions.profileFunctionMap;
         logger.debug("The property to retrieve is " + ProfileFunctionDescriptor.class.getName() + "_(number)");
         
         for (int dataTypeCount = 0;; dataTypeCount += 1) {
@@ -601,7 +1135,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        stringLengthSQLFunction = new StringLengthSQLFunction(functionParts[0], functionParts[1]);
+        functions.stringLengthSQLFunction = new StringLengthSQLFunction(functionParts[0], functionParts[1]);
         
         function = dsType.getProperty(propName(AverageSQLFunction.class));
         functionParts = function.split(":");
@@ -612,7 +1146,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        averageSQLFunction = new AverageSQLFunction(functionParts[0], functionParts[1]);
+        functions.averageSQLFunction = new AverageSQLFunction(functionParts[0], functionParts[1]);
         
         function = dsType.getProperty(propName(CaseWhenNullSQLFunction.class));
         functionParts = function.split(":");
@@ -623,8 +1157,98 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        caseWhenNullSQLFunction = new CaseWhenNullSQLFunction(functionParts[0], functionParts[1], functionParts[2]);
+        functions.caseWhenNullSQLFunction = new CaseWhenNullSQLFunction(functionParts[0], functionParts[1], functionParts[2]);
         
+        function = DDLUtils.getPlatformProperty(dsType, propName(RowLimitSQLFunction.class));
+        if (function != null && function.contains("{n}")) {
+            if (!function.contains("{query}") && !function.contains("{query-without-select}")) {
+                throw new RuntimeException(
+                    "Configuration error in SQL Row Limit Function Descriptor for " + dsType.getName() + ":\n" +
+                    "Function descriptor must contain {query} or {query-without-select} (eg. '{query} LIMIT {n}')\n" +
+                    "Current setting for your database is '" + function + "'"
+                    );
+            }
+            functions.rowLimitSQLFunction = new RowLimitSQLFunction(function);
+        } else if (function != null) {
+            functionParts = function.split(":", -1);
+            if (functionParts.length != 3) {
+                throw new RuntimeException(
+                    "Configuration error in SQL Row Limit Function Descriptor for " + dsType.getName() + ":\n" +
+                    "Function descriptor must use {n} and {query} (eg. '{query} LIMIT {n}') or have exactly two : characters in it (eg. ': LIMIT :')\n" +
+                    "Current setting for your database is '" + function + "'"
+                    );
+            }
+            functions.rowLimitSQLFunction = new RowLimitSQLFunction(functionParts[0], functionParts[1], functionParts[2]);
+        }
+        
+        double samplePercent = getSamplePercent();
+        if (samplePercent > 0 && samplePercent < 100) {
+            function = dsType.getProperty(propName(TableSampleSQLFunction.class));
+            if (function == null || function.trim().length() == 0) {
+                logger.warn("No table sample function is defined for " + dsType.getName() +
+                        ". Profiling the whole table instead of a sample.");
+            } else {
+                functionParts = function.split(":", -1);
+                if (functionParts.length != 3 && functionParts.length != 4) {
+                    throw new RuntimeException(
+                        "Configuration error in SQL Table Sample Function Descriptor for " + dsType.getName() + ":\n" +
+                        "Function descriptor must have two or three : characters in it (eg. ': TABLESAMPLE SYSTEM (:) REPEATABLE (:)')\n" +
+                        "Current setting for your database is '" + function + "'"
+                        );
+                }
+                functions.tableSampleSQLFunction = new TableSampleSQLFunction(functionParts[0], functionParts[1],
+                        functionParts[2], functionParts.length == 4 ? functionParts[3] : null);
+                functions.samplePercent = samplePercent;
+                functions.sampleSeed = new Random().nextInt(Integer.MAX_VALUE);
+            }
+        }
+        
+        return functions;
+    }
+
+    /**
+     * Returns the percentage of each table's rows this creator profiles. The
+     * remote database profile creator always profiles the whole table, but
+     * subclasses can push sampling down to the database by returning a
+     * percentage less than 100. Sampling only happens on data source types
+     * that define a {@link TableSampleSQLFunction}.
+     */
+    protected double getSamplePercent() {
+        return 100;
+    }
+
+    /**
+     * Returns the reference to the given table to use in the FROM clause of
+     * the profiling queries. This is the table's qualified name, with the
+     * data source type's sampling clause applied if the table is being
+     * sampled.
+     */
+    private String tableReference(SQLTable table, String databaseIdentifierQuoteString,
+            PlatformFunctions functions) {
+        String tableName = DDLUtils.toQualifiedName(table.getCatalogName(),
+                table.getSchemaName(),
+                table.getName(),
+                databaseIdentifierQuoteString,
+                databaseIdentifierQuoteString);
+        if (functions.tableSampleSQLFunction == null) {
+            return tableName;
+        }
+        return functions.tableSampleSQLFunction.getTableSampleSQLFunction(tableName,
+                functions.samplePercent, functions.sampleSeed);
+    }
+
+    /**
+     * Estimates the relative error, at 95% confidence, of a row count scaled
+     * up from a sample of the given size taken at the given rate. This treats
+     * the sampled rows as independent, so block sampling of tables whose rows
+     * are clustered by value can be off by more than this.
+     * 
+     * @return The estimated error as a fraction of the estimate, or 1 if the
+     *         sample was empty.
+     */
+    static double estimateSamplingError(int sampleRowCount, double samplingRate) {
+        if (sampleRowCount <= 0) return 1;
+        return 1.96 * Math.sqrt((1 - samplingRate) / sampleRowCount);
     }
 
     /**
@@ -632,13 +1256,17 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * by trial and error.  This could be extremely time-consuming.
      * 
      * @param col The column to figureout how to profile
+     * @param pool The pool to create statements with
      * @param conn A connection to col's database
+     * @param functions The database specific profiling functions to use
      * @return A ProfileFunctionDescriptor that is properly configured for the data
      * type of col.
      */
-    private ProfileFunctionDescriptor discoverProfileFunctionDescriptor(SQLColumn col, Connection conn, Monitorable pm) {
+    private ProfileFunctionDescriptor discoverProfileFunctionDescriptor(SQLColumn col, ProfileConnectionPool pool,
+            Connection conn, PlatformFunctions functions, Monitorable pm, List<Exception> transientFailures) {
         ProfileFunctionDescriptor pfd = new ProfileFunctionDescriptor(col.getSourceDataTypeName(),
                 col.getType(),false,false,false,false,false,false,false,false);
+        pfd.setArchitectSpecificName(col.getSourceDataTypeName());
 
         TableProfileResult dummyParent = new TableProfileResult(col.getParent(), new ProfileSettings());
         dummyParent.setRowCount(1);
@@ -651,10 +1279,11 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         
         try {
             pfd.setCountDist(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, pool, conn, functions, pm);
             logger.debug("countDist worked");
         } catch (Exception e) {
             logger.debug("countDist failed", e);
+            if (isTransientFailure(e)) transientFailures.add(e);
             pfd.setCountDist(false);
         }
 
@@ -663,10 +1292,11 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         try {
             pfd.setMaxValue(true);
             pfd.setMinValue(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, pool, conn, functions, pm);
             logger.debug("min/max worked");
         } catch (Exception e) {
             logger.debug("min/max failed", e);
+            if (isTransientFailure(e)) transientFailures.add(e);
             pfd.setMaxValue(false);
             pfd.setMinValue(false);
         }
@@ -675,10 +1305,11 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
         try {
             pfd.setAvgValue(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, pool, conn, functions, pm);
             logger.debug("avg worked");
         } catch (Exception e) {
             logger.debug("avg failed", e);
+            if (isTransientFailure(e)) transientFailures.add(e);
             pfd.setAvgValue(false);
         }
 
@@ -688,10 +1319,11 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             pfd.setMaxLength(true);
             pfd.setMinLength(true);
             pfd.setAvgLength(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, pool, conn, functions, pm);
             logger.debug("min/max/avg length worked");
         } catch (Exception e) {
             logger.debug("min/max/avg length failed", e);
+            if (isTransientFailure(e)) transientFailures.add(e);
             pfd.setMaxLength(false);
             pfd.setMinLength(false);
             pfd.setAvgLength(false);
@@ -701,16 +1333,45 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
         try {
             pfd.setSumDecode(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, pool, conn, functions, pm);
             logger.debug("sumDecode worked");
         } catch (Exception e) {
             logger.debug("sumDecode failed", e);
+            if (isTransientFailure(e)) transientFailures.add(e);
             pfd.setSumDecode(false);
         }
 
         return pfd;
     }
 
+    /**
+     * Returns true if the given exception, or one of its causes, says the
+     * query failed for a reason that may not happen again: it timed out, was
+     * cancelled or rolled back, or the connection failed. A descriptor discovered
+     * despite such a failure says nothing reliable about the data type.
+     */
+    static boolean isTransientFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientException || t instanceof SQLRecoverableException
+                    || t instanceof InterruptedException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                for (SQLException next = (SQLException) t; next != null; next = next.getNextException()) {
+                    String state = next.getSQLState();
+                    // connection exceptions, transaction rollbacks (deadlocks
+                    // and lock waits), timeouts and cancelled statements
+                    if (state != null && (state.startsWith("08") || state.startsWith("40")
+                            || state.equals("HYT00") || state.equals("HYT01")
+                            || state.equals("HY008") || state.equals("57014"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns the appropriate profile function descriptor property name
      * for the given profiling function class.  The reason this function
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+/**
+ * A profile creator that runs the same aggregate queries as the
+ * {@link RemoteDatabaseProfileCreator}, but asks the database to read only a
+ * sample of each table using the TABLESAMPLE or SAMPLE clause declared for
+ * the data source type (see
+ * {@link RemoteDatabaseProfileCreator.TableSampleSQLFunction}). This makes
+ * profiling very large tables affordable.
+ * <p>
+ * The row count, null counts and top value counts are scaled up from the
+ * sample, and the resulting {@link TableProfileResult} records the sampling
+ * rate and the estimated error of the row count. Distinct counts are the
+ * number of distinct values seen in the sample, so they understate the true
+ * count of columns with many rare values. Minimums and maximums may miss
+ * values that fall outside the sample.
+ * <p>
+ * Data source types without a sampling clause are profiled in full.
+ */
+public class RemoteSamplingProfileCreator extends RemoteDatabaseProfileCreator {
+
+    /**
+     * The settings for this profile creator.
+     */
+    private final ProfileSettings settings;
+
+    public RemoteSamplingProfileCreator(ProfileSettings settings) {
+        super(settings);
+        this.settings = settings;
+    }
+
+    @Override
+    protected double getSamplePercent() {
+        return settings.getSamplePercent();
+    }
+
+    @Override
+    public String toString() {
+        return "Remote Database Sample";
+    }
+}
@@ -24,11 +24,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.architect.profile.event.ProfileQueryListener;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.object.annotation.Accessor;
 import ca.sqlpower.object.annotation.Constructor;
@@ -42,7 +44,6 @@ import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.util.Monitorable;
-import ca.sqlpower.util.MonitorableImpl;
 
 /**
  * Holds profile results that pertain to a particular table. Instances of this
@@ -62,6 +63,37 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
     private static final Logger logger = Logger.getLogger(TableProfileResult.class);
 
     private int rowCount;
+
+    /**
+     * Identifies the state of the table's data at the time it was profiled,
+     * as reported by the data source type's last modified query (see
+     * {@link IncrementalProfileCreator#LAST_MODIFIED_QUERY}). This is null if
+     * the platform has no such query or the table was not profiled
+     * incrementally.
+     */
+    private String modificationStamp;
+
+    /**
+     * The time the column profiles in this result were actually computed, if
+     * they were carried over from an earlier profile because the table had not
+     * changed since. This is 0 if this result was computed from the table.
+     */
+    private long reusedResultTime;
+
+    /**
+     * The fraction of the table's rows that were read to make this profile.
+     * This is 1 unless the database was asked to sample the table, in which
+     * case the counts in this profile are estimates scaled up from the sample.
+     */
+    private double samplingRate = 1;
+
+    /**
+     * The estimated relative error, at 95% confidence, of the row count when
+     * this profile was made from a sample. Counts of rarer values in the
+     * column profiles are less precise than this. This is 0 when the whole
+     * table was read.
+     */
+    private double samplingError;
     
     /**
      * The "children" of this profile result: the profile results for the columns
@@ -69,7 +101,17 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
      */
     private List<ColumnProfileResult> columnProfileResults = new ArrayList<ColumnProfileResult>();
 
-    private Monitorable progressMonitor = new MonitorableImpl();
+    private Monitorable progressMonitor = new ProfileProgressMonitor();
+
+    /**
+     * The timings of the queries run to populate this result, in the order
+     * they finished. These are not saved with the project, and are not copied
+     * along with the rest of this result.
+     */
+    private final List<ProfileQueryTiming> queryTimings =
+        Collections.synchronizedList(new ArrayList<ProfileQueryTiming>());
+
+    private final List<ProfileQueryListener> queryListeners = new CopyOnWriteArrayList<ProfileQueryListener>();
     
     /**
      * Creates a profile result which is not yet populated.  Normally, profile results
@@ -109,6 +151,10 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
         super(tprToCopy, table);
         setName("New Table Profile");
         this.rowCount = tprToCopy.rowCount;
+        this.modificationStamp = tprToCopy.modificationStamp;
+        this.reusedResultTime = tprToCopy.reusedResultTime;
+        this.samplingRate = tprToCopy.samplingRate;
+        this.samplingError = tprToCopy.samplingError;
         this.progressMonitor = tprToCopy.progressMonitor;
         for (SQLColumn col : table.getColumns()) {
             for (ColumnProfileResult cpr : tprToCopy.getColumnProfileResults()) {
@@ -146,6 +192,103 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
         firePropertyChange("rowCount", oldCount, rowCount);
     }
 
+    @Accessor
+    public String getModificationStamp() {
+        return modificationStamp;
+    }
+
+    @Mutator
+    public void setModificationStamp(String modificationStamp) {
+        String oldStamp = this.modificationStamp;
+        this.modificationStamp = modificationStamp;
+        firePropertyChange("modificationStamp", oldStamp, modificationStamp);
+    }
+
+    @Accessor
+    public long getReusedResultTime() {
+        return reusedResultTime;
+    }
+
+    @Mutator
+    public void setReusedResultTime(long reusedResultTime) {
+        long oldTime = this.reusedResultTime;
+        this.reusedResultTime = reusedResultTime;
+        firePropertyChange("reusedResultTime", oldTime, reusedResultTime);
+    }
+
+    /**
+     * Returns true if the column profiles of this result were copied from an
+     * earlier profile of the unchanged table rather than computed again.
+     */
+    @NonProperty
+    public boolean isReused() {
+        return reusedResultTime != 0;
+    }
+
+    @Accessor
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    @Mutator
+    public void setSamplingRate(double samplingRate) {
+        double oldRate = this.samplingRate;
+        this.samplingRate = samplingRate;
+        firePropertyChange("samplingRate", oldRate, samplingRate);
+    }
+
+    @Accessor
+    public double getSamplingError() {
+        return samplingError;
+    }
+
+    @Mutator
+    public void setSamplingError(double samplingError) {
+        double oldError = this.samplingError;
+        this.samplingError = samplingError;
+        firePropertyChange("samplingError", oldError, samplingError);
+    }
+
+    /**
+     * Returns true if this profile was made from a sample of the table, which
+     * means its counts are estimates.
+     */
+    @NonProperty
+    public boolean isSampled() {
+        return samplingRate < 1;
+    }
+
+    /**
+     * Records the timing of a query that was run to populate this result and
+     * tells the query listeners about it. This may be called from several
+     * threads at once.
+     */
+    public void addQueryTiming(ProfileQueryTiming timing) {
+        queryTimings.add(timing);
+        for (ProfileQueryListener l : queryListeners) {
+            l.queryFinished(this, timing);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the timings of the queries that have been run to
+     * populate this result so far.
+     */
+    @NonProperty
+    public List<ProfileQueryTiming> getQueryTimings() {
+        synchronized (queryTimings) {
+            return new ArrayList<ProfileQueryTiming>(queryTimings);
+        }
+    }
+
+    public void addProfileQueryListener(ProfileQueryListener l) {
+        queryListeners.add(l);
+    }
+
+    public void removeProfileQueryListener(ProfileQueryListener l) {
+        queryListeners.remove(l);
+    }
+
     /**
      * This printf format string is used in our toString() but is also
      * made public for use in UI controls that need an approximation
@@ -163,8 +306,27 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
                 successfulColCount++;
             }
         }
-        return String.format(TOSTRING_FORMAT,
+        String description = String.format(TOSTRING_FORMAT,
                 rowCount, df.format(date), formatCreateTime(), successfulColCount, columnProfileResults.size());
+        if (isSampled()) {
+            description += String.format("   Estimated from %s%% sample (+/- %s%%)",
+                    formatPercent(samplingRate), formatPercent(samplingError));
+        }
+        if (isReused()) {
+            description += "   Unchanged since " + df.format(new Date(reusedResultTime));
+        }
+        return description;
+    }
+    
+    /**
+     * Formats the given fraction as a percentage with as many decimal places
+     * as it takes to show small sampling rates.
+     */
+    private static String formatPercent(double fraction) {
+        double percent = fraction * 100;
+        if (percent >= 10 || percent == 0) return String.format("%.0f", percent);
+        if (percent >= 0.1) return String.format("%.1f", percent);
+        return String.format("%.3g", percent);
     }
     
     /**
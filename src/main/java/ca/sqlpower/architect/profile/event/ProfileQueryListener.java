@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile.event;
+
+import ca.sqlpower.architect.profile.ProfileQueryTiming;
+import ca.sqlpower.architect.profile.TableProfileResult;
+
+/**
+ * Receives the timing of each query run to profile a table, as soon as the
+ * query's results are closed. This is called on the thread doing the
+ * profiling, which may not be the Swing event dispatch thread, and may be
+ * called from several threads at once if the columns of a table are profiled
+ * in parallel.
+ */
+public interface ProfileQueryListener {
+
+    /**
+     * Called when a profiling query has finished.
+     * 
+     * @param result
+     *            The profile result the query was run for.
+     * @param timing
+     *            The query's timing.
+     */
+    public void queryFinished(TableProfileResult result, ProfileQueryTiming timing);
+}
@@ -23,6 +23,7 @@ import java.io.PrintWriter;
 import java.text.Format;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
 import au.com.bytecode.opencsv.CSVWriter;
@@ -43,6 +44,15 @@ public class ProfileCSVFormat implements ProfileFormat {
      */
     public void format(OutputStream nout, List<ProfileResult> profileResult) 
                                                                 throws Exception {
+        format(nout, profileResult.iterator());
+    }
+
+    /**
+     * Writes one CSV line per column result as it is read, and flushes the
+     * output at the start of each table.
+     */
+    public void format(OutputStream nout, Iterator<ProfileResult> profileResults) 
+                                                                throws Exception {
         PrintWriter out = new PrintWriter(nout);
 
         // Print a header
@@ -60,8 +70,12 @@ public class ProfileCSVFormat implements ProfileFormat {
         Format decFormat =  new DecimalTableCellRenderer().getFormat();
         Format pctFormat =  new PercentTableCellRenderer().getFormat();
         // Now print column profile
-        for ( ProfileResult result : profileResult ) {
+        while ( profileResults.hasNext() ) {
+            ProfileResult result = profileResults.next();
 
+            if ( result instanceof TableProfileResult ) {
+                csvWriter.flush();
+            }
             if ( !(result instanceof ColumnProfileResult) )
                 continue;
 
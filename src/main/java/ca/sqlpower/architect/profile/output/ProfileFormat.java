@@ -19,6 +19,7 @@
 package ca.sqlpower.architect.profile.output;
 
 import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
 
 import ca.sqlpower.architect.profile.ProfileResult;
@@ -52,4 +53,21 @@ public interface ProfileFormat {
      * @param pm    The ProfileManager which generated this Profile
      */
     public void format(OutputStream out, List<ProfileResult> profile) throws Exception;
+
+    /**
+     * Formats profile results to an open OutputStream as they are read from
+     * the given iterator. Each table's section of the report is written out as
+     * soon as it is complete, and the formatter keeps no reference to the
+     * results it has already written, so the memory used does not depend on
+     * the number of tables. This is the method to use for reports on large
+     * databases.
+     * <p>
+     * The results must be in the same order as for
+     * {@link #format(OutputStream, List)}: each table's result followed by the
+     * results of its columns.
+     * 
+     * @param out   The file to write to.
+     * @param profile The profile results to format, in report order
+     */
+    public void format(OutputStream out, Iterator<ProfileResult> profile) throws Exception;
 }
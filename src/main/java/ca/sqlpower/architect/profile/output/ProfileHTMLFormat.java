@@ -25,17 +25,29 @@ import java.io.PrintWriter;
 import java.sql.SQLException;
 import java.text.NumberFormat;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
 import ca.sqlpower.architect.ddl.GenericDDLGenerator;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ProfileResult;
 import ca.sqlpower.architect.profile.TableProfileResult;
+import ca.sqlpower.architect.profile.sketch.TDigest;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLTable;
 
 public class ProfileHTMLFormat implements ProfileFormat {
 
+    /**
+     * The number of bars in the histogram of a numeric column.
+     */
+    private static final int HISTOGRAM_BINS = 10;
+
+    /**
+     * The height in pixels of the tallest histogram bar.
+     */
+    private static final int HISTOGRAM_HEIGHT = 30;
+
     /**
      * The character encoding that will appear in the HTML declaration.
      */
@@ -50,6 +62,16 @@ public class ProfileHTMLFormat implements ProfileFormat {
      */
     public void format(OutputStream out, List<ProfileResult> profileResults) 
                                             throws IOException, SQLException {
+        format(out, profileResults.iterator());
+    }
+
+    /**
+     * Generates formatted HTML of the profile information as it is read from
+     * the iterator, flushing each table to the output stream when the next
+     * one starts.
+     */
+    public void format(OutputStream out, Iterator<ProfileResult> profileResults) 
+                                            throws IOException, SQLException {
 
         // Create header first, obtaining column count, so we can use it in a colspan later.
         StringBuffer s = new StringBuffer();
@@ -107,6 +129,16 @@ public class ProfileHTMLFormat implements ProfileFormat {
         cellCount++;
         s.append("</th>");
 
+        s.append("<th>");
+        s.append("Percentiles");
+        cellCount++;
+        s.append("</th>");
+
+        s.append("<th>");
+        s.append("Histogram");
+        cellCount++;
+        s.append("</th>");
+
         s.append("</tr>");
 
         String header = s.toString();
@@ -127,13 +159,15 @@ public class ProfileHTMLFormat implements ProfileFormat {
 
         boolean firstTable = true;
 
-        for ( ProfileResult result : profileResults ) {
+        while ( profileResults.hasNext() ) {
+            ProfileResult result = profileResults.next();
             if ( result instanceof TableProfileResult ) {
 
                 if ( firstTable ) {
                     firstTable = false;
                 } else {
                     outw.print("\n </table>");
+                    outw.flush();
                 }
 
                 SQLTable t = ((TableProfileResult)result).getProfiledObject();
@@ -275,6 +309,27 @@ public class ProfileHTMLFormat implements ProfileFormat {
                     outw.print(mf.format(((ColumnProfileResult) result).getAvgLength()));
                     outw.print("</td>");
 
+                    // percentiles
+                    outw.print("<td bgcolor=\"#e0e0e0\">");
+                    double[] quantileValues = ((ColumnProfileResult) result).getReportedQuantileValues();
+                    if (quantileValues != null) {
+                        for (int i = 0; i < quantileValues.length; i++) {
+                            if (i > 0) outw.print("<br/>");
+                            outw.print(Math.round(ColumnProfileResult.REPORTED_QUANTILES[i] * 100));
+                            outw.print("%:&nbsp;");
+                            outw.print(mf.format(quantileValues[i]));
+                        }
+                    }
+                    outw.print("</td>");
+
+                    // histogram
+                    outw.print("<td bgcolor=\"#e0e0e0\" style=\"white-space:nowrap\">");
+                    TDigest digest = ((ColumnProfileResult) result).getQuantileDigest();
+                    if (digest != null && digest.getCount() > 0) {
+                        printHistogram(outw, digest, mf);
+                    }
+                    outw.print("</td>");
+
                 }
 
                 outw.print("</tr>");
@@ -286,4 +341,29 @@ public class ProfileHTMLFormat implements ProfileFormat {
         outw.close();
     }
 
+    /**
+     * Prints a bar chart of the distribution summarized by the given digest
+     * as a row of inline blocks. Hovering over a bar shows the range of
+     * values it covers and the estimated number of values in it.
+     */
+    private void printHistogram(PrintWriter outw, TDigest digest, NumberFormat mf) {
+        long[] counts = digest.histogram(HISTOGRAM_BINS);
+        long maxCount = 1;
+        for (long count : counts) {
+            maxCount = Math.max(maxCount, count);
+        }
+        double binWidth = (digest.getMax() - digest.getMin()) / HISTOGRAM_BINS;
+        for (int i = 0; i < counts.length; i++) {
+            int height = counts[i] == 0 ? 0 : (int) Math.max(1, counts[i] * HISTOGRAM_HEIGHT / maxCount);
+            outw.print("<span title=\"");
+            outw.print(mf.format(digest.getMin() + binWidth * i));
+            outw.print(" - ");
+            outw.print(mf.format(digest.getMin() + binWidth * (i + 1)));
+            outw.print(": ");
+            outw.print(counts[i]);
+            outw.print("\" style=\"display:inline-block;vertical-align:bottom;width:4px;margin-right:1px;");
+            outw.print("border-bottom:1px solid #336699;height:" + height + "px;background-color:#336699\"></span>");
+        }
+    }
+
 }
@@ -27,7 +27,7 @@ import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -94,6 +94,7 @@ public class ProfilePDFFormat implements ProfileFormat {
             "Min Value",
             "Max Value",
             "Avg Value",
+            "Percentiles",
             "Top N Values",
             "Count"
     };
@@ -115,7 +116,9 @@ public class ProfilePDFFormat implements ProfileFormat {
 
     /**
      * Outputs a PDF file report of the data in drs to the given
-     * output stream.
+     * output stream. Every table in the report is given the same column
+     * widths, which takes two extra passes over the results to measure.
+     * Only one table's section is held in memory at a time.
      * @throws SQLObjectException
      * @throws IllegalAccessException
      * @throws InstantiationException
@@ -124,85 +127,104 @@ public class ProfilePDFFormat implements ProfileFormat {
                 throws DocumentException, IOException, SQLException,
                     SQLObjectException, InstantiationException,
                     IllegalAccessException, ClassNotFoundException {
+        ReportWriter report = new ReportWriter(out, "Tables: " + profileResults);
+        float[] widths = computeWidths(profileResults, report);
+        writeSections(profileResults.iterator(), report, widths);
+        report.close();
+    }
 
-        final int minRowsTogether = 1;  // counts smaller than this are considered orphan/widow
-        final int mtop = 50;  // margin at top of page (in points)
-        final int mbot = 50;  // margin at bottom of page (page numbers are below this)
-//        final int pbot = 20;  // padding between bottom margin and bottom of body text
-        final int mlft = 50;  // margin at left side of page
-        final int mrgt = 50;  // margin at right side of page
-        final Rectangle pagesize = PageSize.LETTER.rotate();
-        final Document document = new Document(pagesize, mlft, mrgt, mtop, mbot);
-        final PdfWriter writer = PdfWriter.getInstance(document, out);
-
-        final float fsize = 6f; // the font size to use in the table body
-        final BaseFont bf = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED);
-        document.addTitle("Table Profiling Report");
-        document.addSubject("Tables: " + profileResults);
-        document.addAuthor(System.getProperty("user.name"));
-        document.addCreator("Power*Architect version "+ArchitectVersion.APP_FULL_VERSION);
-
-        document.open();
-
-        // vertical position where next element should start
-        //   (bottom is 0; top is pagesize.height())
-        float pos = pagesize.height() - mtop;
-
-        final PdfContentByte cb = writer.getDirectContent();
-        final PdfTemplate nptemplate = cb.createTemplate(50, 50);
-        writer.setPageEvent(new PdfPageEventHelper() {
-                // prints the "page N of <template>" footer
-                public void onEndPage(PdfWriter writer, Document document) {
-                    int pageN = writer.getPageNumber();
-                    String text = "Page " + pageN + " of ";
-                    float len = bf.getWidthPoint(text, fsize-2);
-                    cb.beginText();
-                    cb.setFontAndSize(bf, fsize-2);
-                    cb.setTextMatrix(pagesize.width()/2 - len/2, mbot/2);
-                    cb.showText(text);
-                    cb.endText();
-                    cb.addTemplate(nptemplate, pagesize.width()/2 - len/2 + len, mbot/2);
-                }
-
-                public void onCloseDocument(PdfWriter writer, Document document) {
-                    nptemplate.beginText();
-                    nptemplate.setFontAndSize(bf, fsize-2);
-                    nptemplate.showText(String.valueOf(writer.getPageNumber() - 1));
-                    nptemplate.endText();
-                }
-            });
-
-        document.add(new Paragraph("SQL Power Architect Profiling Report"));
-        document.add(new Paragraph("Generated "+new java.util.Date()
-                                   +" by "+System.getProperty("user.name")));
-
-        float[] widths = new float[totalColumn];  // widths of widest cells per row in pdf table
-        LinkedList<ProfileTableStructure> profiles = new LinkedList<ProfileTableStructure>(); // 1 table per profile result
+    /**
+     * Outputs a PDF file report of the given results in a single pass.
+     * Each table's section is laid out and written as soon as all of its
+     * column results have been read, so the memory used does not grow with
+     * the number of tables. Unlike {@link #format(OutputStream, List)}, each
+     * table's column widths are fitted to that table alone.
+     */
+    public void format(OutputStream out, Iterator<ProfileResult> profileResults)
+                throws DocumentException, IOException, SQLException,
+                    SQLObjectException, InstantiationException,
+                    IllegalAccessException, ClassNotFoundException {
+        ReportWriter report = new ReportWriter(out, "Table Profiling Report");
+        writeSections(profileResults, report, null);
+        report.close();
+    }
 
-        Font f = new Font(bf, fsize);
+    /**
+     * Splits the given results into sections of one table result followed by
+     * its column results, and writes each section to the report as soon as
+     * the next one starts.
+     * 
+     * @param widths
+     *            The column widths to give every table, or null to fit each
+     *            table's widths to its own contents.
+     */
+    private void writeSections(Iterator<ProfileResult> profileResults, ReportWriter report, float[] widths)
+                throws DocumentException, IOException, SQLException,
+                    SQLObjectException, InstantiationException, IllegalAccessException {
+        List<ProfileResult> section = new ArrayList<ProfileResult>();
+        while (profileResults.hasNext()) {
+            ProfileResult result = profileResults.next();
+            if (result instanceof TableProfileResult && !section.isEmpty()) {
+                writeSection(section, report, widths);
+                section = new ArrayList<ProfileResult>();
+            }
+            section.add(result);
+        }
+        if (!section.isEmpty()) {
+            writeSection(section, report, widths);
+        }
+    }
 
-        // This ddl generator is set to the appropriate ddl generator for the source database
-        // every time we encounter a table profile result in the list.
-        DDLGenerator ddlg = null;
-        
-        PdfPTable pdfTable = null;
-        for (ProfileResult result : profileResults ) {
-            if ( result instanceof TableProfileResult ) {
-                TableProfileResult tableResult = (TableProfileResult) result;
-                pdfTable = new PdfPTable(widths.length);
-                pdfTable.setWidthPercentage(100f);
-                ProfileTableStructure oneProfile = makeNextTable(
-                        tableResult, pdfTable, bf, fsize, widths);
-                profiles.add(oneProfile);
-                ddlg = tableResult.getDDLGenerator();
-            } else if ( result instanceof ColumnProfileResult ) {
+    /**
+     * Builds the PdfPTable for one table result and its column results and
+     * writes it to the report.
+     */
+    private void writeSection(List<ProfileResult> section, ReportWriter report, float[] widths)
+                throws DocumentException, IOException, SQLException,
+                    SQLObjectException, InstantiationException, IllegalAccessException {
+        if (!(section.get(0) instanceof TableProfileResult)) {
+            throw new IllegalArgumentException(
+                    "Column profile results must follow the result of their table: " + section.get(0));
+        }
+        if (widths == null) {
+            widths = computeWidths(section, report);
+        }
+        TableProfileResult tableResult = (TableProfileResult) section.get(0);
+        PdfPTable pdfTable = new PdfPTable(totalColumn);
+        pdfTable.setWidthPercentage(100f);
+
+        // the table's final widths are set when it is written
+        float[] contentWidths = new float[totalColumn];
+        ProfileTableStructure profile = makeNextTable(
+                tableResult, pdfTable, report.bf, report.fsize, contentWidths);
+        DDLGenerator ddlg = tableResult.getDDLGenerator();
+        Font f = new Font(report.bf, report.fsize);
+        for (ProfileResult result : section.subList(1, section.size())) {
+            if ( result instanceof ColumnProfileResult ) {
                 final ColumnProfileResult columnResult = (ColumnProfileResult) result;
                 TableProfileResult tResult = columnResult.getParent();
-                addBodyRow(tResult,columnResult, ddlg, pdfTable, bf, f, fsize, widths);
+                addBodyRow(tResult,columnResult, ddlg, pdfTable, report.bf, f, report.fsize, contentWidths);
             }
         }
-        
-        double allowedTableSize = pagesize.width() - mrgt - mlft;
+        report.writeTable(profile, widths);
+    }
+
+    /**
+     * Measures the widest cell of each column over all of the given results,
+     * picks the length that the Min Value, Max Value and Top N Values cells
+     * will be truncated to so the tables fit across the page, and then
+     * measures the truncated cells again. The tables built while measuring
+     * are thrown away as soon as the next one starts.
+     * 
+     * @return The width to give each column, including its borders.
+     */
+    private float[] computeWidths(Iterable<ProfileResult> profileResults, ReportWriter report)
+                throws DocumentException, IOException, SQLException,
+                    SQLObjectException, InstantiationException, IllegalAccessException {
+        truncateLength = -1;
+        float[] widths = measureWidths(profileResults, report.bf, report.fsize);
+
+        double allowedTableSize = report.getTableWidth();
         double totalWidths = 0;
         for (int i = 0; i < headings.length; i++) {
             if (!columnsToTruncate.contains(headings[i])) {
@@ -212,17 +234,35 @@ public class ProfilePDFFormat implements ProfileFormat {
         }
         truncateLength = (allowedTableSize - totalWidths - (PIXELS_PER_BORDER * (columnsToTruncate.size()))) / columnsToTruncate.size();
         logger.debug("Truncate length is " + truncateLength);
-        widths = new float[totalColumn]; 
+
+        widths = measureWidths(profileResults, report.bf, report.fsize);
+        for (int i = 0; i < headings.length; i++) {
+            widths[i] += PIXELS_PER_BORDER;
+        }
+        return widths;
+    }
+
+    /**
+     * Returns the width of the widest cell in each column of the tables for
+     * the given results, using the current truncate length.
+     */
+    private float[] measureWidths(Iterable<ProfileResult> profileResults, BaseFont bf, float fsize)
+                throws DocumentException, IOException, SQLException,
+                    SQLObjectException, InstantiationException, IllegalAccessException {
+        float[] widths = new float[totalColumn];  // widths of widest cells per row in pdf table
+        Font f = new Font(bf, fsize);
+
+        // This ddl generator is set to the appropriate ddl generator for the source database
+        // every time we encounter a table profile result in the list.
+        DDLGenerator ddlg = null;
         
-        profiles = new LinkedList<ProfileTableStructure>(); // 1 table per profile result
+        PdfPTable pdfTable = null;
         for (ProfileResult result : profileResults ) {
             if ( result instanceof TableProfileResult ) {
                 TableProfileResult tableResult = (TableProfileResult) result;
                 pdfTable = new PdfPTable(widths.length);
                 pdfTable.setWidthPercentage(100f);
-                ProfileTableStructure oneProfile = makeNextTable(
-                        tableResult, pdfTable, bf, fsize, widths);
-                profiles.add(oneProfile);
+                makeNextTable(tableResult, pdfTable, bf, fsize, widths);
                 ddlg = tableResult.getDDLGenerator();
             } else if ( result instanceof ColumnProfileResult ) {
                 final ColumnProfileResult columnResult = (ColumnProfileResult) result;
@@ -230,20 +270,99 @@ public class ProfilePDFFormat implements ProfileFormat {
                 addBodyRow(tResult,columnResult, ddlg, pdfTable, bf, f, fsize, widths);
             }
         }
-        
-        for (int i = 0; i < headings.length; i++) {
-            widths[i] += PIXELS_PER_BORDER;
-        }
+        return widths;
+    }
+
+    /**
+     * An open PDF report that tables are added to one at a time. Pages are
+     * handed to the output stream as they are finished.
+     */
+    private class ReportWriter {
+
+        private final int minRowsTogether = 1;  // counts smaller than this are considered orphan/widow
+        private final int mtop = 50;  // margin at top of page (in points)
+        private final int mbot = 50;  // margin at bottom of page (page numbers are below this)
+//        private final int pbot = 20;  // padding between bottom margin and bottom of body text
+        private final int mlft = 50;  // margin at left side of page
+        private final int mrgt = 50;  // margin at right side of page
+        private final Rectangle pagesize = PageSize.LETTER.rotate();
+        private final float fsize = 6f; // the font size to use in the table body
+        private final BaseFont bf;
+
+        private final Document document;
+        private final PdfWriter writer;
+        private final PdfContentByte cb;
+
+        /**
+         * vertical position where next element should start
+         * (bottom is 0; top is pagesize.height())
+         */
+        private float pos;
+
+        /**
+         * True when nothing has been written to the current page yet.
+         */
+        private boolean newPageInd = true;
+
+        ReportWriter(OutputStream out, String subject) throws DocumentException, IOException {
+            document = new Document(pagesize, mlft, mrgt, mtop, mbot);
+            writer = PdfWriter.getInstance(document, out);
+
+            bf = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED);
+            document.addTitle("Table Profiling Report");
+            document.addSubject(subject);
+            document.addAuthor(System.getProperty("user.name"));
+            document.addCreator("Power*Architect version "+ArchitectVersion.APP_FULL_VERSION);
+
+            document.open();
+
+            cb = writer.getDirectContent();
+            final PdfTemplate nptemplate = cb.createTemplate(50, 50);
+            writer.setPageEvent(new PdfPageEventHelper() {
+                    // prints the "page N of <template>" footer
+                    public void onEndPage(PdfWriter writer, Document document) {
+                        int pageN = writer.getPageNumber();
+                        String text = "Page " + pageN + " of ";
+                        float len = bf.getWidthPoint(text, fsize-2);
+                        cb.beginText();
+                        cb.setFontAndSize(bf, fsize-2);
+                        cb.setTextMatrix(pagesize.width()/2 - len/2, mbot/2);
+                        cb.showText(text);
+                        cb.endText();
+                        cb.addTemplate(nptemplate, pagesize.width()/2 - len/2 + len, mbot/2);
+                    }
+
+                    public void onCloseDocument(PdfWriter writer, Document document) {
+                        nptemplate.beginText();
+                        nptemplate.setFontAndSize(bf, fsize-2);
+                        nptemplate.showText(String.valueOf(writer.getPageNumber() - 1));
+                        nptemplate.endText();
+                    }
+                });
 
-        // add the PdfPTables to the document; try to avoid orphan and widow rows
-        pos = writer.getVerticalPosition(true) - fsize;
-        logger.debug("Starting at pos="+pos);
-        boolean newPageInd = true;
+            document.add(new Paragraph("SQL Power Architect Profiling Report"));
+            document.add(new Paragraph("Generated "+new java.util.Date()
+                                       +" by "+System.getProperty("user.name")));
 
-        for ( ProfileTableStructure profile : profiles) {
+            // add the PdfPTables to the document; try to avoid orphan and widow rows
+            pos = writer.getVerticalPosition(true) - fsize;
+            logger.debug("Starting at pos="+pos);
+        }
+
+        /**
+         * The width available to a table between the page margins.
+         */
+        float getTableWidth() {
+            return pagesize.width() - mrgt - mlft;
+        }
 
-            pdfTable = profile.getMainTable();
-            pdfTable.setTotalWidth(pagesize.width() - mrgt - mlft);
+        /**
+         * Writes the given table below the previous one, starting new pages
+         * as needed, and flushes the finished pages to the output stream.
+         */
+        void writeTable(ProfileTableStructure profile, float[] widths) throws DocumentException, IOException {
+            PdfPTable pdfTable = profile.getMainTable();
+            pdfTable.setTotalWidth(getTableWidth());
             pdfTable.setWidths(widths);
             resetHeaderWidths(profile,widths);
 
@@ -255,7 +374,8 @@ public class ProfilePDFFormat implements ProfileFormat {
              */
             if (endrow == pdfTable.size()) {
                 pos = pdfTable.writeSelectedRows(0, pdfTable.getHeaderRows(), mlft, pos, cb);
-                continue;
+                writer.flush();
+                return;
             }
 
             while (endrow < pdfTable.size()) {
@@ -309,8 +429,12 @@ public class ProfilePDFFormat implements ProfileFormat {
                     newPageInd = true;
                 }
             }
+            writer.flush();
+        }
+
+        void close() {
+            document.close();
         }
-        document.close();
     }
 
     /**
@@ -621,6 +745,18 @@ public class ProfilePDFFormat implements ProfileFormat {
             cell.setBorder(Rectangle.TOP | Rectangle.BOTTOM);
             table.addCell(cell);
 
+            // percentiles
+            colTitle = new Phrase("Percentiles", colHeadingFont);
+            cell = new PdfPCell(colTitle);
+            cell.setBorder(Rectangle.BOTTOM | Rectangle.TOP);
+            cell.setBorderWidth(2);
+            cell.setBackgroundColor(new Color(200, 200, 200));
+            cell.setHorizontalAlignment(Element.ALIGN_CENTER);
+            table.addCell(cell);
+            widths[colNo] = Math.max(widths[colNo],
+                    bf.getWidthPoint(colTitle.content(), colHeadingFSize));
+            colNo++;
+
             // top n
             colTitle = new Phrase("Top N", colHeadingFont);
             cell = new PdfPCell(colTitle);
@@ -677,7 +813,7 @@ public class ProfilePDFFormat implements ProfileFormat {
         resetTableHeaderWidths(profile.getInnerTableUniqueColumn(),widths,4,5);
         resetTableHeaderWidths(profile.getInnerTableLengthColumn(),widths,6,8);
         resetTableHeaderWidths(profile.getInnerTableValueColumn(),widths,9,11);
-        resetTableHeaderWidths(profile.getInnerTableTopNColumn(),widths,12,13);
+        resetTableHeaderWidths(profile.getInnerTableTopNColumn(),widths,13,14);
     }
 
     private void resetTableHeaderWidths( PdfPTable table, float[] widths,
@@ -911,6 +1047,21 @@ public class ProfilePDFFormat implements ProfileFormat {
                     contents = "";
                     alignment = Element.ALIGN_LEFT;
                 }
+            } else if ( headings[colNo].equalsIgnoreCase("Percentiles") ) {
+                double[] quantileValues = errorColumnProfiling ? null : result.getReportedQuantileValues();
+                if ( quantileValues != null ) {
+                    StringBuffer sb = new StringBuffer();
+                    for (int i = 0; i < quantileValues.length; i++) {
+                        sb.append(pctFormat.format(ColumnProfileResult.REPORTED_QUANTILES[i]));
+                        sb.append(": ").append(adf.format(quantileValues[i])).append("\n");
+                    }
+                    contents = sb.toString();
+                    alignment = Element.ALIGN_RIGHT;
+                }
+                else {
+                    contents = "";
+                    alignment = Element.ALIGN_LEFT;
+                }
             } else if ( headings[colNo].equalsIgnoreCase("Top N Values") ) {
                 if ( !errorColumnProfiling && topTen != null ) {
                     StringBuffer sb = new StringBuffer();
@@ -975,7 +1126,8 @@ public class ProfilePDFFormat implements ProfileFormat {
 
             PdfPCell cell;
             if ( headings[colNo].equalsIgnoreCase("Top N Values") ||
-                 headings[colNo].equalsIgnoreCase("Count") ) {
+                 headings[colNo].equalsIgnoreCase("Count") ||
+                 headings[colNo].equalsIgnoreCase("Percentiles") ) {
                 cell = new PdfPCell(new Paragraph(truncContents.toString(), f));
                 cell.setNoWrap(true);
             } else if ( headings[colNo].equalsIgnoreCase("null count") &&
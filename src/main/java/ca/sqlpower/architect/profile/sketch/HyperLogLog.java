@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile.sketch;
+
+/**
+ * Estimates the number of distinct values in a stream using the HyperLogLog
+ * algorithm of Flajolet et al. The memory used is fixed at 2<sup>precision</sup>
+ * bytes no matter how many values are offered, and the standard error of the
+ * estimate is roughly 1.04 / sqrt(2<sup>precision</sup>). With the default
+ * precision of 14 this is 16kB and an error of under 1%.
+ * <p>
+ * Small cardinalities are estimated with linear counting, which is very close
+ * to exact as long as most of the registers are still empty.
+ */
+public class HyperLogLog {
+
+    /**
+     * The precision used by the no-args constructor.
+     */
+    public static final int DEFAULT_PRECISION = 14;
+
+    /**
+     * The number of leading hash bits used to pick a register.
+     */
+    private final int precision;
+
+    /**
+     * The largest run of leading zeroes (plus one) seen in the remaining hash
+     * bits of the values that landed in each register.
+     */
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision
+     *            The number of hash bits used to select a register. Must be
+     *            between 4 and 18 inclusive.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18, not " + precision);
+        }
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds the given value to this sketch. Null values are ignored, the same
+     * way COUNT(DISTINCT) ignores them.
+     */
+    public void offer(Object value) {
+        if (value == null) return;
+        offerHash(hash(value));
+    }
+
+    /**
+     * Adds a value to this sketch by its 64-bit hash. The hash must be well
+     * mixed; see {@link #hash(Object)}.
+     */
+    public void offerHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the sentinel bit guarantees the run of zeroes ends within the word
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values offered so far.
+     */
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0.0;
+        int zeroRegisters = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeroRegisters++;
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeroRegisters > 0) {
+            estimate = m * Math.log((double) m / zeroRegisters);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Folds the values seen by the given sketch into this one. Both sketches
+     * must have the same precision.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Can't merge a sketch of precision " +
+                    other.precision + " into one of precision " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+        case 16: return 0.673;
+        case 32: return 0.697;
+        case 64: return 0.709;
+        default: return 0.7213 / (1.0 + 1.079 / m);
+        }
+    }
+
+    /**
+     * Returns a well mixed 64-bit hash of the given value. Values that are
+     * equal hash the same. Strings are hashed over all their characters
+     * rather than through {@link String#hashCode()} so that large columns are
+     * not limited to 32 bits of hash.
+     */
+    public static long hash(Object value) {
+        long h;
+        if (value instanceof String) {
+            String s = (String) value;
+            h = 0xcbf29ce484222325L;
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+        } else if (value instanceof Long || value instanceof Integer ||
+                value instanceof Short || value instanceof Byte) {
+            h = ((Number) value).longValue();
+        } else {
+            h = value.hashCode();
+        }
+        return mix(h);
+    }
+
+    /**
+     * The 64-bit finalizer from MurmurHash3.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
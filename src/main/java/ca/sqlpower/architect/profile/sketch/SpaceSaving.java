@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile.sketch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the most frequent items in a stream using the SpaceSaving algorithm
+ * of Metwally et al. At most a fixed number of items are tracked. When a new
+ * item arrives and every slot is taken, the least frequent tracked item is
+ * replaced and the new item inherits its count.
+ * <p>
+ * Every item that occurs more than <i>n</i>/capacity times in a stream of
+ * <i>n</i> items is guaranteed to be tracked, and each reported count
+ * overestimates the true count by at most {@link Counter#getError()}. As long
+ * as the stream has no more distinct items than the capacity, the counts are
+ * exact.
+ * <p>
+ * The tracked items are kept in a min-heap by count so both counting a
+ * tracked item and replacing the least frequent one take O(log capacity)
+ * time.
+ * <p>
+ * Items are compared with {@link Object#equals(Object)}. Null is allowed and
+ * counted like any other item.
+ */
+public class SpaceSaving<T> {
+
+    /**
+     * One tracked item and its estimated frequency.
+     */
+    public static class Counter<T> {
+        private T item;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        private Counter(T item, long count, long error, int heapIndex) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+            this.heapIndex = heapIndex;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * The estimated number of times the item has been offered. This is
+         * never less than the true number.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * The most this counter's count may exceed the true count by.
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return item + "=" + count + "(+/-" + error + ")";
+        }
+    }
+
+    /**
+     * Stands in for a null item in the lookup map.
+     */
+    private static final Object NULL_ITEM = new Object();
+
+    private final int capacity;
+
+    /**
+     * The tracked items, arranged as a binary min-heap on count.
+     */
+    private final List<Counter<T>> heap;
+
+    /**
+     * Finds the counter for a tracked item.
+     */
+    private final Map<Object, Counter<T>> counters;
+
+    /**
+     * The total number of items offered.
+     */
+    private long offered = 0;
+
+    /**
+     * @param capacity
+     *            The maximum number of distinct items to track. Must be
+     *            positive.
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, not " + capacity);
+        }
+        this.capacity = capacity;
+        heap = new ArrayList<Counter<T>>(Math.min(capacity, 1024));
+        counters = new HashMap<Object, Counter<T>>(Math.min(capacity, 1024) * 2);
+    }
+
+    /**
+     * Counts one occurrence of the given item.
+     */
+    public void offer(T item) {
+        offered++;
+        Object key = (item == null ? NULL_ITEM : item);
+        Counter<T> counter = counters.get(key);
+        if (counter != null) {
+            counter.count++;
+            siftDown(counter.heapIndex);
+        } else if (heap.size() < capacity) {
+            counter = new Counter<T>(item, 1, 0, heap.size());
+            heap.add(counter);
+            counters.put(key, counter);
+            siftUp(counter.heapIndex);
+        } else {
+            Counter<T> min = heap.get(0);
+            counters.remove(min.item == null ? NULL_ITEM : min.item);
+            min.item = item;
+            min.error = min.count;
+            min.count++;
+            counters.put(key, min);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Returns up to <code>n</code> tracked items, most frequent first.
+     */
+    public List<Counter<T>> getTop(int n) {
+        List<Counter<T>> sorted = new ArrayList<Counter<T>>(heap);
+        Collections.sort(sorted, new Comparator<Counter<T>>() {
+            public int compare(Counter<T> o1, Counter<T> o2) {
+                if (o1.count == o2.count) return 0;
+                return o1.count > o2.count ? -1 : 1;
+            }
+        });
+        if (sorted.size() > n) {
+            return new ArrayList<Counter<T>>(sorted.subList(0, n));
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the total number of items offered to this sketch.
+     */
+    public long getOfferedCount() {
+        return offered;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void siftUp(int i) {
+        Counter<T> c = heap.get(i);
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            Counter<T> p = heap.get(parent);
+            if (p.count <= c.count) break;
+            place(p, i);
+            i = parent;
+        }
+        place(c, i);
+    }
+
+    private void siftDown(int i) {
+        Counter<T> c = heap.get(i);
+        int size = heap.size();
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && heap.get(child + 1).count < heap.get(child).count) {
+                child++;
+            }
+            Counter<T> smallest = heap.get(child);
+            if (c.count <= smallest.count) break;
+            place(smallest, i);
+            i = child;
+        }
+        place(c, i);
+    }
+
+    private void place(Counter<T> c, int i) {
+        heap.set(i, c);
+        c.heapIndex = i;
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.profile.sketch;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Summarizes the distribution of a stream of numbers with the merging
+ * t-digest of Dunning and Ertl, so that quantiles and histograms can be
+ * estimated without keeping the values. The values are grouped into weighted
+ * centroids that are small near the ends of the distribution and larger in
+ * the middle, which keeps extreme quantiles accurate. The number of centroids
+ * is bounded by about the compression, no matter how many values are added.
+ * <p>
+ * Digests built over separate parts of a data set can be combined with
+ * {@link #merge(TDigest)}, and a digest can be saved and restored with
+ * {@link #encode()} and {@link #decode(String)}.
+ * <p>
+ * This class is not thread safe while values are being added. The methods
+ * that only read the digest never change it, though, so once no more values
+ * are being added it can be read by several threads at once.
+ */
+public class TDigest {
+
+    /**
+     * The compression used by the no-args constructor. It gives quantile
+     * estimates within a fraction of a percent of the true rank, using at
+     * most a few kilobytes.
+     */
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+
+    /**
+     * The means of the merged centroids, in ascending order. Only the first
+     * {@link #centroidCount} entries are used.
+     */
+    private double[] means;
+
+    /**
+     * The weights of the merged centroids, parallel to {@link #means}.
+     */
+    private long[] weights;
+
+    private int centroidCount = 0;
+
+    /**
+     * Values and weights that have been added but not yet merged into the
+     * centroids.
+     */
+    private final double[] bufferedValues;
+    private final long[] bufferedWeights;
+    private int bufferedCount = 0;
+
+    /**
+     * True if every buffered value has a weight of 1, which is the usual
+     * case and lets the buffer be sorted without sorting the weights.
+     */
+    private boolean bufferedUnitWeights = true;
+
+    /**
+     * The total weight of all values added, merged or not.
+     */
+    private long totalWeight = 0;
+
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compression
+     *            Controls the trade-off between size and accuracy. The digest
+     *            keeps at most about this many centroids. Must be at least 10.
+     */
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("Compression must be at least 10, not " + compression);
+        }
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) * 2;
+        means = new double[0];
+        weights = new long[0];
+        bufferedValues = new double[capacity * 4];
+        bufferedWeights = new long[capacity * 4];
+    }
+
+    /**
+     * Creates a digest that summarizes the same values as the given one, with
+     * all of them already merged into centroids. The given digest is not
+     * modified.
+     */
+    public TDigest(TDigest copyMe) {
+        this(copyMe.compression);
+        Centroids c = copyMe.centroids();
+        means = Arrays.copyOf(c.means, c.count);
+        weights = Arrays.copyOf(c.weights, c.count);
+        centroidCount = c.count;
+        totalWeight = copyMe.totalWeight;
+        min = copyMe.min;
+        max = copyMe.max;
+    }
+
+    /**
+     * Adds one value to the digest. NaN values are ignored.
+     */
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * Adds a value to the digest as if it had been added weight times. NaN
+     * values are ignored.
+     */
+    public void add(double value, long weight) {
+        if (Double.isNaN(value)) return;
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight must be positive, not " + weight);
+        }
+        if (bufferedCount == bufferedValues.length) {
+            compress();
+        }
+        bufferedValues[bufferedCount] = value;
+        bufferedWeights[bufferedCount] = weight;
+        bufferedCount++;
+        if (weight != 1) bufferedUnitWeights = false;
+        totalWeight += weight;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    /**
+     * Adds all the values summarized by the given digest to this one. The
+     * other digest is not modified.
+     */
+    public void merge(TDigest other) {
+        Centroids c = other.centroids();
+        for (int i = 0; i < c.count; i++) {
+            add(c.means[i], c.weights[i]);
+        }
+        if (other.totalWeight > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    /**
+     * Returns the estimated value below which the given fraction of the
+     * values fall, or NaN if no values have been added.
+     * 
+     * @param q
+     *            The fraction, between 0 and 1 inclusive.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1, not " + q);
+        }
+        Centroids c = centroids();
+        double[] means = c.means;
+        long[] weights = c.weights;
+        int centroidCount = c.count;
+        if (centroidCount == 0) return Double.NaN;
+        if (q == 0) return min;
+        if (q == 1) return max;
+        if (centroidCount == 1) return means[0];
+
+        double index = q * totalWeight;
+        double firstHalf = weights[0] / 2.0;
+        if (index < firstHalf) {
+            return min + (means[0] - min) * index / firstHalf;
+        }
+        double weightSoFar = firstHalf;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double gap = (weights[i] + weights[i + 1]) / 2.0;
+            if (weightSoFar + gap > index) {
+                return means[i] + (means[i + 1] - means[i]) * (index - weightSoFar) / gap;
+            }
+            weightSoFar += gap;
+        }
+        int last = centroidCount - 1;
+        double lastHalf = weights[last] / 2.0;
+        return means[last] + (max - means[last]) * Math.min(1, (index - weightSoFar) / lastHalf);
+    }
+
+    /**
+     * Returns the estimated fraction of the values that are less than or
+     * equal to the given value, or NaN if no values have been added.
+     */
+    public double cdf(double x) {
+        return cdf(centroids(), x);
+    }
+
+    private double cdf(Centroids c, double x) {
+        double[] means = c.means;
+        long[] weights = c.weights;
+        int centroidCount = c.count;
+        if (centroidCount == 0) return Double.NaN;
+        if (x < min) return 0;
+        if (x >= max) return 1;
+
+        double firstHalf = weights[0] / 2.0;
+        if (x < means[0]) {
+            return firstHalf * (x - min) / (means[0] - min) / totalWeight;
+        }
+        double weightSoFar = firstHalf;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double gap = (weights[i] + weights[i + 1]) / 2.0;
+            if (x < means[i + 1]) {
+                double width = means[i + 1] - means[i];
+                double fraction = width > 0 ? (x - means[i]) / width : 0.5;
+                return (weightSoFar + gap * fraction) / totalWeight;
+            }
+            weightSoFar += gap;
+        }
+        int last = centroidCount - 1;
+        double lastHalf = weights[last] / 2.0;
+        return (weightSoFar + lastHalf * (x - means[last]) / (max - means[last])) / totalWeight;
+    }
+
+    /**
+     * Estimates how many of the values fall in each of the given number of
+     * equally wide bins between the smallest and largest value. The last bin
+     * includes the largest value. Returns an array of zeroes if no values have
+     * been added.
+     */
+    public long[] histogram(int bins) {
+        if (bins < 1) {
+            throw new IllegalArgumentException("Need at least one bin, not " + bins);
+        }
+        long[] counts = new long[bins];
+        if (getCount() == 0) return counts;
+        double width = (max - min) / bins;
+        if (width == 0) {
+            counts[0] = totalWeight;
+            return counts;
+        }
+        Centroids c = centroids();
+        double previous = 0;
+        for (int i = 0; i < bins; i++) {
+            double next = (i == bins - 1) ? 1 : cdf(c, min + width * (i + 1));
+            counts[i] = Math.round(totalWeight * next) - Math.round(totalWeight * previous);
+            previous = next;
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the total weight of the values added, which is the number of
+     * values if they were all added with a weight of 1.
+     */
+    public long getCount() {
+        return totalWeight;
+    }
+
+    /**
+     * Returns the smallest value added, or positive infinity if there are
+     * none.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest value added, or negative infinity if there are
+     * none.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    public double getCompression() {
+        return compression;
+    }
+
+    /**
+     * Returns the number of centroids the values have been merged into.
+     */
+    public int getCentroidCount() {
+        return centroids().count;
+    }
+
+    /**
+     * Returns a compact text form of this digest that can be turned back into
+     * an equivalent digest with {@link #decode(String)}. It consists of the
+     * compression, minimum and maximum followed by each centroid's mean and
+     * weight, for example <code>100.0;1.0;9.0;1.0:1;5.0:7;9.0:1</code>.
+     */
+    public String encode() {
+        Centroids c = centroids();
+        StringBuilder sb = new StringBuilder();
+        sb.append(compression).append(';').append(min).append(';').append(max);
+        for (int i = 0; i < c.count; i++) {
+            sb.append(';').append(c.means[i]).append(':').append(c.weights[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Restores a digest from the text form produced by {@link #encode()}.
+     * 
+     * @throws IllegalArgumentException
+     *             If the text is not in the expected form.
+     */
+    public static TDigest decode(String encoded) {
+        String[] parts = encoded.split(";");
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("Not an encoded t-digest: " + encoded);
+        }
+        try {
+            TDigest digest = new TDigest(Double.parseDouble(parts[0]));
+            for (int i = 3; i < parts.length; i++) {
+                int colon = parts[i].indexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Not an encoded t-digest centroid: " + parts[i]);
+                }
+                digest.add(Double.parseDouble(parts[i].substring(0, colon)),
+                        Long.parseLong(parts[i].substring(colon + 1)));
+            }
+            digest.compress();
+            if (digest.getCount() > 0) {
+                digest.min = Double.parseDouble(parts[1]);
+                digest.max = Double.parseDouble(parts[2]);
+            }
+            return digest;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Not an encoded t-digest: " + encoded, ex);
+        }
+    }
+
+    /**
+     * The merged centroids of a digest, as returned by {@link #centroids()}.
+     * Only the first count entries of the arrays are used.
+     */
+    private static class Centroids {
+        final double[] means;
+        final long[] weights;
+        final int count;
+
+        Centroids(double[] means, long[] weights, int count) {
+            this.means = means;
+            this.weights = weights;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Merges the buffered values into the centroids.
+     */
+    private void compress() {
+        if (bufferedCount == 0) return;
+        Centroids c = centroids();
+        means = c.means;
+        weights = c.weights;
+        centroidCount = c.count;
+        bufferedCount = 0;
+        bufferedUnitWeights = true;
+    }
+
+    /**
+     * Returns the centroids this digest would have if its buffered values
+     * were merged into them, without changing the digest. If nothing is
+     * buffered these are the digest's own arrays, which must not be
+     * modified. Otherwise the buffer is sorted and merged with the already
+     * sorted centroids into new arrays, then neighbouring centroids are
+     * combined as long as the combined centroid stays within the size limit
+     * given by the k<sub>1</sub> scale function for its position in the
+     * distribution.
+     */
+    private Centroids centroids() {
+        if (bufferedCount == 0) return new Centroids(means, weights, centroidCount);
+        int bufferedCount = this.bufferedCount;
+        double[] bufferedValues = Arrays.copyOf(this.bufferedValues, bufferedCount);
+        long[] bufferedWeights = Arrays.copyOf(this.bufferedWeights, bufferedCount);
+        sort(bufferedValues, bufferedWeights, bufferedUnitWeights);
+
+        int n = centroidCount + bufferedCount;
+        double[] allMeans = new double[n];
+        long[] allWeights = new long[n];
+        int c = 0;
+        int b = 0;
+        for (int i = 0; i < n; i++) {
+            if (b == bufferedCount || (c < centroidCount && means[c] <= bufferedValues[b])) {
+                allMeans[i] = means[c];
+                allWeights[i] = weights[c];
+                c++;
+            } else {
+                allMeans[i] = bufferedValues[b];
+                allWeights[i] = bufferedWeights[b];
+                b++;
+            }
+        }
+
+        // the combined centroids are written over the merged ones, which
+        // are always read before their slot is reused
+        int count = 0;
+        double currentMean = allMeans[0];
+        long currentWeight = allWeights[0];
+        double weightSoFar = 0;
+        double limit = totalWeight * kInverse(k(0) + 1);
+        for (int i = 1; i < n; i++) {
+            if (weightSoFar + currentWeight + allWeights[i] <= limit) {
+                currentWeight += allWeights[i];
+                currentMean += (allMeans[i] - currentMean) * allWeights[i] / currentWeight;
+            } else {
+                allMeans[count] = currentMean;
+                allWeights[count] = currentWeight;
+                count++;
+                weightSoFar += currentWeight;
+                limit = totalWeight * kInverse(k(weightSoFar / totalWeight) + 1);
+                currentMean = allMeans[i];
+                currentWeight = allWeights[i];
+            }
+        }
+        allMeans[count] = currentMean;
+        allWeights[count] = currentWeight;
+        count++;
+        return new Centroids(allMeans, allWeights, count);
+    }
+
+    /**
+     * The k<sub>1</sub> scale function, which maps a quantile to a centroid
+     * index so that centroids near either end cover fewer values.
+     */
+    private double k(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, q) - 1);
+    }
+
+    private double kInverse(double k) {
+        if (k >= compression / 4) return 1;
+        return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+
+    /**
+     * Sorts the given values in ascending order, keeping their weights with
+     * them.
+     * 
+     * @param unitWeights
+     *            True if every weight is 1, so only the values need sorting.
+     */
+    private static void sort(double[] values, long[] valueWeights, boolean unitWeights) {
+        if (unitWeights) {
+            Arrays.sort(values);
+            return;
+        }
+        int n = values.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        final double[] unsortedValues = Arrays.copyOf(values, n);
+        long[] unsortedWeights = Arrays.copyOf(valueWeights, n);
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(unsortedValues[o1], unsortedValues[o2]);
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            values[i] = unsortedValues[order[i]];
+            valueWeights[i] = unsortedWeights[order[i]];
+        }
+    }
+}
@@ -94,6 +94,7 @@ import ca.sqlpower.architect.swingui.action.AutoLayoutAction;
 import ca.sqlpower.architect.swingui.action.CheckForUpdateAction;
 import ca.sqlpower.architect.swingui.action.CloseProjectAction;
 import ca.sqlpower.architect.swingui.action.CompareDMAction;
+import ca.sqlpower.architect.swingui.action.CompareDataAction;
 import ca.sqlpower.architect.swingui.action.CopySelectedAction;
 import ca.sqlpower.architect.swingui.action.CreateRelationshipAction;
 import ca.sqlpower.architect.swingui.action.CreateTableAction;
@@ -256,6 +257,7 @@ public class ArchitectFrame extends JFrame {
     
     private Action exportDDLAction;
     private Action compareDMAction;
+    private Action compareDataAction;
     private Action dataMoverAction;
     private Action sqlQueryAction;
     private CopySelectedAction copyAction;
@@ -766,6 +768,7 @@ public class ArchitectFrame extends JFrame {
         exportDDLAction = new ExportDDLAction(this);
         
         compareDMAction = new CompareDMAction(this);
+        compareDataAction = new CompareDataAction(this);
         
         dataMoverAction = new DataMoverAction(this);
         sqlQueryAction = new SQLQueryAction(this);
@@ -1060,6 +1063,7 @@ public class ArchitectFrame extends JFrame {
         toolsMenu.setMnemonic('t');
         toolsMenu.add(exportDDLAction);
         toolsMenu.add(compareDMAction);
+        toolsMenu.add(compareDataAction);
         toolsMenu.add(sqlQueryAction);
         toolsMenu.add(dataMoverAction);
 
@@ -53,11 +53,14 @@ import ca.sqlpower.architect.ddl.SQLServer2000DDLGenerator;
 import ca.sqlpower.architect.ddl.SQLServer2005DDLGenerator;
 import ca.sqlpower.architect.ddl.SQLServerDDLGenerator;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
+import ca.sqlpower.architect.profile.IncrementalProfileCreator;
 import ca.sqlpower.architect.profile.ProfileFunctionDescriptor;
 import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator;
 import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator.AverageSQLFunction;
 import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator.CaseWhenNullSQLFunction;
+import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator.RowLimitSQLFunction;
 import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator.StringLengthSQLFunction;
+import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator.TableSampleSQLFunction;
 import ca.sqlpower.sql.JDBCDataSourceType;
 import ca.sqlpower.sqlobject.SQLIndex;
 import ca.sqlpower.sqlobject.SQLType;
@@ -266,6 +269,9 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
     private final JTextField averageSQLFunctionField = new JTextField();
     private final JTextField stringLengthSQLFuncField = new JTextField();
     private final JTextField caseWhenNullSQLFuncField = new JTextField();
+    private final JTextField rowLimitSQLFuncField = new JTextField();
+    private final JTextField lastModifiedQueryField = new JTextField();
+    private final JTextField tableSampleSQLFuncField = new JTextField();
     private final JCheckBox updatableRSField = new JCheckBox("Supports Updatable Result Sets");
     private final JComboBox ddlGeneratorCombo = new JComboBox(KnownDDLGenerators.values());
     
@@ -293,6 +299,9 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
         averageSQLFunctionField.setText("");
         stringLengthSQLFuncField.setText("");
         caseWhenNullSQLFuncField.setText("");
+        rowLimitSQLFuncField.setText("");
+        lastModifiedQueryField.setText("");
+        tableSampleSQLFuncField.setText("");
         updatableRSField.setSelected(false);
         ddlGeneratorCombo.setSelectedItem(KnownDDLGenerators.GENERIC);
         
@@ -326,6 +335,12 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
                     } else {
                         throw new IllegalStateException("No editor defined for the data source type property " + property);
                     }
+                } else if (property.equals(RemoteDatabaseProfileCreator.propName(RowLimitSQLFunction.class))) {
+                    rowLimitSQLFuncField.setText(dsType.getProperty(property));
+                } else if (property.equals(RemoteDatabaseProfileCreator.propName(TableSampleSQLFunction.class))) {
+                    tableSampleSQLFuncField.setText(dsType.getProperty(property));
+                } else if (property.equals(IncrementalProfileCreator.LAST_MODIFIED_QUERY)) {
+                    lastModifiedQueryField.setText(dsType.getProperty(property));
                 } else if (property.contains(SQLIndex.INDEX_TYPE_DESCRIPTOR)) {
                     indexTableModel.addRow(new String[] {dsType.getProperty(property)});
                 } else {
@@ -378,7 +393,7 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
         
         panel.removeAll();
         DefaultFormBuilder fb = new DefaultFormBuilder(new FormLayout("4dlu, pref, 4dlu, pref:grow, 4dlu", 
-                "pref, 4dlu, pref, 4dlu, pref, 2dlu, pref, 2dlu, pref, 4dlu, fill:min:grow, 2dlu, pref, 4dlu, pref, 2dlu, pref"));
+                "pref, 4dlu, pref, 4dlu, pref, 2dlu, pref, 2dlu, pref, 2dlu, pref, 2dlu, pref, 2dlu, pref, 4dlu, fill:min:grow, 2dlu, pref, 4dlu, pref, 2dlu, pref"));
         fb.nextColumn();
         fb.append("", updatableRSField);
         fb.nextLine();
@@ -400,6 +415,18 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
         fb.nextLine();
         fb.nextLine();
         fb.nextColumn();
+        fb.append("Row Limit SQL Function", rowLimitSQLFuncField);
+        fb.nextLine();
+        fb.nextLine();
+        fb.nextColumn();
+        fb.append("Table Sample SQL Function", tableSampleSQLFuncField);
+        fb.nextLine();
+        fb.nextLine();
+        fb.nextColumn();
+        fb.append("Last Modified Query", lastModifiedQueryField);
+        fb.nextLine();
+        fb.nextLine();
+        fb.nextColumn();
         fb.append(new JScrollPane(profileFunctionTable), 3);
         fb.nextLine();
         fb.nextLine();
@@ -428,6 +455,13 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
         currentDSType.putProperty(RemoteDatabaseProfileCreator.propName(AverageSQLFunction.class), averageSQLFunctionField.getText());
         currentDSType.putProperty(RemoteDatabaseProfileCreator.propName(StringLengthSQLFunction.class), stringLengthSQLFuncField.getText());
         currentDSType.putProperty(RemoteDatabaseProfileCreator.propName(CaseWhenNullSQLFunction.class), caseWhenNullSQLFuncField.getText());
+        // left unset when blank, so the platform's default row limit still applies
+        String rowLimitProperty = RemoteDatabaseProfileCreator.propName(RowLimitSQLFunction.class);
+        if (rowLimitSQLFuncField.getText().length() > 0 || currentDSType.getProperty(rowLimitProperty) != null) {
+            currentDSType.putProperty(rowLimitProperty, rowLimitSQLFuncField.getText());
+        }
+        currentDSType.putProperty(RemoteDatabaseProfileCreator.propName(TableSampleSQLFunction.class), tableSampleSQLFuncField.getText());
+        currentDSType.putProperty(IncrementalProfileCreator.LAST_MODIFIED_QUERY, lastModifiedQueryField.getText());
         
         for (int i = 0; i < profileFunctionTableModel.getProfileFunctionDescriptors().size(); i++) {
             currentDSType.putProperty(ProfileFunctionDescriptor.class.getName() + "_" + i, ProfileFunctionDescriptor.createDescriptorString(profileFunctionTableModel.getProfileFunctionDescriptors().get(i)));
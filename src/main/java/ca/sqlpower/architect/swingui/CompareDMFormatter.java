@@ -31,7 +31,6 @@ import java.util.Map;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultStyledDocument;
-import javax.swing.text.MutableAttributeSet;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 
@@ -40,6 +39,7 @@ import org.apache.log4j.Logger;
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.LiquibaseDDLGenerator;
 import ca.sqlpower.architect.diff.ArchitectDiffException;
+import ca.sqlpower.architect.diff.DiffChunkConsumer;
 import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff;
 import ca.sqlpower.architect.swingui.CompareDMSettings.SourceOrTargetSettings;
 import ca.sqlpower.diff.DiffChunk;
@@ -111,45 +111,47 @@ public class CompareDMFormatter {
     }
 
 
+    /**
+     * Shows the given comparison results in a new {@link CompareDMFrame}.
+     */
     public void formatForEnglishOutput(List<DiffChunk<SQLObject>> diff,
             List<DiffChunk<SQLObject>> diff1, SQLObject left, SQLObject right) {
-
-
         try {
-
-
-            DefaultStyledDocument sourceDoc = new DefaultStyledDocument();
-            DefaultStyledDocument targetDoc = new DefaultStyledDocument();
-
-
-            sourceDoc = generateEnglishDescription(DIFF_STYLES, convertToDiffInfo(diff));
-            targetDoc = generateEnglishDescription(DIFF_STYLES, convertToDiffInfo(diff1));
-
-            // get the title string for the compareDMFrame
-
-            String leftTitle = toTitleText(true, left);
-            String rightTitle = toTitleText(false, right);
-
-            CompareDMFrame cf =
-                new CompareDMFrame(dialogOwner, sourceDoc, targetDoc, leftTitle,rightTitle);
-
-            cf.pack();
-            cf.setVisible(true);
-
-
-        } catch (SQLObjectException exp) {
-            ASUtils.showExceptionDialog(session, "StartCompareAction failed", exp);
-            logger.error("StartCompareAction failed", exp);
-        } catch (BadLocationException ex) {
-            ASUtils.showExceptionDialog(session,
-                    "Could not create document for results", ex);
-            logger.error("Could not create document for results", ex);
+            DiffChunkListModel sourceModel = new DiffChunkListModel();
+            DiffChunkListModel targetModel = new DiffChunkListModel();
+            for (DiffChunk<SQLObject> chunk : diff) {
+                sourceModel.chunkAdded(chunk);
+            }
+            sourceModel.diffFinished();
+            for (DiffChunk<SQLObject> chunk : diff1) {
+                targetModel.chunkAdded(chunk);
+            }
+            targetModel.diffFinished();
+            showEnglishOutput(sourceModel, targetModel, left, right);
         } catch (Exception ex) {
             ASUtils.showExceptionDialog(session, "Unxepected Exception!", ex);
             logger.error("Unxepected Exception!", ex);
         }
     }
 
+    /**
+     * Opens a {@link CompareDMFrame} on the given models. The models do not
+     * have to be complete; the frame shows each batch of results as the
+     * models receive it, so this can be called before the comparison starts.
+     * This must be called on the Swing event dispatch thread.
+     */
+    public CompareDMFrame showEnglishOutput(DiffChunkListModel sourceModel,
+            DiffChunkListModel targetModel, SQLObject left, SQLObject right) {
+        String leftTitle = toTitleText(true, left);
+        String rightTitle = toTitleText(false, right);
+
+        CompareDMFrame cf =
+            new CompareDMFrame(dialogOwner, sourceModel, targetModel, leftTitle, rightTitle);
+        cf.pack();
+        cf.setVisible(true);
+        return cf;
+    }
+
     public DDLGenerator formatForSQLOutput(List<DiffChunk<SQLObject>> diff,
             List<DiffChunk<SQLObject>> diff1, SQLObject left, SQLObject right) {
         DDLGenerator gen = null;
@@ -335,77 +337,79 @@ public class CompareDMFormatter {
 
 
         for (DiffChunk<DiffInfo> chunk : diff) {
-
-            DiffInfo info = chunk.getData();
-
-            if (chunk.getType().equals(DiffType.DROP_KEY)) {
-                //Drop key does will be shown here by a key changed type
-                //Drop key is mainly used in sql script generation.
-                continue;
-            }
-
             AttributeSet attributes = styles.get(chunk.getType());
-            MutableAttributeSet boldAttributes = new SimpleAttributeSet(attributes);
-            StyleConstants.setBold(boldAttributes, true);
-
-            String diffTypeEnglish;
-            switch (chunk.getType()) {
-            case LEFTONLY:
-                diffTypeEnglish = "should be removed";
-                break;
+            for (String line : getEnglishDescription(chunk)) {
+                resultDoc.insertString(resultDoc.getLength(), line + "\n", attributes);
+            }
+        }
 
-            case MODIFIED:
-            case SQL_MODIFIED:
-                diffTypeEnglish = "should be modified";
-                break;
+        return resultDoc;
+    }
 
-            case SAME:
-                diffTypeEnglish = "needs no changes";
-                break;
+    /**
+     * Returns the lines of the english description of a single chunk: one
+     * line for the chunk itself, followed by one for each of its property
+     * changes. The lines do not end in a newline. Chunks that are not
+     * described, such as dropped keys, have no lines.
+     */
+    public static List<String> getEnglishDescription(DiffChunk<DiffInfo> chunk) {
+        List<String> lines = new ArrayList<String>();
+        DiffInfo info = chunk.getData();
+
+        if (chunk.getType().equals(DiffType.DROP_KEY)) {
+            //Drop key does will be shown here by a key changed type
+            //Drop key is mainly used in sql script generation.
+            return lines;
+        }
 
-            case RIGHTONLY:
-                diffTypeEnglish = "should be added";
-                break;
+        String diffTypeEnglish;
+        switch (chunk.getType()) {
+        case LEFTONLY:
+            diffTypeEnglish = "should be removed";
+            break;
 
-            case KEY_CHANGED:
-                diffTypeEnglish = "needs a different primary key";
-                break;
+        case MODIFIED:
+        case SQL_MODIFIED:
+            diffTypeEnglish = "should be modified";
+            break;
 
+        case SAME:
+            diffTypeEnglish = "needs no changes";
+            break;
 
-            case DROP_KEY:
-                diffTypeEnglish = "needs to drop the source primary key";
-                break;
+        case RIGHTONLY:
+            diffTypeEnglish = "should be added";
+            break;
 
-            case NAME_CHANGED:
-                diffTypeEnglish = "should be renamed";
-                break;
+        case KEY_CHANGED:
+            diffTypeEnglish = "needs a different primary key";
+            break;
 
-            default:
-                diffTypeEnglish = "!UNKNOWN DIFF TYPE!";
-                logger.error("Woops, unknown diff chunk type: "+chunk.getType());
-                break;
-            }
 
-            resultDoc.insertString(
-                    resultDoc.getLength(),
-                    info.toString() + " " + diffTypeEnglish + "\n",
-                    attributes);
+        case DROP_KEY:
+            diffTypeEnglish = "needs to drop the source primary key";
+            break;
 
+        case NAME_CHANGED:
+            diffTypeEnglish = "should be renamed";
+            break;
 
-            for (PropertyChange change : chunk.getPropertyChanges()) {
-                logger.debug("Formatting property change");
-                String s = info.getIndent() + "\t" + change.getPropertyName();
-                s += " has been changed from " + change.getOldValue();
-                s += " to " + change.getNewValue() + "\n";
+        default:
+            diffTypeEnglish = "!UNKNOWN DIFF TYPE!";
+            logger.error("Woops, unknown diff chunk type: "+chunk.getType());
+            break;
+        }
 
+        lines.add(info.toString() + " " + diffTypeEnglish);
 
-                resultDoc.insertString(
-                        resultDoc.getLength(),
-                        s, attributes);
-            }
+        for (PropertyChange change : chunk.getPropertyChanges()) {
+            logger.debug("Formatting property change");
+            String s = info.getIndent() + "\t" + change.getPropertyName();
+            s += " has been changed from " + change.getOldValue();
+            s += " to " + change.getNewValue();
+            lines.add(s);
         }
-
-        return resultDoc;
+        return lines;
     }
 
 //  Generates the proper title text for compareDMFrame or SQLScriptDialog
@@ -473,14 +477,22 @@ public class CompareDMFormatter {
     }
 
 
-    private List<DiffChunk<DiffInfo>> convertToDiffInfo(List<DiffChunk<SQLObject>> diff) {
+    /**
+     * Turns the chunks of one comparison into chunks describing them, one at
+     * a time. Each chunk's depth in the output depends on the chunks that came
+     * before it, so a converter must be given every chunk of the comparison in
+     * order, and can't be shared between comparisons or threads.
+     */
+    public static class DiffInfoConverter {
 
+        private final List<SQLObject> ancestors = new ArrayList<SQLObject>();
+        private int depth = 0;
 
-        List<DiffChunk<DiffInfo>> newDiff = new ArrayList<DiffChunk<DiffInfo>>();
-        List<SQLObject> ancestors = new ArrayList<SQLObject>();
-        ancestors.add(new SQLTable());
-        int depth = 0;
-        for (DiffChunk<SQLObject> chunk : diff) {
+        public DiffInfoConverter() {
+            ancestors.add(new SQLTable());
+        }
+
+        public DiffChunk<DiffInfo> convert(DiffChunk<SQLObject> chunk) {
             SQLObject data = chunk.getData();
             String name;
             if (data instanceof SQLTable && data.getPhysicalName() != null) {
@@ -511,12 +523,38 @@ public class CompareDMFormatter {
             for (PropertyChange change : chunk.getPropertyChanges()) {
                 newChunk.addPropertyChange(change);
             }
-            newDiff.add(newChunk);
+            return newChunk;
         }
+    }
 
+    /**
+     * Keeps only the chunks of a comparison that {@link #formatForSQLOutput}
+     * turns into SQL, so comparing large schemas that are mostly the same
+     * doesn't hold every unchanged table and column in memory until the
+     * script is generated. Formatting the kept chunks gives the same script
+     * as formatting all of them.
+     */
+    public static class SQLDiffCollector implements DiffChunkConsumer {
 
-        return newDiff;
+        private final List<DiffChunk<SQLObject>> chunks = new ArrayList<DiffChunk<SQLObject>>();
 
+        public void chunkAdded(DiffChunk<SQLObject> chunk) {
+            DiffType type = chunk.getType();
+            if (chunk.getData() instanceof SQLRelationship) {
+                if (type == DiffType.LEFTONLY || type == DiffType.RIGHTONLY) {
+                    chunks.add(chunk);
+                }
+            } else if (type != DiffType.SAME && type != DiffType.MODIFIED) {
+                chunks.add(chunk);
+            }
+        }
 
+        public void diffFinished() {
+            // nothing to do
+        }
+
+        public List<DiffChunk<SQLObject>> getChunks() {
+            return chunks;
+        }
     }
 }
@@ -18,27 +18,34 @@
  */
 package ca.sqlpower.architect.swingui;
 
+import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dialog;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GridLayout;
-import java.awt.Insets;
 import java.awt.Toolkit;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
-import javax.swing.JTextPane;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 
@@ -57,40 +64,37 @@ import java.awt.FontMetrics;
 public class CompareDMFrame extends JDialog {
 
 	private static Logger logger = Logger.getLogger(CompareDMFrame.class);
-	private JTextPane leftOutputArea;
-	private JTextPane rightOutputArea;
+	private JList leftOutputArea;
+	private JList rightOutputArea;
 	
-	private AbstractDocument sourceOutputText;
-	private AbstractDocument targetOutputText;
+	private DiffChunkListModel sourceOutput;
+	private DiffChunkListModel targetOutput;
+
+	private String leftTitle;
+	private String rightTitle;
 
 	private String title;
     private String whatTheHeckIsGoingOn;
 	private JComponent panel;
 			
-	public CompareDMFrame(Dialog owner, AbstractDocument sourceOutputText, AbstractDocument targetOutputText, 
+	/**
+	 * Creates a frame showing the given comparison results. The models may
+	 * still be receiving results; the lists fill in as they arrive.
+	 */
+	public CompareDMFrame(Dialog owner, DiffChunkListModel sourceOutput, DiffChunkListModel targetOutput, 
 						String leftTitle, String rightTitle)
 	{
 		super(owner, Messages.getString("CompareDMFrame.title"));	 //$NON-NLS-1$
 		
-		this.sourceOutputText = sourceOutputText;
-		this.targetOutputText = targetOutputText;
+		this.sourceOutput = sourceOutput;
+		this.targetOutput = targetOutput;
+		this.leftTitle = leftTitle;
+		this.rightTitle = rightTitle;
 		this.title = Messages.getString("CompareDMFrame.comparing", leftTitle, rightTitle); //$NON-NLS-1$
         whatTheHeckIsGoingOn =Messages.getString("CompareDMFrame.necessaryChanges");	 //$NON-NLS-1$
 		panel = mainFrame();
 		getContentPane().add(panel);
 		
-		SimpleAttributeSet att = new SimpleAttributeSet();
-		
-		StyleConstants.setForeground(att, Color.black);
-		StyleConstants.setFontSize(att,leftOutputArea.getFont().getSize() * 2);
-
-		try {
-			sourceOutputText.insertString(0,leftTitle + "\n\n",att); //$NON-NLS-1$
-			targetOutputText.insertString(0,rightTitle + "\n\n",att); //$NON-NLS-1$
-		} catch (BadLocationException e) {
-			e.printStackTrace();
-		}
-		
         pack();
         setLocationRelativeTo(owner);
 	}
@@ -109,10 +113,7 @@ public class CompareDMFrame extends JDialog {
 		
 		titleLabel.setFont(titleFont);
 		JLabel subTitleLabel = new JLabel(whatTheHeckIsGoingOn);
-		leftOutputArea = new JTextPane();
-		leftOutputArea.setMargin(new Insets(6, 10, 4, 6));
-		leftOutputArea.setDocument(sourceOutputText);
-		leftOutputArea.setEditable(false);
+		leftOutputArea = createOutputList(sourceOutput);
 		JPanel comparePanel =  new JPanel(new GridLayout(1,2));
 		JScrollPane sp = new JScrollPane(comparePanel);
 		
@@ -131,13 +132,13 @@ public class CompareDMFrame extends JDialog {
 		// Clicking in the "empty" area of the scrollbar will scroll by 10 lines
 		sp.getVerticalScrollBar().setBlockIncrement(lineHeight * 10);
 
-		comparePanel.add(leftOutputArea);
-		Action sourceCopy = new sourceCopyAction(sourceOutputText);
+		comparePanel.add(createOutputPanel(leftTitle, leftOutputArea));
+		Action sourceCopy = new sourceCopyAction(sourceOutput, leftTitle);
 	
 		Action sourceSave = new AbstractAction(){
 			public void actionPerformed(ActionEvent e) {
 				SPSUtils.saveDocument(CompareDMFrame.this,
-				        sourceOutputText,
+				        toDocument(sourceOutput, leftTitle),
 						(FileExtensionFilter) SPSUtils.TEXT_FILE_FILTER );
 			}
 		};
@@ -177,12 +178,9 @@ public class CompareDMFrame extends JDialog {
 		pb = new PanelBuilder(layout,p);
 		pb.setDefaultDialogBorder();		
 		
-		rightOutputArea = new JTextPane();
-		rightOutputArea.setMargin(new Insets(6, 10, 4, 6));
-		rightOutputArea.setDocument(targetOutputText);
-		rightOutputArea.setEditable(false);
-		comparePanel.add(rightOutputArea);
-		Action targetCopy = new targetCopyAction(targetOutputText);
+		rightOutputArea = createOutputList(targetOutput);
+		comparePanel.add(createOutputPanel(rightTitle, rightOutputArea));
+		Action targetCopy = new targetCopyAction(targetOutput, rightTitle);
 		//Sets the target Buttons
 		ButtonBarBuilder targetbbBuilder = new ButtonBarBuilder();
 		JButton copyTarget = new JButton(targetCopy);
@@ -195,7 +193,7 @@ public class CompareDMFrame extends JDialog {
 		Action targetSaveAction = new AbstractAction(){
 			public void actionPerformed(ActionEvent e) {
 				SPSUtils.saveDocument(CompareDMFrame.this,
-						targetOutputText,
+						toDocument(targetOutput, rightTitle),
 						(FileExtensionFilter) SPSUtils.TEXT_FILE_FILTER );
 			}
 		};
@@ -221,18 +219,120 @@ public class CompareDMFrame extends JDialog {
 		return pb.getPanel();
 	}
 	
+	/**
+	 * Creates a list showing the lines of the given model in the colours of
+	 * their diff types. Every cell has the same height, and the cell width
+	 * is widened as lines arrive, so the list never has to measure all of
+	 * its lines at once.
+	 */
+	private JList createOutputList(DiffChunkListModel model) {
+		final JList list = new JList(model);
+		list.setCellRenderer(new DiffLineRenderer());
+		FontMetrics fm = list.getFontMetrics(list.getFont());
+		list.setFixedCellHeight(fm.getHeight() + 2);
+		list.setFixedCellWidth(1);
+		model.addListDataListener(new ListDataListener() {
+			public void intervalAdded(ListDataEvent e) {
+				DiffChunkListModel model = (DiffChunkListModel) e.getSource();
+				FontMetrics fm = list.getFontMetrics(list.getFont());
+				int width = list.getFixedCellWidth();
+				for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+					String text = DiffLineRenderer.expandTabs(
+							((DiffChunkListModel.Line) model.getElementAt(i)).getText());
+					width = Math.max(width, fm.stringWidth(text) + 16);
+				}
+				if (width != list.getFixedCellWidth()) {
+					list.setFixedCellWidth(width);
+				}
+			}
+			public void intervalRemoved(ListDataEvent e) {
+				// lines are never removed
+			}
+			public void contentsChanged(ListDataEvent e) {
+				// lines are never changed
+			}
+		});
+		return list;
+	}
+
+	private JPanel createOutputPanel(String outputTitle, JList list) {
+		JPanel p = new JPanel(new BorderLayout());
+		p.setBackground(list.getBackground());
+		p.setBorder(BorderFactory.createEmptyBorder(6, 10, 4, 6));
+		JLabel titleLabel = new JLabel(outputTitle);
+		Font oldFont = titleLabel.getFont();
+		titleLabel.setFont(new Font(oldFont.getName(), Font.PLAIN, oldFont.getSize() * 2));
+		titleLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, titleLabel.getFont().getSize(), 0));
+		p.add(titleLabel, BorderLayout.NORTH);
+		p.add(list, BorderLayout.CENTER);
+		return p;
+	}
+
+	/**
+	 * Returns a styled document holding the title and all the lines of the
+	 * given model received so far.
+	 */
+	private AbstractDocument toDocument(DiffChunkListModel model, String outputTitle) {
+		DefaultStyledDocument doc = new DefaultStyledDocument();
+		SimpleAttributeSet att = new SimpleAttributeSet();
+		StyleConstants.setForeground(att, Color.black);
+		StyleConstants.setFontSize(att,leftOutputArea.getFont().getSize() * 2);
+		try {
+			doc.insertString(0, outputTitle + "\n\n", att); //$NON-NLS-1$
+			for (int i = 0; i < model.getSize(); i++) {
+				DiffChunkListModel.Line line = (DiffChunkListModel.Line) model.getElementAt(i);
+				doc.insertString(doc.getLength(), line.getText() + "\n", //$NON-NLS-1$
+						CompareDMFormatter.DIFF_STYLES.get(line.getType()));
+			}
+		} catch (BadLocationException e) {
+			throw new RuntimeException(e);
+		}
+		return doc;
+	}
+
+	/**
+	 * Renders the lines of a {@link DiffChunkListModel} in the colour of
+	 * their diff type.
+	 */
+	private static class DiffLineRenderer extends DefaultListCellRenderer {
+
+		@Override
+		public Component getListCellRendererComponent(JList list, Object value,
+				int index, boolean isSelected, boolean cellHasFocus) {
+			DiffChunkListModel.Line line = (DiffChunkListModel.Line) value;
+			super.getListCellRendererComponent(list, expandTabs(line.getText()),
+					index, isSelected, cellHasFocus);
+			if (!isSelected) {
+				AttributeSet style = CompareDMFormatter.DIFF_STYLES.get(line.getType());
+				if (style != null) {
+					setForeground(StyleConstants.getForeground(style));
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Labels don't draw tabs, which the descriptions indent with.
+		 */
+		static String expandTabs(String text) {
+			return text.replace("\t", "    "); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
 	public class sourceCopyAction extends AbstractAction{
 
-		AbstractDocument doc;
-		public sourceCopyAction(AbstractDocument doc)
+		DiffChunkListModel model;
+		String outputTitle;
+		public sourceCopyAction(DiffChunkListModel model, String outputTitle)
 		{
-			this.doc = doc;
-			
+			this.model = model;
+			this.outputTitle = outputTitle;
 		}
 		
 		public void actionPerformed(ActionEvent e) {
 			
 			try {
+				AbstractDocument doc = toDocument(model, outputTitle);
 				StringSelection selection = new StringSelection(doc.getText(0,doc.getLength()));
 				Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection,selection);
 			} catch (BadLocationException e1) {
@@ -244,15 +344,18 @@ public class CompareDMFrame extends JDialog {
 	
 	public class targetCopyAction extends AbstractAction{
 
-		AbstractDocument doc;
-		public targetCopyAction(AbstractDocument doc)
+		DiffChunkListModel model;
+		String outputTitle;
+		public targetCopyAction(DiffChunkListModel model, String outputTitle)
 		{
-			this.doc = doc;
+			this.model = model;
+			this.outputTitle = outputTitle;
 		}
 		
 		public void actionPerformed(ActionEvent e) {
 			
 			try {
+				AbstractDocument doc = toDocument(model, outputTitle);
 				StringSelection selection = new StringSelection(doc.getText(0,doc.getLength()));
 				Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection,selection);
 			} catch (BadLocationException e1) {
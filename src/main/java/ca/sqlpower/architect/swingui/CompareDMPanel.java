@@ -32,9 +32,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.SQLException;
+import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CancellationException;
 
 import javax.swing.AbstractAction;
@@ -52,6 +56,7 @@ import javax.swing.JProgressBar;
 import javax.swing.JRadioButton;
 import javax.swing.JTextField;
 import javax.swing.ListCellRenderer;
+import javax.swing.SwingUtilities;
 import javax.swing.event.AncestorEvent;
 import javax.swing.event.AncestorListener;
 import javax.swing.event.DocumentEvent;
@@ -64,11 +69,12 @@ import org.apache.log4j.Logger;
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.DDLUtils;
 import ca.sqlpower.architect.diff.CompareSQL;
+import ca.sqlpower.architect.diff.DiffChunkConsumer;
+import ca.sqlpower.architect.diff.SchemaSnapshotCache;
 import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff.CatalogPopulator;
 import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff.SchemaPopulator;
 import ca.sqlpower.architect.swingui.CompareDMSettings.DatastoreType;
 import ca.sqlpower.architect.swingui.CompareDMSettings.SourceOrTargetSettings;
-import ca.sqlpower.diff.DiffChunk;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sql.SPDataSource;
@@ -185,6 +191,12 @@ public class CompareDMPanel extends JPanel {
 
 	private JCheckBox includeIndexes;
 
+	/**
+	 * Whether the tables of the physical databases that are read for a
+	 * comparison are saved as their new snapshots.
+	 */
+	private JCheckBox saveSnapshots;
+
 	private JLabel statusLabel;
 
 	/**
@@ -204,6 +216,57 @@ public class CompareDMPanel extends JPanel {
 	private SourceOrTargetStuff source = new SourceOrTargetStuff();
 	
 	private SourceOrTargetStuff target = new SourceOrTargetStuff();
+
+	/**
+	 * Where the tables of the physical databases that have been compared are
+	 * kept, so they can be compared again without reading them all back.
+	 */
+	private final SchemaSnapshotCache snapshotCache =
+	    new SchemaSnapshotCache(SchemaSnapshotCache.getDefaultDirectory());
+
+	/**
+	 * The ways the tables of a physical database can be read for a
+	 * comparison.
+	 */
+	enum SnapshotUse {
+
+	    /**
+	     * Read all the tables from the database, and save a new snapshot of
+	     * them if snapshots are being saved.
+	     */
+	    LIVE,
+
+	    /**
+	     * Compare against the tables saved in the snapshot, without going to
+	     * the database.
+	     */
+	    SNAPSHOT,
+
+	    /**
+	     * Read only the tables whose stamps have changed since the snapshot
+	     * was saved, take the rest from the snapshot, and save a new snapshot
+	     * if snapshots are being saved.
+	     */
+	    REFRESH_CHANGED
+	}
+
+	/**
+	 * An item of the snapshot dropdown.
+	 */
+	private static class SnapshotChoice {
+	    private final SnapshotUse use;
+	    private final String label;
+
+	    SnapshotChoice(SnapshotUse use, String label) {
+	        this.use = use;
+	        this.label = label;
+	    }
+
+	    @Override
+	    public String toString() {
+	        return label;
+	    }
+	}
 	
     /**
      * Since we can create new DB connections from this panel, we need a reference
@@ -261,6 +324,19 @@ public class CompareDMPanel extends JPanel {
 		
 		private SchemaPopulator schemaPop;
 		private CatalogPopulator catalogPop;
+
+		/**
+		 * Chooses whether the selected physical database is read from the
+		 * database or from its snapshot. Holds {@link SnapshotChoice}s.
+		 */
+		private JComboBox snapshotDropdown;
+
+		/**
+		 * The stamps of the tables being compared, taken before they were
+		 * read, to be saved with their snapshot. Null if the platform has no
+		 * stamps.
+		 */
+		private Map<String, String> tableStamps;
 		
 		private boolean isSource;
 
@@ -758,6 +834,17 @@ public class CompareDMPanel extends JPanel {
                 
             });
             
+			snapshotDropdown = new JComboBox();
+			snapshotDropdown.setName(prefix + "SnapshotDropdown"); //$NON-NLS-1$
+			ActionListener snapshotUpdater = new ActionListener() {
+			    public void actionPerformed(ActionEvent e) {
+			        updateSnapshotChoices();
+			    }
+			};
+			databaseDropdown.addActionListener(snapshotUpdater);
+			catalogDropdown.addActionListener(snapshotUpdater);
+			schemaDropdown.addActionListener(snapshotUpdater);
+
 			ActionListener listener = new OptionGroupListener();
 			playPenRadio.addActionListener(listener);
 			physicalRadio.addActionListener(listener);
@@ -794,6 +881,10 @@ public class CompareDMPanel extends JPanel {
 			builder.append(catalogDropdown, schemaDropdown, newConnButton);
 			builder.nextLine();
 
+			builder.nextColumn(4);
+			builder.append(snapshotDropdown, 3);
+			builder.nextLine();
+
 			builder.append(""); //$NON-NLS-1$
 			builder.append(loadRadio);
 			temp = builder.append(Messages.getString("CompareDMPanel.fromFileLabel")); //$NON-NLS-1$
@@ -825,6 +916,15 @@ public class CompareDMPanel extends JPanel {
 			SQLObject o;
 			if (playPenRadio.isSelected()) {
 				o = session.getTargetDatabase();
+			} else if (physicalRadio.isSelected() && getSnapshotUse() == SnapshotUse.SNAPSHOT) {
+			    SchemaSnapshotCache.Snapshot snapshot = loadSnapshot();
+			    if (snapshot == null) {
+			        throw new IOException(Messages.getString("CompareDMPanel.noSnapshot")); //$NON-NLS-1$
+			    }
+			    if (includeIndexes.isSelected() && !snapshot.hasIndices()) {
+			        throw new IOException(Messages.getString("CompareDMPanel.snapshotWithoutIndexes")); //$NON-NLS-1$
+			    }
+			    o = snapshot.getContainer();
 			} else if (physicalRadio.isSelected()) {
 				if (schemaDropdown.getSelectedItem() != null) {
 					o = (SQLObject) schemaDropdown.getSelectedItem();
@@ -948,6 +1048,125 @@ public class CompareDMPanel extends JPanel {
 			}
 
 			newConnectionAction.setEnabled(enable);
+			updateSnapshotChoices();
+		}
+
+		/**
+		 * Offers the ways of reading the selected catalog or schema that its
+		 * snapshot, if there is one, allows.
+		 */
+		void updateSnapshotChoices() {
+		    SnapshotUse selected = getSnapshotUse();
+		    snapshotDropdown.removeAllItems();
+		    snapshotDropdown.addItem(new SnapshotChoice(SnapshotUse.LIVE,
+		            Messages.getString("CompareDMPanel.readDatabase"))); //$NON-NLS-1$
+		    JDBCDataSource ds = (JDBCDataSource) databaseDropdown.getSelectedItem();
+		    if (ds != null) {
+		        Date time = snapshotCache.getSnapshotTime(ds.getName(), getSelectedName(catalogDropdown),
+		                getSelectedName(schemaDropdown));
+		        if (time != null) {
+		            snapshotDropdown.addItem(new SnapshotChoice(SnapshotUse.SNAPSHOT,
+		                    Messages.getString("CompareDMPanel.compareAgainstSnapshot", //$NON-NLS-1$
+		                            DateFormat.getDateTimeInstance().format(time))));
+		            if (SchemaSnapshotCache.supportsTableStamps(ds)) {
+		                snapshotDropdown.addItem(new SnapshotChoice(SnapshotUse.REFRESH_CHANGED,
+		                        Messages.getString("CompareDMPanel.refreshChangedObjects"))); //$NON-NLS-1$
+		            }
+		        }
+		    }
+		    for (int i = 0; i < snapshotDropdown.getItemCount(); i++) {
+		        if (((SnapshotChoice) snapshotDropdown.getItemAt(i)).use == selected) {
+		            snapshotDropdown.setSelectedIndex(i);
+		        }
+		    }
+		    snapshotDropdown.setEnabled(physicalRadio.isSelected() && snapshotDropdown.getItemCount() > 1);
+		}
+
+		/**
+		 * Returns how the selected physical database is to be read.
+		 */
+		SnapshotUse getSnapshotUse() {
+		    SnapshotChoice choice = (SnapshotChoice) snapshotDropdown.getSelectedItem();
+		    return choice == null ? SnapshotUse.LIVE : choice.use;
+		}
+
+		private String getSelectedName(JComboBox dropdown) {
+		    SQLObject o = (SQLObject) dropdown.getSelectedItem();
+		    return o == null ? null : o.getName();
+		}
+
+		private SchemaSnapshotCache.Snapshot loadSnapshot() throws IOException, SQLObjectException {
+		    JDBCDataSource ds = (JDBCDataSource) databaseDropdown.getSelectedItem();
+		    return snapshotCache.load(ds.getName(), getSelectedName(catalogDropdown),
+		            getSelectedName(schemaDropdown));
+		}
+
+		/**
+		 * Replaces the tables that haven't changed since the snapshot of the
+		 * selected catalog or schema was saved with their copies from the
+		 * snapshot. The stamps of the tables are read from the database to
+		 * tell which have changed, so this must be called on the comparing
+		 * thread.
+		 */
+		Collection<SQLTable> mergeWithSnapshot(Collection<SQLTable> liveTables)
+		        throws IOException, SQLObjectException, SQLException {
+		    SchemaSnapshotCache.Snapshot snapshot = loadSnapshot();
+		    tableStamps = SchemaSnapshotCache.queryTableStamps(getDatabase(),
+		            getSelectedName(catalogDropdown), getSelectedName(schemaDropdown));
+		    if (snapshot == null || tableStamps == null) {
+		        return liveTables;
+		    }
+		    if (includeIndexes.isSelected() && !snapshot.hasIndices()) {
+		        logger.debug("Snapshot has no indexes to compare; reading every table"); //$NON-NLS-1$
+		        return liveTables;
+		    }
+		    List<SQLTable> changed = new ArrayList<SQLTable>();
+		    List<SQLTable> merged = snapshot.mergeUnchanged(liveTables, tableStamps, changed);
+		    logger.debug(changed.size() + " of " + liveTables.size() + " tables changed since the snapshot"); //$NON-NLS-1$ //$NON-NLS-2$
+		    return merged;
+		}
+
+		/**
+		 * Brings the selected physical database up to date before it is
+		 * compared, unless it is being compared against its snapshot. This
+		 * is done on the comparing thread.
+		 */
+		void refreshDatabase() throws SQLObjectException {
+		    SnapshotUse use = getSnapshotUse();
+		    if (use == SnapshotUse.SNAPSHOT) return;
+		    if (use == SnapshotUse.LIVE && saveSnapshots.isSelected()) {
+		        // stamps are taken first so a change made while the tables
+		        // are being read makes them look changed next time
+		        try {
+		            tableStamps = SchemaSnapshotCache.queryTableStamps(getDatabase(),
+		                    getSelectedName(catalogDropdown), getSelectedName(schemaDropdown));
+		        } catch (SQLException e) {
+		            logger.warn("Couldn't read table stamps; the snapshot will have none", e); //$NON-NLS-1$
+		            tableStamps = null;
+		        }
+		    }
+		    getDatabase().refresh();
+		}
+
+		/**
+		 * Saves the tables of the selected physical database that have just
+		 * been compared as its new snapshot, if snapshots are being saved and
+		 * the tables didn't come from the snapshot. Indexes are only saved if
+		 * they were compared, so saving doesn't read any more metadata than
+		 * the comparison did. Failures are logged, since the comparison
+		 * itself worked.
+		 */
+		void saveSnapshot(Collection<SQLTable> tables) {
+		    if (!saveSnapshots.isSelected() || getSnapshotUse() == SnapshotUse.SNAPSHOT) return;
+		    JDBCDataSource ds = (JDBCDataSource) databaseDropdown.getSelectedItem();
+		    try {
+		        snapshotCache.save(ds.getName(), getSelectedName(catalogDropdown),
+		                getSelectedName(schemaDropdown), tables, tableStamps, includeIndexes.isSelected());
+		    } catch (Exception e) {
+		        logger.warn("Couldn't save snapshot of " + ds.getName(), e); //$NON-NLS-1$
+		    } finally {
+		        tableStamps = null;
+		    }
 		}
 
         boolean isSource() {
@@ -1049,6 +1268,10 @@ public class CompareDMPanel extends JPanel {
 		includeIndexes = new JCheckBox(Messages.getString("CompareDMPanel.includeIndexes")); //$NON-NLS-1$
 		includeIndexes.setName("includeIndexes"); //$NON-NLS-1$
 		includeIndexes.setSelected(false);
+
+		saveSnapshots = new JCheckBox(Messages.getString("CompareDMPanel.saveSnapshots")); //$NON-NLS-1$
+		saveSnapshots.setName("saveSnapshots"); //$NON-NLS-1$
+		saveSnapshots.setSelected(false);
 		
 		// Group the radio buttons.
 		ButtonGroup outputGroup = new ButtonGroup();
@@ -1158,6 +1381,13 @@ public class CompareDMPanel extends JPanel {
 		builder.append(includeIndexes);
         builder.nextLine();
 
+        builder.appendRow(builder.getLineGapSpec());
+        builder.appendRow("pref"); //$NON-NLS-1$
+        builder.nextLine(2);
+        builder.nextColumn(4);
+        builder.append(saveSnapshots, 3);
+        builder.nextLine();
+
 		builder.appendSeparator(Messages.getString("CompareDMPanel.status")); //$NON-NLS-1$
 		builder.appendRow(builder.getLineGapSpec());
 		builder.appendRow("pref"); //$NON-NLS-1$
@@ -1259,8 +1489,6 @@ public class CompareDMPanel extends JPanel {
 
 			// XXX: should do most or all of this work in a worker thread
 
-			final CompareSQL sourceComp;
-			final CompareSQL targetComp;
 			final SQLObject left;
 			final SQLObject right;
 			try {
@@ -1277,17 +1505,6 @@ public class CompareDMPanel extends JPanel {
 				} else {
 					targetTables = new ArrayList<SQLTable>();
 				}
-
-				boolean useUUID = source.isModelWithUUID() && target.isModelWithUUID();
-				sourceComp = new CompareSQL(sourceTables, targetTables, 
-				        session.getCompareDMSettings().getSuppressSimilarities(),
-						useUUID);
-                sourceComp.setCompareIndices(includeIndexes.isSelected());
-				targetComp = new CompareSQL(targetTables, sourceTables, 
-				        session.getCompareDMSettings().getSuppressSimilarities(),
-						useUUID);
-                targetComp.setCompareIndices(includeIndexes.isSelected());
-
 			} catch (SQLObjectException ex) {
 			    reenableGUIComponents();
 			    ASUtils.showExceptionDialog(session,
@@ -1305,10 +1522,32 @@ public class CompareDMPanel extends JPanel {
 			
 			compareWorker = new SPSwingWorker(session) {
 
-				private List<DiffChunk<SQLObject>> diff;
-				private List<DiffChunk<SQLObject>> diff1;
+				private final CompareDMFormatter dmFormat =
+				    new CompareDMFormatter(session, parentDialog, session.getCompareDMSettings());
+
+				/**
+				 * Collects the chunks the SQL script is generated from. Only
+				 * used for SQL and Liquibase output.
+				 */
+				private CompareDMFormatter.SQLDiffCollector diff;
+				private CompareDMFormatter.SQLDiffCollector diff1;
+
+				/**
+				 * The english descriptions of the comparison, which are shown
+				 * as soon as the comparison begins. Only used for english
+				 * output.
+				 */
+				private DiffChunkListModel englishDiff;
+				private DiffChunkListModel englishDiff1;
 
 				private String message;
+
+				/**
+				 * The comparisons each way, which are set up on this worker's
+				 * thread once the tables are up to date. Null until then.
+				 */
+				private volatile CompareSQL sourceComp;
+				private volatile CompareSQL targetComp;
 				
 				/**
 			     * Checks if this engine has been cancelled by another thread.  If so,
@@ -1322,27 +1561,72 @@ public class CompareDMPanel extends JPanel {
 			        }
 			    }
 				
-				public void doStuff() throws SQLObjectException {
+				public void doStuff() throws Exception {
 	                try {
 	                    if (source.physicalRadio.isSelected()) {
 	                    message = "Refreshing older database";
 	                    logger.debug(message);
-	                    source.getDatabase().refresh();
+	                    source.refreshDatabase();
 	                    checkCancelled();
 	                }
 	                if (target.physicalRadio.isSelected()) {
 	                    message = "Refreshing newer database";
                         logger.debug(message);
-	                    target.getDatabase().refresh();
+	                    target.refreshDatabase();
+	                    checkCancelled();
+	                }
+	                if (source.physicalRadio.isSelected() && source.getSnapshotUse() == SnapshotUse.REFRESH_CHANGED) {
+	                    message = "Reading changed tables of older database";
+	                    sourceTables = source.mergeWithSnapshot(sourceTables);
+	                    checkCancelled();
+	                }
+	                if (target.physicalRadio.isSelected() && target.getSnapshotUse() == SnapshotUse.REFRESH_CHANGED) {
+	                    message = "Reading changed tables of newer database";
+	                    targetTables = target.mergeWithSnapshot(targetTables);
 	                    checkCancelled();
 	                }
+	                boolean useUUID = source.isModelWithUUID() && target.isModelWithUUID();
+	                sourceComp = new CompareSQL(sourceTables, targetTables,
+	                        session.getCompareDMSettings().getSuppressSimilarities(),
+	                        useUUID);
+	                sourceComp.setCompareIndices(includeIndexes.isSelected());
+	                targetComp = new CompareSQL(targetTables, sourceTables,
+	                        session.getCompareDMSettings().getSuppressSimilarities(),
+	                        useUUID);
+	                targetComp.setCompareIndices(includeIndexes.isSelected());
 	                setJobSize(sourceComp.getJobSize() + targetComp.getJobSize());
+	                DiffChunkConsumer sourceConsumer;
+	                DiffChunkConsumer targetConsumer;
+	                if (session.getCompareDMSettings().getOutputFormat() == CompareDMSettings.OutputFormat.ENGLISH) {
+	                    englishDiff = new DiffChunkListModel();
+	                    englishDiff1 = new DiffChunkListModel();
+	                    sourceConsumer = englishDiff;
+	                    targetConsumer = englishDiff1;
+	                    SwingUtilities.invokeLater(new Runnable() {
+	                        public void run() {
+	                            dmFormat.showEnglishOutput(englishDiff, englishDiff1, left, right);
+	                        }
+	                    });
+	                } else {
+	                    diff = new CompareDMFormatter.SQLDiffCollector();
+	                    diff1 = new CompareDMFormatter.SQLDiffCollector();
+	                    sourceConsumer = diff;
+	                    targetConsumer = diff1;
+	                }
 	                logger.debug("Generating TableDiffs for source");
-	                diff = sourceComp.generateTableDiffs(session);
+	                sourceComp.generateTableDiffs(session, sourceConsumer);
 	                checkCancelled();
 	                logger.debug("Generating TableDiffs for target");
-	                diff1 = targetComp.generateTableDiffs(session);
+	                targetComp.generateTableDiffs(session, targetConsumer);
 	                checkCancelled();
+	                if (source.physicalRadio.isSelected()) {
+	                    message = "Saving snapshot of older database";
+	                    source.saveSnapshot(sourceTables);
+	                }
+	                if (target.physicalRadio.isSelected()) {
+	                    message = "Saving snapshot of newer database";
+	                    target.saveSnapshot(targetTables);
+	                }
 					message = "Finished";
 					logger.debug("Finished Compare");
 	                } catch (CancellationException e) {
@@ -1365,15 +1649,14 @@ public class CompareDMPanel extends JPanel {
                             return;
                         }
                         logger.debug("cleanup starts"); //$NON-NLS-1$
-                        CompareDMFormatter dmFormat = new CompareDMFormatter(session, parentDialog, session.getCompareDMSettings());                   
                         checkCancelled();
                         switch (session.getCompareDMSettings().getOutputFormat()) {
                         case SQL:
                         case LIQUIBASE:
-                            dmFormat.formatForSQLOutput(diff, diff1, left, right);
+                            dmFormat.formatForSQLOutput(diff.getChunks(), diff1.getChunks(), left, right);
                             break;
                         case ENGLISH:
-                            dmFormat.formatForEnglishOutput(diff, diff1, left, right);
+                            // the results have been showing since the comparison began
                             break;
                         default:
                             throw new IllegalStateException("Don't know what type of output to make");                        
@@ -1388,7 +1671,11 @@ public class CompareDMPanel extends JPanel {
 
 				@Override
                 protected String getMessageImpl() {
-                    if (sourceComp.hasStarted() && !sourceComp.isFinished()) {
+                    CompareSQL sourceComp = this.sourceComp;
+                    CompareSQL targetComp = this.targetComp;
+                    if (sourceComp == null || targetComp == null) {
+                        return message;
+                    } else if (sourceComp.hasStarted() && !sourceComp.isFinished()) {
                         return sourceComp.getMessage();
                     } else if (targetComp.hasStarted() && !targetComp.isFinished()) {
                         return targetComp.getMessage();
@@ -1399,6 +1686,9 @@ public class CompareDMPanel extends JPanel {
 
                 @Override
                 protected int getProgressImpl() {
+                    CompareSQL sourceComp = this.sourceComp;
+                    CompareSQL targetComp = this.targetComp;
+                    if (sourceComp == null || targetComp == null) return 0;
                     return sourceComp.getProgress() + targetComp.getProgress();
                 }
 
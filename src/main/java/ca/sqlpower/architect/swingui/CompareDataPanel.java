@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.swingui;
+
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.AbstractAction;
+import javax.swing.Action;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTree;
+import javax.swing.event.TreeSelectionEvent;
+import javax.swing.event.TreeSelectionListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.tree.TreeSelectionModel;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ArchitectProject;
+import ca.sqlpower.architect.diff.TableDataComparator;
+import ca.sqlpower.architect.diff.TableDataComparator.RowDifference;
+import ca.sqlpower.architect.swingui.action.DatabaseConnectionManagerAction;
+import ca.sqlpower.architect.swingui.dbtree.DBTreeCellRenderer;
+import ca.sqlpower.architect.swingui.dbtree.DBTreeModel;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.object.ObjectDependentException;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLObjectRoot;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.swingui.ProgressWatcher;
+import ca.sqlpower.swingui.SPSUtils;
+import ca.sqlpower.swingui.SPSwingWorker;
+
+import com.jgoodies.forms.builder.PanelBuilder;
+import com.jgoodies.forms.factories.ButtonBarFactory;
+import com.jgoodies.forms.layout.CellConstraints;
+import com.jgoodies.forms.layout.FormLayout;
+
+/**
+ * Compares the rows of a table with another table that should hold the same
+ * data, such as the copy the Data Mover made of it. The tables are picked
+ * from the connections in the same way as in the {@link DataMoverPanel}, and
+ * the comparison is done by a {@link TableDataComparator}, which checks the
+ * tables range by range in the databases instead of reading them in full.
+ */
+public class CompareDataPanel {
+
+    private static final Logger logger = Logger.getLogger(CompareDataPanel.class);
+
+    /**
+     * The panel that holds the UI.
+     */
+    private JPanel panel;
+
+    /**
+     * Tree of tables to pick the source table from.
+     */
+    private JTree sourceTree;
+
+    /**
+     * Tree of tables to pick the target table from.
+     */
+    private JTree targetTree;
+
+    /**
+     * The root object of the source and target trees.
+     */
+    private SQLObjectRoot treeRoot;
+
+    private JProgressBar progressBar;
+
+    /**
+     * Shows the progress message of the comparison in progress.
+     */
+    private JLabel statusLabel;
+
+    /**
+     * Summarizes the result of the last comparison.
+     */
+    private JLabel resultLabel;
+
+    /**
+     * The session this panel belongs to.
+     */
+    private ArchitectSwingSession session;
+
+    /**
+     * The comparison in progress, or null if there isn't one or it is still
+     * being set up on the worker thread.
+     */
+    private volatile TableDataComparator comparator;
+
+    /**
+     * True from when the compare button is pressed until the comparison is
+     * done.
+     */
+    private boolean comparing;
+
+    /**
+     * Set when the panel is closed, so that a comparison that is still
+     * being set up is cancelled as soon as it starts.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Enables the compare button once a table is selected in each tree.
+     */
+    private final TreeSelectionListener treeListener = new TreeSelectionListener() {
+        public void valueChanged(TreeSelectionEvent e) {
+            compareAction.setEnabled(!comparing &&
+                    getSelectedTable(sourceTree) != null && getSelectedTable(targetTree) != null);
+        }
+    };
+
+    public CompareDataPanel(ArchitectSwingSession session) throws SQLObjectException {
+        this.session = session;
+
+        setupDBTrees();
+        compareAction.setEnabled(false);
+
+        sourceTree = createTree();
+        targetTree = createTree();
+
+        progressBar = new JProgressBar();
+        progressBar.setVisible(false);
+        statusLabel = new JLabel(""); //$NON-NLS-1$
+        resultLabel = new JLabel(""); //$NON-NLS-1$
+
+        PanelBuilder pb = new PanelBuilder(
+                new FormLayout(
+                        "pref:grow,8dlu,pref:grow", //$NON-NLS-1$
+                        "pref,4dlu,fill:pref:grow,4dlu,pref,4dlu,pref,4dlu,pref,4dlu,pref")); //$NON-NLS-1$
+        pb.getLayout().addGroupedColumn(1);
+        pb.getLayout().addGroupedColumn(3);
+        CellConstraints cc = new CellConstraints();
+
+        pb.addLabel(Messages.getString("CompareDataPanel.sourceLabel"), cc.xy(1, 1)); //$NON-NLS-1$
+        pb.addLabel(Messages.getString("CompareDataPanel.targetLabel"), cc.xy(3, 1)); //$NON-NLS-1$
+
+        pb.add(new JScrollPane(sourceTree), cc.xy(1, 3));
+        pb.add(new JScrollPane(targetTree), cc.xy(3, 3));
+
+        pb.add(new JButton(new DatabaseConnectionManagerAction(session)), cc.xy(1, 5));
+        pb.add(progressBar, cc.xy(3, 5));
+        pb.add(statusLabel, cc.xyw(1, 7, 3));
+        pb.add(resultLabel, cc.xyw(1, 9, 3));
+
+        pb.add(ButtonBarFactory.buildOKCancelBar(
+                    new JButton(compareAction), new JButton(closeAction)),
+               cc.xyw(1, 11, 3));
+
+        pb.setDefaultDialogBorder();
+        panel = pb.getPanel();
+    }
+
+    private JTree createTree() {
+        JTree tree = new JTree();
+        tree.setModel(new DBTreeModel(treeRoot, tree));
+        tree.setRootVisible(false);
+        tree.setShowsRootHandles(true);
+        tree.setCellRenderer(new DBTreeCellRenderer());
+        tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
+        tree.addTreeSelectionListener(treeListener);
+        return tree;
+    }
+
+    /**
+     * Sets the trees to have all of the connections in the current context.
+     */
+    private void setupDBTrees() throws SQLObjectException {
+        try {
+            treeRoot = new SQLObjectRoot();
+            ArchitectProject treeProject = new ArchitectProject(treeRoot);
+            treeProject.setSession(session);
+            treeRoot.begin("Setting up database trees in compare data panel.");
+            for (JDBCDataSource ds : session.getDataSources().getConnections()) {
+                treeRoot.addChild(new SQLDatabase(ds));
+            }
+            treeRoot.commit();
+        } catch (IllegalArgumentException e) {
+            treeRoot.rollback("Could not set up database trees.");
+            throw new RuntimeException(e);
+        } catch (ObjectDependentException e) {
+            treeRoot.rollback("Could not set up database trees.");
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the table selected in the given tree, or null if the selection
+     * isn't a table.
+     */
+    private SQLTable getSelectedTable(JTree tree) {
+        if (tree.getSelectionPath() == null) return null;
+        Object selected = tree.getSelectionPath().getLastPathComponent();
+        return selected instanceof SQLTable ? (SQLTable) selected : null;
+    }
+
+    private final Action compareAction = new AbstractAction(Messages.getString("CompareDataPanel.compareButton")) { //$NON-NLS-1$
+        public void actionPerformed(ActionEvent e) {
+            try {
+                startCompare(getSelectedTable(sourceTree), getSelectedTable(targetTree));
+            } catch (Exception ex) {
+                ASUtils.showExceptionDialogNoReport(panel, Messages.getString("CompareDataPanel.failedToCompareData"), ex); //$NON-NLS-1$
+            }
+        }
+    };
+
+    private final Action closeAction = new AbstractAction(Messages.getString("CompareDataPanel.closeButton")) { //$NON-NLS-1$
+        public void actionPerformed(ActionEvent e) {
+            closed = true;
+            TableDataComparator c = comparator;
+            if (c != null) {
+                c.cancel();
+            }
+            Window w = SPSUtils.getWindowInHierarchy(panel);
+            if (w != null) w.dispose();
+        }
+    };
+
+    public JPanel getPanel() {
+        return panel;
+    }
+
+    /**
+     * Starts comparing the two tables on a worker thread, and shows the
+     * differences when it's done.
+     */
+    private void startCompare(final SQLTable source, final SQLTable target) {
+        comparing = true;
+        compareAction.setEnabled(false);
+        resultLabel.setText(""); //$NON-NLS-1$
+
+        SPSwingWorker worker = new SPSwingWorker(session) {
+
+            private List<RowDifference> differences;
+
+            @Override
+            public void doStuff() throws Exception {
+                // setting up the comparator can populate the tables' columns
+                // from their databases, so it isn't done on the EDT
+                TableDataComparator c = new TableDataComparator(source, target);
+                comparator = c;
+                if (closed) {
+                    c.cancel();
+                }
+                differences = c.compare();
+            }
+
+            @Override
+            public void cleanup() throws Exception {
+                TableDataComparator finished = comparator;
+                comparator = null;
+                comparing = false;
+                treeListener.valueChanged(null);
+                if (getDoStuffException() != null) {
+                    logger.error("Data comparison failed", getDoStuffException()); //$NON-NLS-1$
+                    ASUtils.showExceptionDialogNoReport(panel,
+                            Messages.getString("CompareDataPanel.failedToCompareData"), getDoStuffException()); //$NON-NLS-1$
+                    return;
+                }
+                if (finished.isCancelled()) return;
+                String summary = Messages.getString("CompareDataPanel.comparisonResults", //$NON-NLS-1$
+                        String.valueOf(differences.size()), String.valueOf(finished.getRangeCount()),
+                        String.valueOf(finished.getQueryCount()));
+                if (finished.isTruncated()) {
+                    summary += " " + Messages.getString("CompareDataPanel.differencesTruncated"); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                resultLabel.setText(summary);
+                if (!differences.isEmpty()) {
+                    showDifferences(source, target, finished, differences);
+                }
+            }
+
+            @Override
+            protected String getMessageImpl() {
+                TableDataComparator c = comparator;
+                if (c == null) return null;
+                return Messages.getString("CompareDataPanel.comparing", //$NON-NLS-1$
+                        String.valueOf(c.getRangeCount()), String.valueOf(c.getQueryCount()));
+            }
+
+            @Override
+            protected Integer getJobSizeImpl() {
+                return null;
+            }
+        };
+
+        ProgressWatcher pw = new ProgressWatcher(progressBar, worker, statusLabel);
+        pw.setHideLabelWhenFinished(true);
+        pw.start();
+        new Thread(worker).start();
+    }
+
+    /**
+     * Shows the differing rows in a dialog.
+     */
+    private void showDifferences(SQLTable source, SQLTable target,
+            TableDataComparator comparator, List<RowDifference> differences) {
+        JTable table = new JTable(new RowDifferenceTableModel(comparator, differences));
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        JDialog d = new JDialog(SPSUtils.getWindowInHierarchy(panel),
+                Messages.getString("CompareDataPanel.differencesDialogTitle", //$NON-NLS-1$
+                        source.getName(), target.getName()));
+        d.add(new JScrollPane(table));
+        d.pack();
+        d.setLocationRelativeTo(panel);
+        d.setVisible(true);
+    }
+
+    /**
+     * Shows one differing row per line: how it differs, its key, and then
+     * the source and target values of each compared column side by side.
+     */
+    private static class RowDifferenceTableModel extends AbstractTableModel {
+
+        private final List<RowDifference> differences;
+        private final List<String> keyColumns;
+        private final List<String> valueColumns;
+
+        RowDifferenceTableModel(TableDataComparator comparator, List<RowDifference> differences) {
+            this.differences = differences;
+            this.keyColumns = new ArrayList<String>(comparator.getKeyColumns());
+            this.valueColumns = new ArrayList<String>(comparator.getValueColumns());
+        }
+
+        public int getRowCount() {
+            return differences.size();
+        }
+
+        public int getColumnCount() {
+            return 1 + keyColumns.size() + valueColumns.size() * 2;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            if (column == 0) return Messages.getString("CompareDataPanel.differenceColumn"); //$NON-NLS-1$
+            column--;
+            if (column < keyColumns.size()) return keyColumns.get(column);
+            column -= keyColumns.size();
+            String name = valueColumns.get(column / 2);
+            return Messages.getString(column % 2 == 0 ?
+                    "CompareDataPanel.sourceValueColumn" : "CompareDataPanel.targetValueColumn", name); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        public Object getValueAt(int rowIndex, int column) {
+            RowDifference diff = differences.get(rowIndex);
+            if (column == 0) return describe(diff.getType());
+            column--;
+            if (column < keyColumns.size()) return diff.getKey().get(column);
+            column -= keyColumns.size();
+            List<Object> values = column % 2 == 0 ? diff.getSourceValues() : diff.getTargetValues();
+            return values == null ? null : values.get(column / 2);
+        }
+
+        private String describe(DiffType type) {
+            switch (type) {
+            case LEFTONLY:
+                return Messages.getString("CompareDataPanel.onlyInSource"); //$NON-NLS-1$
+            case RIGHTONLY:
+                return Messages.getString("CompareDataPanel.onlyInTarget"); //$NON-NLS-1$
+            default:
+                return Messages.getString("CompareDataPanel.valuesDiffer"); //$NON-NLS-1$
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.swingui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import ca.sqlpower.architect.diff.DiffChunkConsumer;
+import ca.sqlpower.architect.swingui.CompareDMFormatter.DiffInfoConverter;
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.diff.DiffInfo;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.sqlobject.SQLObject;
+
+/**
+ * A list model of the english description of a comparison, one element per
+ * line. It is filled by handing it the chunks of the comparison as
+ * {@link ca.sqlpower.architect.diff.CompareSQL} produces them. The chunks are
+ * described on the comparing thread and passed to the event dispatch thread
+ * in batches, whenever enough lines have gathered, at regular intervals and
+ * when the comparison finishes. A list showing this model fills in while the
+ * comparison runs without flooding the event queue with one event per chunk.
+ * <p>
+ * Apart from {@link #chunkAdded(DiffChunk)} and {@link #diffFinished()}, this
+ * model must only be used on the event dispatch thread.
+ */
+public class DiffChunkListModel extends AbstractListModel implements DiffChunkConsumer {
+
+    /**
+     * One line of the description, coloured by the type of the chunk it
+     * belongs to.
+     */
+    public static class Line {
+        private final DiffType type;
+        private final String text;
+
+        public Line(DiffType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+
+        public DiffType getType() {
+            return type;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * The number of lines gathered before they are passed to the event
+     * dispatch thread.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * The longest time in milliseconds lines are held back before being
+     * passed to the event dispatch thread, so a slow comparison still shows
+     * its results as it goes.
+     */
+    private static final int BATCH_INTERVAL = 250;
+
+    /**
+     * Only used on the comparing thread.
+     */
+    private final DiffInfoConverter converter = new DiffInfoConverter();
+
+    /**
+     * The lines in this model. Only used on the event dispatch thread.
+     */
+    private final List<Line> lines = new ArrayList<Line>();
+
+    /**
+     * Lines described but not yet added to the model. Guarded by this model's
+     * monitor.
+     */
+    private List<Line> pending = new ArrayList<Line>();
+
+    /**
+     * True if a flush of the pending lines is queued on the event dispatch
+     * thread and hasn't run yet. Guarded by this model's monitor.
+     */
+    private boolean flushQueued;
+
+    /**
+     * Set once the comparison has delivered its last chunk. Guarded by this
+     * model's monitor.
+     */
+    private boolean finished;
+
+    private final Runnable flush = new Runnable() {
+        public void run() {
+            List<Line> batch;
+            synchronized (DiffChunkListModel.this) {
+                batch = pending;
+                pending = new ArrayList<Line>();
+                flushQueued = false;
+            }
+            if (batch.isEmpty()) return;
+            int first = lines.size();
+            lines.addAll(batch);
+            fireIntervalAdded(DiffChunkListModel.this, first, lines.size() - 1);
+        }
+    };
+
+    /**
+     * Flushes the pending lines every {@link #BATCH_INTERVAL} milliseconds
+     * from the first chunk until the comparison finishes, so lines aren't
+     * held back while the comparison works on a table that takes a while.
+     */
+    private final Timer flushTimer = new Timer(BATCH_INTERVAL, new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+            flush.run();
+        }
+    });
+
+    public void chunkAdded(DiffChunk<SQLObject> chunk) {
+        DiffChunk<DiffInfo> info = converter.convert(chunk);
+        List<String> text = CompareDMFormatter.getEnglishDescription(info);
+        synchronized (this) {
+            for (String s : text) {
+                pending.add(new Line(chunk.getType(), s));
+            }
+            if (!flushQueued && pending.size() >= BATCH_SIZE) {
+                queueFlush();
+            }
+        }
+        if (!flushTimer.isRunning()) {
+            flushTimer.start();
+        }
+    }
+
+    public synchronized void diffFinished() {
+        finished = true;
+        flushTimer.stop();
+        if (!flushQueued) {
+            queueFlush();
+        }
+    }
+
+    private void queueFlush() {
+        flushQueued = true;
+        SwingUtilities.invokeLater(flush);
+    }
+
+    /**
+     * Returns true once the comparison has delivered its last chunk. Some of
+     * its lines may still be on their way to the model.
+     */
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    public Object getElementAt(int index) {
+        return lines.get(index);
+    }
+
+    public int getSize() {
+        return lines.size();
+    }
+}
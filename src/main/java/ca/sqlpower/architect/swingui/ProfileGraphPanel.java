@@ -39,16 +39,21 @@ import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.labels.StandardPieSectionLabelGenerator;
 import org.jfree.chart.plot.PiePlot;
+import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.DefaultKeyedValues;
 import org.jfree.data.category.CategoryToPieDataset;
 import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.data.general.DefaultPieDataset;
+import org.jfree.data.xy.XYBarDataset;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
 import org.jfree.util.TableOrder;
 
 import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ColumnValueCount;
 import ca.sqlpower.architect.profile.TableProfileResult;
+import ca.sqlpower.architect.profile.sketch.TDigest;
 import ca.sqlpower.architect.swingui.table.FreqValueCountTableModel;
 import ca.sqlpower.architect.swingui.table.FreqValueTable;
 import ca.sqlpower.object.AbstractSPListener;
@@ -71,6 +76,11 @@ import com.jgoodies.forms.layout.FormLayout;
  */
 public class ProfileGraphPanel {
     
+    /**
+     * The number of bars in the histogram of a numeric column.
+     */
+    private static final int HISTOGRAM_BINS = 20;
+    
     private JLabel rowCountDisplay;
 
     private JLabel title;
@@ -83,6 +93,8 @@ public class ProfileGraphPanel {
 
     private JLabel avgValue;
 
+    private JLabel percentilesLabel;
+
     private JLabel nullCountLabel;
 
     private JLabel nullPercentLabel;
@@ -126,6 +138,17 @@ public class ProfileGraphPanel {
 
     private ChartPanel chartPanel;
 
+    /**
+     * Shows the distribution of a numeric column's values. It is only in the
+     * {@link #chartArea} while a column with a quantile digest is displayed.
+     */
+    private ChartPanel histogramPanel;
+
+    /**
+     * Holds the top N chart and, for numeric columns, the histogram.
+     */
+    private JPanel chartArea;
+
     private static final Logger logger = Logger.getLogger(ProfileGraphPanel.class);
 
     private JTextArea notesField;
@@ -182,6 +205,8 @@ public class ProfileGraphPanel {
         row += 2;
         avgValue = makeInfoRow(pb, "Average Value", row);
         row += 2;
+        percentilesLabel = makeInfoRow(pb, "Percentiles", row);
+        row += 2;
 
         freqValueTable = new FreqValueTable(null);
         freqValueSp = new JScrollPane(freqValueTable);
@@ -195,6 +220,11 @@ public class ProfileGraphPanel {
                 false, false, false);
         chartPanel = new ChartPanel(createPieChart);
         chartPanel.setPreferredSize(new Dimension(300, 300));
+        histogramPanel = new ChartPanel(ChartFactory.createXYBarChart("", "", false, "",
+                new XYSeriesCollection(), PlotOrientation.VERTICAL, false, false, false));
+        histogramPanel.setPreferredSize(new Dimension(300, 200));
+        chartArea = new JPanel(new GridLayout(0, 1));
+        chartArea.add(chartPanel);
 
         if (panel.getProfileManager().getWorkspaceContainer() instanceof ArchitectSession &&
                 ((ArchitectSession) panel.getProfileManager().getWorkspaceContainer()).isEnterpriseSession()) {
@@ -210,11 +240,11 @@ public class ProfileGraphPanel {
             pb.appendRow("fill:4dlu:grow");
             pb.appendRow("4dlu");
 
-            pb.add(chartPanel, cc.xy(6, row + 1));
+            pb.add(chartArea, cc.xy(6, row + 1));
         } else {
             pb.appendRow("fill:4dlu:grow");
             pb.appendRow("4dlu");
-            pb.add(chartPanel, cc.xywh(6, 4, 1, row - 2));
+            pb.add(chartArea, cc.xywh(6, 4, 1, row - 2));
         }
         
         invalidResultsPanel = new JPanel(new BorderLayout());
@@ -326,7 +356,14 @@ public class ProfileGraphPanel {
     private void displayValidProfile(final ColumnProfileResult cr) {
         TableProfileResult tr = (TableProfileResult) cr.getParent();
         rowCount = tr.getRowCount();
-        rowCountDisplay.setText(Integer.toString(rowCount));
+        // counts from a sampled profile are estimates, so mark them as such
+        String estimated = tr.isSampled() ? "~" : "";
+        if (tr.isSampled()) {
+            rowCountDisplay.setText(estimated + rowCount + " (sampled " + format(tr.getSamplingRate() * 100).trim() +
+                    "%, +/- " + format(tr.getSamplingError() * 100).trim() + "%)");
+        } else {
+            rowCountDisplay.setText(Integer.toString(rowCount));
+        }
 
         StringBuffer sb = new StringBuffer();
         SQLColumn c = cr.getProfiledObject();
@@ -338,12 +375,14 @@ public class ProfileGraphPanel {
         nullableLabel.setText(Boolean.toString(c.isDefinitelyNullable()));
 
         chartPanel.setChart(createTopNChart(cr, rowCount));
-        nullCountLabel.setText(Integer.toString(cr.getNullCount()));
+        nullCountLabel.setText(estimated + cr.getNullCount());
         int nullsInRecords = cr.getNullCount();
         double ratio = rowCount > 0 ? nullsInRecords * 100D / rowCount : 0;
         nullPercentLabel.setText(format(ratio));
-        uniqueCountLabel.setText(Integer.toString(cr.getDistinctValueCount()));
-        double uniqueRatio = rowCount > 0 ? cr.getDistinctValueCount() * 100D / rowCount : 0;
+        uniqueCountLabel.setText(cr.getDistinctValueCount() + (tr.isSampled() ? " (in sample)" : ""));
+        // the distinct count of a sampled profile is for the rows in the sample
+        double rowsRead = tr.isSampled() ? rowCount * tr.getSamplingRate() : rowCount;
+        double uniqueRatio = rowsRead > 0 ? Math.min(100D, cr.getDistinctValueCount() * 100D / rowsRead) : 0;
         uniquePercentLabel.setText(format(uniqueRatio));
         minLengthLabel.setText(Integer.toString(cr.getMinLength()));
         maxLengthLabel.setText(Integer.toString(cr.getMaxLength()));
@@ -361,6 +400,22 @@ public class ProfileGraphPanel {
             avgValue.setText(cr.getAvgValue().toString());
         }
 
+        double[] quantileValues = cr.getReportedQuantileValues();
+        chartArea.remove(histogramPanel);
+        if (quantileValues == null) {
+            percentilesLabel.setText("");
+        } else {
+            StringBuffer percentiles = new StringBuffer();
+            for (int i = 0; i < quantileValues.length; i++) {
+                if (i > 0) percentiles.append("   ");
+                percentiles.append(Math.round(ColumnProfileResult.REPORTED_QUANTILES[i] * 100)).append("%: ");
+                percentiles.append(format(quantileValues[i]).trim());
+            }
+            percentilesLabel.setText(percentiles.toString());
+            histogramPanel.setChart(createHistogramChart(cr));
+            chartArea.add(histogramPanel);
+        }
+
         if (notesField != null) {
             
         }
@@ -406,6 +461,23 @@ public class ProfileGraphPanel {
         return chart;
     }
 
+    /**
+     * Creates a bar chart of the distribution of the given column's values
+     * from its quantile digest, which must not be null.
+     */
+    public static JFreeChart createHistogramChart(ColumnProfileResult cr) {
+        TDigest digest = cr.getQuantileDigest();
+        long[] counts = digest.histogram(HISTOGRAM_BINS);
+        double binWidth = (digest.getMax() - digest.getMin()) / HISTOGRAM_BINS;
+        XYSeries series = new XYSeries(cr.getProfiledObject().getName());
+        for (int i = 0; i < counts.length; i++) {
+            series.add(digest.getMin() + binWidth * (i + 0.5), counts[i]);
+        }
+        XYBarDataset dataset = new XYBarDataset(new XYSeriesCollection(series), binWidth > 0 ? binWidth : 1);
+        return ChartFactory.createXYBarChart("Distribution of values", "Value", false, "Rows", dataset,
+                PlotOrientation.VERTICAL, false, true, false);
+    }
+
     private String format(double d) {
         return String.format("%6.2f", d);
     }
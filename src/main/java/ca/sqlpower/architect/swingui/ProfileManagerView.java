@@ -384,13 +384,15 @@ public class ProfileManagerView extends JPanel implements ProfileChangeListener,
             ProfileResultsViewer profileResultsViewer = 
                 new ProfileResultsViewer(pm);
             profileResultsViewer.clearScanList();
+            List<TableProfileResult> selectedResults = new ArrayList<TableProfileResult>();
             for (ProfileRowComponent rowComp : showingRows) {
                 if (rowComp.isSelected()) {
                     TableProfileResult result = rowComp.getResult();
-                    profileResultsViewer.addTableProfileResultToScan(result);
+                    selectedResults.add(result);
                     profileResultsViewer.addTableProfileResult(result);
                 }
             }
+            profileResultsViewer.addTableProfileResultsToScan(selectedResults);
             profileResultsViewer.getDialog().setVisible(true);           
         }            
     };
@@ -400,11 +402,13 @@ public class ProfileManagerView extends JPanel implements ProfileChangeListener,
             ProfileResultsViewer profileResultsViewer = 
                 new ProfileResultsViewer(pm);
             profileResultsViewer.clearScanList();
+            List<TableProfileResult> allResults = new ArrayList<TableProfileResult>();
             for (ProfileRowComponent rowComp : showingRows) {
                 TableProfileResult result = rowComp.getResult();
-                profileResultsViewer.addTableProfileResultToScan(result);
+                allResults.add(result);
                 profileResultsViewer.addTableProfileResult(result);
             }
+            profileResultsViewer.addTableProfileResultsToScan(allResults);
             profileResultsViewer.getDialog().setVisible(true);
         }           
     };
@@ -33,8 +33,11 @@ import java.beans.PropertyChangeEvent;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -62,6 +65,8 @@ import org.apache.log4j.Logger;
 import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.profile.ColumnValueCount;
 import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.profile.ProfileQueryStats;
+import ca.sqlpower.architect.profile.ProfileQueryTiming;
 import ca.sqlpower.architect.profile.ProfileResult;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.architect.profile.event.ProfileChangeEvent;
@@ -70,6 +75,7 @@ import ca.sqlpower.architect.profile.output.ProfileColumn;
 import ca.sqlpower.architect.swingui.action.SaveProfileAction;
 import ca.sqlpower.architect.swingui.table.MultiFreqValueCountTableModel;
 import ca.sqlpower.architect.swingui.table.ProfileJTable;
+import ca.sqlpower.architect.swingui.table.ProfileQueryTimingTableModel;
 import ca.sqlpower.architect.swingui.table.ProfileTableModel;
 import ca.sqlpower.architect.swingui.table.TableFilterDecorator;
 import ca.sqlpower.object.AbstractSPListener;
@@ -83,6 +89,7 @@ import ca.sqlpower.swingui.table.TableModelColumnAutofit;
 import ca.sqlpower.swingui.table.TableModelSearchDecorator;
 import ca.sqlpower.swingui.table.TableModelSortDecorator;
 import ca.sqlpower.swingui.table.TableUtils;
+import ca.sqlpower.util.SQLPowerUtils;
 
 import com.jgoodies.forms.builder.ButtonBarBuilder2;
 import com.jgoodies.forms.builder.DefaultFormBuilder;
@@ -511,6 +518,43 @@ public class ProfileResultsViewer {
             tabPane.addTab(Messages.getString("ProfileResultsViewer.columnViewTab"), columnViewerPanel);
         }
 
+        // This tab shows how long each profiling query took, so slow columns and types can be found.
+        {
+            final ProfileQueryTimingTableModel timingTableModel = new ProfileQueryTimingTableModel(tm);
+
+            JTextField timingSearchField = new JTextField("", 25); //$NON-NLS-1$
+            final FancyExportableJTable timingTable = new FancyExportableJTable(timingTableModel, timingSearchField
+                    .getDocument());
+            final JLabel timingSummary = new JLabel();
+            timingTableModel.addTableModelListener(new TableModelListener() {
+                public void tableChanged(TableModelEvent e) {
+                    TableUtils.fitColumnWidths(timingTable, 15);
+                    timingSummary.setText(summarizeQueryTimings(timingTableModel.getTimings()));
+                }
+            });
+            timingSummary.setText(summarizeQueryTimings(timingTableModel.getTimings()));
+
+            JPanel timingPanel = new JPanel(new BorderLayout());
+            timingPanel.add(new JScrollPane(timingTable), BorderLayout.CENTER);
+
+            JPanel timingNorthPanel = new JPanel(new BorderLayout());
+            timingNorthPanel.add(timingSummary, BorderLayout.CENTER);
+            JPanel timingSearchPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+            timingSearchPanel.add(new JLabel(Messages.getString("ProfileResultsViewer.search"))); //$NON-NLS-1$
+            timingSearchPanel.add(timingSearchField);
+            timingNorthPanel.add(timingSearchPanel, BorderLayout.EAST);
+            timingPanel.add(timingNorthPanel, BorderLayout.NORTH);
+
+            ButtonBarBuilder2 timingButtonBar = new ButtonBarBuilder2();
+            timingButtonBar.addGlue();
+            final JButton csvExportButton = new JButton(timingTable.getExportCSVAction());
+            csvExportButton.setText(Messages.getString("ProfileResultsViewer.CSVExport"));
+            timingButtonBar.addFixed(csvExportButton);
+            timingButtonBar.addFixed(new JButton(closeAction));
+            timingPanel.add(timingButtonBar.getPanel(), BorderLayout.SOUTH);
+            tabPane.addTab(Messages.getString("ProfileResultsViewer.queryTimingsTab"), timingPanel);
+        }
+
         frame.add(tabPane, BorderLayout.CENTER);
 
         frame.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
@@ -521,11 +565,18 @@ public class ProfileResultsViewer {
 
     public void addTableProfileResult(TableProfileResult result) {
         results.add(result);
-        tm.refresh();
     }
 
     public void addTableProfileResultToScan(TableProfileResult result) {
-        tm.addTableResultToScan(result);
+        addTableProfileResultsToScan(Collections.singletonList(result));
+    }
+
+    /**
+     * Adds all of the given results to the table view at once. This is much
+     * faster than adding them one at a time when there are many.
+     */
+    public void addTableProfileResultsToScan(Collection<TableProfileResult> tprs) {
+        tm.addTableResultsToScan(tprs);
         List<TableProfileResult> profileResults = new ArrayList<TableProfileResult>(tm.getTableResultsToScan());
         profileResults.add(0, null);
         tableSelector.setModel(new DefaultComboBoxModel(profileResults.toArray()));
@@ -544,4 +595,32 @@ public class ProfileResultsViewer {
         return frame;
     }
 
+
+    /**
+     * Describes the total time the given queries took, and which column
+     * types took the longest, for the summary above the query timings table.
+     */
+    private static String summarizeQueryTimings(List<ProfileQueryTiming> timings) {
+        ProfileQueryStats total = ProfileQueryStats.of(timings);
+        StringBuilder summary = new StringBuilder("<html>");
+        summary.append(String.format("%d queries: %.0f ms executing, %.0f ms fetching, %d rows (%.0f rows/s)",
+                total.getQueryCount(), total.getExecutionNanos() / 1e6, total.getFetchNanos() / 1e6,
+                total.getRowCount(), total.getRowsPerSecond()));
+        List<Map.Entry<String, ProfileQueryStats>> byType =
+            new ArrayList<Map.Entry<String, ProfileQueryStats>>(ProfileQueryStats.byColumnType(timings).entrySet());
+        Collections.sort(byType, new Comparator<Map.Entry<String, ProfileQueryStats>>() {
+            public int compare(Map.Entry<String, ProfileQueryStats> o1, Map.Entry<String, ProfileQueryStats> o2) {
+                long t1 = o1.getValue().getExecutionNanos() + o1.getValue().getFetchNanos();
+                long t2 = o2.getValue().getExecutionNanos() + o2.getValue().getFetchNanos();
+                return t1 == t2 ? 0 : (t1 > t2 ? -1 : 1);
+            }
+        });
+        for (int i = 0; i < byType.size() && i < 5; i++) {
+            ProfileQueryStats stats = byType.get(i).getValue();
+            summary.append(String.format("<br>%s: %d queries, %.0f ms",
+                    SQLPowerUtils.escapeXML(byType.get(i).getKey()), stats.getQueryCount(),
+                    (stats.getExecutionNanos() + stats.getFetchNanos()) / 1e6));
+        }
+        return summary.toString();
+    }
 }
@@ -30,6 +30,7 @@ import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ProjectSettings;
 import ca.sqlpower.architect.ProjectSettings.ColumnVisibility;
+import ca.sqlpower.architect.profile.ProfileSettings;
 import ca.sqlpower.architect.profile.TableProfileCreator;
 import ca.sqlpower.swingui.DataEntryPanel;
 
@@ -62,6 +63,52 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
      * A profile manager setting: Which profile creator to use.
      */
     private JComboBox profileMode;
+    
+    /**
+     * A profile manager setting: Whether to profile all of a table's columns
+     * with one query.
+     */
+    private JCheckBox combiningColumnQueries;
+    
+    /**
+     * A profile manager setting: Whether to profile several tables at once.
+     */
+    private JCheckBox parallelProfiling;
+    
+    /**
+     * A profile manager setting: Whether to skip tables that have not changed
+     * since they were last profiled.
+     */
+    private JCheckBox incrementalProfiling;
+    
+    /**
+     * A profile manager setting: How many tables to profile at once.
+     */
+    private JTextField profileThreadCount;
+    
+    /**
+     * A profile manager setting: How many tables from the same data source
+     * to profile at once.
+     */
+    private JTextField maxProfilesPerDataSource;
+    
+    /**
+     * A profile manager setting: The percentage of each table to read when
+     * profiling from a sample.
+     */
+    private JTextField samplePercent;
+    
+    /**
+     * A profile manager setting: How many seconds a profiling query may run
+     * before it is cancelled.
+     */
+    private JTextField queryTimeout;
+    
+    /**
+     * A profile manager setting: How many columns of one table to profile at
+     * once.
+     */
+    private JTextField columnProfileThreadCount;
 
     private JRadioButton rectilinearRelationships;
     private JRadioButton directRelationships;
@@ -105,6 +152,23 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
         
         fb.append(Messages.getString("ProjectSettingsPanel.profileMode"), profileMode = new JComboBox(session.getProfileManager().getProfileCreators().toArray())); //$NON-NLS-1$
         fb.nextLine();
+        
+        fb.append(Messages.getString("ProjectSettingsPanel.combineColumnQueries"), combiningColumnQueries = new JCheckBox()); //$NON-NLS-1$
+        fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.parallelProfiling"), parallelProfiling = new JCheckBox()); //$NON-NLS-1$
+        fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.incrementalProfiling"), incrementalProfiling = new JCheckBox()); //$NON-NLS-1$
+        fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.profileThreadCount"), profileThreadCount = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.maxProfilesPerDataSource"), maxProfilesPerDataSource = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.samplePercent"), samplePercent = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.profileQueryTimeout"), queryTimeout = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.columnProfileThreadCount"), columnProfileThreadCount = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
         fb.appendUnrelatedComponentsGapRow();
         fb.nextLine();
        
@@ -187,6 +251,15 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
         logger.debug("Reverting project options"); //$NON-NLS-1$
         numberOfFreqValues.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getTopNCount()));
         profileMode.setSelectedItem(session.getProfileManager().getCreator());
+        ProfileSettings profileSettings = session.getProfileManager().getDefaultProfileSettings();
+        combiningColumnQueries.setSelected(profileSettings.isCombiningColumnQueries());
+        parallelProfiling.setSelected(profileSettings.isParallelProfiling());
+        incrementalProfiling.setSelected(profileSettings.isIncrementalProfiling());
+        profileThreadCount.setText(String.valueOf(profileSettings.getProfileThreadCount()));
+        maxProfilesPerDataSource.setText(String.valueOf(profileSettings.getMaxProfilesPerDataSource()));
+        samplePercent.setText(String.valueOf(profileSettings.getSamplePercent()));
+        queryTimeout.setText(String.valueOf(profileSettings.getQueryTimeout()));
+        columnProfileThreadCount.setText(String.valueOf(profileSettings.getColumnProfileThreadCount()));
 		saveEntireSource.setSelected(session.isSavingEntireSource());
         if (session.getRelationshipLinesDirect()) {
             directRelationships.setSelected(true);
@@ -247,6 +320,31 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
         
         session.getProfileManager().setCreator((TableProfileCreator) profileMode.getSelectedItem());
         
+        ProfileSettings profileSettings = session.getProfileManager().getDefaultProfileSettings();
+        profileSettings.setCombiningColumnQueries(combiningColumnQueries.isSelected());
+        profileSettings.setParallelProfiling(parallelProfiling.isSelected());
+        profileSettings.setIncrementalProfiling(incrementalProfiling.isSelected());
+        try {
+            if (profileThreadCount.getText().length() > 0) {
+                profileSettings.setProfileThreadCount(Integer.parseInt(profileThreadCount.getText()));
+            }
+            if (maxProfilesPerDataSource.getText().length() > 0) {
+                profileSettings.setMaxProfilesPerDataSource(Integer.parseInt(maxProfilesPerDataSource.getText()));
+            }
+            if (samplePercent.getText().length() > 0) {
+                profileSettings.setSamplePercent(Double.parseDouble(samplePercent.getText()));
+            }
+            if (queryTimeout.getText().length() > 0) {
+                profileSettings.setQueryTimeout(Integer.parseInt(queryTimeout.getText()));
+            }
+            if (columnProfileThreadCount.getText().length() > 0) {
+                profileSettings.setColumnProfileThreadCount(Integer.parseInt(columnProfileThreadCount.getText()));
+            }
+        } catch (NumberFormatException e) {
+            ASUtils.showExceptionDialogNoReport(this,
+                    "Number Format Error", e); //$NON-NLS-1$
+        }
+        
         if (directRelationships.isSelected()) {
             settings.setRelationshipLinesDirect(true);
         } else {
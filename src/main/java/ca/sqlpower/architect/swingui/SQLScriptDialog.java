@@ -27,19 +27,26 @@ import java.awt.Insets;
 import java.awt.Toolkit;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.lang.reflect.InvocationTargetException;
-import java.sql.Connection;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
+import javax.swing.BoundedRangeModel;
 import javax.swing.JButton;
 import javax.swing.JDialog;
+import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
@@ -57,6 +64,7 @@ import javax.swing.text.StyleConstants;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ddl.DDLGenerator;
+import ca.sqlpower.architect.ddl.DDLScriptExecutor;
 import ca.sqlpower.architect.ddl.DDLStatement;
 import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sqlobject.SQLDatabase;
@@ -82,7 +90,21 @@ public class SQLScriptDialog extends JDialog {
 
 	private static final Logger logger = Logger.getLogger(SQLScriptDialog.class);
 
+	/**
+	 * The number of statements added to the preview at a time. The rest are
+	 * added as the user scrolls towards the end, so opening the dialog on a
+	 * script of many thousands of statements doesn't build a document
+	 * holding all of them.
+	 */
+	private static final int PREVIEW_PAGE_SIZE = 250;
+
 	private List<DDLStatement> statements;
+
+	/**
+	 * The generator that made {@link #statements}. Save and Copy have it
+	 * write the script, so the whole script is never held in memory at once.
+	 */
+	private DDLGenerator gen;
 	private JProgressBar progressBar = new JProgressBar();
 
 	private Component parent;
@@ -95,6 +117,11 @@ public class SQLScriptDialog extends JDialog {
 	private JTextPane sqlScriptArea;
 	private AbstractDocument sqlDoc;
 
+	/**
+	 * The number of statements added to {@link #sqlDoc} so far.
+	 */
+	private int previewedStatements;
+
 	private boolean closeParent;
     
     private ArchitectSwingSession session;
@@ -122,7 +149,8 @@ public class SQLScriptDialog extends JDialog {
      * @param gen
      *            The DDL generator that supplies the SQL script. The script
      *            will be obtained by a call to
-     *            {@link DDLGenerator#getDdlStatements()}.
+     *            {@link DDLGenerator#getDdlStatements()}, and saved and
+     *            copied with {@link DDLGenerator#writeDDLScript(Writer)}.
      *            XXX: this should be a List of DDLStatement instead
      * @param targetDataSource
      *            The database to execute the statements in. This can be null,
@@ -147,6 +175,7 @@ public class SQLScriptDialog extends JDialog {
 		statusLabel = new JLabel();
 		parent = owner;
 		this.header = header;
+		this.gen = gen;
 		this.statements = gen.getDdlStatements();
 		this.targetDataSource = targetDataSource;
 		this.closeParent = closeParent;
@@ -166,27 +195,31 @@ public class SQLScriptDialog extends JDialog {
 		CellConstraints cc = new CellConstraints();
 
 		sqlDoc = new DefaultStyledDocument();
+		previewedStatements = 0;
+		appendPreviewPage();
 
-		SimpleAttributeSet att = new SimpleAttributeSet();
-		StyleConstants.setForeground(att, Color.black);
-
-		for (DDLStatement ddl : statements){
-			try {
-				sqlDoc.insertString(sqlDoc.getLength(), ddl.getSQLText()+ddl.getSqlTerminator(), att);
-			} catch(BadLocationException e) {
-				ASUtils.showExceptionDialogNoReport(parent,
-						Messages.getString("SQLScriptDialog.couldNotCreateDocument"), e); //$NON-NLS-1$
-				logger.error("Could not create document for results", e); //$NON-NLS-1$
-			}
-		}
 		sqlScriptArea = new JTextPane();
 		sqlScriptArea.setMargin(new Insets(6, 10, 4, 6));
 		sqlScriptArea.setDocument(sqlDoc);
 		sqlScriptArea.setEditable(false);
 		sqlScriptArea.setAutoscrolls(true);
-		JScrollPane sp = new JScrollPane(sqlScriptArea);
-
-		Action copy = new CopyAction(sqlDoc);
+		final JScrollPane sp = new JScrollPane(sqlScriptArea);
+		sp.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+		    public void adjustmentValueChanged(AdjustmentEvent e) {
+		        BoundedRangeModel m = sp.getVerticalScrollBar().getModel();
+		        if (previewedStatements < statements.size() &&
+		                m.getValue() + 2 * m.getExtent() >= m.getMaximum()) {
+		            // the document can't be changed while the scroll pane is laying it out
+		            SwingUtilities.invokeLater(new Runnable() {
+		                public void run() {
+		                    appendPreviewPage();
+		                }
+		            });
+		        }
+		    }
+		});
+
+		Action copy = new CopyAction();
 		Action execute = null;
 		
 		execute = new AbstractAction(){
@@ -207,8 +240,7 @@ public class SQLScriptDialog extends JDialog {
 
 				logger.info( "SQL_FILE_FILTER:"+ ((FileExtensionFilter) SPSUtils.SQL_FILE_FILTER).toString()); //$NON-NLS-1$
 
-				SPSUtils.saveDocument(parent,sqlDoc,
-						(FileExtensionFilter) SPSUtils.SQL_FILE_FILTER );
+				saveScript();
 			}
 		};
 		CloseAction close = new CloseAction();
@@ -263,6 +295,87 @@ public class SQLScriptDialog extends JDialog {
 		return pb.getPanel();
 	}
 
+	/**
+	 * Adds the next {@link #PREVIEW_PAGE_SIZE} statements to the preview, if
+	 * there are any left.
+	 */
+	private void appendPreviewPage() {
+	    SimpleAttributeSet att = new SimpleAttributeSet();
+	    StyleConstants.setForeground(att, Color.black);
+	    int end = Math.min(statements.size(), previewedStatements + PREVIEW_PAGE_SIZE);
+	    StringBuilder page = new StringBuilder();
+	    for (DDLStatement ddl : statements.subList(previewedStatements, end)) {
+	        page.append(ddl.getSQLText()).append(ddl.getSqlTerminator());
+	    }
+	    try {
+	        sqlDoc.insertString(sqlDoc.getLength(), page.toString(), att);
+	        previewedStatements = end;
+	    } catch (BadLocationException e) {
+	        ASUtils.showExceptionDialogNoReport(parent,
+	                Messages.getString("SQLScriptDialog.couldNotCreateDocument"), e); //$NON-NLS-1$
+	        logger.error("Could not create document for results", e); //$NON-NLS-1$
+	    }
+	}
+
+	/**
+	 * Asks the user for a file and has the generator write the whole script,
+	 * not just the part in the preview, straight to it.
+	 */
+	private void saveScript() {
+	    JFileChooser chooser = new JFileChooser();
+	    chooser.addChoosableFileFilter(SPSUtils.SQL_FILE_FILTER);
+	    if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+	    File file = chooser.getSelectedFile();
+	    if (file.getName().indexOf('.') < 0) {
+	        file = new File(file.getPath() + ".sql"); //$NON-NLS-1$
+	    }
+	    if (file.exists()) {
+	        int response = JOptionPane.showConfirmDialog(this,
+	                Messages.getString("SQLScriptDialog.fileAlreadyExists", file.getPath()), //$NON-NLS-1$
+	                Messages.getString("SQLScriptDialog.saveOption"), JOptionPane.YES_NO_OPTION); //$NON-NLS-1$
+	        if (response != JOptionPane.YES_OPTION) return;
+	    }
+	    Writer out = null;
+	    try {
+	        out = new BufferedWriter(new FileWriter(file));
+	        gen.writeDDLScript(out);
+	    } catch (IOException e) {
+	        ASUtils.showExceptionDialogNoReport(this,
+	                Messages.getString("SQLScriptDialog.couldNotSaveScript", file.getPath()), e); //$NON-NLS-1$
+	    } finally {
+	        if (out != null) {
+	            try {
+	                out.close();
+	            } catch (IOException e) {
+	                logger.error("Couldn't close " + file, e); //$NON-NLS-1$
+	            }
+	        }
+	    }
+	}
+
+	/**
+	 * Shows the statements that failed while the script was executed, and why.
+	 */
+	private void showFailureReport(String resultsMessage, List<DDLScriptExecutor.Failure> failures) {
+	    StringBuilder report = new StringBuilder();
+	    for (DDLScriptExecutor.Failure failure : failures) {
+	        String sql = failure.getStatement().getSQLText();
+	        report.append(sql == null ? "" : sql.trim()).append(failure.getStatement().getSqlTerminator()); //$NON-NLS-1$
+	        report.append("\n").append(Messages.getString("SQLScriptDialog.failureReason", //$NON-NLS-1$ //$NON-NLS-2$
+	                failure.getException().getMessage())).append("\n\n"); //$NON-NLS-1$
+	    }
+	    JTextArea jta = new JTextArea(report.toString(), 15, 60);
+	    jta.setEditable(false);
+	    jta.setCaretPosition(0);
+	    JPanel jp = new JPanel(new BorderLayout(0, 10));
+	    jp.add(new JLabel(resultsMessage), BorderLayout.NORTH);
+	    jp.add(new JLabel(Messages.getString("SQLScriptDialog.failedStatements", //$NON-NLS-1$
+	            String.valueOf(failures.size()))), BorderLayout.CENTER);
+	    jp.add(new JScrollPane(jta), BorderLayout.SOUTH);
+	    JOptionPane.showMessageDialog(SQLScriptDialog.this, jp,
+	            Messages.getString("SQLScriptDialog.sqlFailure"), JOptionPane.WARNING_MESSAGE); //$NON-NLS-1$
+	}
+
 	public SPSwingWorker getExecuteTask() {
 		return executeTask;
 	}
@@ -281,19 +394,20 @@ public class SQLScriptDialog extends JDialog {
 
 	// ============== Nested classes follow ================
 
+	/**
+	 * Copies the whole script to the clipboard, including the statements
+	 * that haven't been added to the preview yet.
+	 */
 	private class CopyAction extends AbstractAction {
 
-		AbstractDocument doc;
-		public CopyAction(AbstractDocument doc) {
-			this.doc = doc;
-		}
-
 		public void actionPerformed(ActionEvent e) {
 
 			try {
-				StringSelection selection = new StringSelection(doc.getText(0,doc.getLength()));
+			    StringWriter script = new StringWriter();
+			    gen.writeDDLScript(script);
+				StringSelection selection = new StringSelection(script.toString());
 				Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection,selection);
-			} catch (BadLocationException e1) {
+			} catch (IOException e1) {
 				logger.debug("Unable to get the text for copying"+ e1); //$NON-NLS-1$
 			}
 
@@ -332,6 +446,11 @@ public class SQLScriptDialog extends JDialog {
 
 		private int stmtsCompleted = 0;
 
+		/**
+		 * Runs the script. Only set while the script is running.
+		 */
+		private volatile DDLScriptExecutor scriptExecutor;
+
         public ExecuteSQLScriptWorker(ArchitectSwingSession session) {
 		    super(session);
 		    setMessage(null);
@@ -357,80 +476,25 @@ public class SQLScriptDialog extends JDialog {
 
 			logger.debug("the Target Database is: " + target.getDataSource()); //$NON-NLS-1$
 
-			Connection con;
-			Statement stmt;
-
-			try {
-				con = target.getConnection();
-			} catch (SQLObjectException ex) {
-				setFinished(true);
-				throw new RuntimeException(
-						Messages.getString("SQLScriptDialog.couldNotConnectToTargetDb", ex.getMessage()), ex); //$NON-NLS-1$
-			} catch (Exception ex) {
-				setFinished(true);
-				logger.error("Unexpected exception in DDL generation", ex); //$NON-NLS-1$
-				throw new RuntimeException(Messages.getString("SQLScriptDialog.specifyATargetDb")); //$NON-NLS-1$
-			}
-
-			try {
-				logger.debug("the connection thinks it is: " + con.getMetaData().getURL()); //$NON-NLS-1$
-				stmt = con.createStatement();
-			} catch (SQLException ex) {
-				setFinished(true);
-				throw new RuntimeException(Messages.getString("SQLScriptDialog.couldNotGenerateDDL", ex.getMessage())); //$NON-NLS-1$
-			}
-
+			List<DDLScriptExecutor.Failure> failures = Collections.emptyList();
 			try {
 				logger.info("Starting DDL Generation at " + new java.util.Date(System.currentTimeMillis())); //$NON-NLS-1$
 				logger.info("Database Target: " + target.getDataSource()); //$NON-NLS-1$
 				logger.info("Playpen Dump: " + target.getDataSource()); //$NON-NLS-1$
-				
-				SQLScriptDialog.this.executeButton.setEnabled(false);
-				Iterator<DDLStatement> it = statements.iterator();
-				while (it.hasNext() && !isFinished() && !isCancelled()) {
-					DDLStatement ddlStmt = it.next();
-					try {
-						increaseProgress();
-						logger.info("executing: " + ddlStmt.getSQLText()); //$NON-NLS-1$
-						stmt.executeUpdate(ddlStmt.getSQLText());
-						stmtsCompleted++;
-					} catch (final SQLException ex) {
-						final String fsql = ddlStmt.getSQLText() == null ? null : ddlStmt.getSQLText().trim();
-						logger.info("sql statement failed: " + ex.getMessage()); //$NON-NLS-1$
-						try {
-							SwingUtilities.invokeAndWait(new Runnable() {
-								public void run() {
-									JTextArea jta = new JTextArea(fsql);
-									jta.setOpaque(false);
-									jta.setEditable(false);
-									JPanel jp = new JPanel(new BorderLayout(0, 10));
-									jp.add(new JLabel(Messages.getString("SQLScriptDialog.sqlStatementFailed", ex.getMessage())), BorderLayout.NORTH);
-									jp.add(jta, BorderLayout.CENTER);
-									jp.add(new JLabel(Messages.getString("SQLScriptDialog.continuePrompt")), BorderLayout.SOUTH);
-									int decision = JOptionPane.showConfirmDialog(
-									        SQLScriptDialog.this,
-									        jp,
-									        Messages.getString("SQLScriptDialog.sqlFailure"), //$NON-NLS-1$
-									        JOptionPane.YES_NO_OPTION);
-									if (decision == JOptionPane.NO_OPTION) {
-										logger.info("Export cancelled by user."); //$NON-NLS-1$
-										cancelJob();
-									}
-								}
-							});
-						} catch (InterruptedException ex2) {
-							logger.warn("DDL Worker was interrupted during InvokeAndWait", ex2); //$NON-NLS-1$
-						} catch (InvocationTargetException ex2) {
-							throw new RuntimeException(ex2);
-						}
-
-						if (isCancelled()) {
-							setFinished(true);
-							// don't return, we might as well display how many statements ended up being processed...
-						}
-					}
-				}
 
+				SQLScriptDialog.this.executeButton.setEnabled(false);
+				scriptExecutor = new DDLScriptExecutor(target);
+				scriptExecutor.setExecutionListener(new DDLScriptExecutor.ExecutionListener() {
+				    public void statementExecuted(DDLStatement statement, SQLException failure) {
+				        increaseProgress();
+				        if (failure == null) stmtsCompleted++;
+				    }
+				});
+				failures = scriptExecutor.execute(statements);
+			} catch (SQLObjectException ex) {
+				setFinished(true);
+				throw new RuntimeException(
+						Messages.getString("SQLScriptDialog.couldNotConnectToTargetDb", ex.getMessage()), ex); //$NON-NLS-1$
 			} catch (Exception exc){
 				logger.info("Caught Unexpected Exception " + exc); //$NON-NLS-1$
 				ASUtils.showExceptionDialog(
@@ -438,21 +502,15 @@ public class SQLScriptDialog extends JDialog {
 						Messages.getString("SQLScriptDialog.couldNotFinishSQL"), //$NON-NLS-1$
 						exc);
 			} finally {
+				scriptExecutor = null;
 				final String resultsMessage =
 					(stmtsCompleted == 0 ? Messages.getString("SQLScriptDialog.didNotExecute", String.valueOf(getProgress())) : //$NON-NLS-1$
 						Messages.getString("SQLScriptDialog.successfullyExecuted", String.valueOf(stmtsCompleted), String.valueOf(getProgress()))); //$NON-NLS-1$
 				logger.info(resultsMessage);
-				JOptionPane.showMessageDialog(SQLScriptDialog.this, resultsMessage);
-				// flush and close the LogWriter
-				try {
-					if (stmt != null) stmt.close();
-				} catch (SQLException ex) {
-					logger.error("SQLException while closing statement", ex); //$NON-NLS-1$
-				}
-				try {
-					if (con != null) con.close();
-				} catch (SQLException ex) {
-					logger.error("Couldn't close connection", ex); //$NON-NLS-1$
+				if (failures.isEmpty()) {
+				    JOptionPane.showMessageDialog(SQLScriptDialog.this, resultsMessage);
+				} else {
+				    showFailureReport(resultsMessage, failures);
 				}
 				SQLScriptDialog.this.executeButton.setEnabled(true);
 			}
@@ -475,6 +533,10 @@ public class SQLScriptDialog extends JDialog {
 		public void cancelJob() {
 			this.setCancelled(true);
 			setFinished(true);
+			DDLScriptExecutor running = scriptExecutor;
+			if (running != null) {
+			    running.cancel();
+			}
 		}
 
 	}
@@ -20,7 +20,9 @@ package ca.sqlpower.architect.swingui;
 
 import java.awt.Color;
 import java.awt.Point;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -68,7 +70,9 @@ import ca.sqlpower.architect.olap.MondrianModel.VirtualCube;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ColumnValueCount;
 import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.profile.ProfileResultStore;
 import ca.sqlpower.architect.profile.ProfileResult;
+import ca.sqlpower.architect.profile.ProfileSettings;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.architect.swingui.CompareDMSettings.SourceOrTargetSettings;
 import ca.sqlpower.architect.swingui.olap.CubePane;
@@ -153,6 +157,14 @@ public class SwingUIProjectLoader extends ProjectLoader {
      */
     private ProgressMonitor pm;
 
+    /**
+     * The file the profile results are written to while the project is being
+     * saved to a file. When this is null, the profile results are written
+     * into the project XML instead. It is set back to null if there were no
+     * results to write.
+     */
+    private File profileStoreFile;
+
     /**
      * Sets up a new project file load/save object for the given session.
      * 
@@ -833,7 +845,15 @@ public class SwingUIProjectLoader extends ProjectLoader {
             pm.setMillisToDecideToPopup(0);
         }
 
-        save(out,encoding);	// Does ALL the actual I/O
+        profileStoreFile = new File(file.getParent(), "tmp___" + file.getName() + ProfileResultStore.FILE_SUFFIX); //$NON-NLS-1$
+        File tempStoreFile = profileStoreFile;
+        boolean storeWritten;
+        try {
+            save(out,encoding);	// Does ALL the actual I/O
+            storeWritten = (profileStoreFile != null);
+        } finally {
+            profileStoreFile = null;
+        }
         out = null;
         if (pm != null)
             pm.close();
@@ -843,6 +863,10 @@ public class SwingUIProjectLoader extends ProjectLoader {
         // This is a REALLY bad place for failure (especially if we've made the user wait several hours to save
         // a large project), so we MUST check failures from renameto (both places!)
         boolean fstatus = false;
+        if (storeWritten) {
+            // the profile results go first so the new project file never refers to an old store
+            renameOverWithBackup(tempStoreFile, new File(file.getParent(), file.getName() + ProfileResultStore.FILE_SUFFIX));
+        }
         fstatus = backupFile.delete();
         logger.debug("deleting backup~ file: " + fstatus); //$NON-NLS-1$
 
@@ -865,6 +889,28 @@ public class SwingUIProjectLoader extends ProjectLoader {
         fileVersion = ArchitectVersion.APP_FULL_VERSION.toString();
     }
 
+    /**
+     * Replaces the target file with the temp file, keeping the target's old
+     * contents in a backup file whose name ends with "~".
+     */
+    private void renameOverWithBackup(File tempFile, File target) throws SQLObjectException {
+        File backupFile = new File(target.getParent(), target.getName() + "~"); //$NON-NLS-1$
+        boolean fstatus = backupFile.delete();
+        logger.debug("deleting backup~ file " + backupFile + ": " + fstatus); //$NON-NLS-1$ //$NON-NLS-2$
+        if (target.exists()) {
+            fstatus = target.renameTo(backupFile);
+            if (!fstatus) {
+                throw new SQLObjectException((
+                        Messages.getString("SwingUIProject.couldNotRenameFile", tempFile.toString(), target.toString()))); //$NON-NLS-1$
+            }
+        }
+        fstatus = tempFile.renameTo(target);
+        if (!fstatus) {
+            throw new SQLObjectException((
+                    Messages.getString("SwingUIProject.couldNotRenameTempFile", tempFile.toString(), target.toString()))); //$NON-NLS-1$
+        }
+    }
+
     XMLHelper ioo = new XMLHelper();
     
     /**
@@ -1316,25 +1362,38 @@ public class SwingUIProjectLoader extends ProjectLoader {
      * Save all of the profiling information.
      * @param out
      */
-    private void saveProfiles(PrintWriter out) {
+    private void saveProfiles(PrintWriter out) throws IOException {
         ProfileManager profmgr = getSession().getProfileManager();
-        ioo.println(out, "<profiles topNCount=\""+profmgr.getDefaultProfileSettings().getTopNCount()+"\">"); //$NON-NLS-1$ //$NON-NLS-2$
+        profmgr.awaitSavedResults();
+        List<TableProfileResult> tableResults = profmgr.getResults();
+        if (profileStoreFile != null && !tableResults.isEmpty()) {
+            saveProfileStore(out, tableResults);
+            return;
+        }
+        profileStoreFile = null;
+
+        ioo.println(out, "<profiles" + profileSettingsAttributes(profmgr.getDefaultProfileSettings()) + ">"); //$NON-NLS-1$ //$NON-NLS-2$
         ioo.indent++;
 
-        List<TableProfileResult> tableResults = profmgr.getResults();
-        
         for (TableProfileResult tableResult : tableResults) {
             String profiledObjectId = sqlObjectSaveIdMap.get(tableResult.getProfiledObject());
             if (profiledObjectId == null) {
-                UserPrompter prompter = getSession().createUserPrompter("Cannot save profile for table " + 
-                        tableResult.getProfiledObject().getName() + ", skipping this profile and continuing save.", 
-                        UserPromptType.MESSAGE, UserPromptOptions.OK, UserPromptResponse.OK, null, "OK");
-                prompter.promptUser();
+                warnProfileNotSaved("table", tableResult.getProfiledObject());
                 continue;
             }
             ioo.print(out, "<table-profile-result"); //$NON-NLS-1$
             printCommonItems(out, tableResult, profiledObjectId);
             ioo.niprint(out, " rowCount=\"" + tableResult.getRowCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+            if (tableResult.getModificationStamp() != null) {
+                ioo.niprint(out, " modificationStamp=\"" + SQLPowerUtils.escapeXML(tableResult.getModificationStamp()) + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            if (tableResult.isSampled()) {
+                ioo.niprint(out, " samplingRate=\"" + tableResult.getSamplingRate() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                ioo.niprint(out, " samplingError=\"" + tableResult.getSamplingError() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            if (tableResult.isReused()) {
+                ioo.niprint(out, " reusedResultTime=\"" + tableResult.getReusedResultTime() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+            }
             ioo.niprint(out, " UUID=\"" + tableResult.getUUID() + "\"");
             ioo.niprintln(out, ">"); //$NON-NLS-1$
             ioo.indent++;
@@ -1343,10 +1402,7 @@ public class SwingUIProjectLoader extends ProjectLoader {
             for (ColumnProfileResult cpr : columnProfileResults) {
                 String profiledColumnObjectId = sqlObjectSaveIdMap.get(cpr.getProfiledObject());
                 if (profiledColumnObjectId == null) {
-                    UserPrompter prompter = getSession().createUserPrompter("Cannot save profile for column " + 
-                            cpr.getProfiledObject().getName() + ", skipping this profile and continuing save.", 
-                            UserPromptType.MESSAGE, UserPromptOptions.OK, UserPromptResponse.OK, null, "OK");
-                    prompter.promptUser();
+                    warnProfileNotSaved("column", cpr.getProfiledObject());
                     continue;
                 }
                 ioo.print(out, "<column-profile-result");
@@ -1357,6 +1413,12 @@ public class SwingUIProjectLoader extends ProjectLoader {
                 ioo.niprint(out, " maxLength=\"" + cpr.getMaxLength() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
                 ioo.niprint(out, " nullCount=\"" + cpr.getNullCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
                 ioo.niprint(out, " distinctValueCount=\"" + cpr.getDistinctValueCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                if (cpr.getQuantileSketch() != null) {
+                    ioo.niprint(out, " quantileSketch=\"" + cpr.getQuantileSketch() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                if (cpr.getColumnDefinition() != null) {
+                    ioo.niprint(out, " columnDefinition=\"" + SQLPowerUtils.escapeXML(cpr.getColumnDefinition()) + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                }
                 ioo.niprint(out, " UUID=\"" + cpr.getUUID() + "\"");
                 ioo.niprintln(out, ">"); //$NON-NLS-1$
 
@@ -1410,6 +1472,58 @@ public class SwingUIProjectLoader extends ProjectLoader {
         ioo.indent--;
     }
 
+    /**
+     * Returns the attributes of the profiles element that hold the given
+     * default profile settings, each preceded by a space.
+     */
+    private String profileSettingsAttributes(ProfileSettings settings) {
+        return " topNCount=\"" + settings.getTopNCount() + "\"" + //$NON-NLS-1$ //$NON-NLS-2$
+            " parallelProfiling=\"" + settings.isParallelProfiling() + "\"" + //$NON-NLS-1$ //$NON-NLS-2$
+            " profileThreadCount=\"" + settings.getProfileThreadCount() + "\"" + //$NON-NLS-1$ //$NON-NLS-2$
+            " maxProfilesPerDataSource=\"" + settings.getMaxProfilesPerDataSource() + "\"" + //$NON-NLS-1$ //$NON-NLS-2$
+            " incrementalProfiling=\"" + settings.isIncrementalProfiling() + "\"" + //$NON-NLS-1$ //$NON-NLS-2$
+            " queryTimeout=\"" + settings.getQueryTimeout() + "\"" + //$NON-NLS-1$ //$NON-NLS-2$
+            " samplePercent=\"" + settings.getSamplePercent() + "\"" + //$NON-NLS-1$ //$NON-NLS-2$
+            " columnProfileThreadCount=\"" + settings.getColumnProfileThreadCount() + "\""; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Writes the given profile results to {@link #profileStoreFile}, and an
+     * empty profiles element that refers to it to the project XML. The store
+     * is named after the project file, not the temp file it is written to.
+     */
+    private void saveProfileStore(PrintWriter out, List<TableProfileResult> tableResults) throws IOException {
+        ProfileManager profmgr = getSession().getProfileManager();
+        ioo.println(out, "<profiles" + profileSettingsAttributes(profmgr.getDefaultProfileSettings()) + //$NON-NLS-1$
+                " result-store=\"" + SQLPowerUtils.escapeXML(file.getName() + ProfileResultStore.FILE_SUFFIX) + "\"/>"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        for (TableProfileResult tableResult : tableResults) {
+            if (sqlObjectSaveIdMap.get(tableResult.getProfiledObject()) == null) {
+                warnProfileNotSaved("table", tableResult.getProfiledObject());
+                continue;
+            }
+            for (ColumnProfileResult cpr : tableResult.getColumnProfileResults()) {
+                if (sqlObjectSaveIdMap.get(cpr.getProfiledObject()) == null) {
+                    warnProfileNotSaved("column", cpr.getProfiledObject());
+                }
+            }
+        }
+
+        OutputStream storeOut = new BufferedOutputStream(new FileOutputStream(profileStoreFile));
+        try {
+            ProfileResultStore.write(storeOut, tableResults, sqlObjectSaveIdMap, true);
+        } finally {
+            storeOut.close();
+        }
+    }
+
+    private void warnProfileNotSaved(String type, SQLObject profiledObject) {
+        UserPrompter prompter = getSession().createUserPrompter("Cannot save profile for " + type + " " + 
+                profiledObject.getName() + ", skipping this profile and continuing save.", 
+                UserPromptType.MESSAGE, UserPromptOptions.OK, UserPromptResponse.OK, null, "OK");
+        prompter.promptUser();
+    }
+
     private void printCommonItems(PrintWriter out, ProfileResult<?> profileResult, String profiledObjectId) {
         ioo.niprint(out, " ref-id=\"" + profiledObjectId + "\"" + //$NON-NLS-1$ //$NON-NLS-2$
                 " createStartTime=\""+profileResult.getCreateStartTime()+"\"" + //$NON-NLS-1$ //$NON-NLS-2$
@@ -205,7 +205,9 @@ public class ExportDDLAction extends AbstractArchitectAction {
              */
             private void generateAndDisplayDDL(final DDLExportPanel ddlPanel, DDLGenerator ddlg) throws SQLException,
             SQLObjectException {
-                ddlg.generateDDLScript(getSession().getTargetDatabase().getTables());
+                // the dialog shows and runs the statements, so there's no
+                // need to join them into a script here
+                ddlg.generateDDLStatements(getSession().getTargetDatabase().getTables());
 
                 SQLDatabase ppdb = new SQLDatabase(ddlPanel.getTargetDB());
                 SQLScriptDialog ssd =
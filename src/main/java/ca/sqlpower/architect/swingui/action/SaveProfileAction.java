@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -78,6 +79,35 @@ public class SaveProfileAction extends AbstractAction {
             }
             return depthFirstList;
         }
+
+        /**
+         * Returns the same results as {@link #getDepthFirstList()} without
+         * building a list of them, so the report can be streamed.
+         */
+        public Iterator<ProfileResult> getDepthFirstIterator() {
+            final Iterator<Map.Entry<TableProfileResult, Set<ColumnProfileResult>>> tables =
+                resultTree.entrySet().iterator();
+            return new Iterator<ProfileResult>() {
+                private Iterator<ColumnProfileResult> columns = null;
+
+                public boolean hasNext() {
+                    return (columns != null && columns.hasNext()) || tables.hasNext();
+                }
+
+                public ProfileResult next() {
+                    if (columns != null && columns.hasNext()) {
+                        return columns.next();
+                    }
+                    Map.Entry<TableProfileResult, Set<ColumnProfileResult>> table = tables.next();
+                    columns = table.getValue().iterator();
+                    return table.getKey();
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
     }
     
     /** The set of valid file types for saving the report in */
@@ -283,7 +313,7 @@ public class SaveProfileAction extends AbstractAction {
                     default:
                         throw new IllegalArgumentException(Messages.getString("SaveProfileAction.unknownType")); //$NON-NLS-1$
                     }
-                    prf.format(out, objectToSave.getDepthFirstList());
+                    prf.format(out, objectToSave.getDepthFirstIterator());
                 } catch (Exception ex) {
                     //FIXME: This should generate and send an error report
                     ASUtils.showExceptionDialogNoReport(dialogOwner,
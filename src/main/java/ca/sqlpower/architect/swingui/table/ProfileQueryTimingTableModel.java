@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2008, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui.table;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.AbstractTableModel;
+
+import ca.sqlpower.architect.profile.ProfileQueryTiming;
+import ca.sqlpower.architect.profile.TableProfileResult;
+import ca.sqlpower.architect.profile.event.ProfileQueryListener;
+
+/**
+ * Lists the timing of every query run for the profiles being viewed, one row
+ * per query. Timings of profiles that are still being populated are added as
+ * their queries finish.
+ */
+public class ProfileQueryTimingTableModel extends AbstractTableModel {
+
+    private final TableModelListener profileListListener = new TableModelListener() {
+        public void tableChanged(TableModelEvent e) {
+            refresh();
+        }
+    };
+
+    /**
+     * Adds the timings of queries that finish after the table was filled in.
+     * Queries finish on the profiling threads, so the rows are added on the
+     * event dispatch thread.
+     */
+    private final ProfileQueryListener queryListener = new ProfileQueryListener() {
+        public void queryFinished(final TableProfileResult result, final ProfileQueryTiming timing) {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    if (listenedResults.contains(result)) {
+                        timings.add(timing);
+                        fireTableRowsInserted(timings.size() - 1, timings.size() - 1);
+                    }
+                }
+            });
+        }
+    };
+
+    /**
+     * The table model that tracks the profiles being viewed.
+     */
+    private final ProfileTableModel tm;
+
+    private final List<ProfileQueryTiming> timings = new ArrayList<ProfileQueryTiming>();
+
+    /**
+     * The results this model listens to for new query timings.
+     */
+    private final Set<TableProfileResult> listenedResults =
+        Collections.newSetFromMap(new IdentityHashMap<TableProfileResult, Boolean>());
+
+    public ProfileQueryTimingTableModel(ProfileTableModel tm) {
+        this.tm = tm;
+        tm.addTableModelListener(profileListListener);
+        refresh();
+    }
+
+    public void refresh() {
+        for (TableProfileResult tpr : listenedResults) {
+            tpr.removeProfileQueryListener(queryListener);
+        }
+        listenedResults.clear();
+        timings.clear();
+        for (TableProfileResult tpr : tm.getTableResultsToScan()) {
+            if (listenedResults.add(tpr)) {
+                tpr.addProfileQueryListener(queryListener);
+                timings.addAll(tpr.getQueryTimings());
+            }
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * Returns a snapshot of the timings shown in this model.
+     */
+    public List<ProfileQueryTiming> getTimings() {
+        return new ArrayList<ProfileQueryTiming>(timings);
+    }
+
+    public int getColumnCount() {
+        return 8;
+    }
+
+    public int getRowCount() {
+        return timings.size();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        switch (column) {
+            case 0:
+                return "Table";
+            case 1:
+                return "Column";
+            case 2:
+                return "Type";
+            case 3:
+                return "Execute (ms)";
+            case 4:
+                return "Fetch (ms)";
+            case 5:
+                return "Rows";
+            case 6:
+                return "Bytes";
+            case 7:
+                return "Query";
+            default:
+                throw new IllegalArgumentException("Column " + column + " does not exist.");
+        }
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        switch (columnIndex) {
+            case 3:
+            case 4:
+                return Double.class;
+            case 5:
+            case 6:
+                return Long.class;
+            default:
+                return String.class;
+        }
+    }
+
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        ProfileQueryTiming timing = timings.get(rowIndex);
+        switch (columnIndex) {
+        case 0:
+            return timing.getTable().getName();
+        case 1:
+            return timing.getColumn() == null ? null : timing.getColumn().getName();
+        case 2:
+            return timing.getColumn() == null ? null : timing.getColumn().getSourceDataTypeName();
+        case 3:
+            return timing.getExecutionNanos() < 0 ? null : timing.getExecutionNanos() / 1e6;
+        case 4:
+            return timing.getFetchNanos() / 1e6;
+        case 5:
+            return timing.getRowCount();
+        case 6:
+            return timing.getByteCount() < 0 ? null : timing.getByteCount();
+        case 7:
+            return timing.getSql();
+        default:
+            throw new IllegalArgumentException("Column at index " + columnIndex + " does not exist.");
+        }
+    }
+}
@@ -20,8 +20,12 @@ package ca.sqlpower.architect.swingui.table;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.table.AbstractTableModel;
 
@@ -32,6 +36,7 @@ import ca.sqlpower.architect.ddl.DDLUtils;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ColumnValueCount;
 import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.profile.ProfileResult;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.architect.profile.event.ProfileChangeEvent;
 import ca.sqlpower.architect.profile.event.ProfileChangeListener;
@@ -64,7 +69,8 @@ public class ProfileTableModel extends AbstractTableModel implements CleanupTabl
     private final ProfileManager profileManager;
 
     /**
-     * A list of profile results to show in the ProfileResultsViewer
+     * A list of profile results to show in the ProfileResultsViewer. This is
+     * always the column results of the tables to scan, in sorted order.
      */
     private List<ColumnProfileResult> resultList;
 
@@ -74,12 +80,22 @@ public class ProfileTableModel extends AbstractTableModel implements CleanupTabl
     private List<TableProfileResult> tableResultsToScan = new ArrayList<TableProfileResult>();
 
     /**
-     * Refreshes this table model (possibly firing a table model event) whenever
-     * a change in the profile manager is detected.
+     * Updates this table model whenever a change in the profile manager is
+     * detected. Profiles removed from the manager have their rows removed;
+     * additions don't affect this model because only the tables to scan are
+     * shown.
      */
     private final ProfileChangeListener profileChangeHandler = new ProfileChangeListener() {
-        public void profilesRemoved(ProfileChangeEvent e) { refresh(); }
-        public void profilesAdded(ProfileChangeEvent e) { refresh(); }
+        public void profilesRemoved(ProfileChangeEvent e) {
+            List<TableProfileResult> removed = new ArrayList<TableProfileResult>();
+            for (ProfileResult pr : e.getProfileResults()) {
+                if (pr instanceof TableProfileResult) {
+                    removed.add((TableProfileResult) pr);
+                }
+            }
+            removeTableResultsToScan(removed);
+        }
+        public void profilesAdded(ProfileChangeEvent e) { /* not shown until scanned */ }
         public void profileListChanged(ProfileChangeEvent e) { refresh(); }
     };
 
@@ -214,6 +230,11 @@ public class ProfileTableModel extends AbstractTableModel implements CleanupTabl
         return profileManager;
     }
 
+    /**
+     * Rebuilds the rows of this model from the tables to scan. This is only
+     * needed if the column results of those tables have changed; adding and
+     * removing tables to scan updates the rows as it goes.
+     */
     public void refresh(){
         resultList = new ArrayList<ColumnProfileResult>();
         for (TableProfileResult tpr : tableResultsToScan) {
@@ -225,6 +246,77 @@ public class ProfileTableModel extends AbstractTableModel implements CleanupTabl
         fireTableDataChanged();
     }
 
+    /**
+     * Merges the column results of the given tables into the sorted rows of
+     * this model. Each new row's position is found by a binary search, so
+     * adding a table costs a number of comparisons that depends on the size
+     * of the table, not of the model. If the new rows all ended up next to
+     * each other, a single insert event is fired; otherwise the whole table
+     * is reported as changed.
+     */
+    private void insertColumnResults(Collection<TableProfileResult> tprs) {
+        List<ColumnProfileResult> added = new ArrayList<ColumnProfileResult>();
+        for (TableProfileResult tpr : tprs) {
+            added.addAll(tpr.getColumnProfileResults());
+        }
+        if (added.isEmpty()) return;
+        Collections.sort(added);
+
+        List<ColumnProfileResult> merged = new ArrayList<ColumnProfileResult>(resultList.size() + added.size());
+        int from = 0;
+        int firstRow = -1;
+        int lastRow = -1;
+        for (ColumnProfileResult cpr : added) {
+            int pos = Collections.binarySearch(resultList, cpr);
+            if (pos < 0) pos = -pos - 1;
+            pos = Math.max(pos, from);
+            merged.addAll(resultList.subList(from, pos));
+            from = pos;
+            if (firstRow == -1) firstRow = merged.size();
+            lastRow = merged.size();
+            merged.add(cpr);
+        }
+        merged.addAll(resultList.subList(from, resultList.size()));
+        resultList = merged;
+
+        if (lastRow - firstRow + 1 == added.size()) {
+            fireTableRowsInserted(firstRow, lastRow);
+        } else {
+            fireTableDataChanged();
+        }
+    }
+
+    /**
+     * Removes the rows for the column results of the given tables. A single
+     * delete event is fired if the removed rows were next to each other.
+     */
+    private void removeColumnResults(Collection<TableProfileResult> tprs) {
+        Set<TableProfileResult> parents = Collections.newSetFromMap(new IdentityHashMap<TableProfileResult, Boolean>());
+        parents.addAll(tprs);
+
+        List<ColumnProfileResult> remaining = new ArrayList<ColumnProfileResult>(resultList.size());
+        int firstRow = -1;
+        int lastRow = -1;
+        for (int i = 0; i < resultList.size(); i++) {
+            ColumnProfileResult cpr = resultList.get(i);
+            if (parents.contains(cpr.getParent())) {
+                if (firstRow == -1) firstRow = i;
+                lastRow = i;
+            } else {
+                remaining.add(cpr);
+            }
+        }
+        if (firstRow == -1) return;
+        int removedCount = resultList.size() - remaining.size();
+        resultList = remaining;
+
+        if (lastRow - firstRow + 1 == removedCount) {
+            fireTableRowsDeleted(firstRow, lastRow);
+        } else {
+            fireTableDataChanged();
+        }
+    }
+
     @Override
     public Class<?> getColumnClass(int columnIndex) {
         ProfileColumn pc = ProfileColumn.values()[columnIndex];
@@ -278,7 +370,16 @@ public class ProfileTableModel extends AbstractTableModel implements CleanupTabl
     }
     
     public void addTableResultToScan(TableProfileResult tpr) {
-        tableResultsToScan.add(tpr);
+        addTableResultsToScan(Collections.singletonList(tpr));
+    }
+
+    /**
+     * Adds the given tables to the tables to scan and their column results to
+     * the rows of this model, firing a single event for all of them.
+     */
+    public void addTableResultsToScan(Collection<TableProfileResult> tprs) {
+        tableResultsToScan.addAll(tprs);
+        insertColumnResults(tprs);
     }
     
     public List<TableProfileResult> getTableResultsToScan() {
@@ -287,9 +388,31 @@ public class ProfileTableModel extends AbstractTableModel implements CleanupTabl
 
     public void clearScanList() {
         tableResultsToScan.clear();
+        if (!resultList.isEmpty()) {
+            resultList = new ArrayList<ColumnProfileResult>();
+            fireTableDataChanged();
+        }
     }
 
     public void removeTableResultToScan(TableProfileResult result) {
-        tableResultsToScan.remove(result);
+        removeTableResultsToScan(Collections.singletonList(result));
+    }
+
+    /**
+     * Removes the given tables from the tables to scan along with the rows
+     * for their column results.
+     */
+    public void removeTableResultsToScan(Collection<TableProfileResult> tprs) {
+        Set<TableProfileResult> doomed = Collections.newSetFromMap(new IdentityHashMap<TableProfileResult, Boolean>());
+        doomed.addAll(tprs);
+        List<TableProfileResult> removed = new ArrayList<TableProfileResult>();
+        for (Iterator<TableProfileResult> it = tableResultsToScan.iterator(); it.hasNext(); ) {
+            TableProfileResult tpr = it.next();
+            if (doomed.contains(tpr)) {
+                it.remove();
+                removed.add(tpr);
+            }
+        }
+        removeColumnResults(removed);
     }
 }
@@ -19,6 +19,8 @@
 
 package ca.sqlpower.architect.swingui.table;
 
+import java.util.Arrays;
+
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.AbstractTableModel;
@@ -28,15 +30,44 @@ import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.swingui.table.TableModelWrapper;
 
+/**
+ * Shows only the rows of a wrapped profile table model whose column profile
+ * belongs to a given table profile. The wrapped model's rows that pass the
+ * filter are kept in an index so that looking up a row takes constant time.
+ * The index is built when it is first needed after the filter changes, and
+ * is updated in place when the wrapped model reports inserted or deleted
+ * rows.
+ */
 public class TableFilterDecorator extends AbstractTableModel implements TableModelWrapper {
 
     private TableModel wrappedModel;
     private TableProfileResult filter;
+
+    /**
+     * The wrapped model's index for each row shown while a filter is set, in
+     * ascending order. This is null if there is no filter or the index has to
+     * be rebuilt.
+     */
+    private int[] modelRows;
     
     private TableModelListener handler = new TableModelListener() {
         @Override
         public void tableChanged(TableModelEvent e) {
-            fireTableChanged(e);
+            if (filter == null) {
+                fireTableChanged(e);
+            } else if (modelRows == null) {
+                fireTableDataChanged();
+            } else if (e.getFirstRow() == TableModelEvent.HEADER_ROW) {
+                modelRows = null;
+                fireTableStructureChanged();
+            } else if (e.getType() == TableModelEvent.INSERT && e.getLastRow() != Integer.MAX_VALUE) {
+                rowsInserted(e.getFirstRow(), e.getLastRow());
+            } else if (e.getType() == TableModelEvent.DELETE && e.getLastRow() != Integer.MAX_VALUE) {
+                rowsDeleted(e.getFirstRow(), e.getLastRow());
+            } else {
+                modelRows = null;
+                fireTableDataChanged();
+            }
         }
     };
     
@@ -55,13 +86,110 @@ public class TableFilterDecorator extends AbstractTableModel implements TableMod
         this.wrappedModel.removeTableModelListener(handler);
         this.wrappedModel = model;
         model.addTableModelListener(handler);
+        modelRows = null;
     }
     
     public void setFilter(TableProfileResult filter) {
         this.filter = filter;
+        modelRows = null;
         fireTableChanged(new TableModelEvent(this));
     }
 
+    /**
+     * Returns true if the given row of the wrapped model passes the filter.
+     */
+    private boolean isAccepted(int modelRow) {
+        ColumnProfileResult cpr = (ColumnProfileResult) wrappedModel.getValueAt(modelRow, ProfileTableModel.CPR_PSEUDO_COLUMN_INDEX);
+        return filter.equals(cpr.getParent());
+    }
+
+    /**
+     * Returns the index of the rows that pass the filter, building it from
+     * the wrapped model if necessary. Must only be called when there is a
+     * filter.
+     */
+    private int[] getModelRows() {
+        if (modelRows == null) {
+            int rowCount = wrappedModel.getRowCount();
+            int[] rows = new int[rowCount];
+            int count = 0;
+            for (int i = 0; i < rowCount; i++) {
+                if (isAccepted(i)) {
+                    rows[count++] = i;
+                }
+            }
+            modelRows = new int[count];
+            System.arraycopy(rows, 0, modelRows, 0, count);
+        }
+        return modelRows;
+    }
+
+    /**
+     * Returns the position in the index of the first wrapped model row that
+     * is at or after the given one.
+     */
+    private int indexOfModelRow(int modelRow) {
+        int pos = Arrays.binarySearch(modelRows, modelRow);
+        return pos < 0 ? -pos - 1 : pos;
+    }
+
+    /**
+     * Updates the index for rows that were inserted into the wrapped model,
+     * and fires an insert event for the ones that pass the filter. The
+     * inserted rows that pass are next to each other in this model.
+     */
+    private void rowsInserted(int firstModelRow, int lastModelRow) {
+        int insertedCount = lastModelRow - firstModelRow + 1;
+        int pos = indexOfModelRow(firstModelRow);
+        int[] accepted = new int[insertedCount];
+        int acceptedCount = 0;
+        for (int i = firstModelRow; i <= lastModelRow; i++) {
+            if (isAccepted(i)) {
+                accepted[acceptedCount++] = i;
+            }
+        }
+        int[] rows = new int[modelRows.length + acceptedCount];
+        System.arraycopy(modelRows, 0, rows, 0, pos);
+        System.arraycopy(accepted, 0, rows, pos, acceptedCount);
+        for (int i = pos; i < modelRows.length; i++) {
+            rows[i + acceptedCount] = modelRows[i] + insertedCount;
+        }
+        modelRows = rows;
+        if (acceptedCount > 0) {
+            fireTableRowsInserted(pos, pos + acceptedCount - 1);
+        }
+    }
+
+    /**
+     * Updates the index for rows that were deleted from the wrapped model,
+     * and fires a delete event for the ones that were shown.
+     */
+    private void rowsDeleted(int firstModelRow, int lastModelRow) {
+        int deletedCount = lastModelRow - firstModelRow + 1;
+        int from = indexOfModelRow(firstModelRow);
+        int to = indexOfModelRow(lastModelRow + 1);
+        int[] rows = new int[modelRows.length - (to - from)];
+        System.arraycopy(modelRows, 0, rows, 0, from);
+        for (int i = to; i < modelRows.length; i++) {
+            rows[i - (to - from)] = modelRows[i] - deletedCount;
+        }
+        modelRows = rows;
+        if (to > from) {
+            fireTableRowsDeleted(from, to - 1);
+        }
+    }
+
+    /**
+     * Returns the wrapped model's index of the given row of this model.
+     */
+    public int convertRowIndexToModel(int rowIndex) {
+        if (filter == null) {
+            return rowIndex;
+        } else {
+            return getModelRows()[rowIndex];
+        }
+    }
+
     @Override
     public int getColumnCount() {
         return wrappedModel.getColumnCount();
@@ -72,41 +200,23 @@ public class TableFilterDecorator extends AbstractTableModel implements TableMod
         if (filter == null) {
             return wrappedModel.getRowCount();
         } else {
-            int count = 0;
-            for (int i = 0; i < wrappedModel.getRowCount(); i++) {
-                ColumnProfileResult cpr = (ColumnProfileResult) wrappedModel.getValueAt(i, ProfileTableModel.CPR_PSEUDO_COLUMN_INDEX);
-                if (filter.equals(cpr.getParent())) {
-                    count++;
-                }
-            }
-            return count;
+            return getModelRows().length;
         }
     }
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        if (filter == null) {
-            return wrappedModel.getValueAt(rowIndex, columnIndex);
-        } else {
-            int count = 0;
-            for (int i = -1; i < rowIndex; count++) {
-                ColumnProfileResult cpr = (ColumnProfileResult) wrappedModel.getValueAt(count, ProfileTableModel.CPR_PSEUDO_COLUMN_INDEX);
-                if (filter.equals(cpr.getParent())) {
-                    i++;
-                }
-            }
-            return wrappedModel.getValueAt(count-1, columnIndex);
-        }
+        return wrappedModel.getValueAt(convertRowIndexToModel(rowIndex), columnIndex);
     }
     
     @Override
     public boolean isCellEditable(int rowIndex, int columnIndex) {
-        return wrappedModel.isCellEditable(rowIndex, columnIndex);
+        return wrappedModel.isCellEditable(convertRowIndexToModel(rowIndex), columnIndex);
     }
     
     @Override
     public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
-        wrappedModel.setValueAt(aValue, rowIndex, columnIndex);
+        wrappedModel.setValueAt(aValue, convertRowIndexToModel(rowIndex), columnIndex);
     }
 
     @Override